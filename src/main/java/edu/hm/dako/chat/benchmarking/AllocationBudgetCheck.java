@@ -0,0 +1,447 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import edu.hm.dako.chat.client.AbstractMessageListenerThread;
+import edu.hm.dako.chat.client.AdvancedClientImpl;
+import edu.hm.dako.chat.client.ClientUserInterface;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.SystemConstants;
+import edu.hm.dako.chat.server.ChatServerRuntime;
+
+/**
+ * Pruefung der Speicherallokation pro Protokollschritt.
+ * <p/>
+ * Ein Advanced-Chat-Server wird im selben Prozess gestartet, mehrere Clients
+ * durchlaufen ueber Loopback-Verbindungen ein festes Skript (Login, Chat-
+ * Nachrichten mit Events und Confirms, Logout). Fuer jeden Schritt wird mit
+ * com.sun.management.ThreadMXBean ermittelt, wie viele Bytes die
+ * Server-Worker-Threads und die Message-Listener-Threads der Clients im
+ * Mittel pro Request allokieren. Enthalten ist jeweils die gesamte
+ * Verarbeitung eines Requests, also auch die Events an alle Clients und deren
+ * Confirms.
+ * <p/>
+ * Liegt ein Wert ueber seinem Budget, endet das Programm mit Exit-Code 1, ein
+ * Build-Skript kann die Pruefung so als Regressionstest ausfuehren. Die
+ * Pruefung ist wie die anderen Benchmark-Werkzeuge ein eigenstaendiges
+ * Programm, da das Projekt keinen Test-Quellordner hat. Die Budgets koennen
+ * ueber eine Properties-Datei (erstes Argument) angepasst werden, z.B.
+ * budget.server.CHAT_MESSAGE_REQUEST=60000.
+ * <p/>
+ * Hinweis: Die Listener-Threads der Clients beenden sich nach dem Logout, ihre
+ * Allokation ist danach nicht mehr abfragbar. Fuer den Logout wird daher nur
+ * der Server geprueft. Vorab laeuft ein vollstaendiger Aufwaermdurchlauf,
+ * damit Klassenladen und JIT-Compilierung nicht mitgemessen werden.
+ *
+ * @author Mandl
+ */
+public class AllocationBudgetCheck {
+
+	// Exit-Codes
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_BUDGET_EXCEEDED = 1;
+	public static final int EXIT_FAILED = 2;
+
+	// Standard-Port des eingebetteten Servers
+	private static final int DEFAULT_SERVER_PORT = 50100;
+
+	// Anzahl Clients und Chat-Nachrichten pro Client und Durchlauf
+	private static final int NUMBER_OF_CLIENTS = 4;
+	private static final int NUMBER_OF_MESSAGES = 100;
+	private static final int MESSAGE_LENGTH = 50;
+
+	// Maximale Wartezeit auf eine Antwort des Servers in s
+	private static final int RESPONSE_TIMEOUT = 10;
+
+	// Wartezeit, bis alle Threads nach einem Schritt zur Ruhe gekommen sind
+	private static final int SETTLE_TIME_MILLIS = 200;
+
+	// Protokollschritte, fuer die Budgets geprueft werden
+	private static final String LOGIN = "LOGIN_REQUEST";
+	private static final String CHAT_MESSAGE = "CHAT_MESSAGE_REQUEST";
+	private static final String LOGOUT = "LOGOUT_REQUEST";
+
+	// Standard-Budgets in Byte pro Request: gemessener Stand (4 Clients, 50
+	// Byte Nachrichtenlaenge, OpenJDK 17.0.9 Temurin, 64 Bit, Standard-GC) plus
+	// ca. 20 % Reserve. Die Allokationsgroessen haengen vom JDK ab, bei einem
+	// anderen JDK sind die Budgets neu zu messen. Bei gewollten
+	// Verbesserungen sind die Budgets nachzuziehen. Beim Login eines Clients
+	// legt der neue Listener-Thread zusaetzlich seinen Flight-Recorder-Puffer
+	// an (ca. 53 KByte). Der Logout schwankt zwischen ca. 40 und 60 KByte, je
+	// nachdem, ob verzoegerte Logout-Abschluesse in die Messung fallen; das
+	// Budget bezieht sich auf den hoeheren Wert.
+	private static final Map<String, Long> DEFAULT_BUDGETS = new LinkedHashMap<String, Long>();
+
+	static {
+		DEFAULT_BUDGETS.put("budget.server." + LOGIN, 48000L);
+		DEFAULT_BUDGETS.put("budget.listener." + LOGIN, 117000L);
+		DEFAULT_BUDGETS.put("budget.server." + CHAT_MESSAGE, 66000L);
+		DEFAULT_BUDGETS.put("budget.listener." + CHAT_MESSAGE, 60000L);
+		DEFAULT_BUDGETS.put("budget.server." + LOGOUT, 73000L);
+	}
+
+	private final com.sun.management.ThreadMXBean threadBean;
+
+	private final Properties budgets = new Properties();
+
+	private final int serverPort;
+
+	// Gemessene Werte in Byte pro Request, Schluessel wie bei den Budgets
+	private final Map<String, Long> measured = new LinkedHashMap<String, Long>();
+
+	public AllocationBudgetCheck(Properties budgetOverrides, int serverPort) {
+		this.serverPort = serverPort;
+		this.threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			throw new IllegalStateException(
+					"JVM unterstuetzt keine Messung der Thread-Allokation");
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		for (Map.Entry<String, Long> budget : DEFAULT_BUDGETS.entrySet()) {
+			budgets.setProperty(budget.getKey(), String.valueOf(budget.getValue()));
+		}
+		budgets.putAll(budgetOverrides);
+	}
+
+	/**
+	 * Start der Pruefung
+	 *
+	 * @param args
+	 *          [Properties-Datei mit Budgets] [Serverport]
+	 */
+	public static void main(String[] args) {
+		// Logging aus, sonst werden die Log-Ausgaben mitgemessen
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		Properties overrides = new Properties();
+		int port = DEFAULT_SERVER_PORT;
+		try {
+			if (args.length > 0) {
+				try (InputStream in = new FileInputStream(args[0])) {
+					overrides.load(in);
+				}
+			}
+			if (args.length > 1) {
+				port = Integer.parseInt(args[1]);
+			}
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("Ungueltige Argumente: " + e.getMessage());
+			System.exit(EXIT_FAILED);
+		}
+
+		int exitCode;
+		try {
+			exitCode = new AllocationBudgetCheck(overrides, port).execute();
+		} catch (Exception e) {
+			System.err.println("Pruefung fehlgeschlagen: " + e);
+			e.printStackTrace();
+			exitCode = EXIT_FAILED;
+		}
+		System.exit(exitCode);
+	}
+
+	/**
+	 * Server starten, Aufwaerm- und Messdurchlauf ausfuehren und die Budgets
+	 * pruefen
+	 *
+	 * @return Exit-Code
+	 * @throws Exception
+	 */
+	public int execute() throws Exception {
+		ChatServerRuntime server = new ChatServerRuntime.Builder()
+				.implementationType(ImplementationType.TCPAdvancedImplementation)
+				.serverPort(serverPort).build();
+		server.start();
+		try {
+			runSession("Warmup", false);
+			runSession("Mess", true);
+		} finally {
+			server.stop();
+		}
+
+		boolean exceeded = false;
+		for (Map.Entry<String, Long> value : measured.entrySet()) {
+			long budget = Long.parseLong(budgets.getProperty(value.getKey()).trim());
+			boolean ok = value.getValue() <= budget;
+			exceeded |= !ok;
+			System.out.println(String.format("%-36s %10d Byte/Request (Budget %10d) %s",
+					value.getKey(), value.getValue(), budget, ok ? "ok" : "UEBERSCHRITTEN"));
+		}
+		return exceeded ? EXIT_BUDGET_EXCEEDED : EXIT_OK;
+	}
+
+	/**
+	 * Skript eines Durchlaufs: alle Clients einloggen, jeder Client sendet
+	 * abwechselnd Chat-Nachrichten, alle Clients ausloggen
+	 *
+	 * @param prefix
+	 *          Praefix fuer die User-Namen
+	 * @param record
+	 *          true, wenn die Messwerte uebernommen werden sollen
+	 */
+	private void runSession(String prefix, boolean record) throws Exception {
+
+		ScriptedUserInterface[] userInterfaces = new ScriptedUserInterface[NUMBER_OF_CLIENTS];
+		AdvancedClientImpl[] clients = new AdvancedClientImpl[NUMBER_OF_CLIENTS];
+		String[] userNames = new String[NUMBER_OF_CLIENTS];
+		for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+			userNames[i] = prefix + "User" + i;
+			userInterfaces[i] = new ScriptedUserInterface();
+			clients[i] = new AdvancedClientImpl(userInterfaces[i], serverPort, "127.0.0.1",
+					SystemConstants.IMPL_TCP_ADVANCED);
+		}
+		settle();
+
+		// Login
+		long[] serverThreads = serverThreadIds();
+		long serverStart = allocatedBytes(serverThreads);
+		long listenerStart = listenerAllocatedBytes();
+		for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+			clients[i].login(userNames[i]);
+			userInterfaces[i].awaitLoginComplete();
+		}
+		settle();
+		record(record, LOGIN, serverThreads, serverStart, listenerStart, NUMBER_OF_CLIENTS,
+				true);
+
+		// Chat-Nachrichten mit Events und Confirms
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < MESSAGE_LENGTH; i++) {
+			text.append('x');
+		}
+		String message = text.toString();
+		serverThreads = serverThreadIds();
+		serverStart = allocatedBytes(serverThreads);
+		listenerStart = listenerAllocatedBytes();
+		for (int m = 0; m < NUMBER_OF_MESSAGES; m++) {
+			for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+				userInterfaces[i].setLock(true);
+				clients[i].tell(userNames[i], message);
+				userInterfaces[i].awaitResponse();
+			}
+		}
+		settle();
+		record(record, CHAT_MESSAGE, serverThreads, serverStart, listenerStart,
+				NUMBER_OF_CLIENTS * NUMBER_OF_MESSAGES, true);
+
+		// Logout (nur Server, die Listener-Threads beenden sich)
+		serverThreads = serverThreadIds();
+		serverStart = allocatedBytes(serverThreads);
+		for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+			clients[i].logout(userNames[i]);
+			userInterfaces[i].awaitLogoutComplete();
+		}
+		settle();
+		record(record, LOGOUT, serverThreads, serverStart, 0, NUMBER_OF_CLIENTS, false);
+
+		for (AdvancedClientImpl client : clients) {
+			client.cancelConnection();
+		}
+		settle();
+	}
+
+	private void record(boolean record, String step, long[] serverThreads,
+			long serverStart, long listenerStart, int requests, boolean withListener) {
+		if (!record) {
+			return;
+		}
+		measured.put("budget.server." + step,
+				(allocatedBytes(serverThreads) - serverStart) / requests);
+		if (withListener) {
+			measured.put("budget.listener." + step,
+					(listenerAllocatedBytes() - listenerStart) / requests);
+		}
+	}
+
+	/**
+	 * Ids aller Threads ausser den Listener-Threads und dem eigenen Thread. Das
+	 * sind die Worker-Threads (Threadpool) und der Accept-Thread des Servers
+	 * sowie JVM-Threads, die praktisch nichts allokieren. Die Menge wird zu
+	 * Beginn eines Schritts ermittelt und fuer Start- und Endwert verwendet.
+	 *
+	 * @return Thread-Ids
+	 */
+	private static long[] serverThreadIds() {
+		List<Long> ids = new ArrayList<Long>();
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (!(t instanceof AbstractMessageListenerThread) && (t != Thread.currentThread())) {
+				ids.add(t.getId());
+			}
+		}
+		long[] result = new long[ids.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Summe der Allokation der angegebenen Threads in Byte
+	 */
+	private long allocatedBytes(long[] threadIds) {
+		long sum = 0;
+		for (long bytes : threadBean.getThreadAllocatedBytes(threadIds)) {
+			sum += Math.max(0, bytes);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return Summe der Allokation aller lebenden Message-Listener-Threads
+	 */
+	private long listenerAllocatedBytes() {
+		long sum = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t instanceof AbstractMessageListenerThread) {
+				sum += Math.max(0, threadBean.getThreadAllocatedBytes(t.getId()));
+			}
+		}
+		return sum;
+	}
+
+	private static void settle() throws InterruptedException {
+		Thread.sleep(SETTLE_TIME_MILLIS);
+	}
+
+	/**
+	 * Minimale Benutzeroberflaeche fuer die Skript-Clients: meldet das Ende von
+	 * Login, Chat-Request und Logout ueber Semaphoren
+	 */
+	private static class ScriptedUserInterface implements ClientUserInterface {
+
+		private final Semaphore loginComplete = new Semaphore(0);
+		private final Semaphore logoutComplete = new Semaphore(0);
+		private final Semaphore responseReceived = new Semaphore(0);
+
+		private volatile boolean lock = false;
+
+		void awaitLoginComplete() throws Exception {
+			await(loginComplete, "Login-Response");
+		}
+
+		void awaitLogoutComplete() throws Exception {
+			await(logoutComplete, "Logout-Response");
+		}
+
+		void awaitResponse() throws Exception {
+			await(responseReceived, "Chat-Message-Response");
+		}
+
+		private static void await(Semaphore semaphore, String what) throws Exception {
+			if (!semaphore.tryAcquire(RESPONSE_TIMEOUT, TimeUnit.SECONDS)) {
+				throw new IllegalStateException(
+						what + " nicht innerhalb von " + RESPONSE_TIMEOUT + " s empfangen");
+			}
+		}
+
+		@Override
+		public void setLock(boolean lock) {
+			this.lock = lock;
+			if (!lock) {
+				responseReceived.release();
+			}
+		}
+
+		@Override
+		public boolean getLock() {
+			return lock;
+		}
+
+		@Override
+		public void loginComplete() {
+			loginComplete.release();
+		}
+
+		@Override
+		public void logoutComplete() {
+			logoutComplete.release();
+		}
+
+		@Override
+		public void setUserList(Vector<String> userList) {
+		}
+
+		@Override
+		public void setMessageLine(String sender, String message) {
+		}
+
+		@Override
+		public boolean isTestAborted() {
+			return false;
+		}
+
+		@Override
+		public void abortTest() {
+		}
+
+		@Override
+		public void releaseTest() {
+		}
+
+		@Override
+		public boolean isRunning() {
+			return true;
+		}
+
+		@Override
+		public void setLastServerTime(long lastServerTime) {
+		}
+
+		@Override
+		public long getLastServerTime() {
+			return 0;
+		}
+
+		@Override
+		public void setSessionStatisticsCounter(long numberOfSentEvents,
+				long numberOfReceivedConfirms, long numberOfLostConfirms, long numberOfRetries,
+				long numberOfReceivedChatMessages) {
+		}
+
+		@Override
+		public long getNumberOfSentEvents() {
+			return 0;
+		}
+
+		@Override
+		public long getNumberOfReceivedConfirms() {
+			return 0;
+		}
+
+		@Override
+		public long getNumberOfLostConfirms() {
+			return 0;
+		}
+
+		@Override
+		public long getNumberOfRetries() {
+			return 0;
+		}
+
+		@Override
+		public long getNumberOfReceivedChatMessages() {
+			return 0;
+		}
+
+		@Override
+		public void setErrorMessage(String sender, String errorMessage, long errorCode) {
+		}
+	}
+}
@@ -21,7 +21,7 @@ public final class BenchmarkingClientFactory {
 	public static Runnable getClient(ClientUserInterface userInterface,
 			UserInterfaceInputParameters param, int numberOfClient,
 			SharedClientStatistics sharedData,
-			BenchmarkingClientUserInterface benchmarkingGui) {
+			BenchmarkingClientUserInterface benchmarkingGui, RequestSchedule requestSchedule) {
 		try {
 
 			switch (param.getImplementationType()) {
@@ -34,6 +34,14 @@ public final class BenchmarkingClientFactory {
 						param.getNumberOfMessages(), param.getClientThinkTime(),
 						param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
 						getDecoratedFactory(new TcpConnectionFactory()));
+				impl.setRequestSchedule(requestSchedule);
+				impl.setDeliveryGuarantees(param.getDeliveryGuarantees(),
+						param.getDeliveryQuorum());
+				impl.setRoom(param.getRoomOfClient(numberOfClient));
+				impl.setDirectMessages(param.getDirectMessageShare(),
+						param.getDirectPeerOfClient(numberOfClient));
+				impl.setPresence(param.getPresenceMode(),
+						param.getPresenceUsersOfClient(numberOfClient));
 				return impl;
 			// AG: hier case TCPAdvancedImplementation
 				
@@ -44,6 +52,14 @@ public final class BenchmarkingClientFactory {
                         param.getNumberOfMessages(), param.getClientThinkTime(),
                         param.getNumberOfRetries(), param.getResponseTimeout(), sharedData,
                         getDecoratedFactory(new TcpConnectionFactory()));
+                advimpl.setRequestSchedule(requestSchedule);
+                advimpl.setDeliveryGuarantees(param.getDeliveryGuarantees(),
+                        param.getDeliveryQuorum());
+                advimpl.setRoom(param.getRoomOfClient(numberOfClient));
+                advimpl.setDirectMessages(param.getDirectMessageShare(),
+                        param.getDirectPeerOfClient(numberOfClient));
+                advimpl.setPresence(param.getPresenceMode(),
+                        param.getPresenceUsersOfClient(numberOfClient));
                 return advimpl;
 			    
 			default:
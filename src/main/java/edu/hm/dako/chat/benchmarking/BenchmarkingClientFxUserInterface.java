@@ -0,0 +1,17 @@
+package edu.hm.dako.chat.benchmarking;
+
+import javafx.scene.control.ProgressBar;
+
+/**
+ * Erweiterung des {@link BenchmarkingClientUserInterface} fuer die
+ * JavaFX-GUI
+ *
+ * @author Mandl
+ */
+public interface BenchmarkingClientFxUserInterface extends BenchmarkingClientUserInterface {
+
+	/**
+	 * Progressbar fuer FX-GUI
+	 */
+	public ProgressBar getProgressBarFx();
+}
@@ -4,22 +4,25 @@ import java.awt.*;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javax.swing.JProgressBar;
 
 import org.apache.log4j.PropertyConfigurator;
 
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.SharedClientStatistics;
 import edu.hm.dako.chat.common.SystemConstants;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
-import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -43,6 +46,7 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * GUI fuer den Benchmarking-Client in JavaFX-GUI-Technologie
@@ -58,7 +62,7 @@ import javafx.stage.Stage;
 
 public class BenchmarkingClientGuiFx2 extends Application
 
-		implements BenchmarkingClientUserInterface {
+		implements BenchmarkingClientFxUserInterface {
 
 	// BenchmarkingClient
 	BenchmarkingClientCoordinator benchClient;
@@ -87,16 +91,23 @@ public class BenchmarkingClientGuiFx2 extends Application
 			SystemConstants.IMPL_TCP_SIMPLE,SystemConstants.IMPL_TCP_ADVANCED);
 	ObservableList<String> measureTypeOptions = FXCollections
 			.observableArrayList("Variable Threads", "Variable Length");
+	ObservableList<String> loadModeOptions = FXCollections
+			.observableArrayList("Closed Loop", "Open Loop");
+	ObservableList<String> arrivalDistributionOptions = FXCollections
+			.observableArrayList("Constant", "Poisson");
 
 	// Comboboxen
 	private ComboBox<String> optionListImplType;
 	private ComboBox<String> optionListMeasureType;
+	private ComboBox<String> optionListLoadMode;
+	private ComboBox<String> optionListArrivalDistribution;
 
 	// Eingabefelder
 	private TextField textFieldNumberOfClientThreads;
 	private TextField textFieldNumberOfMessagesPerClients;
 	private TextField textFieldServerport;
 	private TextField textFieldThinkTime;
+	private TextField textFieldTargetRequestRate;
 	private TextField textFieldServerIpAdress;
 	private TextField textFieldMessageLength;
 	private TextField textFieldNumberOfMaxRetries;
@@ -141,6 +152,7 @@ public class BenchmarkingClientGuiFx2 extends Application
 	private Label numberOfMessagesPerClients;
 	private Label serverport;
 	private Label thinkTime;
+	private Label targetRequestRate;
 	private Label serverIpAddress;
 	private Label messageLength;
 	private Label numberOfMaxRetries;
@@ -149,16 +161,35 @@ public class BenchmarkingClientGuiFx2 extends Application
 	// Scroller fuer Message Area
 	private ScrollPane scrollPane;
 
-	// Task fuer Progressbar
-	private Task<Boolean> task;
+	// Intervall fuer die Aktualisierung des Progressbars in ms (10 Hz)
+	private static final int PROGRESS_UPDATE_INTERVAL = 100;
+
+	// Intervall fuer die Berechnung von Durchsatz und RTT-Perzentilen in ms
+	private static final int LIVE_READOUT_INTERVAL = 1000;
+
+	// Timer fuer den Progressbar, liest den Fortschrittszaehler im FX-Thread
+	private Timeline progressTimer;
 	private Label progressIndicator;
-	private int progressCounter;
+
+	// Fortschrittszaehler, wird von den Client-Threads nur erhoeht
+	private final AtomicInteger progressCounter = new AtomicInteger(0);
+
+	// Anzahl der erwarteten Zaehlererhoehungen im laufenden Test
+	private int maxProgress;
+
+	// Zeitpunkt, Response-Zaehler und RTT-Histogramm der letzten Live-Anzeige
+	private long lastReadoutTime;
+	private int lastReceivedResponses;
+	private LatencyHistogram lastHistogram;
+
+	// Text der Live-Anzeige (Durchsatz und RTT-Perzentile)
+	private String liveReadout = "";
+
+	private final NumberFormat progressFormat = new DecimalFormat("0.00 %");
 
 	// Laufzeitzaehler erzeugen
 	private Long timeCounter = 0L;
 
-	private StringProperty labelString = new SimpleStringProperty();
-
 	// Patterns fuer die Pruefung der eingegebenen IP-Adressen
 	private static final Pattern IPV6_PATTERN = Pattern
 			.compile("^(?:[0-9a-fA-F]{1,4}:){7}[0-9a-fA-F]{1,4}$");
@@ -265,6 +296,10 @@ public class BenchmarkingClientGuiFx2 extends Application
 		optionListMeasureType = createCombobox(measureTypeOptions);
 		optionListImplType.setValue(SystemConstants.IMPL_TCP_ADVANCED);
 		optionListMeasureType.setValue("Variable Threads");
+		optionListLoadMode = createCombobox(loadModeOptions);
+		optionListArrivalDistribution = createCombobox(arrivalDistributionOptions);
+		optionListLoadMode.setValue("Closed Loop");
+		optionListArrivalDistribution.setValue("Constant");
 
 		// Comboboxen zum Pane hinzufuegen und Labels ergaenzen
 		implType = createLabel("Implementierungstyp");
@@ -272,6 +307,8 @@ public class BenchmarkingClientGuiFx2 extends Application
 		inputPane.add(optionListImplType, 3, 1);
 		inputPane.add(createLabel("Art der Messung"), 5, 1);
 		inputPane.add(optionListMeasureType, 7, 1);
+		inputPane.add(createLabel("Lasterzeugung"), 9, 1);
+		inputPane.add(optionListLoadMode, 11, 1);
 
 		// Textfelder zum Pane hinzufuegen und Labels ergaenzen
 		numberOfClientThreads = createLabel("Anzahl Client-Threads");
@@ -306,6 +343,13 @@ public class BenchmarkingClientGuiFx2 extends Application
 		inputPane.add(serverIpAddress, 9, 5);
 		textFieldServerIpAdress = createEditableTextfield(inputPane, 11, 5, "localhost");
 
+		// Sendeplan fuer Open Loop (statt Denkzeit)
+		targetRequestRate = createLabel("Requests/s (Open Loop)");
+		inputPane.add(targetRequestRate, 9, 7);
+		textFieldTargetRequestRate = createEditableTextfield(inputPane, 11, 7, "100");
+		inputPane.add(createLabel("Ankunftsverteilung"), 13, 7);
+		inputPane.add(optionListArrivalDistribution, 15, 7);
+
 		if(dim.getHeight() >= 900){
 			inputPane.add(createLabel(""), 1, 9);
 			// Abstaende hinzufuegen
@@ -675,55 +719,93 @@ public class BenchmarkingClientGuiFx2 extends Application
 	}
 
 	/**
-	 * Es wird ein Task erstellt, der bei Erhoehung des progressCounter den
-	 * Progressbar aktualisiert
-	 * 
-	 * @return Task
+	 * Progressbar und Live-Anzeige starten. Ein Timer liest den
+	 * Fortschrittszaehler im FX-Thread mit 10 Hz aus, die Client-Threads
+	 * erhoehen nur den Zaehler und stellen keine eigenen Runnables in die
+	 * Event-Liste ein.
 	 */
-	private Task<Boolean> progressTask() {
-		return new Task<Boolean>() {
-			@Override
-			protected Boolean call() throws Exception {
+	private void countUpProgressBar() {
 
-				// Anzahl der erwarteten Progresscounter-Erhoehungen berechnen: Alle
-				// Message-Requests ohne Logins und ohne Logouts
-				int maxMessages = iParam.getNumberOfMessages() * iParam.getNumberOfClients();
+		// Anzahl der erwarteten Progresscounter-Erhoehungen berechnen: Alle
+		// Message-Requests sowie je ein Login und ein Logout pro Client
+		maxProgress = (iParam.getNumberOfMessages() + 2) * iParam.getNumberOfClients();
 
-				for (int i = 0; i < maxMessages; i = progressCounter) {
-					updateProgress(i + 1, maxMessages);
-				}
+		lastReadoutTime = System.nanoTime();
+		lastReceivedResponses = 0;
+		lastHistogram = null;
+		liveReadout = "";
 
-				return true;
-			}
-		};
+		if (dim.getHeight() >= 900) {
+			progressIndicator.setFont(Font.font(13));
+		} else {
+			progressIndicator.setFont(Font.font(10));
+		}
+
+		if (progressTimer == null) {
+			progressTimer = new Timeline(new KeyFrame(Duration.millis(PROGRESS_UPDATE_INTERVAL),
+					new EventHandler<ActionEvent>() {
+						@Override
+						public void handle(ActionEvent event) {
+							updateProgressBar();
+						}
+					}));
+			progressTimer.setCycleCount(Animation.INDEFINITE);
+		}
+		progressTimer.play();
 	}
 
 	/**
-	 * Der ProgressBar wird an diesen Task gebunden
+	 * Progressbar aus dem Fortschrittszaehler aktualisieren, einmal pro Sekunde
+	 * auch Durchsatz und RTT-Perzentile des letzten Intervalls ermitteln. Wird
+	 * vom Timer im FX-Thread aufgerufen.
 	 */
-	private void countUpProgressBar() {
-		Platform.runLater(new Runnable() {
-			@Override
-			public void run() {
-				final NumberFormat format = new DecimalFormat("0.00 %");
-				task.progressProperty().addListener(new ChangeListener<Number>() {
-					@Override
-					public void changed(ObservableValue<? extends Number> observable,
-							Number oldValue, Number newValue) {
-						labelString.setValue(format.format(newValue));
-					}
-				});
-				progressIndicator.textProperty().bind(labelString);
-				if(dim.getHeight() >= 900) {
-					progressIndicator.setFont(Font.font(13));
-				}else{
-					progressIndicator.setFont(Font.font(10));
-				}
-				progressBarFx.progressProperty().unbind();
-				progressBarFx.progressProperty().bind(task.progressProperty());
-				new Thread(task).start();
-			}
-		});
+	private void updateProgressBar() {
+		double progress = (maxProgress > 0)
+				? Math.min(1.0, (double) progressCounter.get() / maxProgress) : 0;
+		progressBarFx.setProgress(progress);
+
+		long now = System.nanoTime();
+		long elapsed = now - lastReadoutTime;
+		if (elapsed >= LIVE_READOUT_INTERVAL * 1000000L) {
+			updateLiveReadout(now, elapsed);
+		}
+		progressIndicator.setText(progressFormat.format(progress) + liveReadout);
+	}
+
+	/**
+	 * Durchsatz und RTT-Perzentile seit der letzten Live-Anzeige ermitteln
+	 *
+	 * @param now
+	 *          Aktueller Zeitpunkt in ns
+	 * @param elapsed
+	 *          Zeit seit der letzten Anzeige in ns
+	 */
+	private void updateLiveReadout(long now, long elapsed) {
+		SharedClientStatistics statistics = benchClient.getSharedStatistics();
+		if (statistics == null) {
+			return;
+		}
+		int receivedResponses = statistics.getNumberOfReceivedResponses();
+		LatencyHistogram histogram = statistics.getRttHistogramSnapshot();
+
+		// Intervall-Histogramm aus zwei kumulierten Schnappschuessen bilden
+		LatencyHistogram intervalHistogram = histogram.copy();
+		if (lastHistogram != null) {
+			intervalHistogram.subtract(lastHistogram);
+		}
+
+		double throughput = (receivedResponses - lastReceivedResponses)
+				/ (elapsed / 1000000000.0);
+		Formatter formatter = new Formatter();
+		formatter.format("  |  %.0f Responses/s  |  RTT P50 %.2f ms, P99 %.2f ms", throughput,
+				intervalHistogram.getValueAtPercentile(50) / 1000000.0,
+				intervalHistogram.getValueAtPercentile(99) / 1000000.0);
+		liveReadout = formatter.toString();
+		formatter.close();
+
+		lastReadoutTime = now;
+		lastReceivedResponses = receivedResponses;
+		lastHistogram = histogram;
 	}
 
 	/**
@@ -740,7 +822,6 @@ public class BenchmarkingClientGuiFx2 extends Application
 				Platform.runLater(new Runnable() {
 					@Override
 					public void run() {
-						task = progressTask();
 						benchClient = new BenchmarkingClientCoordinator();
 						startGui();
 					}
@@ -816,6 +897,7 @@ public class BenchmarkingClientGuiFx2 extends Application
 		setResponseTimeOut();
 		setNumberOfMaxRetries();
 		setServerIpAddress();
+		setTargetRequestRate();
 
 		if (startable == false) {
 			setAlert("Bitte korrigieren Sie die rot markierten Felder!");
@@ -1025,6 +1107,32 @@ public class BenchmarkingClientGuiFx2 extends Application
 		}
 	}
 
+	/**
+	 * Pruefen der Eingabe der Ziel-Requestrate, nur im Open-Loop-Modus
+	 */
+	private void setTargetRequestRate() {
+		if (iParam.getLoadMode() != UserInterfaceInputParameters.LoadMode.OpenLoop) {
+			targetRequestRate.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
+			return;
+		}
+		String testString = textFieldTargetRequestRate.getText();
+		if (testString.matches("[0-9]+")) {
+			Integer iRate = new Integer(testString);
+			if (iRate < 1) {
+				// Nicht im Wertebereich
+				startable = false;
+				targetRequestRate.setTextFill(Color.web(SystemConstants.RED_COLOR));
+			} else {
+				System.out.println("Ziel-Requestrate: " + iRate + " Requests/s");
+				iParam.setTargetRequestRate(iRate.doubleValue());
+				targetRequestRate.setTextFill(Color.web(SystemConstants.BLACK_COLOR));
+			}
+		} else {
+			startable = false;
+			targetRequestRate.setTextFill(Color.web(SystemConstants.RED_COLOR));
+		}
+	}
+
 	/**
 	 * Eingabe ueber die Comboboxen auslesen
 	 */
@@ -1058,6 +1166,13 @@ public class BenchmarkingClientGuiFx2 extends Application
 			setAlert("Art der Messung nicht festgelegt!");
 			startable = false;
 		}
+		if (optionListLoadMode.getValue().equals("Open Loop")) {
+			iParam.setLoadMode(UserInterfaceInputParameters.LoadMode.OpenLoop);
+		} else {
+			iParam.setLoadMode(UserInterfaceInputParameters.LoadMode.ClosedLoop);
+		}
+		iParam.setArrivalDistribution(UserInterfaceInputParameters.ArrivalDistribution
+				.valueOf(optionListArrivalDistribution.getValue()));
 	}
 
 	/**
@@ -1119,17 +1234,18 @@ public class BenchmarkingClientGuiFx2 extends Application
 		 */
 
 		/**
-		 * Um den Prozessbalken wieder auf null zu setzen wird er vom Task entbunden
+		 * Prozessbalken und Fortschrittszaehler wieder auf null setzen
 		 */
 
 		Platform.runLater(() -> {
-			progressBarFx.progressProperty().unbind();
-			progressIndicator.textProperty().unbind();
+			if (progressTimer != null) {
+				progressTimer.stop();
+			}
 			progressBarFx.setProgress(0);
 			progressIndicator.setText("");
 			messageArea.textProperty().unbind();
 			messageArea.setText("");
-			progressCounter = 0;
+			progressCounter.set(0);
 		});
 	}
 
@@ -1303,6 +1419,17 @@ public class BenchmarkingClientGuiFx2 extends Application
 		startButton.setDisable(true);
 		newButton.setDisable(false);
 		finishButton.setDisable(false);
+
+		// Timer anhalten, der Progressbar zeigt den letzten Stand
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				if (progressTimer != null) {
+					updateProgressBar();
+					progressTimer.stop();
+				}
+			}
+		});
 	}
 
 	/**
@@ -1320,7 +1447,7 @@ public class BenchmarkingClientGuiFx2 extends Application
 	 */
 	@Override
 	public void countUpProgressTask() {
-		progressCounter++;
+		progressCounter.incrementAndGet();
 	}
 
 	/**
@@ -20,6 +20,7 @@ import edu.hm.dako.chat.client.ClientUserInterface;
 import edu.hm.dako.chat.client.SimpleMessageListenerThreadImpl;
 import edu.hm.dako.chat.client.AdvancedMessageListenerThreadImpl;
 import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.DeliveryGuarantee;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.common.ImplementationType;
 import edu.hm.dako.chat.common.SharedClientStatistics;
@@ -65,6 +66,18 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 	// Gemeinsame Daten aller Threads zur Erfassung statistischer Daten
 	protected SharedClientStatistics sharedStatistics;
 
+	// Sendeplan fuer Open-Loop-Lasterzeugung, null bei Closed-Loop
+	protected RequestSchedule requestSchedule;
+
+	// Zustellgarantien, die die Chat-Requests reihum verwenden (null = Vorgabe
+	// des Servers)
+	protected DeliveryGuarantee[] deliveryGuarantees;
+
+	// Anteil der Direktnachrichten in Prozent und deren Empfaenger (null =
+	// keine Direktnachrichten)
+	protected int directMessageShare;
+	protected String directPeer;
+
 	/**
 	 * Konstruktor fuer Benchmarking
 	 * 
@@ -116,6 +129,62 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 		startMessageListenerThread();
 	}
 
+	/**
+	 * Sendeplan fuer die Open-Loop-Lasterzeugung setzen
+	 *
+	 * @param requestSchedule
+	 *          Sendeplan, null fuer Closed-Loop mit Denkzeit
+	 */
+	public void setRequestSchedule(RequestSchedule requestSchedule) {
+		this.requestSchedule = requestSchedule;
+	}
+
+	/**
+	 * @return true, wenn die Requests nach einem Sendeplan erzeugt werden
+	 */
+	private boolean isOpenLoop() {
+		return requestSchedule != null;
+	}
+
+	/**
+	 * Zustellgarantien fuer die Chat-Requests setzen. Die Requests wechseln
+	 * reihum, versetzt je Client, damit gleichzeitig alle Garantien unterwegs
+	 * sind.
+	 *
+	 * @param deliveryGuarantees
+	 *          Zustellgarantien, null = Vorgabe des Servers
+	 * @param quorum
+	 *          Benoetigte Confirms bei DeliveryGuarantee.Quorum
+	 */
+	public void setDeliveryGuarantees(DeliveryGuarantee[] deliveryGuarantees, int quorum) {
+		this.deliveryGuarantees = deliveryGuarantees;
+		this.deliveryQuorum = quorum;
+	}
+
+	/**
+	 * Direktnachrichten einstreuen. Von je 100 Requests gehen share als
+	 * Direktnachricht an peer, gleichmaessig ueber den Lauf verteilt.
+	 *
+	 * @param share
+	 *          Anteil in Prozent
+	 * @param peer
+	 *          Username des Empfaengers, null = keine Direktnachrichten
+	 */
+	public void setDirectMessages(int share, String peer) {
+		this.directMessageShare = share;
+		this.directPeer = peer;
+	}
+
+	/**
+	 * @param i
+	 *          Nummer des Requests
+	 * @return true, wenn der Request als Direktnachricht gesendet wird
+	 */
+	private boolean isDirectMessage(int i) {
+		return (directPeer != null)
+				&& ((i + 1) * directMessageShare / 100 > i * directMessageShare / 100);
+	}
+
 	/**
 	 * Start des Message-Listener-Threads zur Bearbeitung von empfangenen
 	 * Server-Nachrichten
@@ -155,7 +224,9 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 		Thread.currentThread().setName("Client-Thread-" + String.valueOf(clientNumber + 1));
 		threadName = Thread.currentThread().getName();
 		messageListenerThread.setName("MessageListener-Thread-" + clientNumber);
-		log.debug("Message-Processing-Thread gestartet: " + messageListenerThread.getName());
+		if (log.isDebugEnabled()) {
+			log.debug("Message-Processing-Thread gestartet: " + messageListenerThread.getName());
+		}
 	}
 
 	/**
@@ -176,18 +247,21 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 				Thread.sleep(1);
 				if (sharedClientData.status == ClientConversationStatus.UNREGISTERED) {
 					// Fehlermeldung vom Server beim Login-Vorgang
-					log.debug("User " + userName + " schon im Server angemeldet");
+					if (log.isDebugEnabled()) {
+						log.debug("User " + userName + " schon im Server angemeldet");
+					}
 					return;
 				}
 			}
 
 			sharedStatistics.incrNumberOfLoggedInClients();
 
-			// TODO Derzeit werden in der Progrssbar Login und Logout nicht
-			// beruecksichtigt
-			 benchmarkingGui.countUpProgressTask();
+			// Login im Fortschrittszaehler beruecksichtigen
+			benchmarkingGui.countUpProgressTask();
 
-			log.debug("User " + userName + " beim Server angemeldet");
+			if (log.isDebugEnabled()) {
+				log.debug("User " + userName + " beim Server angemeldet");
+			}
 
 			// Warten, bis alle Clients eingeloggt sind
 			waitForLoggedInClients();
@@ -196,18 +270,27 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 			int i = 0;
 			while ((i < numberOfMessagesToSend) && (!userInterface.isTestAborted())) {
 
-				sendMessageAndWaitForAck(i);
-				try {
-					// Zufaellige Zeit, aber maximal die angegebene Denkzeit
-					// warten
-					int randomThinkTime = (int) (Math.random() * clientThinkTime) + 1;
-					Thread.sleep(randomThinkTime);
-				} catch (Exception e) {
-					ExceptionHandler.logException(e);
+				if (isOpenLoop()) {
+					// Open-Loop: Request zum geplanten Zeitpunkt senden, keine Denkzeit
+					long intendedSendTime = requestSchedule.nextIntendedSendTime();
+					requestSchedule.awaitSendTime(intendedSendTime);
+					sendMessageAndWaitForAck(i, intendedSendTime);
+				} else {
+					sendMessageAndWaitForAck(i, System.nanoTime());
+					try {
+						// Zufaellige Zeit, aber maximal die angegebene Denkzeit
+						// warten
+						int randomThinkTime = (int) (Math.random() * clientThinkTime) + 1;
+						Thread.sleep(randomThinkTime);
+					} catch (Exception e) {
+						ExceptionHandler.logException(e);
+					}
 				}
 
 				i++;
-				log.debug("Gesendete Chat-Nachrichten von " + userName + ": " + i);
+				if (log.isDebugEnabled()) {
+					log.debug("Gesendete Chat-Nachrichten von " + userName + ": " + i);
+				}
 			}
 
 			// Warten, bis alle Clients bereit zum Ausloggen sind (alle Clients
@@ -222,25 +305,28 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 
 			sharedStatistics.incrNumberOfLoggedOutClients();
 
-			// TODO: Derzeit werden in der Progressbar Loging und Logout nicht
-			// beruecksichtigt
-			 benchmarkingGui.countUpProgressTask();
-
-			log.debug(
-					"Anzahl gesendeter Requests: " + sharedStatistics.getNumberOfSentRequests());
-			log.debug("Anzahl empfangener Responses: "
-					+ sharedStatistics.getSumOfAllReceivedMessages());
-			log.debug(
-					"Anzahl vom Server empfangener Events: " + sharedClientData.eventCounter.get());
-			log.debug("Anzahl an Server gesendeter Confirms: "
-					+ sharedClientData.confirmCounter.get());
-			log.debug("Durchschnittliche Serverbearbeitungszeit in ns: "
-					+ sharedStatistics.getAverageServerTime() + ", = "
-					+ sharedStatistics.getAverageServerTime() / 1000000 + " ms");
+			// Logout im Fortschrittszaehler beruecksichtigen
+			benchmarkingGui.countUpProgressTask();
+
+			if (log.isDebugEnabled()) {
+				log.debug(
+						"Anzahl gesendeter Requests: " + sharedStatistics.getNumberOfSentRequests());
+				log.debug("Anzahl empfangener Responses: "
+						+ sharedStatistics.getSumOfAllReceivedMessages());
+				log.debug(
+						"Anzahl vom Server empfangener Events: " + sharedClientData.eventCounter.get());
+				log.debug("Anzahl an Server gesendeter Confirms: "
+						+ sharedClientData.confirmCounter.get());
+				log.debug("Durchschnittliche Serverbearbeitungszeit in ns: "
+						+ sharedStatistics.getAverageServerTime() + ", = "
+						+ sharedStatistics.getAverageServerTime() / 1000000 + " ms");
+			}
 
 			// Nachbearbeitung fuer die Statistik
 			postLogout();
-			log.debug("User " + userName + " beim Server abgemeldet");
+			if (log.isDebugEnabled()) {
+				log.debug("User " + userName + " beim Server abgemeldet");
+			}
 
 			// Transportverbindung zum Server abbauen
 			connection.close();
@@ -259,7 +345,9 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 		setLock(true);
 		try {
 			while (getLock() == true) {
-				log.debug(userName + " wartet auf Chat-Message-Response-PDU");
+				if (log.isDebugEnabled()) {
+					log.debug(userName + " wartet auf Chat-Message-Response-PDU");
+				}
 				Thread.sleep(1);
 				// Durch den Sleep wird die RTT beim Benchmark ein wenig verfaelscht
 			}
@@ -276,9 +364,14 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 	 * 
 	 * @param i
 	 *          Nummer des Clients
+	 * @param intendedSendTime
+	 *          Geplanter Sendezeitpunkt in ns. Im Open-Loop-Modus wird die RTT
+	 *          ab diesem Zeitpunkt gemessen, damit Verzoegerungen durch einen
+	 *          ueberlasteten Server nicht aus der Messung herausfallen. Im
+	 *          Closed-Loop-Modus beginnt die RTT beim tatsaechlichen Senden.
 	 * @throws Exception
 	 */
-	private void sendMessageAndWaitForAck(int i) throws Exception {
+	private void sendMessageAndWaitForAck(int i, long intendedSendTime) throws Exception {
 
 		// Dummy-Nachricht zusammenbauen
 		String chatMessage = "";
@@ -291,9 +384,27 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 
 			sharedStatistics.incrSentMsgCounter(clientNumber);
 
+			DeliveryGuarantee guarantee = null;
+			if (deliveryGuarantees != null) {
+				guarantee = deliveryGuarantees[(i + clientNumber) % deliveryGuarantees.length];
+				deliveryGuarantee = guarantee;
+			}
+
 			// RTT-Startzeit ermitteln
-			long rttStartTime = System.nanoTime();
-			tell(userName, chatMessage);
+			long actualSendTime = System.nanoTime();
+			long rttStartTime = isOpenLoop() ? intendedSendTime : actualSendTime;
+			if (actualSendTime - rttStartTime > 0) {
+				if (log.isDebugEnabled()) {
+					log.debug(userName + ": Request " + (i + 1) + " um "
+							+ (actualSendTime - rttStartTime) + " ns verspaetet gesendet");
+				}
+			}
+			boolean direct = isDirectMessage(i);
+			if (direct) {
+				tellDirect(userName, directPeer, chatMessage);
+			} else {
+				tell(userName, chatMessage);
+			}
 
 			// Warten, bis Chat-Response empfangen wurde, dann erst naechsten
 			// Chat Request senden
@@ -302,6 +413,11 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 			// Response in Statistik aufnehmen
 			long rtt = System.nanoTime() - rttStartTime;
 			postReceive(i, getLastServerTime(), rtt);
+			if (direct) {
+				sharedStatistics.recordDirectRtt(clientNumber, rtt);
+			} else if (guarantee != null) {
+				sharedStatistics.recordDeliveryRtt(clientNumber, guarantee, rtt);
+			}
 
 		} catch (Exception e) {
 			ExceptionHandler.logException(e);
@@ -330,7 +446,9 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 	private void waitForLoggingOutClients() throws InterruptedException {
 		sharedStatistics.getLogoutSignal().countDown();
 		sharedStatistics.getLogoutSignal().await();
-		log.debug("Client " + threadName + " kann beendet werden");
+		if (log.isDebugEnabled()) {
+			log.debug("Client " + threadName + " kann beendet werden");
+		}
 	}
 
 	/**
@@ -376,13 +494,15 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 				getNumberOfLostConfirms());
 		sharedStatistics.setNumberOfRetriedEvents(clientNumber, getNumberOfRetries());
 
-		log.debug(
-				"Vom Server verarbeitete Chat-Nachrichten: " + getNumberOfReceivedChatMessages());
-		log.debug("Vom Server gesendete Event-Nachrichten: " + getNumberOfSentEvents());
-		log.debug("Dem Server bestaetigte Event-Nachrichten (Confirms): "
-				+ getNumberOfReceivedConfirms());
-		log.debug("Im Server nicht empfangene Bestaetigungen: " + getNumberOfLostConfirms());
-		log.debug("Vom Server initiierte Wiederholungen: " + getNumberOfRetries());
+		if (log.isDebugEnabled()) {
+			log.debug(
+					"Vom Server verarbeitete Chat-Nachrichten: " + getNumberOfReceivedChatMessages());
+			log.debug("Vom Server gesendete Event-Nachrichten: " + getNumberOfSentEvents());
+			log.debug("Dem Server bestaetigte Event-Nachrichten (Confirms): "
+					+ getNumberOfReceivedConfirms());
+			log.debug("Im Server nicht empfangene Bestaetigungen: " + getNumberOfLostConfirms());
+			log.debug("Vom Server initiierte Wiederholungen: " + getNumberOfRetries());
+		}
 	}
 
 	@Override
@@ -414,7 +534,9 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 	public synchronized void setLock(boolean lock) {
 		chatResponseReceived.getAndSet(lock);
 		if (chatResponseReceived.get() == false) {
-			log.debug(Thread.currentThread().getName() + " sendet notify");
+			if (log.isDebugEnabled()) {
+				log.debug(Thread.currentThread().getName() + " sendet notify");
+			}
 			// Antwort auf letzten Request erhalten, naechster Request kann gesendet
 			// werden
 			notifyAll();
@@ -424,7 +546,9 @@ public class BenchmarkingClientImpl extends AbstractChatClient
 	@Override
 	public synchronized boolean getLock() {
 		if (chatResponseReceived.get() == true) {
-			log.debug(Thread.currentThread().getName() + " wartet auf notify");
+			if (log.isDebugEnabled()) {
+				log.debug(Thread.currentThread().getName() + " wartet auf notify");
+			}
 			try {
 				wait();
 				return false;
@@ -3,13 +3,9 @@ package edu.hm.dako.chat.benchmarking;
 import javax.swing.JProgressBar;
 
 /**
- * Schnittstelle zum Benchmarking-Client
- */
-
-import javafx.scene.control.ProgressBar;
-
-/**
- * Interface zur Uebergabe von Daten fuer die Ausgabe im Benchmarking-Gui-Client
+ * Interface zur Uebergabe von Daten fuer die Ausgabe im Benchmarking-Gui-Client.
+ * Es haengt nicht von JavaFX ab, damit der Benchmark auch ohne FX-Bibliotheken
+ * laeuft (siehe {@link BenchmarkingClientFxUserInterface}).
  *
  * @author Mandl
  */
@@ -62,10 +58,10 @@ public interface BenchmarkingClientUserInterface {
 	 */
 	public JProgressBar getProgressBar();
 
-	public ProgressBar getProgressBarFx();
-
 	/**
-	 * Stellt Verarbeitungsfortschritt im Progressbar dar
+	 * Zaehlt den Verarbeitungsfortschritt fuer den Progressbar hoch. Wird fuer
+	 * jede Response aus den Client-Threads aufgerufen und darf daher keine
+	 * GUI-Aktion ausloesen, die GUI liest den Zaehler selbst zyklisch aus.
 	 */
 	public void countUpProgressTask();
 
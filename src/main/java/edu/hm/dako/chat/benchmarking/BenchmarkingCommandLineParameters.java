@@ -0,0 +1,287 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.PresenceMode;
+import edu.hm.dako.chat.common.SystemConstants;
+
+/**
+ * Einlesen der Benchmark-Parameter fuer den Start ohne GUI aus
+ * Kommandozeilen-Optionen und/oder einer Properties-Datei.
+ * <p/>
+ * Optionen werden in der Form --name=wert oder --name wert angegeben, in der
+ * Properties-Datei als name=wert. Kommandozeilen-Optionen ueberschreiben die
+ * Werte aus der Properties-Datei (--config datei).
+ *
+ * @author Mandl
+ */
+public class BenchmarkingCommandLineParameters {
+
+	// Hilfetext fuer die Kommandozeile
+	public static final String USAGE = "Optionen:\n"
+			+ "  --config <datei>          Properties-Datei mit den folgenden Parametern\n"
+			+ "  --impl <typ>              TCPSimple | TCPAdvanced (Standard: TCPSimple)\n"
+			+ "  --clients <n>             Anzahl Clients\n"
+			+ "  --messages <n>            Nachrichten pro Client\n"
+			+ "  --length <n>              Nachrichtenlaenge in Byte\n"
+			+ "  --think <ms>              Maximale Denkzeit in ms\n"
+			+ "  --server <adresse>        Serveradresse (Standard: 127.0.0.1)\n"
+			+ "  --port <port>             Serverport (Standard: 50000)\n"
+			+ "  --measurement <typ>       VarThreads | VarMsgLength\n"
+			+ "  --load-mode <modus>       ClosedLoop | OpenLoop\n"
+			+ "  --rate <n>                Ziel-Requestrate pro Sekunde (OpenLoop)\n"
+			+ "  --arrival <verteilung>    Constant | Poisson (OpenLoop)\n"
+			+ "  --delivery <garantien>    FireAndForget | Quorum | All, kommagetrennt\n"
+			+ "                            wechseln die Requests reihum (Standard: Server)\n"
+			+ "  --quorum <k>              Benoetigte Confirms fuer Quorum (Standard: 1)\n"
+			+ "  --rooms <n>               Anzahl Chat-Raeume, jeder Client tritt beim\n"
+			+ "                            Login einem Raum bei (Standard: keine Raeume)\n"
+			+ "  --room-sizes <verteilung> Uniform | Zipf (Standard: Uniform)\n"
+			+ "  --direct-share <prozent>  Anteil Direktnachrichten an den naechsten\n"
+			+ "                            Client (Standard: 0)\n"
+			+ "  --presence <modus>        All | Rooms | Users; in Rooms und Users\n"
+			+ "                            abonniert jeder Client den naechsten\n"
+			+ "                            Client (Standard: All)\n"
+			+ "  --protocol-file <datei>   Protokolldatei fuer den Auswertungssatz\n"
+			+ "  --timeseries-file <datei> Datei fuer die Zeitreihe (none = aus)\n"
+			+ "  --histogram-bits <n>      Genauigkeit der RTT-Histogramme in\n"
+			+ "                            signifikanten Bits, 2 bis 16 (Standard: 7)\n"
+			+ "  --result-file <datei>     Ergebnisdatei des Laufs (Properties-Format)\n"
+			+ "  --help                    Diese Hilfe";
+
+	// Eingelesene Parameter fuer den Benchmark
+	private final UserInterfaceInputParameters parameters = new UserInterfaceInputParameters();
+
+	// Ergebnisdatei, null = keine Ergebnisdatei
+	private String resultFileName = null;
+
+	// Kennzeichen, ob nur die Hilfe ausgegeben werden soll
+	private boolean helpRequested = false;
+
+	/**
+	 * Kommandozeile auswerten
+	 *
+	 * @param args
+	 *          Kommandozeilen-Argumente
+	 * @return Eingelesene Parameter
+	 * @throws IllegalArgumentException
+	 *           bei unbekannten Optionen oder ungueltigen Werten
+	 * @throws IOException
+	 *           falls die Properties-Datei nicht gelesen werden kann
+	 */
+	public static BenchmarkingCommandLineParameters parse(String[] args)
+			throws IOException {
+
+		Properties options = new Properties();
+
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				throw new IllegalArgumentException("Unbekanntes Argument: " + arg);
+			}
+			String name = arg.substring(2);
+			String value;
+			int separator = name.indexOf('=');
+			if (separator >= 0) {
+				value = name.substring(separator + 1);
+				name = name.substring(0, separator);
+			} else if (name.equals("help")) {
+				value = "true";
+			} else if (i + 1 < args.length) {
+				value = args[++i];
+			} else {
+				throw new IllegalArgumentException("Wert fuer Option --" + name + " fehlt");
+			}
+			options.setProperty(name, value);
+		}
+
+		// Properties-Datei als Basis, Kommandozeile ueberschreibt
+		Properties merged = new Properties();
+		String configFile = options.getProperty("config");
+		if (configFile != null) {
+			try (InputStream in = new FileInputStream(configFile)) {
+				merged.load(in);
+			}
+		}
+		merged.putAll(options);
+
+		BenchmarkingCommandLineParameters result = new BenchmarkingCommandLineParameters();
+		result.apply(merged);
+		return result;
+	}
+
+	/**
+	 * Eingelesene Werte in die Benchmark-Parameter uebernehmen
+	 *
+	 * @param props
+	 *          Zusammengefuehrte Optionen
+	 */
+	private void apply(Properties props) {
+		for (String name : props.stringPropertyNames()) {
+			String value = props.getProperty(name).trim();
+			try {
+				switch (name) {
+				case "config":
+					break;
+				case "help":
+					helpRequested = Boolean.parseBoolean(value);
+					break;
+				case "impl":
+					parameters.setImplementationType(parseImplementationType(value));
+					break;
+				case "clients":
+					parameters.setNumberOfClients(
+							checkRange(name, Integer.parseInt(value), BenchmarkingConstants.MAX_CLIENTS));
+					break;
+				case "messages":
+					parameters.setNumberOfMessages(checkRange(name, Integer.parseInt(value),
+							BenchmarkingConstants.MAX_MESSAGES_PER_CLIENT));
+					break;
+				case "length":
+					parameters.setMessageLength(checkRange(name, Integer.parseInt(value),
+							BenchmarkingConstants.MAX_MESSAGE_LENGTH));
+					break;
+				case "think":
+					parameters.setClientThinkTime(checkNotNegative(name, Integer.parseInt(value)));
+					break;
+				case "server":
+					parameters.setRemoteServerAddress(value);
+					break;
+				case "port":
+					parameters.setRemoteServerPort(checkRange(name, Integer.parseInt(value), 65535));
+					break;
+				case "measurement":
+					parameters.setMeasurementType(
+							UserInterfaceInputParameters.MeasurementType.valueOf(value));
+					break;
+				case "load-mode":
+					parameters.setLoadMode(UserInterfaceInputParameters.LoadMode.valueOf(value));
+					break;
+				case "rate":
+					parameters.setTargetRequestRate(checkPositive(name, Double.parseDouble(value)));
+					break;
+				case "arrival":
+					parameters.setArrivalDistribution(
+							UserInterfaceInputParameters.ArrivalDistribution.valueOf(value));
+					break;
+				case "delivery":
+					parameters.setDeliveryGuarantees(parseDeliveryGuarantees(value));
+					break;
+				case "quorum":
+					parameters.setDeliveryQuorum(
+							checkRange(name, Integer.parseInt(value), BenchmarkingConstants.MAX_CLIENTS));
+					break;
+				case "rooms":
+					parameters.setNumberOfRooms(
+							checkRange(name, Integer.parseInt(value), BenchmarkingConstants.MAX_CLIENTS));
+					break;
+				case "room-sizes":
+					parameters.setRoomSizeDistribution(
+							UserInterfaceInputParameters.RoomSizeDistribution.valueOf(value));
+					break;
+				case "direct-share":
+					parameters.setDirectMessageShare(checkRange(name, Integer.parseInt(value), 100));
+					break;
+				case "presence":
+					parameters.setPresenceMode(PresenceMode.valueOf(value));
+					break;
+				case "protocol-file":
+					parameters.setProtocolFileName(value.equals("none") ? null : value);
+					break;
+				case "timeseries-file":
+					parameters.setTimeSeriesFileName(value.equals("none") ? null : value);
+					break;
+				case "histogram-bits":
+					parameters.setHistogramSignificantBits(
+							checkHistogramBits(name, Integer.parseInt(value)));
+					break;
+				case "result-file":
+					resultFileName = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unbekannte Option: " + name);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Ungueltiger Zahlenwert fuer Option " + name + ": " + value);
+			}
+		}
+	}
+
+	/**
+	 * Implementierungstyp aus Kurzname oder Enum-Namen ermitteln
+	 */
+	private static ImplementationType parseImplementationType(String value) {
+		if (value.equals(SystemConstants.IMPL_TCP_SIMPLE)) {
+			return ImplementationType.TCPSimpleImplementation;
+		} else if (value.equals(SystemConstants.IMPL_TCP_ADVANCED)) {
+			return ImplementationType.TCPAdvancedImplementation;
+		}
+		return ImplementationType.valueOf(value);
+	}
+
+	/**
+	 * Kommagetrennte Liste von Zustellgarantien einlesen, "Server" = keine
+	 * Angabe
+	 */
+	private static DeliveryGuarantee[] parseDeliveryGuarantees(String value) {
+		if (value.equals("Server")) {
+			return null;
+		}
+		String[] names = value.split(",");
+		DeliveryGuarantee[] guarantees = new DeliveryGuarantee[names.length];
+		for (int i = 0; i < names.length; i++) {
+			guarantees[i] = DeliveryGuarantee.valueOf(names[i].trim());
+		}
+		return guarantees;
+	}
+
+	private static int checkRange(String name, int value, int max) {
+		if ((value < 1) || (value > max)) {
+			throw new IllegalArgumentException(
+					"Wert fuer Option " + name + " muss zwischen 1 und " + max + " liegen: " + value);
+		}
+		return value;
+	}
+
+	private static int checkHistogramBits(String name, int value) {
+		if ((value < 2) || (value > 16)) {
+			throw new IllegalArgumentException(
+					"Wert fuer Option " + name + " muss zwischen 2 und 16 liegen: " + value);
+		}
+		return value;
+	}
+
+	private static int checkNotNegative(String name, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException(
+					"Wert fuer Option " + name + " darf nicht negativ sein: " + value);
+		}
+		return value;
+	}
+
+	private static double checkPositive(String name, double value) {
+		if (!(value > 0) || Double.isInfinite(value)) {
+			throw new IllegalArgumentException(
+					"Wert fuer Option " + name + " muss groesser als 0 sein: " + value);
+		}
+		return value;
+	}
+
+	public UserInterfaceInputParameters getParameters() {
+		return parameters;
+	}
+
+	public String getResultFileName() {
+		return resultFileName;
+	}
+
+	public boolean isHelpRequested() {
+		return helpRequested;
+	}
+}
@@ -0,0 +1,216 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import edu.hm.dako.chat.client.SharedClientData;
+import edu.hm.dako.chat.common.CpuUtilisationWatch;
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.SharedClientStatistics;
+
+/**
+ * Thread schreibt waehrend eines Benchmarks zyklisch (Standard: jede Sekunde)
+ * einen Zeitreihen-Satz in eine Datei. Damit werden Einschwingvorgaenge,
+ * GC-Pausen und eine langsame Verschlechterung sichtbar, die in den
+ * Durchschnittswerten am Testende untergehen.
+ * <p/>
+ * Ein Satz enthaelt, jeweils fuer das abgelaufene Intervall:
+ * <p/>
+ * 1 Sekunden seit Teststart
+ * <p/>
+ * 2 Anzahl empfangener Responses im Intervall
+ * <p/>
+ * 3 Durchsatz in Responses pro Sekunde
+ * <p/>
+ * 4-7 RTT 50 %-, 90 %-, 99 %-Perzentil und Maximum im Intervall in ms
+ * <p/>
+ * 8 Gesendete, noch nicht beantwortete Requests (Zeitpunkt des Satzes)
+ * <p/>
+ * 9 Von allen Clients empfangene Events im Intervall
+ * <p/>
+ * 10 Von allen Clients gesendete Confirms im Intervall
+ * <p/>
+ * 11 Empfangene, noch nicht bestaetigte Events (Zeitpunkt des Satzes, nur bei
+ * der Advanced-Implementierung aussagekraeftig, da nur dort Confirms gesendet
+ * werden)
+ * <p/>
+ * 12 Heap-Belegung in MiB (Zeitpunkt des Satzes)
+ * <p/>
+ * 13 Durchschnittliche CPU-Auslastung im Intervall in %
+ *
+ * @author mandl
+ *
+ */
+public class BenchmarkingIntervalRecorder extends Thread {
+
+	private static Log log = LogFactory.getLog(BenchmarkingIntervalRecorder.class);
+
+	// Standard-Intervall in ms
+	public static final int DEFAULT_INTERVAL_IN_MILLIS = 1000;
+
+	private final SharedClientStatistics sharedData;
+
+	private final int intervalInMillis;
+
+	private final BufferedWriter out;
+
+	private volatile boolean running = true;
+
+	// Zeitpunkt des Teststarts in ns
+	private final long startTime;
+
+	// Event- und Confirm-Zaehler beim Teststart (die Zaehler sind global und
+	// laufen ueber mehrere Tests weiter)
+	private final long startEvents;
+	private final long startConfirms;
+
+	// Werte am Ende des letzten Intervalls
+	private long lastTime;
+	private int lastReceivedResponses;
+	private long lastEvents;
+	private long lastConfirms;
+	private LatencyHistogram lastHistogram;
+	private CpuUtilisationWatch cpuWatch;
+
+	/**
+	 * Konstruktor. Die Datei wird geoeffnet (Saetze werden angehaengt) und ein
+	 * Kopfsatz fuer den Lauf geschrieben.
+	 *
+	 * @param fileName
+	 *          Name der Zeitreihen-Datei
+	 * @param runDescription
+	 *          Beschreibung des Laufs fuer den Kopfsatz
+	 * @param sharedData
+	 *          Statistikdaten aller Clients
+	 * @param intervalInMillis
+	 *          Intervalllaenge in ms
+	 * @throws IOException
+	 *           falls die Datei nicht geoeffnet werden kann
+	 */
+	public BenchmarkingIntervalRecorder(String fileName, String runDescription,
+			SharedClientStatistics sharedData, int intervalInMillis) throws IOException {
+		setName("IntervalRecorderThread");
+		setDaemon(true);
+		this.sharedData = sharedData;
+		this.intervalInMillis = intervalInMillis;
+		this.out = new BufferedWriter(new FileWriter(fileName, true));
+
+		out.write("# " + runDescription);
+		out.newLine();
+		out.write("# Sekunden | Responses | Responses/s | RTT-P50 ms | RTT-P90 ms | RTT-P99 ms"
+				+ " | RTT-Max ms | Requests in Bearbeitung | Events | Confirms"
+				+ " | Unbestaetigte Events | Heap MiB | CPU %");
+		out.newLine();
+		out.flush();
+
+		startTime = System.nanoTime();
+		lastTime = startTime;
+		lastReceivedResponses = sharedData.getNumberOfReceivedResponses();
+		startEvents = getNumberOfReceivedEvents();
+		startConfirms = SharedClientData.confirmEvents.get();
+		lastEvents = startEvents;
+		lastConfirms = startConfirms;
+		lastHistogram = sharedData.getRttHistogramSnapshot();
+		cpuWatch = new CpuUtilisationWatch();
+	}
+
+	/**
+	 * Run-Methode fuer den Thread: Schreibt alle n ms einen Satz
+	 */
+	public void run() {
+		log.debug(getName() + " gestartet");
+
+		while (running) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(intervalInMillis);
+			} catch (InterruptedException e) {
+				log.debug("Sleep unterbrochen");
+			}
+			writeIntervalRecord();
+		}
+	}
+
+	/**
+	 * Beenden des Threads, der letzte (ggf. kuerzere) Intervall-Satz wird noch
+	 * geschrieben und die Datei geschlossen
+	 */
+	public void stopThread() {
+		running = false;
+		interrupt();
+		try {
+			join();
+		} catch (InterruptedException e) {
+			log.debug("Warten auf " + getName() + " unterbrochen");
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			log.error("Fehler beim Schliessen der Zeitreihen-Datei");
+		}
+		log.debug(getName() + " gestoppt");
+	}
+
+	/**
+	 * Werte des abgelaufenen Intervalls ermitteln und als Satz schreiben
+	 */
+	private void writeIntervalRecord() {
+
+		long now = System.nanoTime();
+		int receivedResponses = sharedData.getNumberOfReceivedResponses();
+		long events = getNumberOfReceivedEvents();
+		long confirms = SharedClientData.confirmEvents.get();
+		LatencyHistogram histogram = sharedData.getRttHistogramSnapshot();
+
+		// Intervall-Histogramm aus zwei kumulierten Schnappschuessen bilden
+		LatencyHistogram intervalHistogram = histogram.copy();
+		intervalHistogram.subtract(lastHistogram);
+
+		int completed = receivedResponses - lastReceivedResponses;
+		double intervalInSeconds = (now - lastTime) / 1000000000.0;
+		double throughput = (intervalInSeconds > 0) ? completed / intervalInSeconds : 0;
+
+		Formatter formatter = new Formatter();
+		formatter.format(
+				"%.1f | %d | %.2f | %.3f | %.3f | %.3f | %.3f | %d | %d | %d | %d | %d | %.2f",
+				(now - startTime) / 1000000000.0, completed, throughput,
+				intervalHistogram.getValueAtPercentile(50) / 1000000.0,
+				intervalHistogram.getValueAtPercentile(90) / 1000000.0,
+				intervalHistogram.getValueAtPercentile(99) / 1000000.0,
+				intervalHistogram.getMaxValue() / 1000000.0,
+				sharedData.getNumberOfSentRequests() - receivedResponses, events - lastEvents,
+				confirms - lastConfirms,
+				Math.max(0, (events - startEvents) - (confirms - startConfirms)),
+				sharedData.getCurrentHeapSize() / (1024 * 1024),
+				cpuWatch.getAverageCpuUtilisation() * 100.0);
+
+		try {
+			out.write(formatter.toString());
+			out.newLine();
+			out.flush();
+		} catch (IOException e) {
+			log.error("Fehler beim Schreiben des Zeitreihen-Satzes");
+		}
+		formatter.close();
+
+		lastTime = now;
+		lastReceivedResponses = receivedResponses;
+		lastEvents = events;
+		lastConfirms = confirms;
+		lastHistogram = histogram;
+		cpuWatch = new CpuUtilisationWatch();
+	}
+
+	/**
+	 * @return Anzahl aller von den Clients empfangenen Events
+	 */
+	private long getNumberOfReceivedEvents() {
+		return (long) SharedClientData.loginEvents.get()
+				+ SharedClientData.logoutEvents.get() + SharedClientData.messageEvents.get();
+	}
+}
@@ -0,0 +1,60 @@
+package edu.hm.dako.chat.benchmarking;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * Statistische Auswertung wiederholter Messungen fuer die Messreihe
+ * ({@link BenchmarkingSweepRunner}) und die Mikrobenchmarks
+ * ({@link MicroBenchmarkRunner}): Mittelwert und 95 %-Konfidenzintervall
+ *
+ * @author Mandl
+ */
+final class BenchmarkingStatistics {
+
+	// Konfidenzniveau fuer die Intervalle
+	static final double CONFIDENCE_LEVEL = 0.95;
+
+	private BenchmarkingStatistics() {
+	}
+
+	/**
+	 * Arithmetisches Mittel
+	 *
+	 * @param values
+	 *          Messwerte
+	 * @return Mittelwert, 0 ohne Messwerte
+	 */
+	static double mean(double[] values) {
+		if (values.length == 0) {
+			return 0;
+		}
+		double sum = 0;
+		for (double v : values) {
+			sum += v;
+		}
+		return sum / values.length;
+	}
+
+	/**
+	 * Halbe Breite des Konfidenzintervalls fuer den Mittelwert (Student-t)
+	 *
+	 * @param values
+	 *          Messwerte
+	 * @return halbe Intervallbreite, 0 bei weniger als zwei Messwerten
+	 */
+	static double confidenceHalfWidth(double[] values) {
+		int n = values.length;
+		if (n < 2) {
+			return 0;
+		}
+		double mean = mean(values);
+		double sumOfSquares = 0;
+		for (double v : values) {
+			sumOfSquares += (v - mean) * (v - mean);
+		}
+		double standardDeviation = Math.sqrt(sumOfSquares / (n - 1));
+		double t = new TDistribution(n - 1)
+				.inverseCumulativeProbability(1.0 - (1.0 - CONFIDENCE_LEVEL) / 2.0);
+		return t * standardDeviation / Math.sqrt(n);
+	}
+}
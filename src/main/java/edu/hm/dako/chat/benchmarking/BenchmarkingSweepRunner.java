@@ -0,0 +1,356 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.log4j.PropertyConfigurator;
+
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.LatencyHistogram;
+
+/**
+ * Automatisierte Messreihe ohne GUI: Fuer jede Kombination aus
+ * Implementierungstyp, Client-Anzahl, Nachrichtenlaenge und Denkzeit wird der
+ * Benchmark mehrfach ausgefuehrt. Vor jeder Kombination laeuft ein kurzer
+ * Aufwaermlauf, dessen Ergebnisse verworfen werden, nach jedem Lauf eine
+ * Abkuehlpause, in der der Server die Logouts abschliessen kann.
+ * <p/>
+ * Pro Kombination wird ein Satz mit Mittelwerten und 95
+ * %-Konfidenzintervallen (Student-t) ueber alle Wiederholungen in die
+ * Ergebnisdatei geschrieben.
+ * <p/>
+ * Die Messreihe wird ueber eine Properties-Datei konfiguriert, Listen werden
+ * durch Kommas getrennt (Standardwerte in Klammern):
+ * <p/>
+ * sweep.implementationTypes (TCPSimpleImplementation)
+ * <p/>
+ * sweep.numberOfClients (1,10), sweep.messageLengths (100), sweep.thinkTimes
+ * (1)
+ * <p/>
+ * sweep.numberOfMessages (100), sweep.repetitions (5)
+ * <p/>
+ * sweep.warmupMessages (20, 0 = kein Aufwaermlauf), sweep.cooldownMillis
+ * (3000)
+ * <p/>
+ * sweep.serverAddress (127.0.0.1), sweep.serverPort (50000)
+ * <p/>
+ * sweep.resultFile (Benchmarking-ChatApp-Messreihe)
+ * <p/>
+ * sweep.histogramBits (7, Genauigkeit der RTT-Histogramme in signifikanten
+ * Bits, 2 bis 16)
+ *
+ * @author Mandl
+ */
+public class BenchmarkingSweepRunner {
+
+	private static Log log = LogFactory.getLog(BenchmarkingSweepRunner.class);
+
+	// Parameter der Messreihe
+	private List<ImplementationType> implementationTypes;
+	private List<Integer> numberOfClients;
+	private List<Integer> messageLengths;
+	private List<Integer> thinkTimes;
+	private int numberOfMessages;
+	private int repetitions;
+	private int warmupMessages;
+	private int cooldownMillis;
+	private String serverAddress;
+	private int serverPort;
+	private String resultFileName;
+	private int histogramSignificantBits;
+
+	/**
+	 * Messwerte eines einzelnen Laufs
+	 */
+	private static class RunSample {
+		// Responses pro Sekunde ueber den gesamten Lauf
+		double throughput;
+		// RTT-Kennzahlen in ms
+		double meanRtt;
+		double percentile50;
+		double percentile90;
+		double percentile99;
+		// Mittlere Serverbearbeitungszeit in ms
+		double avgServerTime;
+		// CPU-Auslastung des Clients in %
+		double cpuUsage;
+		// Nicht empfangene Responses
+		long lostResponses;
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * @param props
+	 *          Konfiguration der Messreihe
+	 */
+	public BenchmarkingSweepRunner(Properties props) {
+		implementationTypes = new ArrayList<ImplementationType>();
+		for (String type : splitList(
+				props.getProperty("sweep.implementationTypes", "TCPSimpleImplementation"))) {
+			implementationTypes.add(ImplementationType.valueOf(type));
+		}
+		numberOfClients = parseIntList(props.getProperty("sweep.numberOfClients", "1,10"));
+		messageLengths = parseIntList(props.getProperty("sweep.messageLengths", "100"));
+		thinkTimes = parseIntList(props.getProperty("sweep.thinkTimes", "1"));
+		numberOfMessages = Integer
+				.parseInt(props.getProperty("sweep.numberOfMessages", "100").trim());
+		repetitions = Integer.parseInt(props.getProperty("sweep.repetitions", "5").trim());
+		warmupMessages = Integer
+				.parseInt(props.getProperty("sweep.warmupMessages", "20").trim());
+		cooldownMillis = Integer
+				.parseInt(props.getProperty("sweep.cooldownMillis", "3000").trim());
+		serverAddress = props.getProperty("sweep.serverAddress", "127.0.0.1").trim();
+		serverPort = Integer.parseInt(props.getProperty("sweep.serverPort", "50000").trim());
+		resultFileName = props
+				.getProperty("sweep.resultFile", "Benchmarking-ChatApp-Messreihe").trim();
+
+		histogramSignificantBits = Integer.parseInt(props.getProperty("sweep.histogramBits",
+				String.valueOf(LatencyHistogram.DEFAULT_SIGNIFICANT_BITS)).trim());
+
+		if (repetitions < 1) {
+			throw new IllegalArgumentException(
+					"Anzahl der Wiederholungen muss mindestens 1 sein: " + repetitions);
+		}
+		if ((histogramSignificantBits < 2) || (histogramSignificantBits > 16)) {
+			throw new IllegalArgumentException(
+					"sweep.histogramBits muss zwischen 2 und 16 liegen: " + histogramSignificantBits);
+		}
+	}
+
+	/**
+	 * Alle Kombinationen der Messreihe ausfuehren
+	 *
+	 * @throws IOException
+	 *           falls die Ergebnisdatei nicht geschrieben werden kann
+	 * @throws InterruptedException
+	 *           falls das Warten auf einen Lauf unterbrochen wurde
+	 */
+	public void runSweep() throws IOException, InterruptedException {
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(resultFileName, true));
+		out.write("# Messreihe gestartet: "
+				+ new SimpleDateFormat("dd.MM.yy HH:mm:ss:SSS")
+						.format(Calendar.getInstance().getTime())
+				+ ", Wiederholungen: " + repetitions + ", Nachrichten pro Client: "
+				+ numberOfMessages + ", Aufwaermnachrichten: " + warmupMessages);
+		out.newLine();
+		out.write("# Implementierung | Clients | Nachrichtenlaenge | Denkzeit ms | Laeufe"
+				+ " | Durchsatz/s | +/- | RTT-Mittel ms | +/- | RTT-P50 ms | +/-"
+				+ " | RTT-P90 ms | +/- | RTT-P99 ms | +/- | Serverzeit ms | +/-"
+				+ " | CPU % | +/- | Verlorene Responses");
+		out.newLine();
+		out.flush();
+
+		int cells = implementationTypes.size() * numberOfClients.size()
+				* messageLengths.size() * thinkTimes.size();
+		int cell = 0;
+
+		try {
+			for (ImplementationType implType : implementationTypes) {
+				for (int clients : numberOfClients) {
+					for (int messageLength : messageLengths) {
+						for (int thinkTime : thinkTimes) {
+							cell++;
+							log.info("Messpunkt " + cell + " von " + cells + ": " + implType + ", "
+									+ clients + " Clients, Nachrichtenlaenge " + messageLength
+									+ ", Denkzeit " + thinkTime + " ms");
+
+							if (warmupMessages > 0) {
+								// Aufwaermlauf, Ergebnisse werden verworfen
+								UserInterfaceInputParameters warmup = createParameters(implType,
+										clients, messageLength, thinkTime, warmupMessages);
+								warmup.setProtocolFileName(null);
+								warmup.setTimeSeriesFileName(null);
+								runBenchmark(warmup);
+								Thread.sleep(cooldownMillis);
+							}
+
+							List<RunSample> samples = new ArrayList<RunSample>();
+							for (int r = 0; r < repetitions; r++) {
+								RunSample sample = runBenchmark(createParameters(implType, clients,
+										messageLength, thinkTime, numberOfMessages));
+								if (sample != null) {
+									samples.add(sample);
+								} else {
+									log.error("Lauf " + (r + 1) + " des Messpunkts " + cell
+											+ " lieferte keine Ergebnisse");
+								}
+								Thread.sleep(cooldownMillis);
+							}
+
+							writeCell(out, implType, clients, messageLength, thinkTime, samples);
+						}
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Eingabeparameter fuer einen Lauf erzeugen
+	 */
+	private UserInterfaceInputParameters createParameters(ImplementationType implType,
+			int clients, int messageLength, int thinkTime, int messages) {
+		UserInterfaceInputParameters parm = new UserInterfaceInputParameters();
+		parm.setImplementationType(implType);
+		parm.setNumberOfClients(clients);
+		parm.setMessageLength(messageLength);
+		parm.setClientThinkTime(thinkTime);
+		parm.setNumberOfMessages(messages);
+		parm.setRemoteServerAddress(serverAddress);
+		parm.setRemoteServerPort(serverPort);
+		parm.setHistogramSignificantBits(histogramSignificantBits);
+		if (messageLengths.size() > 1) {
+			parm.setMeasurementType(UserInterfaceInputParameters.MeasurementType.VarMsgLength);
+		} else {
+			parm.setMeasurementType(UserInterfaceInputParameters.MeasurementType.VarThreads);
+		}
+		return parm;
+	}
+
+	/**
+	 * Einen Benchmark-Lauf synchron ausfuehren
+	 *
+	 * @param parm
+	 *          Eingabeparameter
+	 * @return Messwerte des Laufs oder null, falls keine Ergebnisse vorliegen
+	 * @throws InterruptedException
+	 *           falls das Warten unterbrochen wurde
+	 */
+	private RunSample runBenchmark(UserInterfaceInputParameters parm)
+			throws InterruptedException {
+
+		BenchmarkingUserInterfaceSimulation ui = new BenchmarkingUserInterfaceSimulation();
+		BenchmarkingClientCoordinator coordinator = new BenchmarkingClientCoordinator();
+
+		coordinator.executeTest(parm, ui);
+		coordinator.join();
+
+		UserInterfaceResultData data = ui.getResultData();
+		if ((data == null) || (data.getNumberOfResponses() == 0)
+				|| (data.getChatPhaseDuration() <= 0)) {
+			return null;
+		}
+
+		RunSample sample = new RunSample();
+		// Durchsatz nur ueber die Chat-Phase, ohne Login, Logout und Start der
+		// Client-Threads
+		sample.throughput = data.getNumberOfResponses()
+				/ (data.getChatPhaseDuration() / 1000000000.0);
+		sample.meanRtt = data.getMean();
+		sample.percentile50 = data.getPercentile50();
+		sample.percentile90 = data.getPercentile90();
+		sample.percentile99 = data.getPercentile99();
+		sample.avgServerTime = data.getAvgServerTime();
+		sample.cpuUsage = data.getMaxCpuUsage() * 100.0;
+		sample.lostResponses = data.getNumberOfLostResponses();
+		return sample;
+	}
+
+	/**
+	 * Ergebnissatz fuer einen Messpunkt schreiben
+	 */
+	private void writeCell(BufferedWriter out, ImplementationType implType, int clients,
+			int messageLength, int thinkTime, List<RunSample> samples) throws IOException {
+
+		int n = samples.size();
+		double[] throughput = new double[n];
+		double[] meanRtt = new double[n];
+		double[] p50 = new double[n];
+		double[] p90 = new double[n];
+		double[] p99 = new double[n];
+		double[] serverTime = new double[n];
+		double[] cpu = new double[n];
+		long lostResponses = 0;
+
+		for (int i = 0; i < n; i++) {
+			RunSample s = samples.get(i);
+			throughput[i] = s.throughput;
+			meanRtt[i] = s.meanRtt;
+			p50[i] = s.percentile50;
+			p90[i] = s.percentile90;
+			p99[i] = s.percentile99;
+			serverTime[i] = s.avgServerTime;
+			cpu[i] = s.cpuUsage;
+			lostResponses += s.lostResponses;
+		}
+
+		Formatter formatter = new Formatter();
+		formatter.format("%s | %d | %d | %d | %d", implType, clients, messageLength,
+				thinkTime, n);
+		for (double[] values : new double[][] { throughput, meanRtt, p50, p90, p99,
+				serverTime, cpu }) {
+			formatter.format(" | %.3f | %.3f", BenchmarkingStatistics.mean(values),
+					BenchmarkingStatistics.confidenceHalfWidth(values));
+		}
+		formatter.format(" | %d", lostResponses);
+
+		out.write(formatter.toString());
+		out.newLine();
+		out.flush();
+		formatter.close();
+	}
+
+	private static List<String> splitList(String value) {
+		List<String> list = new ArrayList<String>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty()) {
+				list.add(item.trim());
+			}
+		}
+		return list;
+	}
+
+	private static List<Integer> parseIntList(String value) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (String item : splitList(value)) {
+			list.add(Integer.parseInt(item));
+		}
+		return list;
+	}
+
+	/**
+	 * main
+	 *
+	 * @param args
+	 *          args[0]: Properties-Datei der Messreihe (optional)
+	 */
+	public static void main(String args[]) {
+		PropertyConfigurator.configureAndWatch("log4j.client.properties", 60 * 1000);
+
+		Properties props = new Properties();
+		if (args.length > 0) {
+			try (InputStream in = new FileInputStream(args[0])) {
+				props.load(in);
+			} catch (IOException e) {
+				System.err.println("Properties-Datei " + args[0] + " nicht lesbar");
+				ExceptionHandler.logException(e);
+				System.exit(2);
+			}
+		}
+
+		try {
+			new BenchmarkingSweepRunner(props).runSweep();
+		} catch (Exception e) {
+			log.error("Messreihe abgebrochen");
+			ExceptionHandler.logException(e);
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
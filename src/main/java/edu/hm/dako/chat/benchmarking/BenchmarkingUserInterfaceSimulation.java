@@ -1,16 +1,29 @@
 package edu.hm.dako.chat.benchmarking;
 
-import javafx.scene.control.ProgressBar;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
 
 import javax.swing.JProgressBar;
 
 import org.apache.log4j.PropertyConfigurator;
 
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.DistributionMetrics;
+import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.server.ChatServerGuiInterface;
 import edu.hm.dako.chat.server.ServerStartData;
 
 /**
- * Diese Klasse simuliert eine Benutzeroberflaeche.
+ * Diese Klasse simuliert eine Benutzeroberflaeche. Ueber main kann ein
+ * Benchmark ohne GUI (z.B. in naechtlichen Testlaeufen) gestartet werden, die
+ * Parameter werden ueber Kommandozeilen-Optionen oder eine Properties-Datei
+ * angegeben (siehe {@link BenchmarkingCommandLineParameters}).
+ * <p/>
+ * Exit-Codes: 0 = alle Responses empfangen, 1 = Lauf fehlgeschlagen oder
+ * Responses verloren, 2 = ungueltige Parameter
  *
  * @author mandl
  */
@@ -20,6 +33,9 @@ public class BenchmarkingUserInterfaceSimulation implements
 
   private int timeCounter = 0;
 
+  // Ergebnisdaten des letzten Testlaufs, null, solange kein Lauf beendet ist
+  private volatile UserInterfaceResultData resultData = null;
+
   @Override
   public void showStartData(UserInterfaceStartData data) {
 
@@ -30,6 +46,8 @@ public class BenchmarkingUserInterfaceSimulation implements
   @Override
   public void showResultData(UserInterfaceResultData data) {
 
+    resultData = data;
+
     System.out.println("Testende: " + data.getEndTime());
     System.out.println("Testdauer in s: " + data.getElapsedTime());
 
@@ -42,6 +60,10 @@ public class BenchmarkingUserInterfaceSimulation implements
     System.out.println("Mittlere RTT in ms: " + data.getMean());
     System.out.println("Maximale RTT in ms: " + data.getMaximum());
     System.out.println("Minimale RTT in ms: " + data.getMinimum());
+    System.out.println("RTT-Perzentile in ms (50/90/99/99,9/99,99): "
+	  + data.getPercentile50() + " / " + data.getPercentile90() + " / "
+	  + data.getPercentile99() + " / " + data.getPercentile999() + " / "
+	  + data.getPercentile9999());
     System.out.println("Mittlere Serverbearbeitungszeit in ms: "
 	  + data.getAvgServerTime());
 
@@ -51,6 +73,15 @@ public class BenchmarkingUserInterfaceSimulation implements
 	  + data.getMaxCpuUsage());
   }
 
+  /**
+   * Ergebnisdaten des letzten Testlaufs liefern
+   *
+   * @return Ergebnisdaten oder null, falls noch kein Lauf beendet wurde
+   */
+  public UserInterfaceResultData getResultData() {
+    return resultData;
+  }
+
   @Override
   public void setMessageLine(String message) {
     System.out.println("*** Meldung: " + message + " ***");
@@ -79,38 +110,164 @@ public class BenchmarkingUserInterfaceSimulation implements
     return null;
   }
 
-  @Override
-  public ProgressBar getProgressBarFx() {
-    return null;
-  }
-
   @Override
   public void countUpProgressTask() {
 
   }
 
+  // Exit-Codes fuer den Start ueber die Kommandozeile
+  public static final int EXIT_OK = 0;
+  public static final int EXIT_FAILED = 1;
+  public static final int EXIT_USAGE = 2;
+
   /**
    * main
    *
    * @param args
+   *          Optionen, siehe {@link BenchmarkingCommandLineParameters#USAGE}
    */
   public static void main(String args[]) {
     PropertyConfigurator.configureAndWatch("log4j.client.properties",
 	  60 * 1000);
-    new BenchmarkingUserInterfaceSimulation().doWork();
 
+    BenchmarkingCommandLineParameters commandLine;
+    try {
+      commandLine = BenchmarkingCommandLineParameters.parse(args);
+    } catch (IllegalArgumentException | IOException e) {
+      System.err.println(e.getMessage());
+      System.err.println(BenchmarkingCommandLineParameters.USAGE);
+      System.exit(EXIT_USAGE);
+      return;
+    }
+
+    if (commandLine.isHelpRequested()) {
+      System.out.println(BenchmarkingCommandLineParameters.USAGE);
+      System.exit(EXIT_OK);
+    }
+
+    int exitCode = new BenchmarkingUserInterfaceSimulation().doWork(
+	  commandLine.getParameters(), commandLine.getResultFileName());
+    System.exit(exitCode);
   }
 
+  /**
+   * Benchmark mit Standardparametern ausfuehren
+   */
   public void doWork() {
-    // Input-parameter aus GUI
-    UserInterfaceInputParameters parm = new UserInterfaceInputParameters();
+    doWork(new UserInterfaceInputParameters(), null);
+  }
 
-    // GUI sammmelt Eingabedaten ...
+  /**
+   * Benchmark ausfuehren und auf das Ende warten
+   *
+   * @param parm
+   *          Eingabeparameter
+   * @param resultFileName
+   *          Ergebnisdatei, null = keine Ergebnisdatei schreiben
+   * @return Exit-Code
+   */
+  public int doWork(UserInterfaceInputParameters parm, String resultFileName) {
 
     // Benchmarking-Client instanzieren und Benchmark starten
-
     BenchmarkingClientCoordinator benchClient = new BenchmarkingClientCoordinator();
-    benchClient.executeTest(parm, this);
+    try {
+      benchClient.executeTest(parm, this);
+      benchClient.join();
+    } catch (Exception e) {
+      ExceptionHandler.logException(e);
+      return EXIT_FAILED;
+    }
+
+    UserInterfaceResultData data = getResultData();
+    if (data == null) {
+      System.err.println("Benchmark lieferte keine Ergebnisse");
+      return EXIT_FAILED;
+    }
+
+    if (resultFileName != null) {
+      try {
+	writeResultFile(resultFileName, parm, data);
+      } catch (IOException e) {
+	System.err.println("Ergebnisdatei " + resultFileName
+	    + " konnte nicht geschrieben werden");
+	ExceptionHandler.logException(e);
+	return EXIT_FAILED;
+      }
+    }
+
+    if ((data.getNumberOfResponses() == 0) || (data.getNumberOfLostResponses() > 0)) {
+      return EXIT_FAILED;
+    }
+    return EXIT_OK;
+  }
+
+  /**
+   * Ergebnisse eines Laufs im Properties-Format schreiben
+   *
+   * @param fileName
+   *          Name der Ergebnisdatei
+   * @param parm
+   *          Eingabeparameter des Laufs
+   * @param data
+   *          Ergebnisdaten des Laufs
+   * @throws IOException
+   *           falls die Datei nicht geschrieben werden kann
+   */
+  private void writeResultFile(String fileName, UserInterfaceInputParameters parm,
+      UserInterfaceResultData data) throws IOException {
+
+    Properties result = new Properties();
+    result.setProperty("implementationType",
+	String.valueOf(parm.getImplementationType()));
+    result.setProperty("numberOfClients", String.valueOf(parm.getNumberOfClients()));
+    result.setProperty("numberOfMessages", String.valueOf(parm.getNumberOfMessages()));
+    result.setProperty("messageLength", String.valueOf(parm.getMessageLength()));
+    result.setProperty("clientThinkTime", String.valueOf(parm.getClientThinkTime()));
+    result.setProperty("loadMode", parm.mapLoadModeToString(parm.getLoadMode()));
+    result.setProperty("delivery", parm.mapDeliveryGuaranteesToString());
+    result.setProperty("rooms", parm.mapRoomsToString());
+    result.setProperty("directShare", String.valueOf(parm.getDirectMessageShare()));
+    result.setProperty("presence", String.valueOf(parm.getPresenceMode()));
+    result.setProperty("histogramBits",
+        String.valueOf(parm.getHistogramSignificantBits()));
+    result.setProperty("endTime", data.getEndTime());
+    result.setProperty("elapsedTimeSeconds", String.valueOf(data.getElapsedTime()));
+    result.setProperty("sentRequests", String.valueOf(data.getNumberOfSentRequests()));
+    result.setProperty("responses", String.valueOf(data.getNumberOfResponses()));
+    result.setProperty("lostResponses", String.valueOf(data.getNumberOfLostResponses()));
+    result.setProperty("rttMeanMs", String.valueOf(data.getMean()));
+    result.setProperty("rttMinMs", String.valueOf(data.getMinimum()));
+    result.setProperty("rttMaxMs", String.valueOf(data.getMaximum()));
+    result.setProperty("rttP50Ms", String.valueOf(data.getPercentile50()));
+    result.setProperty("rttP90Ms", String.valueOf(data.getPercentile90()));
+    result.setProperty("rttP99Ms", String.valueOf(data.getPercentile99()));
+    result.setProperty("rttP999Ms", String.valueOf(data.getPercentile999()));
+    result.setProperty("rttP9999Ms", String.valueOf(data.getPercentile9999()));
+    result.setProperty("avgServerTimeMs", String.valueOf(data.getAvgServerTime()));
+    result.setProperty("maxHeapMiB", String.valueOf(data.getMaxHeapSize()));
+    result.setProperty("cpuUsage", String.valueOf(data.getMaxCpuUsage()));
+    for (Map.Entry<DeliveryGuarantee, DistributionMetrics> e : data
+	.getDeliveryMetrics().entrySet()) {
+      String prefix = "delivery." + e.getKey() + ".";
+      DistributionMetrics m = e.getValue();
+      result.setProperty(prefix + "responses", String.valueOf(m.getNumberOfValues()));
+      result.setProperty(prefix + "rttMeanMs", String.valueOf(m.getMean()));
+      result.setProperty(prefix + "rttP50Ms", String.valueOf(m.getPercentile50()));
+      result.setProperty(prefix + "rttP99Ms", String.valueOf(m.getPercentile99()));
+      result.setProperty(prefix + "rttMaxMs", String.valueOf(m.getMaximum()));
+    }
+    DistributionMetrics direct = data.getDirectMetrics();
+    if (direct != null) {
+      result.setProperty("direct.responses", String.valueOf(direct.getNumberOfValues()));
+      result.setProperty("direct.rttMeanMs", String.valueOf(direct.getMean()));
+      result.setProperty("direct.rttP50Ms", String.valueOf(direct.getPercentile50()));
+      result.setProperty("direct.rttP99Ms", String.valueOf(direct.getPercentile99()));
+      result.setProperty("direct.rttMaxMs", String.valueOf(direct.getMaximum()));
+    }
+
+    try (OutputStream out = new FileOutputStream(fileName)) {
+      result.store(out, "Ergebnis Benchmark-Lauf");
+    }
   }
 
   @Override
@@ -132,4 +289,9 @@ public class BenchmarkingUserInterfaceSimulation implements
   public void incrNumberOfRequests() {
 
   }
+
+  @Override
+  public void incrNumberOfEvents() {
+
+  }
 }
\ No newline at end of file
@@ -0,0 +1,282 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.SharedClientStatistics;
+import edu.hm.dako.chat.server.SharedChatClientList;
+import edu.hm.dako.chat.tcp.TcpConnection;
+import io.netty.handler.codec.serialization.ObjectDecoderInputStream;
+import io.netty.handler.codec.serialization.ObjectEncoderOutputStream;
+
+/**
+ * Mikrobenchmarks fuer die Hot-Paths von Protokoll und Clientliste:
+ * <p/>
+ * - Kodieren und Dekodieren einer ChatPDU mit der aktuellen Serialisierung
+ * (netty ObjectEncoder/ObjectDecoder wie in TcpConnection)
+ * <p/>
+ * - Operationen der SharedChatClientList mit einem und mehreren Threads
+ * (Warteliste erzeugen und abbauen, Namensliste, Garbage Collection)
+ * <p/>
+ * - SharedClientStatistics.incrReceivedMsgCounter
+ * <p/>
+ * - Round-Trip einer ChatPDU ueber eine TcpConnection auf dem Loopback
+ * <p/>
+ * Aufruf: ChatMicroBenchmarks [Namensfilter] [Ergebnisdatei]. Es werden nur
+ * Benchmarks ausgefuehrt, deren Name den Filter enthaelt. Die Ergebnisse
+ * werden an die Ergebnisdatei angehaengt, damit Messungen vor und nach einer
+ * Aenderung verglichen werden koennen. Das Logging wird auf WARN gestellt, da
+ * sonst die Log-Ausgabe und nicht der Code gemessen wird.
+ *
+ * @author Mandl
+ */
+public class ChatMicroBenchmarks {
+
+	// Anzahl der Clients in der Clientliste
+	private static final int NUMBER_OF_CLIENTS = 50;
+
+	// Nachrichtenlaenge der Chat-PDUs in Byte
+	private static final int MESSAGE_LENGTH = 50;
+
+	// Thread-Anzahlen fuer die Benchmarks mit Contention
+	private static final int[] THREAD_COUNTS = { 1, 4 };
+
+	// Aufwaermiterationen, Messiterationen, Dauer einer Iteration in ms
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	private static final long ITERATION_MILLIS = 1000;
+
+	private final MicroBenchmarkRunner runner = new MicroBenchmarkRunner(
+			WARMUP_ITERATIONS, MEASUREMENT_ITERATIONS, ITERATION_MILLIS);
+
+	private final String filter;
+
+	private final List<MicroBenchmarkRunner.Result> results = new ArrayList<MicroBenchmarkRunner.Result>();
+
+	public ChatMicroBenchmarks(String filter) {
+		this.filter = filter;
+	}
+
+	public static void main(String[] args) throws Exception {
+		BasicConfigurator.configure();
+		Logger.getRootLogger().setLevel(Level.WARN);
+
+		String filter = (args.length > 0) ? args[0] : "";
+		String resultFile = (args.length > 1) ? args[1] : null;
+
+		ChatMicroBenchmarks benchmarks = new ChatMicroBenchmarks(filter);
+		benchmarks.pduCodecBenchmarks();
+		benchmarks.clientListBenchmarks();
+		benchmarks.statisticsBenchmarks();
+		benchmarks.tcpConnectionBenchmarks();
+
+		if (resultFile != null) {
+			benchmarks.writeResults(resultFile);
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Benchmark ausfuehren, falls der Name zum Filter passt
+	 */
+	private void run(String name, int threads, MicroBenchmarkRunner.Operation operation)
+			throws Exception {
+		if (!name.contains(filter)) {
+			return;
+		}
+		MicroBenchmarkRunner.Result result = runner.run(name, threads, operation);
+		results.add(result);
+		System.out.println(result);
+	}
+
+	/**
+	 * Kodieren und Dekodieren einer Chat-Message-Event-PDU. Weitere Codecs
+	 * koennen hier mit eigenem Namen ergaenzt und direkt verglichen werden.
+	 */
+	private void pduCodecBenchmarks() throws Exception {
+		final ChatPDU pdu = createChatMessageEventPdu();
+		final byte[] encoded = encode(pdu);
+
+		run("pdu.encode.objectEncoder", 1, new MicroBenchmarkRunner.Operation() {
+			@Override
+			public Object run(int threadIndex) throws Exception {
+				return encode(pdu).length;
+			}
+		});
+
+		run("pdu.decode.objectDecoder", 1, new MicroBenchmarkRunner.Operation() {
+			@Override
+			public Object run(int threadIndex) throws Exception {
+				ObjectDecoderInputStream in = new ObjectDecoderInputStream(
+						new ByteArrayInputStream(encoded));
+				Object decoded = in.readObject();
+				in.close();
+				return decoded;
+			}
+		});
+	}
+
+	/**
+	 * Operationen der Clientliste. Jeder Thread arbeitet fuer einen eigenen
+	 * Client, alle Threads konkurrieren um die gemeinsame Liste.
+	 */
+	private void clientListBenchmarks() throws Exception {
+		final SharedChatClientList clients = new SharedChatClientList();
+		final String[] names = new String[NUMBER_OF_CLIENTS];
+		for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+			names[i] = "Client" + i;
+			ClientListEntry entry = new ClientListEntry(names[i], null);
+			entry.setStatus(ClientConversationStatus.REGISTERED);
+			clients.createClient(names[i], entry);
+		}
+
+		for (int threads : THREAD_COUNTS) {
+
+			// Fan-out einer Chat-Nachricht: Warteliste erzeugen, dann alle
+			// Confirms eintragen
+			run("clientList.waitListCycle", threads, new MicroBenchmarkRunner.Operation() {
+				@Override
+				public Object run(int threadIndex) throws Exception {
+					String userName = names[threadIndex];
+					clients.createWaitList(userName);
+					int remaining = 0;
+					for (String name : names) {
+						remaining = clients.deleteWaitListEntry(userName, name, 0);
+					}
+					return remaining;
+				}
+			});
+
+			run("clientList.getClientNameList", threads, new MicroBenchmarkRunner.Operation() {
+				@Override
+				public Object run(int threadIndex) throws Exception {
+					return clients.getClientNameList().size();
+				}
+			});
+
+			run("clientList.gcClientList", threads, new MicroBenchmarkRunner.Operation() {
+				@Override
+				public Object run(int threadIndex) throws Exception {
+					return clients.gcClientList().size();
+				}
+			});
+		}
+		clients.deleteAll();
+	}
+
+	/**
+	 * Erfassen einer Response in der Client-Statistik
+	 */
+	private void statisticsBenchmarks() throws Exception {
+		for (int threads : THREAD_COUNTS) {
+			final SharedClientStatistics statistics = new SharedClientStatistics(threads,
+					Integer.MAX_VALUE, 0);
+			run("statistics.incrReceivedMsgCounter", threads,
+					new MicroBenchmarkRunner.Operation() {
+						@Override
+						public Object run(int threadIndex) throws Exception {
+							statistics.incrReceivedMsgCounter(threadIndex, 1000000, 100000);
+							return null;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Round-Trip einer ChatPDU ueber den Loopback: Der Benchmark-Thread sendet,
+	 * ein Echo-Thread sendet die PDU zurueck.
+	 */
+	private void tcpConnectionBenchmarks() throws Exception {
+		if (!"tcp.loopbackRoundTrip".contains(filter)) {
+			return;
+		}
+		final ServerSocket serverSocket = new ServerSocket(0);
+		Socket clientSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+		final TcpConnection echoConnection = new TcpConnection(serverSocket.accept(), 300000,
+				300000, false, true);
+		final TcpConnection connection = new TcpConnection(clientSocket, 300000, 300000,
+				false, true);
+
+		Thread echoThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						echoConnection.send(echoConnection.receive());
+					}
+				} catch (Exception e) {
+					// Verbindung wurde geschlossen
+				}
+			}
+		}, "EchoThread");
+		echoThread.setDaemon(true);
+		echoThread.start();
+
+		final ChatPDU pdu = createChatMessageEventPdu();
+		run("tcp.loopbackRoundTrip", 1, new MicroBenchmarkRunner.Operation() {
+			@Override
+			public Object run(int threadIndex) throws Exception {
+				connection.send(pdu);
+				return connection.receive();
+			}
+		});
+
+		connection.close();
+		echoConnection.close();
+		serverSocket.close();
+	}
+
+	private static ChatPDU createChatMessageEventPdu() {
+		StringBuilder message = new StringBuilder();
+		for (int i = 0; i < MESSAGE_LENGTH; i++) {
+			message.append('x');
+		}
+		ChatPDU request = new ChatPDU();
+		request.setPduType(PduType.CHAT_MESSAGE_REQUEST);
+		request.setUserName("Client1");
+		request.setClientThreadName("Client1-Thread");
+		request.setSequenceNumber(1);
+		request.setMessage(message.toString());
+		return ChatPDU.createChatMessageEventPdu("Client2", request);
+	}
+
+	private static byte[] encode(ChatPDU pdu) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		ObjectEncoderOutputStream out = new ObjectEncoderOutputStream(bytes);
+		out.writeObject(pdu);
+		out.flush();
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Ergebnisse an die Ergebnisdatei anhaengen
+	 */
+	private void writeResults(String fileName) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(fileName, true));
+		out.println("# " + new SimpleDateFormat("dd.MM.yy HH:mm:ss").format(new Date())
+				+ ", Iterationen: " + WARMUP_ITERATIONS + " + " + MEASUREMENT_ITERATIONS + " x "
+				+ ITERATION_MILLIS + " ms");
+		for (MicroBenchmarkRunner.Result result : results) {
+			out.println(result);
+		}
+		out.close();
+	}
+}
@@ -0,0 +1,202 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Einfacher Rahmen fuer wiederholbare Mikrobenchmarks (nach dem Vorbild von
+ * JMH, aber ohne zusaetzliche Bibliothek).
+ * <p/>
+ * Eine Operation wird von n Threads gleichzeitig in einer Schleife ausgefuehrt.
+ * Nach einigen Aufwaermiterationen (JIT-Compilierung) folgen die
+ * Messiterationen fester Dauer. Je Iteration werden Durchsatz und mittlere
+ * Zeit pro Operation ermittelt, ausgegeben werden Mittelwert und 95
+ * %-Konfidenzintervall ueber die Messiterationen.
+ * <p/>
+ * Die Ergebnisse der Operationen werden in einer Senke verrechnet, damit der
+ * JIT-Compiler die gemessene Arbeit nicht wegoptimieren kann.
+ *
+ * @author Mandl
+ */
+public class MicroBenchmarkRunner {
+
+	/**
+	 * Zu messende Operation
+	 */
+	public interface Operation {
+
+		/**
+		 * Fuehrt die Operation einmal aus
+		 *
+		 * @param threadIndex
+		 *          Nummer des ausfuehrenden Threads (0 bis n-1)
+		 * @return Ergebnis der Operation (wird in die Senke verrechnet)
+		 * @throws Exception
+		 */
+		Object run(int threadIndex) throws Exception;
+	}
+
+	/**
+	 * Ergebnis eines Mikrobenchmarks
+	 */
+	public static class Result {
+		private final String name;
+		private final int threads;
+		private final double opsPerSecond;
+		private final double opsPerSecondError;
+		private final double nanosPerOp;
+		private final double nanosPerOpError;
+
+		Result(String name, int threads, double[] opsPerSecond, double[] nanosPerOp) {
+			this.name = name;
+			this.threads = threads;
+			this.opsPerSecond = BenchmarkingStatistics.mean(opsPerSecond);
+			this.opsPerSecondError = BenchmarkingStatistics.confidenceHalfWidth(opsPerSecond);
+			this.nanosPerOp = BenchmarkingStatistics.mean(nanosPerOp);
+			this.nanosPerOpError = BenchmarkingStatistics.confidenceHalfWidth(nanosPerOp);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getThreads() {
+			return threads;
+		}
+
+		public double getOpsPerSecond() {
+			return opsPerSecond;
+		}
+
+		public double getNanosPerOp() {
+			return nanosPerOp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-40s | %2d | %14.1f +- %10.1f ops/s | %12.1f +- %9.1f ns/op",
+					name, threads, opsPerSecond, opsPerSecondError, nanosPerOp, nanosPerOpError);
+		}
+	}
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationMillis;
+
+	// Senke fuer die Ergebnisse der Operationen
+	private volatile int sink;
+
+	/**
+	 * Konstruktor
+	 *
+	 * @param warmupIterations
+	 *          Anzahl Aufwaermiterationen
+	 * @param measurementIterations
+	 *          Anzahl Messiterationen (mindestens 2)
+	 * @param iterationMillis
+	 *          Dauer einer Iteration in ms
+	 */
+	public MicroBenchmarkRunner(int warmupIterations, int measurementIterations,
+			long iterationMillis) {
+		if (measurementIterations < 2) {
+			throw new IllegalArgumentException(
+					"Mindestens zwei Messiterationen erforderlich: " + measurementIterations);
+		}
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationMillis = iterationMillis;
+	}
+
+	/**
+	 * Mikrobenchmark ausfuehren
+	 *
+	 * @param name
+	 *          Name des Benchmarks
+	 * @param threads
+	 *          Anzahl gleichzeitig arbeitender Threads
+	 * @param operation
+	 *          Zu messende Operation
+	 * @return Ergebnis
+	 * @throws Exception
+	 *           falls eine Operation fehlschlaegt
+	 */
+	public Result run(String name, int threads, Operation operation) throws Exception {
+		for (int i = 0; i < warmupIterations; i++) {
+			runIteration(threads, operation);
+		}
+		double[] opsPerSecond = new double[measurementIterations];
+		double[] nanosPerOp = new double[measurementIterations];
+		for (int i = 0; i < measurementIterations; i++) {
+			long[] iteration = runIteration(threads, operation);
+			long ops = Math.max(1, iteration[0]);
+			long elapsed = iteration[1];
+			opsPerSecond[i] = ops / (elapsed / 1000000000.0);
+			// Mittlere Zeit pro Operation aus Sicht eines Threads
+			nanosPerOp[i] = (double) elapsed * threads / ops;
+		}
+		return new Result(name, threads, opsPerSecond, nanosPerOp);
+	}
+
+	/**
+	 * Eine Iteration ausfuehren
+	 *
+	 * @return Anzahl Operationen und Dauer in ns
+	 */
+	private long[] runIteration(final int threads, final Operation operation)
+			throws Exception {
+
+		final CyclicBarrier startBarrier = new CyclicBarrier(threads + 1);
+		final long[] operations = new long[threads];
+		final Exception[] failures = new Exception[threads];
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final int threadIndex = t;
+			workers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int localSink = 0;
+					long count = 0;
+					try {
+						startBarrier.await();
+						while (true) {
+							// Stop-Kennzeichen nur alle 64 Operationen pruefen
+							if (((count & 63) == 0) && stop.get()) {
+								break;
+							}
+							Object result = operation.run(threadIndex);
+							if (result != null) {
+								localSink += result.hashCode();
+							}
+							count++;
+						}
+					} catch (Exception e) {
+						failures[threadIndex] = e;
+					}
+					operations[threadIndex] = count;
+					sink += localSink;
+				}
+			}, "MicroBenchmarkThread-" + t);
+			workers[t].start();
+		}
+
+		startBarrier.await();
+		long start = System.nanoTime();
+		Thread.sleep(iterationMillis);
+		stop.set(true);
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long total = 0;
+		for (int t = 0; t < threads; t++) {
+			if (failures[t] != null) {
+				throw failures[t];
+			}
+			total += operations[t];
+		}
+		return new long[] { total, elapsed };
+	}
+}
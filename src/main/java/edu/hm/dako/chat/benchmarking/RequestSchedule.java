@@ -0,0 +1,134 @@
+package edu.hm.dako.chat.benchmarking;
+
+import java.util.Random;
+
+import edu.hm.dako.chat.benchmarking.UserInterfaceInputParameters.ArrivalDistribution;
+
+/**
+ * Sendeplan eines Benchmarking-Clients fuer die Open-Loop-Lasterzeugung.
+ *
+ * Der Plan liefert die beabsichtigten Sendezeitpunkte (System.nanoTime) der
+ * Chat-Requests eines Clients, unabhaengig davon, wann die Antworten des
+ * Servers eintreffen. Die RTT wird ab dem geplanten und nicht ab dem
+ * tatsaechlichen Sendezeitpunkt gemessen. Damit gehen Wartezeiten, die durch
+ * einen ueberlasteten Server entstehen, in die Messung ein (Korrektur der
+ * "Coordinated Omission").
+ *
+ * @author Mandl
+ */
+public class RequestSchedule {
+
+	// Verteilung der Zwischenankunftszeiten
+	private final ArrivalDistribution distribution;
+
+	// Mittlerer Abstand zwischen zwei Requests in ns
+	private final double meanIntervalNanos;
+
+	// Versatz des ersten Requests in ns, damit nicht alle Clients gleichzeitig
+	// senden
+	private final long initialOffsetNanos;
+
+	// Zufallszahlengenerator fuer Poisson-Ankuenfte (pro Client, daher ohne
+	// Synchronisation)
+	private final Random random;
+
+	// Geplanter Sendezeitpunkt des naechsten Requests, 0 = Plan noch nicht
+	// gestartet
+	private long nextSendTime = 0;
+
+	/**
+	 * Konstruktor
+	 *
+	 * @param requestsPerSecond
+	 *          Ziel-Requestrate dieses Clients pro Sekunde
+	 * @param distribution
+	 *          Verteilung der Zwischenankunftszeiten
+	 * @param clientNumber
+	 *          Nummer des Clients (fuer Versatz und Zufallsstartwert)
+	 * @param numberOfClients
+	 *          Anzahl aller Clients
+	 */
+	public RequestSchedule(double requestsPerSecond, ArrivalDistribution distribution,
+			int clientNumber, int numberOfClients) {
+
+		if (requestsPerSecond <= 0) {
+			throw new IllegalArgumentException(
+					"Requestrate muss groesser 0 sein: " + requestsPerSecond);
+		}
+		this.distribution = distribution;
+		this.meanIntervalNanos = 1000000000.0 / requestsPerSecond;
+		this.random = new Random(System.nanoTime() + clientNumber);
+
+		if (distribution == ArrivalDistribution.Constant) {
+			// Clients gleichmaessig ueber ein Intervall verteilen
+			this.initialOffsetNanos = (long) (meanIntervalNanos * clientNumber
+					/ Math.max(1, numberOfClients));
+		} else {
+			this.initialOffsetNanos = nextInterval();
+		}
+	}
+
+	/**
+	 * Liefert den beabsichtigten Sendezeitpunkt des naechsten Requests. Beim
+	 * ersten Aufruf wird der Plan gestartet.
+	 *
+	 * @return Geplanter Sendezeitpunkt in ns (Basis System.nanoTime)
+	 */
+	public long nextIntendedSendTime() {
+		if (nextSendTime == 0) {
+			nextSendTime = System.nanoTime() + initialOffsetNanos;
+		} else {
+			nextSendTime += nextInterval();
+		}
+		return nextSendTime;
+	}
+
+	/**
+	 * Wartet bis zum angegebenen Zeitpunkt. Liegt der Zeitpunkt bereits in der
+	 * Vergangenheit (Server hinkt hinterher), wird sofort zurueckgekehrt.
+	 *
+	 * @param intendedSendTime
+	 *          Geplanter Sendezeitpunkt in ns
+	 * @throws InterruptedException
+	 *           falls sleep unterbrochen wurde
+	 */
+	public void awaitSendTime(long intendedSendTime) throws InterruptedException {
+		long remaining = intendedSendTime - System.nanoTime();
+		while (remaining > 0) {
+			Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+			remaining = intendedSendTime - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Abstand zum naechsten Request berechnen
+	 *
+	 * @return Abstand in ns
+	 */
+	private long nextInterval() {
+		if (distribution == ArrivalDistribution.Poisson) {
+			// Exponentialverteilte Zwischenankunftszeit
+			return (long) (-Math.log(1.0 - random.nextDouble()) * meanIntervalNanos);
+		}
+		return (long) meanIntervalNanos;
+	}
+
+	/**
+	 * Ziel-Requestrate auf einen Client herunterbrechen
+	 *
+	 * @param parm
+	 *          Eingabeparameter des Benchmarks
+	 * @param clientNumber
+	 *          Nummer des Clients
+	 * @return Sendeplan oder null, wenn im Closed-Loop-Modus gemessen wird
+	 */
+	public static RequestSchedule create(UserInterfaceInputParameters parm,
+			int clientNumber) {
+		if (parm.getLoadMode() != UserInterfaceInputParameters.LoadMode.OpenLoop) {
+			return null;
+		}
+		double ratePerClient = parm.getTargetRequestRate() / parm.getNumberOfClients();
+		return new RequestSchedule(ratePerClient, parm.getArrivalDistribution(),
+				clientNumber, parm.getNumberOfClients());
+	}
+}
@@ -1,6 +1,11 @@
 package edu.hm.dako.chat.benchmarking;
 
+import java.util.Vector;
+
+import edu.hm.dako.chat.common.DeliveryGuarantee;
 import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.PresenceMode;
 
 /**
  * Konfigurationsparameter fuer Lasttest
@@ -34,6 +39,40 @@ public class UserInterfaceInputParameters {
 																// 50000
 	private String remoteServerAddress; // Server-IP-Adresse, Default: "127.0.0.1"
 
+	// Art der Lasterzeugung (geschlossene oder offene Schleife)
+	private LoadMode loadMode;
+	// Ziel-Requestrate ueber alle Clients pro Sekunde (nur Open-Loop)
+	private double targetRequestRate;
+	// Verteilung der Zwischenankunftszeiten (nur Open-Loop)
+	private ArrivalDistribution arrivalDistribution;
+
+	// Zustellgarantien der Chat-Requests, die Requests eines Clients wechseln
+	// reihum; null = keine Angabe, es gilt die Vorgabe des Servers
+	private DeliveryGuarantee[] deliveryGuarantees;
+	// Quorum k fuer DeliveryGuarantee.Quorum
+	private int deliveryQuorum;
+
+	// Anzahl der Chat-Raeume, 0 = keine Raeume (jede Nachricht an alle Clients)
+	private int numberOfRooms;
+	// Verteilung der Clients auf die Chat-Raeume
+	private RoomSizeDistribution roomSizeDistribution;
+
+	// Anteil der Requests in Prozent, die als Direktnachricht an genau einen
+	// anderen Client gehen (0 = nur Chat-Nachrichten an Raum bzw. alle)
+	private int directMessageShare;
+
+	// Umfang der Login- und Logout-Events fuer die Clients; in den Modi Rooms
+	// und Users abonniert jeder Client zusaetzlich den naechsten Client
+	private PresenceMode presenceMode;
+
+	// Protokolldatei fuer den Auswertungssatz, null = kein Satz schreiben
+	private String protocolFileName;
+	// Datei fuer die Zeitreihe, null = keine Zeitreihe schreiben
+	private String timeSeriesFileName;
+
+	// Genauigkeit der RTT-Histogramme in signifikanten Bits (2 bis 16)
+	private int histogramSignificantBits;
+
 	/**
 	 * Konstruktor Belegung der Inputparameter mit Standardwerten
 	 */
@@ -48,6 +87,18 @@ public class UserInterfaceInputParameters {
 		implementationType = ImplementationType.TCPSimpleImplementation;// alte Standardbelegung
 		//implementationType = getImplementationType();
 		measurementType = MeasurementType.VarThreads;
+		loadMode = LoadMode.ClosedLoop;
+		targetRequestRate = 100;
+		arrivalDistribution = ArrivalDistribution.Constant;
+		deliveryGuarantees = null;
+		deliveryQuorum = 1;
+		numberOfRooms = 0;
+		roomSizeDistribution = RoomSizeDistribution.Uniform;
+		directMessageShare = 0;
+		presenceMode = PresenceMode.All;
+		protocolFileName = "Benchmarking-ChatApp-Protokolldatei";
+		timeSeriesFileName = "Benchmarking-ChatApp-Zeitreihe";
+		histogramSignificantBits = LatencyHistogram.DEFAULT_SIGNIFICANT_BITS;
 	}
 
 	/**
@@ -92,6 +143,168 @@ public class UserInterfaceInputParameters {
 		VarMsgLength
 	}
 
+	/**
+	 * Arten der Lasterzeugung
+	 *
+	 * @author Mandl
+	 */
+	public enum LoadMode {
+		// Jeder Client wartet auf die Antwort und dann eine zufaellige Denkzeit
+		ClosedLoop,
+		// Requests werden nach einem festen Sendeplan erzeugt, die RTT wird ab
+		// dem geplanten Sendezeitpunkt gemessen
+		OpenLoop
+	}
+
+	/**
+	 * Verteilung der Zwischenankunftszeiten im Open-Loop-Modus
+	 *
+	 * @author Mandl
+	 */
+	public enum ArrivalDistribution {
+		// Konstanter Abstand zwischen zwei Requests
+		Constant,
+		// Exponentialverteilte Abstaende (Poisson-Ankunftsprozess)
+		Poisson
+	}
+
+	/**
+	 * Verteilung der Clients auf die Chat-Raeume
+	 *
+	 * @author Mandl
+	 */
+	public enum RoomSizeDistribution {
+		// Alle Raeume gleich gross (Clients reihum)
+		Uniform,
+		// Raum k erhaelt einen Anteil der Clients proportional zu 1/(k+1): wenige
+		// grosse und viele kleine Raeume
+		Zipf
+	}
+
+	/**
+	 * Abbildung der Lasterzeugungsarten auf Strings
+	 *
+	 * @param mode
+	 *          Art der Lasterzeugung
+	 * @return Passender String fuer die Lasterzeugung
+	 */
+	public String mapLoadModeToString(LoadMode mode) {
+		if (mode == LoadMode.OpenLoop) {
+			return "OpenLoop-" + arrivalDistribution + "-" + targetRequestRate + "/s";
+		}
+		return "ClosedLoop";
+	}
+
+	/**
+	 * Abbildung der Zustellgarantien auf Strings
+	 *
+	 * @return z.B. "All" oder "FireAndForget+Quorum-2", "Server" ohne Angabe
+	 */
+	public String mapDeliveryGuaranteesToString() {
+		if (deliveryGuarantees == null) {
+			return "Server";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (DeliveryGuarantee g : deliveryGuarantees) {
+			if (sb.length() > 0) {
+				sb.append('+');
+			}
+			sb.append(g.describe(deliveryQuorum));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Abbildung der Raumkonfiguration auf Strings
+	 *
+	 * @return z.B. "100-Zipf", "Global" ohne Raeume
+	 */
+	public String mapRoomsToString() {
+		if (numberOfRooms <= 0) {
+			return "Global";
+		}
+		return numberOfRooms + "-" + roomSizeDistribution;
+	}
+
+	/**
+	 * Chat-Raum eines Clients gemaess Raumanzahl und Groessenverteilung
+	 * ermitteln. Die Zuordnung ist deterministisch, damit Laeufe vergleichbar
+	 * bleiben.
+	 *
+	 * @param clientNumber
+	 *          Nummer des Clients (0 bis numberOfClients - 1)
+	 * @return Name des Raums, null ohne Raeume
+	 */
+	public String getRoomOfClient(int clientNumber) {
+		if (numberOfRooms <= 0) {
+			return null;
+		}
+		if (roomSizeDistribution == RoomSizeDistribution.Uniform) {
+			return "Raum-" + (clientNumber % numberOfRooms);
+		}
+
+		// Zipf: Position des Clients auf der Summe der Gewichte 1/(k+1)
+		double sum = 0;
+		for (int k = 0; k < numberOfRooms; k++) {
+			sum += 1.0 / (k + 1);
+		}
+		double position = (clientNumber + 0.5) / numberOfClients * sum;
+		double cumulative = 0;
+		for (int k = 0; k < numberOfRooms; k++) {
+			cumulative += 1.0 / (k + 1);
+			if (position < cumulative) {
+				return "Raum-" + k;
+			}
+		}
+		return "Raum-" + (numberOfRooms - 1);
+	}
+
+	/**
+	 * Empfaenger der Direktnachrichten eines Clients: der naechste Client in
+	 * der Reihenfolge der Client-Nummern
+	 *
+	 * @param clientNumber
+	 *          Nummer des Clients (0 bis numberOfClients - 1)
+	 * @return Username des Empfaengers, null ohne Direktnachrichten oder mit
+	 *         nur einem Client
+	 */
+	public String getDirectPeerOfClient(int clientNumber) {
+		if (directMessageShare <= 0) {
+			return null;
+		}
+		return getNextClientName(clientNumber);
+	}
+
+	/**
+	 * Abonnierte User eines Clients fuer Login- und Logout-Events: der naechste
+	 * Client in der Reihenfolge der Client-Nummern
+	 *
+	 * @param clientNumber
+	 *          Nummer des Clients (0 bis numberOfClients - 1)
+	 * @return Usernamen, null im PresenceMode All
+	 */
+	public Vector<String> getPresenceUsersOfClient(int clientNumber) {
+		if (presenceMode == PresenceMode.All) {
+			return null;
+		}
+		Vector<String> users = new Vector<String>();
+		String next = getNextClientName(clientNumber);
+		if (next != null) {
+			users.add(next);
+		}
+		return users;
+	}
+
+	/**
+	 * @return Username des naechsten Clients, null mit nur einem Client
+	 */
+	private String getNextClientName(int clientNumber) {
+		if (numberOfClients < 2) {
+			return null;
+		}
+		return "Client-Thread-" + (((clientNumber + 1) % numberOfClients) + 1);
+	}
+
 	/**
 	 * Abbildung der Messungstypen auf Strings
 	 *
@@ -195,4 +408,100 @@ public class UserInterfaceInputParameters {
 	public void setResponseTimeout(int responseTimer) {
 		this.responseTimeout = responseTimer;
 	}
+
+	public LoadMode getLoadMode() {
+		return loadMode;
+	}
+
+	public void setLoadMode(LoadMode loadMode) {
+		this.loadMode = loadMode;
+	}
+
+	public double getTargetRequestRate() {
+		return targetRequestRate;
+	}
+
+	public void setTargetRequestRate(double targetRequestRate) {
+		this.targetRequestRate = targetRequestRate;
+	}
+
+	public ArrivalDistribution getArrivalDistribution() {
+		return arrivalDistribution;
+	}
+
+	public void setArrivalDistribution(ArrivalDistribution arrivalDistribution) {
+		this.arrivalDistribution = arrivalDistribution;
+	}
+
+	public String getProtocolFileName() {
+		return protocolFileName;
+	}
+
+	public void setProtocolFileName(String protocolFileName) {
+		this.protocolFileName = protocolFileName;
+	}
+
+	public String getTimeSeriesFileName() {
+		return timeSeriesFileName;
+	}
+
+	public void setTimeSeriesFileName(String timeSeriesFileName) {
+		this.timeSeriesFileName = timeSeriesFileName;
+	}
+
+	public int getHistogramSignificantBits() {
+		return histogramSignificantBits;
+	}
+
+	public void setHistogramSignificantBits(int histogramSignificantBits) {
+		this.histogramSignificantBits = histogramSignificantBits;
+	}
+
+	public DeliveryGuarantee[] getDeliveryGuarantees() {
+		return deliveryGuarantees;
+	}
+
+	public void setDeliveryGuarantees(DeliveryGuarantee[] deliveryGuarantees) {
+		this.deliveryGuarantees = deliveryGuarantees;
+	}
+
+	public int getDeliveryQuorum() {
+		return deliveryQuorum;
+	}
+
+	public void setDeliveryQuorum(int deliveryQuorum) {
+		this.deliveryQuorum = deliveryQuorum;
+	}
+
+	public int getNumberOfRooms() {
+		return numberOfRooms;
+	}
+
+	public void setNumberOfRooms(int numberOfRooms) {
+		this.numberOfRooms = numberOfRooms;
+	}
+
+	public RoomSizeDistribution getRoomSizeDistribution() {
+		return roomSizeDistribution;
+	}
+
+	public void setRoomSizeDistribution(RoomSizeDistribution roomSizeDistribution) {
+		this.roomSizeDistribution = roomSizeDistribution;
+	}
+
+	public int getDirectMessageShare() {
+		return directMessageShare;
+	}
+
+	public void setDirectMessageShare(int directMessageShare) {
+		this.directMessageShare = directMessageShare;
+	}
+
+	public PresenceMode getPresenceMode() {
+		return presenceMode;
+	}
+
+	public void setPresenceMode(PresenceMode presenceMode) {
+		this.presenceMode = presenceMode;
+	}
 }
\ No newline at end of file
@@ -1,5 +1,11 @@
 package edu.hm.dako.chat.benchmarking;
 
+import java.util.Collections;
+import java.util.Map;
+
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.DistributionMetrics;
+
 public class UserInterfaceResultData {
 
   // Anzahl gesendeter Requests
@@ -20,6 +26,9 @@ public class UserInterfaceResultData {
   // Testdauer in Sekunden
   private long elapsedTime;
 
+  // Dauer der Chat-Phase (erster Chat-Request bis letzte Chat-Response) in ns
+  private long chatPhaseDuration;
+
   // Anzahl gesendeter Event-Nachrichten im Server
   private long numberOfSentEventMessages;
 
@@ -32,6 +41,13 @@ public class UserInterfaceResultData {
   // Anzahl von erneuten Sendungen von Event-Nachrichten im Server
   private long numberOfRetriedEvents;
 
+  // RTT-Verteilung je Zustellgarantie (leer ohne Angabe der Zustellgarantie)
+  private Map<DeliveryGuarantee, DistributionMetrics> deliveryMetrics = Collections
+      .emptyMap();
+
+  // RTT-Verteilung der Direktnachrichten, null ohne Direktnachrichten
+  private DistributionMetrics directMetrics;
+
   // Mittlere Serverbearbeitungszeit in ms
   private double avgServerTime;
 
@@ -63,6 +79,15 @@ public class UserInterfaceResultData {
   // 90 % Percentile
   private double percentile90;
 
+  // 99 % Percentile
+  private double percentile99;
+
+  // 99,9 % Percentile
+  private double percentile999;
+
+  // 99,99 % Percentile
+  private double percentile9999;
+
   // Stannweite (zwischen Minimum und Maximum)
   private double range;
 
@@ -115,6 +140,14 @@ public class UserInterfaceResultData {
     this.elapsedTime = elapsedTime;
   }
 
+  public long getChatPhaseDuration() {
+    return chatPhaseDuration;
+  }
+
+  public void setChatPhaseDuration(long chatPhaseDuration) {
+    this.chatPhaseDuration = chatPhaseDuration;
+  }
+
   public String getEndTime() {
     return endTime;
   }
@@ -156,6 +189,23 @@ public class UserInterfaceResultData {
     return numberOfRetriedEvents;
   }
 
+  public void setDeliveryMetrics(
+      Map<DeliveryGuarantee, DistributionMetrics> deliveryMetrics) {
+    this.deliveryMetrics = deliveryMetrics;
+  }
+
+  public Map<DeliveryGuarantee, DistributionMetrics> getDeliveryMetrics() {
+    return deliveryMetrics;
+  }
+
+  public void setDirectMetrics(DistributionMetrics directMetrics) {
+    this.directMetrics = directMetrics;
+  }
+
+  public DistributionMetrics getDirectMetrics() {
+    return directMetrics;
+  }
+
   public double getAvgServerTime() {
     return avgServerTime;
   }
@@ -208,6 +258,18 @@ public class UserInterfaceResultData {
     return percentile90;
   }
 
+  public double getPercentile99() {
+    return percentile99;
+  }
+
+  public double getPercentile999() {
+    return percentile999;
+  }
+
+  public double getPercentile9999() {
+    return percentile9999;
+  }
+
   public double getInterquartilRange() {
     return interquartilRange;
   }
@@ -252,6 +314,18 @@ public class UserInterfaceResultData {
     this.percentile90 = percentile90;
   }
 
+  public void setPercentile99(double percentile99) {
+    this.percentile99 = percentile99;
+  }
+
+  public void setPercentile999(double percentile999) {
+    this.percentile999 = percentile999;
+  }
+
+  public void setPercentile9999(double percentile9999) {
+    this.percentile9999 = percentile9999;
+  }
+
   public void setInterquartilRange(double interquartilRange) {
     this.interquartilRange = interquartilRange;
   }
@@ -1,6 +1,7 @@
 package edu.hm.dako.chat.client;
 
 import java.io.IOException;
+import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
@@ -8,8 +9,10 @@ import org.apache.commons.logging.LogFactory;
 
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.DeliveryGuarantee;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.PresenceMode;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ConnectionFactory;
 import edu.hm.dako.chat.connection.DecoratingConnectionFactory;
@@ -47,6 +50,20 @@ public abstract class AbstractChatClient implements ClientCommunication {
 	// Thread, der die ankommenden Nachrichten fuer den Client verarbeitet
 	protected Thread messageListenerThread;
 
+	// Zustellgarantie fuer die naechsten Chat-Nachrichten (null = Vorgabe des
+	// Servers) und Quorum k
+	protected DeliveryGuarantee deliveryGuarantee = null;
+	protected int deliveryQuorum = 0;
+
+	// Chat-Raum fuer den Login und die naechsten Chat-Nachrichten (null = alle
+	// angemeldeten User)
+	protected String room = null;
+
+	// Umfang der Login- und Logout-Events und abonnierte User fuer den Login
+	// (null = Vorgabe des Servers, PresenceMode All)
+	protected PresenceMode presenceMode = null;
+	protected Vector<String> presenceUsers = null;
+
 	/**
 	 * @param userInterface
 	 *          GUI-Interface
@@ -99,6 +116,45 @@ public abstract class AbstractChatClient implements ClientCommunication {
 		return new DecoratingConnectionFactory(connectionFactory);
 	}
 
+	/**
+	 * Zustellgarantie fuer die folgenden Chat-Nachrichten festlegen
+	 * 
+	 * @param guarantee
+	 *          Zustellgarantie, null = Vorgabe des Servers
+	 * @param quorum
+	 *          Benoetigte Confirms bei DeliveryGuarantee.Quorum
+	 */
+	public void setDeliveryGuarantee(DeliveryGuarantee guarantee, int quorum) {
+		this.deliveryGuarantee = guarantee;
+		this.deliveryQuorum = quorum;
+	}
+
+	/**
+	 * Chat-Raum festlegen, ohne einen Request zu senden. Vor dem Login gesetzt,
+	 * tritt der Client dem Raum gleich mit dem Login-Request bei; Login- und
+	 * Logout-Events erhalten dann nur die Mitglieder des Raums.
+	 * 
+	 * @param room
+	 *          Name des Raums, null = alle angemeldeten User
+	 */
+	public void setRoom(String room) {
+		this.room = room;
+	}
+
+	/**
+	 * Presence-Abonnement festlegen, ohne einen Request zu senden. Vor dem
+	 * Login gesetzt, gilt es bereits fuer das Login-Event.
+	 * 
+	 * @param mode
+	 *          Umfang der Login- und Logout-Events, null = PresenceMode All
+	 * @param users
+	 *          Abonnierte User, null = keine
+	 */
+	public void setPresence(PresenceMode mode, Vector<String> users) {
+		this.presenceMode = mode;
+		this.presenceUsers = users;
+	}
+
 	@Override
 	public void login(String name) throws IOException {
 
@@ -111,9 +167,16 @@ public abstract class AbstractChatClient implements ClientCommunication {
 		Thread.currentThread().setName("Client-" + userName);
 		requestPdu.setClientThreadName(Thread.currentThread().getName());
 		requestPdu.setUserName(userName);
+		requestPdu.setRoom(room);
+		if (presenceMode != null) {
+			requestPdu.setPresenceMode(presenceMode);
+			requestPdu.setClients(presenceUsers);
+		}
 		try {
 			connection.send(requestPdu);
-			log.debug("Login-Request-PDU fuer Client " + userName + " an Server gesendet");
+			if (log.isDebugEnabled()) {
+				log.debug("Login-Request-PDU fuer Client " + userName + " an Server gesendet");
+			}
 		} catch (Exception e) {
 			throw new IOException();
 		}
@@ -131,8 +194,10 @@ public abstract class AbstractChatClient implements ClientCommunication {
 		try {
 			connection.send(requestPdu);
 			sharedClientData.logoutCounter.getAndIncrement();
-			log.debug("Logout-Request von " + requestPdu.getUserName()
-					+ " gesendet, LogoutCount = " + sharedClientData.logoutCounter.get());
+			if (log.isDebugEnabled()) {
+				log.debug("Logout-Request von " + requestPdu.getUserName()
+						+ " gesendet, LogoutCount = " + sharedClientData.logoutCounter.get());
+			}
 
 		} catch (Exception e) {
 			log.debug("Senden der Logout-Nachricht nicht moeglich");
@@ -149,20 +214,127 @@ public abstract class AbstractChatClient implements ClientCommunication {
 		requestPdu.setClientThreadName(Thread.currentThread().getName());
 		requestPdu.setUserName(userName);
 		requestPdu.setMessage(text);
+		requestPdu.setDeliveryGuarantee(deliveryGuarantee);
+		requestPdu.setDeliveryQuorum(deliveryQuorum);
+		requestPdu.setRoom(room);
 		sharedClientData.messageCounter.getAndIncrement();
 		requestPdu.setSequenceNumber(sharedClientData.messageCounter.get());
 		try {
 			connection.send(requestPdu);
-			log.debug("Chat-Message-Request-PDU fuer Client " + name
-					+ " an Server gesendet, Inhalt: " + text);
-			log.debug("MessageCounter: " + sharedClientData.messageCounter.get()
-					+ ", SequenceNumber: " + requestPdu.getSequenceNumber());
+			if (log.isDebugEnabled()) {
+				log.debug("Chat-Message-Request-PDU fuer Client " + name
+						+ " an Server gesendet, Inhalt: " + text);
+				log.debug("MessageCounter: " + sharedClientData.messageCounter.get()
+						+ ", SequenceNumber: " + requestPdu.getSequenceNumber());
+			}
 		} catch (Exception e) {
 			log.debug("Senden der Chat-Nachricht nicht moeglich");
 			throw new IOException();
 		}
 	}
 
+	@Override
+	public void tellDirect(String name, String recipient, String text) throws IOException {
+
+		ChatPDU requestPdu = new ChatPDU();
+		requestPdu.setPduType(PduType.DIRECT_MESSAGE_REQUEST);
+		requestPdu.setClientStatus(sharedClientData.status);
+		requestPdu.setClientThreadName(Thread.currentThread().getName());
+		requestPdu.setUserName(userName);
+		requestPdu.setRecipient(recipient);
+		requestPdu.setMessage(text);
+		sharedClientData.messageCounter.getAndIncrement();
+		requestPdu.setSequenceNumber(sharedClientData.messageCounter.get());
+		try {
+			connection.send(requestPdu);
+			if (log.isDebugEnabled()) {
+				log.debug("Direct-Message-Request-PDU fuer Client " + name + " an " + recipient
+						+ " gesendet, Inhalt: " + text);
+			}
+		} catch (Exception e) {
+			log.debug("Senden der Direktnachricht nicht moeglich");
+			throw new IOException();
+		}
+	}
+
+	@Override
+	public void joinRoom(String room) throws IOException {
+
+		sendRoomRequest(PduType.ROOM_JOIN_REQUEST, room);
+		this.room = room;
+	}
+
+	@Override
+	public void leaveRoom(String room) throws IOException {
+
+		sendRoomRequest(PduType.ROOM_LEAVE_REQUEST, room);
+		if (room.equals(this.room)) {
+			this.room = null;
+		}
+	}
+
+	/**
+	 * Room-Join- oder Room-Leave-Request senden
+	 */
+	private void sendRoomRequest(PduType pduType, String room) throws IOException {
+
+		ChatPDU requestPdu = new ChatPDU();
+		requestPdu.setPduType(pduType);
+		requestPdu.setClientStatus(sharedClientData.status);
+		requestPdu.setClientThreadName(Thread.currentThread().getName());
+		requestPdu.setUserName(userName);
+		requestPdu.setRoom(room);
+		try {
+			connection.send(requestPdu);
+			if (log.isDebugEnabled()) {
+				log.debug(pduType + " fuer Raum " + room + " von " + userName + " gesendet");
+			}
+		} catch (Exception e) {
+			log.debug("Senden des " + pduType + " nicht moeglich");
+			throw new IOException();
+		}
+	}
+
+	@Override
+	public void subscribePresence(PresenceMode mode, Vector<String> users)
+			throws IOException {
+
+		ChatPDU requestPdu = new ChatPDU();
+		requestPdu.setPduType(PduType.PRESENCE_SUBSCRIBE_REQUEST);
+		requestPdu.setPresenceMode(mode);
+		requestPdu.setClients(users);
+		sendPresenceRequest(requestPdu);
+		this.presenceMode = mode;
+		this.presenceUsers = users;
+	}
+
+	@Override
+	public void requestUserList() throws IOException {
+
+		ChatPDU requestPdu = new ChatPDU();
+		requestPdu.setPduType(PduType.PRESENCE_LIST_REQUEST);
+		sendPresenceRequest(requestPdu);
+	}
+
+	/**
+	 * Presence-Subscribe- oder Presence-List-Request senden
+	 */
+	private void sendPresenceRequest(ChatPDU requestPdu) throws IOException {
+
+		requestPdu.setClientStatus(sharedClientData.status);
+		requestPdu.setClientThreadName(Thread.currentThread().getName());
+		requestPdu.setUserName(userName);
+		try {
+			connection.send(requestPdu);
+			if (log.isDebugEnabled()) {
+				log.debug(requestPdu.getPduType() + " von " + userName + " gesendet");
+			}
+		} catch (Exception e) {
+			log.debug("Senden des " + requestPdu.getPduType() + " nicht moeglich");
+			throw new IOException();
+		}
+	}
+
 	@Override
 	public void cancelConnection() {
 		try {
@@ -1,10 +1,15 @@
 package edu.hm.dako.chat.client;
 
+import java.util.Vector;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ChatPduRecycler;
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.PduType;
 import edu.hm.dako.chat.connection.Connection;
 
 /**
@@ -30,6 +35,9 @@ public abstract class AbstractMessageListenerThread extends Thread {
 	// Gemeinsame Daten zwischen Client-Thread und Message-Processing-Thread
 	protected SharedClientData sharedClientData;
 
+	// Wiederverwendbare Sende-PDUs dieses Threads
+	protected final ChatPduRecycler pduRecycler = new ChatPduRecycler();
+
 	public AbstractMessageListenerThread(ClientUserInterface userInterface, Connection con,
 			SharedClientData sharedData) {
 
@@ -47,14 +55,115 @@ public abstract class AbstractMessageListenerThread extends Thread {
 	 */
 	protected void handleUserListEvent(ChatPDU receivedPdu) {
 
-		log.debug(
-				"Login- oder Logout-Event-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+		if (log.isDebugEnabled()) {
+			log.debug(
+					"Login- oder Logout-Event-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+		}
+
+		if (receivedPdu.getClients() != null) {
+			// Neue Userliste zur Darstellung an User Interface uebergeben
+			if (log.isDebugEnabled()) {
+				log.debug("Empfangene Userliste: " + receivedPdu.getClients());
+			}
+			sharedClientData.userList = new Vector<String>(receivedPdu.getClients());
+		} else if (receivedPdu.getPduType() == PduType.LOGIN_EVENT) {
+			// Event ohne Userliste (PresenceMode Rooms oder Users)
+			if (!sharedClientData.userList.contains(receivedPdu.getEventUserName())) {
+				sharedClientData.userList.add(receivedPdu.getEventUserName());
+			}
+		} else {
+			sharedClientData.userList.remove(receivedPdu.getEventUserName());
+		}
+		userInterface.setUserList(new Vector<String>(sharedClientData.userList));
+	}
+
+	/**
+	 * Presence-Subscribe- oder Presence-List-Response verarbeiten: Die
+	 * empfangene Liste ersetzt die Userliste des Clients
+	 * 
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void presenceResponseAction(ChatPDU receivedPdu) {
+
+		if (log.isDebugEnabled()) {
+			log.debug(receivedPdu.getPduType() + " empfangen, Userliste: "
+					+ receivedPdu.getClients());
+		}
+		sharedClientData.userList = new Vector<String>(receivedPdu.getClients());
+		userInterface.setUserList(new Vector<String>(sharedClientData.userList));
+	}
 
-		// Neue Userliste zur Darstellung an User Interface uebergeben
-		log.debug("Empfangene Userliste: " + receivedPdu.getClients());
+	/**
+	 * Room-Join- oder Room-Leave-Response verarbeiten: Raumliste des Clients
+	 * aktualisieren und die Mitglieder des Raums anzeigen
+	 * 
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void roomResponseAction(ChatPDU receivedPdu) {
+
+		if (receivedPdu.getErrorCode() != ChatPDU.NO_ERROR) {
+			log.warn(receivedPdu.getPduType() + " fuer Raum " + receivedPdu.getRoom()
+					+ " mit Fehlercode " + receivedPdu.getErrorCode() + " empfangen");
+			userInterface.setErrorMessage("Chat-Server",
+					"Raum " + receivedPdu.getRoom() + ": Beitritt bzw. Austritt nicht moeglich",
+					receivedPdu.getErrorCode());
+			return;
+		}
+		if (receivedPdu.getPduType() == PduType.ROOM_JOIN_RESPONSE) {
+			sharedClientData.rooms.add(receivedPdu.getRoom());
+			userInterface.setUserList(receivedPdu.getClients());
+		} else {
+			sharedClientData.rooms.remove(receivedPdu.getRoom());
+		}
+		if (log.isDebugEnabled()) {
+			log.debug(sharedClientData.userName + " ist nun in den Raeumen "
+					+ sharedClientData.rooms);
+		}
+	}
+
+	/**
+	 * Room-Join- oder Room-Leave-Event verarbeiten: Ein anderer User ist einem
+	 * gemeinsamen Raum beigetreten oder hat ihn verlassen. Room-Events werden
+	 * nicht bestaetigt.
+	 * 
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void roomEventAction(ChatPDU receivedPdu) {
+
+		if (log.isDebugEnabled()) {
+			log.debug(receivedPdu.getPduType() + " von " + receivedPdu.getEventUserName()
+					+ " fuer Raum " + receivedPdu.getRoom() + " empfangen");
+		}
 		userInterface.setUserList(receivedPdu.getClients());
 	}
 
+	/**
+	 * Fehler einer Chat-Message-Response melden (Chat-Nachricht an einen Raum,
+	 * in dem der Client nicht Mitglied ist)
+	 * 
+	 * @param receivedPdu
+	 *          Empfangene Chat-Message-Response-PDU
+	 */
+	protected void reportChatMessageError(ChatPDU receivedPdu) {
+
+		if (receivedPdu.getErrorCode() == ChatPDU.ROOM_ERROR) {
+			log.warn("Chat-Nachricht von " + receivedPdu.getUserName()
+					+ " abgelehnt, nicht Mitglied in Raum " + receivedPdu.getRoom());
+			userInterface.setErrorMessage("Chat-Server",
+					"Chat-Nachricht abgelehnt, nicht Mitglied in Raum " + receivedPdu.getRoom(),
+					receivedPdu.getErrorCode());
+		} else if (receivedPdu.getErrorCode() == ChatPDU.RECIPIENT_ERROR) {
+			log.warn("Direktnachricht von " + receivedPdu.getUserName() + " abgelehnt, "
+					+ receivedPdu.getRecipient() + " nicht angemeldet");
+			userInterface.setErrorMessage("Chat-Server",
+					"Direktnachricht abgelehnt, " + receivedPdu.getRecipient() + " nicht angemeldet",
+					receivedPdu.getErrorCode());
+		}
+	}
+
 	/**
 	 * Chat-PDU empfangen
 	 * 
@@ -64,6 +173,7 @@ public abstract class AbstractMessageListenerThread extends Thread {
 	protected ChatPDU receive() throws Exception {
 		try {
 			ChatPDU receivedPdu = (ChatPDU) connection.receive();
+			FlightRecorder.recordReceived(receivedPdu);
 			return receivedPdu;
 		} catch (Exception e) {
 			ExceptionHandler.logException(e);
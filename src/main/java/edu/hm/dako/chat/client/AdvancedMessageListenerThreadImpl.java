@@ -12,6 +12,9 @@ import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.PduDiagnostics;
+import edu.hm.dako.chat.common.PduType;
 import edu.hm.dako.chat.connection.Connection;
 
 /**
@@ -35,7 +38,7 @@ public class AdvancedMessageListenerThreadImpl
 
     @Override
     protected void loginResponseAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
         if (receivedPdu.getErrorCode() == ChatPDU.LOGIN_ERROR) {
 
             // Login hat nicht funktioniert
@@ -62,53 +65,64 @@ public class AdvancedMessageListenerThreadImpl
 
             Thread.currentThread()
                     .setName("Listener" + "-" + sharedClientData.userName);
-            log.debug("Login-Response-PDU fuer Client "
-                    + receivedPdu.getUserName() + " empfangen");
+            if (log.isDebugEnabled()) {
+                log.debug("Login-Response-PDU fuer Client "
+                        + receivedPdu.getUserName() + " empfangen");
+            }
             System.out.println("Login REsponse Pdu fr Client empfangen");
         }
     }
 
     @Override
     protected void loginEventAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
         // Eventzaehler fuer Testzwecke erhoehen
         sharedClientData.eventCounter.getAndIncrement();
         int events = SharedClientData.loginEvents.incrementAndGet();
-        log.debug(sharedClientData.userName
-                + " erhaelt LoginEvent, LoginEventCounter: " + events);
+        if (log.isDebugEnabled()) {
+            log.debug(sharedClientData.userName
+                    + " erhaelt LoginEvent, LoginEventCounter: " + events);
+        }
 
         // LoginConfirmPDU erstellen
         ChatPDU loginConfirmPdu = ChatPDU.createLoginEventConfirm(
                 sharedClientData.userName, receivedPdu);
         log.debug("Login Confirm Pdu wurde erstellt.");
-        log.debug("Erstellte Pdu " + loginConfirmPdu);
+        PduDiagnostics.dump(log, "Erstellte Pdu ", loginConfirmPdu);
 
         try {
             // Senden der LoginConfirmPDU
             connection.send(loginConfirmPdu);
-            log.debug("Login Confirm Pdu wurde gesendet von "
-                    + loginConfirmPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("Login Confirm Pdu wurde gesendet von "
+                        + loginConfirmPdu.getUserName());
+            }
             handleUserListEvent(receivedPdu);
         } catch (Exception e) {
             ExceptionHandler.logException(e);
         }
         sharedClientData.confirmCounter.getAndIncrement();
+        SharedClientData.confirmEvents.incrementAndGet();
     }
 
     @Override
     protected void logoutResponseAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        log.debug(sharedClientData.userName
-                + " empfaengt Logout-Response-PDU fuer Client "
-                + receivedPdu.getUserName());
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        if (log.isDebugEnabled()) {
+            log.debug(sharedClientData.userName
+                    + " empfaengt Logout-Response-PDU fuer Client "
+                    + receivedPdu.getUserName());
+        }
         sharedClientData.status = ClientConversationStatus.UNREGISTERED;
 
         userInterface.setSessionStatisticsCounter(
                 sharedClientData.eventCounter.longValue(),
                 sharedClientData.confirmCounter.longValue(), 0, 0, 0);
 
-        log.debug("Vom Client gesendete Chat-Nachrichten:  "
-                + sharedClientData.messageCounter.get());
+        if (log.isDebugEnabled()) {
+            log.debug("Vom Client gesendete Chat-Nachrichten:  "
+                    + sharedClientData.messageCounter.get());
+        }
 
         finished = true;
         userInterface.logoutComplete();
@@ -116,41 +130,51 @@ public class AdvancedMessageListenerThreadImpl
 
     @Override
     protected void logoutEventAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
         // Eventzaehler fuer Testzwecke erhoehen
         sharedClientData.eventCounter.getAndIncrement();
         int events = SharedClientData.logoutEvents.incrementAndGet();
-        log.debug("LogoutEventCounter: " + events);
+        if (log.isDebugEnabled()) {
+            log.debug("LogoutEventCounter: " + events);
+        }
 
         // LogoutConfirmPdu erstellen
         ChatPDU logoutConfirmPdu = ChatPDU.createLogoutEventConfirm(
                 sharedClientData.userName, receivedPdu);
-        log.debug("Erstellte Pdu: " + logoutConfirmPdu);
+        PduDiagnostics.dump(log, "Erstellte Pdu: ", logoutConfirmPdu);
         try {
             // Senden der LogoutConfirmPdu
             connection.send(logoutConfirmPdu);
-            log.debug("Logout Confirm Pdu gesendet von"
-                    + sharedClientData.userName + "fr Client "
-                    + receivedPdu.getEventUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("Logout Confirm Pdu gesendet von"
+                        + sharedClientData.userName + "fr Client "
+                        + receivedPdu.getEventUserName());
+            }
             handleUserListEvent(receivedPdu);
         } catch (Exception e) {
             ExceptionHandler.logException(e);
         }
         sharedClientData.confirmCounter.getAndIncrement();
+        SharedClientData.confirmEvents.incrementAndGet();
     }
 
     @Override
     protected void chatMessageResponseAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        log.debug("Sequenznummer der Chat-Response-PDU "
-                + receivedPdu.getUserName() + ": "
-                + receivedPdu.getSequenceNumber() + ", Messagecounter: "
-                + sharedClientData.messageCounter.get());
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        reportChatMessageError(receivedPdu);
+        if (log.isDebugEnabled()) {
+            log.debug("Sequenznummer der Chat-Response-PDU "
+                    + receivedPdu.getUserName() + ": "
+                    + receivedPdu.getSequenceNumber() + ", Messagecounter: "
+                    + sharedClientData.messageCounter.get());
+        }
 
-        log.debug(Thread.currentThread().getName()
-                + ", Benoetigte Serverzeit gleich nach Empfang der Response-Nachricht: "
-                + receivedPdu.getServerTime() + " ns = "
-                + receivedPdu.getServerTime() / 1000000 + " ms");
+        if (log.isDebugEnabled()) {
+            log.debug(Thread.currentThread().getName()
+                    + ", Benoetigte Serverzeit gleich nach Empfang der Response-Nachricht: "
+                    + receivedPdu.getServerTime() + " ns = "
+                    + receivedPdu.getServerTime() / 1000000 + " ms");
+        }
 
         if (receivedPdu.getSequenceNumber() == sharedClientData.messageCounter
                 .get()) {
@@ -162,48 +186,91 @@ public class AdvancedMessageListenerThreadImpl
             // Naechste Chat-Nachricht darf eingegeben werden
             userInterface.setLock(false);
 
-            log.debug("Chat-Response-PDU fuer Client "
-                    + receivedPdu.getUserName() + " empfangen");
+            if (log.isDebugEnabled()) {
+                log.debug("Chat-Response-PDU fuer Client "
+                        + receivedPdu.getUserName() + " empfangen");
+            }
 
         } else {
-            log.debug("Sequenznummer der Chat-Response-PDU "
-                    + receivedPdu.getUserName() + " passt nicht: "
-                    + receivedPdu.getSequenceNumber() + "/"
-                    + sharedClientData.messageCounter.get());
+            if (log.isDebugEnabled()) {
+                log.debug("Sequenznummer der Chat-Response-PDU "
+                        + receivedPdu.getUserName() + " passt nicht: "
+                        + receivedPdu.getSequenceNumber() + "/"
+                        + sharedClientData.messageCounter.get());
+            }
         }
 
     }
 
     @Override
     protected void chatMessageEventAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        log.debug("Chat-Message-Event-PDU von " + receivedPdu.getEventUserName()
-                + " empfangen");
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        if (log.isDebugEnabled()) {
+            log.debug("Chat-Message-Event-PDU von " + receivedPdu.getEventUserName()
+                    + " empfangen");
+        }
 
         // Eventzaehler fuer Testzwecke erhoehen
         sharedClientData.eventCounter.getAndIncrement();
         int events = SharedClientData.messageEvents.incrementAndGet();
 
-        log.debug("MessageEventCounter: " + events);
+        if (log.isDebugEnabled()) {
+            log.debug("MessageEventCounter: " + events);
+        }
 
         // ChatMessageConfirmPDU erstellen
-        ChatPDU ConfirmPDU = ChatPDU.createMessageConfirmPdu(
+        ChatPDU ConfirmPDU = ChatPDU.createMessageConfirmPdu(pduRecycler,
                 sharedClientData.userName, receivedPdu);
-        log.debug("Erstellte Pdu " + ConfirmPDU);
+        PduDiagnostics.dump(log, "Erstellte Pdu ", ConfirmPDU);
         try {
             // ChatMessageConfirmPdu senden
             connection.send(ConfirmPDU);
-            log.debug("ChatMessageConfirm gesendet" + ConfirmPDU);
+            FlightRecorder.record(FlightRecorder.SENT,
+                    PduType.CHAT_MESSAGE_CONFIRM, receivedPdu.getEventUserName(),
+                    receivedPdu.getSequenceNumber(), -1, 0);
+            PduDiagnostics.dump(log, "ChatMessageConfirm gesendet", ConfirmPDU);
         } catch (Exception e) {
             System.out.println("Confirm nicht mglich");
         }
         // Confirm Counter fr Benchmarking erhhen
         sharedClientData.confirmCounter.getAndIncrement();
+        SharedClientData.confirmEvents.incrementAndGet();
 
         // Empfangene Chat-Nachricht an User Interface zur Darstellung
         // uebergeben
         userInterface.setMessageLine(receivedPdu.getEventUserName(),
-                (String) receivedPdu.getMessage());
+                receivedPdu.getMessage());
+    }
+
+    /**
+     * Direktnachricht empfangen: Dem Server den Empfang bestaetigen, damit er
+     * dem Absender antworten kann, und die Nachricht anzeigen
+     * 
+     * @param receivedPdu
+     *            Empfangene Direct-Message-Event-PDU
+     */
+    protected void directMessageEventAction(ChatPDU receivedPdu) {
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+
+        // Eventzaehler fuer Testzwecke erhoehen
+        sharedClientData.eventCounter.getAndIncrement();
+        SharedClientData.messageEvents.incrementAndGet();
+
+        ChatPDU confirmPdu = ChatPDU.createDirectMessageConfirmPdu(pduRecycler,
+                sharedClientData.userName, receivedPdu);
+        try {
+            connection.send(confirmPdu);
+            FlightRecorder.record(FlightRecorder.SENT,
+                    PduType.DIRECT_MESSAGE_CONFIRM, receivedPdu.getEventUserName(),
+                    receivedPdu.getSequenceNumber(), -1, 0);
+        } catch (Exception e) {
+            ExceptionHandler.logException(e);
+        }
+        sharedClientData.confirmCounter.getAndIncrement();
+        SharedClientData.confirmEvents.incrementAndGet();
+
+        userInterface.setMessageLine(receivedPdu.getEventUserName() + " (direkt)",
+                receivedPdu.getMessage());
     }
 
     /**
@@ -221,8 +288,10 @@ public class AdvancedMessageListenerThreadImpl
                 // Naechste ankommende Nachricht empfangen
                 log.debug("Auf die naechste Nachricht vom Server warten");
                 receivedPdu = receive();
-                log.debug("Nach receive Aufruf, ankommende PDU mit PduType = "
-                        + receivedPdu.getPduType());
+                if (log.isDebugEnabled()) {
+                    log.debug("Nach receive Aufruf, ankommende PDU mit PduType = "
+                            + receivedPdu.getPduType());
+                }
             } catch (Exception e) {
                 finished = true;
             }
@@ -278,11 +347,22 @@ public class AdvancedMessageListenerThreadImpl
                                 chatMessageResponseAction(receivedPdu);
                                 break;
 
+                            case DIRECT_MESSAGE_RESPONSE :
+                                // Die eigene Direktnachricht wurde vom
+                                // Empfaenger bestaetigt (oder abgelehnt)
+                                chatMessageResponseAction(receivedPdu);
+                                break;
+
                             case CHAT_MESSAGE_EVENT :
                                 // Chat-Nachricht vom Server gesendet
                                 chatMessageEventAction(receivedPdu);
                                 break;
 
+                            case DIRECT_MESSAGE_EVENT :
+                                // Direktnachricht eines anderen Users
+                                directMessageEventAction(receivedPdu);
+                                break;
+
                             case LOGIN_EVENT :
                                 // Meldung vom Server, dass sich die Liste der
                                 // angemeldeten User erweitert hat
@@ -297,6 +377,27 @@ public class AdvancedMessageListenerThreadImpl
 
                                 break;
 
+                            case ROOM_JOIN_RESPONSE :
+                            case ROOM_LEAVE_RESPONSE :
+                                // Beitritt zu oder Austritt aus einem
+                                // Chat-Raum
+                                roomResponseAction(receivedPdu);
+                                break;
+
+                            case ROOM_JOIN_EVENT :
+                            case ROOM_LEAVE_EVENT :
+                                // Mitglieder eines gemeinsamen Chat-Raums
+                                // haben sich veraendert
+                                roomEventAction(receivedPdu);
+                                break;
+
+                            case PRESENCE_SUBSCRIBE_RESPONSE :
+                            case PRESENCE_LIST_RESPONSE :
+                                // Userliste nach Abonnement bzw. auf
+                                // Anforderung
+                                presenceResponseAction(receivedPdu);
+                                break;
+
                             default :
                                 log.debug("Ankommende PDU im Zustand "
                                         + sharedClientData.status
@@ -313,6 +414,11 @@ public class AdvancedMessageListenerThreadImpl
                                 chatMessageEventAction(receivedPdu);
                                 break;
 
+                            case DIRECT_MESSAGE_EVENT :
+                                // Direktnachricht eines anderen Users
+                                directMessageEventAction(receivedPdu);
+                                break;
+
                             case LOGOUT_RESPONSE :
                                 // Bestaetigung des eigenen Logout
                                 logoutResponseAction(receivedPdu);
@@ -359,10 +465,12 @@ public class AdvancedMessageListenerThreadImpl
         } catch (Exception e) {
             ExceptionHandler.logException(e);
         }
-        log.debug(
-                "Ordnungsgemaesses Ende des AdvancedMessageListener-Threads fuer User"
-                        + sharedClientData.userName + ", Status: "
-                        + sharedClientData.status);
+        if (log.isDebugEnabled()) {
+            log.debug(
+                    "Ordnungsgemaesses Ende des AdvancedMessageListener-Threads fuer User"
+                            + sharedClientData.userName + ", Status: "
+                            + sharedClientData.status);
+        }
     }
 
 }
@@ -1,6 +1,9 @@
 package edu.hm.dako.chat.client;
 
 import java.io.IOException;
+import java.util.Vector;
+
+import edu.hm.dako.chat.common.PresenceMode;
 
 /**
  * Interface zur Kommunikation des Chat-Clients mit dem Chat-Server
@@ -38,6 +41,55 @@ public interface ClientCommunication {
 	 */
 	public void tell(String name, String text) throws IOException;
 
+	/**
+	 * Senden einer Direktnachricht an genau einen anderen User. Die Response
+	 * wird wie bei tell ueber die Sequenznummer zugeordnet.
+	 * 
+	 * @param name
+	 *          Username (Login-Kennung)
+	 * @param recipient
+	 *          Username des Empfaengers
+	 * @param text
+	 *          Chat-Nachricht
+	 */
+	public void tellDirect(String name, String recipient, String text) throws IOException;
+
+	/**
+	 * Room-Join-Request an den Server senden. Die folgenden Chat-Nachrichten
+	 * gehen nur noch an die Mitglieder dieses Raums.
+	 * 
+	 * @param room
+	 *          Name des Chat-Raums
+	 */
+	public void joinRoom(String room) throws IOException;
+
+	/**
+	 * Room-Leave-Request an den Server senden. War der Raum Ziel der
+	 * Chat-Nachrichten, gehen sie danach wieder an alle angemeldeten User.
+	 * 
+	 * @param room
+	 *          Name des Chat-Raums
+	 */
+	public void leaveRoom(String room) throws IOException;
+
+	/**
+	 * Presence-Subscribe-Request an den Server senden: Legt fest, welche
+	 * Login- und Logout-Events der Client kuenftig erhaelt.
+	 * 
+	 * @param mode
+	 *          Umfang der Events
+	 * @param users
+	 *          Abonnierte User, ersetzt die bisherigen Abonnements (null = keine)
+	 */
+	public void subscribePresence(PresenceMode mode, Vector<String> users)
+			throws IOException;
+
+	/**
+	 * Presence-List-Request an den Server senden: Fordert die vollstaendige
+	 * Liste der angemeldeten User an
+	 */
+	public void requestUserList() throws IOException;
+
 	/**
 	 * Abbruch der Verbindung zum Server
 	 */
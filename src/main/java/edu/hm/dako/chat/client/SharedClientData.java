@@ -1,5 +1,6 @@
 package edu.hm.dako.chat.client;
 
+import java.util.Vector;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.hm.dako.chat.common.ClientConversationStatus;
@@ -19,6 +20,15 @@ public class SharedClientData {
 	// Aktueller Zustand des Clients
 	public ClientConversationStatus status;
 
+	// Chat-Raeume, deren Beitritt der Server per Room-Join-Response bestaetigt
+	// hat (ein Beitritt mit dem Login-Request ist hier nicht enthalten)
+	public Vector<String> rooms = new Vector<String>();
+
+	// Angemeldete User, soweit sie der Client kennt. Im PresenceMode All
+	// ersetzt jedes Login- oder Logout-Event die Liste, sonst fuehrt der
+	// Client sie anhand der Events selbst.
+	public Vector<String> userList = new Vector<String>();
+
 	// Zaehler fuer gesendete Chat-Nachrichten des Clients
 	public AtomicInteger messageCounter;
 
@@ -32,6 +42,7 @@ public class SharedClientData {
 	public static AtomicInteger logoutEvents = new AtomicInteger(0);
 	public static AtomicInteger loginEvents = new AtomicInteger(0);
 	public static AtomicInteger messageEvents = new AtomicInteger(0);
+	public static AtomicInteger confirmEvents = new AtomicInteger(0);
 	//AL confirm counter 
 	public AtomicInteger confirmCounter = new AtomicInteger(0);
 
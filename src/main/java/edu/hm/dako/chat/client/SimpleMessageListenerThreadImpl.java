@@ -6,6 +6,7 @@ import org.apache.commons.logging.LogFactory;
 import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.PduDiagnostics;
 import edu.hm.dako.chat.connection.Connection;
 
 /**
@@ -51,20 +52,24 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 			userInterface.loginComplete();
 
 			Thread.currentThread().setName("Listener" + "-" + sharedClientData.userName);
-			log.debug(
-					"Login-Response-PDU fuer Client " + receivedPdu.getUserName() + " empfangen");
+			if (log.isDebugEnabled()) {
+				log.debug(
+						"Login-Response-PDU fuer Client " + receivedPdu.getUserName() + " empfangen");
+			}
 		}
 	}
 
 	@Override
 	protected void loginEventAction(ChatPDU receivedPdu) {
-		log.debug(receivedPdu); 
+		PduDiagnostics.dump(log, "", receivedPdu); 
 		// Eventzaehler fuer Testzwecke erhoehen
 		sharedClientData.eventCounter.getAndIncrement();
 		int events = SharedClientData.loginEvents.incrementAndGet();
 
-		log.debug(
-				sharedClientData.userName + " erhaelt LoginEvent, LoginEventCounter: " + events);
+		if (log.isDebugEnabled()) {
+			log.debug(
+					sharedClientData.userName + " erhaelt LoginEvent, LoginEventCounter: " + events);
+		}
 
 		try {
 			handleUserListEvent(receivedPdu);
@@ -76,15 +81,19 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 	@Override
 	protected void logoutResponseAction(ChatPDU receivedPdu) {
 
-		log.debug(sharedClientData.userName + " empfaengt Logout-Response-PDU fuer Client "
-				+ receivedPdu.getUserName());
+		if (log.isDebugEnabled()) {
+			log.debug(sharedClientData.userName + " empfaengt Logout-Response-PDU fuer Client "
+					+ receivedPdu.getUserName());
+		}
 		sharedClientData.status = ClientConversationStatus.UNREGISTERED;
 
 		userInterface.setSessionStatisticsCounter(sharedClientData.eventCounter.longValue(),
 				sharedClientData.confirmCounter.longValue(), 0, 0, 0);
 
-		log.debug("Vom Client gesendete Chat-Nachrichten:  "
-				+ sharedClientData.messageCounter.get());
+		if (log.isDebugEnabled()) {
+			log.debug("Vom Client gesendete Chat-Nachrichten:  "
+					+ sharedClientData.messageCounter.get());
+		}
 
 		finished = true;
 		userInterface.logoutComplete();
@@ -97,7 +106,9 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 		sharedClientData.eventCounter.getAndIncrement();
 		int events = SharedClientData.logoutEvents.incrementAndGet();
 
-		log.debug("LogoutEventCounter: " + events);
+		if (log.isDebugEnabled()) {
+			log.debug("LogoutEventCounter: " + events);
+		}
 
 		try {
 			handleUserListEvent(receivedPdu);
@@ -109,14 +120,20 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 	@Override
 	protected void chatMessageResponseAction(ChatPDU receivedPdu) {
 
-		log.debug("Sequenznummer der Chat-Response-PDU " + receivedPdu.getUserName() + ": "
-				+ receivedPdu.getSequenceNumber() + ", Messagecounter: "
-				+ sharedClientData.messageCounter.get());
+		reportChatMessageError(receivedPdu);
 
-		log.debug(Thread.currentThread().getName()
-				+ ", Benoetigte Serverzeit gleich nach Empfang der Response-Nachricht: "
-				+ receivedPdu.getServerTime() + " ns = " + receivedPdu.getServerTime() / 1000000
-				+ " ms");
+		if (log.isDebugEnabled()) {
+			log.debug("Sequenznummer der Chat-Response-PDU " + receivedPdu.getUserName() + ": "
+					+ receivedPdu.getSequenceNumber() + ", Messagecounter: "
+					+ sharedClientData.messageCounter.get());
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug(Thread.currentThread().getName()
+					+ ", Benoetigte Serverzeit gleich nach Empfang der Response-Nachricht: "
+					+ receivedPdu.getServerTime() + " ns = " + receivedPdu.getServerTime() / 1000000
+					+ " ms");
+		}
 
 		if (receivedPdu.getSequenceNumber() == sharedClientData.messageCounter.get()) {
 
@@ -127,32 +144,56 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 			// Naechste Chat-Nachricht darf eingegeben werden
 			userInterface.setLock(false);
 
-			log.debug(
-					"Chat-Response-PDU fuer Client " + receivedPdu.getUserName() + " empfangen");
+			if (log.isDebugEnabled()) {
+				log.debug(
+						"Chat-Response-PDU fuer Client " + receivedPdu.getUserName() + " empfangen");
+			}
 
 		} else {
-			log.debug("Sequenznummer der Chat-Response-PDU " + receivedPdu.getUserName()
-					+ " passt nicht: " + receivedPdu.getSequenceNumber() + "/"
-					+ sharedClientData.messageCounter.get());
+			if (log.isDebugEnabled()) {
+				log.debug("Sequenznummer der Chat-Response-PDU " + receivedPdu.getUserName()
+						+ " passt nicht: " + receivedPdu.getSequenceNumber() + "/"
+						+ sharedClientData.messageCounter.get());
+			}
 		}
 	}
 
 	@Override
 	protected void chatMessageEventAction(ChatPDU receivedPdu) {
 
-		log.debug(
-				"Chat-Message-Event-PDU von " + receivedPdu.getEventUserName() + " empfangen");
+		if (log.isDebugEnabled()) {
+			log.debug(
+					"Chat-Message-Event-PDU von " + receivedPdu.getEventUserName() + " empfangen");
+		}
 
 		// Eventzaehler fuer Testzwecke erhoehen
 		sharedClientData.eventCounter.getAndIncrement();
 		int events = SharedClientData.messageEvents.incrementAndGet();
 
-		log.debug("MessageEventCounter: " + events);
+		if (log.isDebugEnabled()) {
+			log.debug("MessageEventCounter: " + events);
+		}
 
 		// Empfangene Chat-Nachricht an User Interface zur
 		// Darstellung uebergeben
 		userInterface.setMessageLine(receivedPdu.getEventUserName(),
-				(String) receivedPdu.getMessage());
+				receivedPdu.getMessage());
+	}
+
+	/**
+	 * Direktnachricht empfangen und anzeigen (ohne Confirm)
+	 * 
+	 * @param receivedPdu
+	 *          Empfangene Direct-Message-Event-PDU
+	 */
+	protected void directMessageEventAction(ChatPDU receivedPdu) {
+
+		// Eventzaehler fuer Testzwecke erhoehen
+		sharedClientData.eventCounter.getAndIncrement();
+		SharedClientData.messageEvents.incrementAndGet();
+
+		userInterface.setMessageLine(receivedPdu.getEventUserName() + " (direkt)",
+				receivedPdu.getMessage());
 	}
 
 	/**
@@ -170,8 +211,10 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 				// Naechste ankommende Nachricht empfangen
 				log.debug("Auf die naechste Nachricht vom Server warten");
 				receivedPdu = receive();
-				log.debug("Nach receive Aufruf, ankommende PDU mit PduType = "
-						+ receivedPdu.getPduType());
+				if (log.isDebugEnabled()) {
+					log.debug("Nach receive Aufruf, ankommende PDU mit PduType = "
+							+ receivedPdu.getPduType());
+				}
 			} catch (Exception e) {
 				finished = true;
 			}
@@ -224,6 +267,17 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 						// Server bestaetigt.
 						chatMessageResponseAction(receivedPdu);
 						break;
+
+					case DIRECT_MESSAGE_RESPONSE:
+						// Die eigene Direktnachricht wurde vom Server zugestellt
+						// (oder abgelehnt)
+						chatMessageResponseAction(receivedPdu);
+						break;
+
+					case DIRECT_MESSAGE_EVENT:
+						// Direktnachricht eines anderen Users
+						directMessageEventAction(receivedPdu);
+						break;
 					
 
 					case CHAT_MESSAGE_EVENT:
@@ -246,6 +300,25 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 
 						break;
 
+					case ROOM_JOIN_RESPONSE:
+					case ROOM_LEAVE_RESPONSE:
+						// Beitritt zu oder Austritt aus einem Chat-Raum
+						roomResponseAction(receivedPdu);
+						break;
+
+					case ROOM_JOIN_EVENT:
+					case ROOM_LEAVE_EVENT:
+						// Mitglieder eines gemeinsamen Chat-Raums haben sich
+						// veraendert
+						roomEventAction(receivedPdu);
+						break;
+
+					case PRESENCE_SUBSCRIBE_RESPONSE:
+					case PRESENCE_LIST_RESPONSE:
+						// Userliste nach Abonnement bzw. auf Anforderung
+						presenceResponseAction(receivedPdu);
+						break;
+
 					default:
 						log.debug("Ankommende PDU im Zustand " + sharedClientData.status
 								+ " wird verworfen");
@@ -261,6 +334,11 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 						chatMessageEventAction(receivedPdu);
 						break;
 
+					case DIRECT_MESSAGE_EVENT:
+						// Direktnachricht eines anderen Users
+						directMessageEventAction(receivedPdu);
+						break;
+
 					case LOGOUT_RESPONSE:
 						// Bestaetigung des eigenen Logout
 						logoutResponseAction(receivedPdu);
@@ -305,8 +383,10 @@ public class SimpleMessageListenerThreadImpl extends AbstractMessageListenerThre
 		} catch (Exception e) {
 			ExceptionHandler.logException(e);
 		}
-		log.debug("Ordnungsgemaesses Ende des SimpleMessageListener-Threads fuer User"
-				+ sharedClientData.userName + ", Status: " + sharedClientData.status);
+		if (log.isDebugEnabled()) {
+			log.debug("Ordnungsgemaesses Ende des SimpleMessageListener-Threads fuer User"
+					+ sharedClientData.userName + ", Status: " + sharedClientData.status);
+		}
 	} // run
 
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package edu.hm.dako.chat.common;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Vector;
 
 import org.apache.commons.logging.Log;
@@ -54,10 +55,36 @@ public class ChatPDU implements Serializable {
 	// Conversation-Status aus Sicht des Servers
 	private ClientConversationStatus clientStatus;
 
-	// Fehlercode, derzeit nur 1 Fehlercode definiert
+	// Bearbeitungszeiten des Requests je Stufe in ns (Index =
+	// ServerStage.ordinal()), nur in der Chat-Message-Response und nur, wenn
+	// der Server sie zurueckgibt, sonst null
+	private long[] stageTimes;
+
+	// Zustellgarantie fuer eine Chat-Nachricht (null = Vorgabe des Servers).
+	// Der Server traegt die angewandte Zustellgarantie in die
+	// Chat-Message-Response ein.
+	private DeliveryGuarantee deliveryGuarantee;
+
+	// Anzahl der benoetigten Confirms bei DeliveryGuarantee.Quorum
+	private int deliveryQuorum;
+
+	// Chat-Raum, auf den sich die PDU bezieht (null = alle angemeldeten User).
+	// Im Login-Request tritt der Client damit gleich beim Anmelden dem Raum bei.
+	private String room;
+
+	// Empfaenger einer Direktnachricht (nur Direct-Message-PDUs)
+	private String recipient;
+
+	// Umfang der Login- und Logout-Events, die der Client erhalten moechte
+	// (null = keine Aenderung). Die abonnierten User stehen in clients.
+	private PresenceMode presenceMode;
+
+	// Fehlercode
 	private int errorCode;
 	public final static int NO_ERROR = 0;
 	public final static int LOGIN_ERROR = 1;
+	public final static int ROOM_ERROR = 2;
+	public final static int RECIPIENT_ERROR = 3;
 
 	// Daten zur statistischen Auswertung, die mit der Logout-Response-PDU
 	// mitgesendet werden:
@@ -79,6 +106,14 @@ public class ChatPDU implements Serializable {
 	private long numberOfRetries;
 
 	public ChatPDU() {
+		reset();
+	}
+
+	/**
+	 * Alle Felder auf die Anfangswerte zuruecksetzen, damit die PDU
+	 * wiederverwendet werden kann (siehe {@link ChatPduRecycler})
+	 */
+	public void reset() {
 		pduType = PduType.UNDEFINED;
 		userName = null;
 		eventUserName = null;
@@ -89,6 +124,12 @@ public class ChatPDU implements Serializable {
 		message = null;
 		serverTime = 0;
 		clients = null;
+		stageTimes = null;
+		deliveryGuarantee = null;
+		deliveryQuorum = 0;
+		room = null;
+		recipient = null;
+		presenceMode = null;
 		clientStatus = ClientConversationStatus.UNREGISTERED;
 		numberOfReceivedChatMessages = 0;
 		numberOfSentEvents = 0;
@@ -119,13 +160,27 @@ public class ChatPDU implements Serializable {
 				+ "numberOfReceivedChatMessages: " + this.numberOfReceivedChatMessages + ", " + "\n"
 				+ "numberOfSentEvents: " + this.numberOfSentEvents + ", " + "\n" + "numberOfLostConfirms: "
 				+ this.numberOfLostConfirms + ", " + "\n" + "numberOfRetries: " + this.numberOfRetries + "\n"
+				+ "stageTimes: " + Arrays.toString(this.stageTimes) + "\n"
+				+ "deliveryGuarantee: " + this.deliveryGuarantee + ", " + "deliveryQuorum: "
+				+ this.deliveryQuorum + "\n" + "room: " + this.room + ", " + "recipient: " + this.recipient + "\n"
+				+ "presenceMode: " + this.presenceMode + "\n"
 				+ "clients (Userliste): " + this.clients + ", " + "\n" + "message: " + this.message + "\n"
 				+ "**************************************************************************************************** ChatPdu"
 				+ "\n";
 	}
 
+	/**
+	 * Neue oder wiederverwendete PDU beschaffen
+	 */
+	private static ChatPDU newPdu(ChatPduRecycler recycler, PduType pduType) {
+		if (recycler == null) {
+			return new ChatPDU();
+		}
+		return recycler.obtain(pduType);
+	}
+
 	public static void printPdu(ChatPDU pdu) {
-		log.debug(pdu);
+		PduDiagnostics.dump(log, "", pdu);
 	}
 
 	public void setClients(Vector<String> clients) {
@@ -240,6 +295,54 @@ public class ChatPDU implements Serializable {
 		this.numberOfRetries = nr;
 	}
 
+	public long[] getStageTimes() {
+		return (stageTimes);
+	}
+
+	public void setStageTimes(long[] stageTimes) {
+		this.stageTimes = stageTimes;
+	}
+
+	public DeliveryGuarantee getDeliveryGuarantee() {
+		return (deliveryGuarantee);
+	}
+
+	public void setDeliveryGuarantee(DeliveryGuarantee deliveryGuarantee) {
+		this.deliveryGuarantee = deliveryGuarantee;
+	}
+
+	public int getDeliveryQuorum() {
+		return (deliveryQuorum);
+	}
+
+	public void setDeliveryQuorum(int deliveryQuorum) {
+		this.deliveryQuorum = deliveryQuorum;
+	}
+
+	public String getRoom() {
+		return (room);
+	}
+
+	public void setRoom(String room) {
+		this.room = room;
+	}
+
+	public String getRecipient() {
+		return (recipient);
+	}
+
+	public void setRecipient(String recipient) {
+		this.recipient = recipient;
+	}
+
+	public PresenceMode getPresenceMode() {
+		return (presenceMode);
+	}
+
+	public void setPresenceMode(PresenceMode presenceMode) {
+		this.presenceMode = presenceMode;
+	}
+
 	public long getNumberOfReceivedChatMessages() {
 		return (numberOfReceivedChatMessages);
 	}
@@ -315,11 +418,26 @@ public class ChatPDU implements Serializable {
 	 * @return Erzeugte PDU
 	 */
 	public static ChatPDU createLoginResponsePdu(String eventInitiator, ChatPDU receivedPdu) {
+		return createLoginResponsePdu(eventInitiator, receivedPdu.getClientThreadName());
+	}
+
+	/**
+	 * Erzeugen einer Login-Response-PDU ohne empfangene PDU (z.B. nach Ablauf
+	 * der Confirm-Frist)
+	 * 
+	 * @param eventInitiator
+	 *            Urspruenglicher Client, der Login-Request-PDU gesendet hat
+	 * @param clientThreadName
+	 *            Name des Client-Threads aus dem Login-Request
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createLoginResponsePdu(String eventInitiator,
+			String clientThreadName) {
 
 		ChatPDU pdu = new ChatPDU();
 		pdu.setPduType(PduType.LOGIN_RESPONSE);
 		pdu.setServerThreadName(Thread.currentThread().getName());
-		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setClientThreadName(clientThreadName);
 		pdu.setUserName(eventInitiator);
 		pdu.setEventUserName(eventInitiator); // EventUserName setzten
 		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
@@ -336,8 +454,24 @@ public class ChatPDU implements Serializable {
 	 * @return Erzeugte PDU
 	 */
 	public static ChatPDU createChatMessageEventPdu(String userName, ChatPDU receivedPdu) {
+		return createChatMessageEventPdu(null, userName, receivedPdu);
+	}
 
-		ChatPDU pdu = new ChatPDU();
+	/**
+	 * Erzeugen einer Chat-Message-Event-PDU ueber einen Recycler
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @param userName
+	 *            Client, der Chat-Message-Request-PDU gesendet hat
+	 * @param receivedPdu
+	 *            (Chat-Message-Request-PDU)
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createChatMessageEventPdu(ChatPduRecycler recycler, String userName,
+			ChatPDU receivedPdu) {
+
+		ChatPDU pdu = newPdu(recycler, PduType.CHAT_MESSAGE_EVENT);
 		pdu.setPduType(PduType.CHAT_MESSAGE_EVENT);
 		pdu.setServerThreadName(Thread.currentThread().getName());
 		pdu.setClientThreadName(receivedPdu.getClientThreadName());
@@ -346,6 +480,202 @@ public class ChatPDU implements Serializable {
 		pdu.setSequenceNumber(receivedPdu.getSequenceNumber());
 		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
 		pdu.setMessage(receivedPdu.getMessage());
+		pdu.setRoom(receivedPdu.getRoom());
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Direct-Message-Event-PDU fuer den Empfaenger einer
+	 * Direktnachricht
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @param receivedPdu
+	 *            Empfangene PDU (Direct-Message-Request-PDU)
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createDirectMessageEventPdu(ChatPduRecycler recycler,
+			ChatPDU receivedPdu) {
+
+		ChatPDU pdu = newPdu(recycler, PduType.DIRECT_MESSAGE_EVENT);
+		pdu.setPduType(PduType.DIRECT_MESSAGE_EVENT);
+		pdu.setServerThreadName(Thread.currentThread().getName());
+		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setUserName(receivedPdu.getRecipient());
+		pdu.setEventUserName(receivedPdu.getUserName());
+		pdu.setRecipient(receivedPdu.getRecipient());
+		pdu.setSequenceNumber(receivedPdu.getSequenceNumber());
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+		pdu.setMessage(receivedPdu.getMessage());
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Direct-Message-Confirm-PDU
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @param username
+	 *            Login-Namen des Empfaengers
+	 * @param receivedPdu
+	 *            Empfangene PDU (Direct-Message-Event-PDU)
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createDirectMessageConfirmPdu(ChatPduRecycler recycler,
+			String username, ChatPDU receivedPdu) {
+
+		ChatPDU pdu = newPdu(recycler, PduType.DIRECT_MESSAGE_CONFIRM);
+		pdu.setPduType(PduType.DIRECT_MESSAGE_CONFIRM);
+		pdu.setSequenceNumber(receivedPdu.getSequenceNumber());
+		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setServerThreadName(receivedPdu.getServerThreadName());
+		pdu.setUserName(username);
+		pdu.setEventUserName(receivedPdu.getEventUserName());
+		pdu.setRecipient(username);
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Direct-Message-Response-PDU fuer den Absender einer
+	 * Direktnachricht
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @param eventInitiator
+	 *            Absender der Direktnachricht
+	 * @param recipient
+	 *            Empfaenger der Direktnachricht
+	 * @param numberOfLostEventConfirms
+	 *            1, wenn das Confirm des Empfaengers nicht rechtzeitig kam
+	 * @param numberOfReceivedChatMessages
+	 *            Anzahl empfangener Chat- und Direktnachrichten des Absenders
+	 * @param clientThreadName
+	 *            Name des Client-Threads aus dem Request
+	 * @param serverTime
+	 *            Requestbearbeitungszeit im Server
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createDirectMessageResponsePdu(ChatPduRecycler recycler,
+			String eventInitiator, String recipient, long numberOfLostEventConfirms,
+			long numberOfReceivedChatMessages, String clientThreadName, long serverTime) {
+
+		ChatPDU pdu = newPdu(recycler, PduType.DIRECT_MESSAGE_RESPONSE);
+		pdu.setPduType(PduType.DIRECT_MESSAGE_RESPONSE);
+		pdu.setServerThreadName(Thread.currentThread().getName());
+		pdu.setClientThreadName(clientThreadName);
+		pdu.setUserName(eventInitiator);
+		pdu.setEventUserName(eventInitiator);
+		pdu.setRecipient(recipient);
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+		pdu.setSequenceNumber(numberOfReceivedChatMessages);
+		pdu.setNumberOfReceivedChatMessages(numberOfReceivedChatMessages);
+		pdu.setNumberOfLostEventConfirms(numberOfLostEventConfirms);
+		pdu.setServerTime(serverTime);
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Room-Join- oder Room-Leave-Response-PDU
+	 * 
+	 * @param pduType
+	 *            ROOM_JOIN_RESPONSE oder ROOM_LEAVE_RESPONSE
+	 * @param members
+	 *            Mitglieder des Raums nach dem Beitritt bzw. Austritt
+	 * @param errorCode
+	 *            NO_ERROR oder ROOM_ERROR
+	 * @param receivedPdu
+	 *            Empfangene PDU (Room-Join- oder Room-Leave-Request-PDU)
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createRoomResponsePdu(PduType pduType, Vector<String> members,
+			int errorCode, ChatPDU receivedPdu) {
+
+		ChatPDU pdu = new ChatPDU();
+		pdu.setPduType(pduType);
+		pdu.setServerThreadName(Thread.currentThread().getName());
+		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setUserName(receivedPdu.getUserName());
+		pdu.setEventUserName(receivedPdu.getUserName());
+		pdu.setRoom(receivedPdu.getRoom());
+		pdu.setClients(members);
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+		pdu.setErrorCode(errorCode);
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Room-Join- oder Room-Leave-Event-PDU fuer die Mitglieder
+	 * eines Raums. Die Events werden nicht bestaetigt.
+	 * 
+	 * @param pduType
+	 *            ROOM_JOIN_EVENT oder ROOM_LEAVE_EVENT
+	 * @param members
+	 *            Mitglieder des Raums nach dem Beitritt bzw. Austritt
+	 * @param receivedPdu
+	 *            Empfangene PDU (Room-Join- oder Room-Leave-Request-PDU)
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createRoomEventPdu(PduType pduType, Vector<String> members,
+			ChatPDU receivedPdu) {
+
+		ChatPDU pdu = new ChatPDU();
+		pdu.setPduType(pduType);
+		pdu.setServerThreadName(Thread.currentThread().getName());
+		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setUserName(receivedPdu.getUserName());
+		pdu.setEventUserName(receivedPdu.getUserName());
+		pdu.setRoom(receivedPdu.getRoom());
+		pdu.setClients(members);
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Login- oder Logout-Event-PDU ohne Userliste fuer Clients,
+	 * die nicht im PresenceMode All sind. Sie aktualisieren ihre Userliste
+	 * anhand des Event-Users selbst.
+	 * 
+	 * @param eventPdu
+	 *            Login- oder Logout-Event-PDU mit Userliste
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createPresenceDeltaPdu(ChatPDU eventPdu) {
+
+		ChatPDU pdu = new ChatPDU();
+		pdu.setPduType(eventPdu.getPduType());
+		pdu.setServerThreadName(eventPdu.getServerThreadName());
+		pdu.setClientThreadName(eventPdu.getClientThreadName());
+		pdu.setUserName(eventPdu.getUserName());
+		pdu.setEventUserName(eventPdu.getEventUserName());
+		pdu.setClientStatus(eventPdu.getClientStatus());
+		return pdu;
+	}
+
+	/**
+	 * Erzeugen einer Presence-Subscribe- oder Presence-List-Response-PDU
+	 * 
+	 * @param pduType
+	 *            PRESENCE_SUBSCRIBE_RESPONSE oder PRESENCE_LIST_RESPONSE
+	 * @param userList
+	 *            Angemeldete User, deren Events der Client nun erhaelt, bzw.
+	 *            alle angemeldeten User
+	 * @param receivedPdu
+	 *            Empfangene Request-PDU
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createPresenceResponsePdu(PduType pduType, Vector<String> userList,
+			ChatPDU receivedPdu) {
+
+		ChatPDU pdu = new ChatPDU();
+		pdu.setPduType(pduType);
+		pdu.setServerThreadName(Thread.currentThread().getName());
+		pdu.setClientThreadName(receivedPdu.getClientThreadName());
+		pdu.setUserName(receivedPdu.getUserName());
+		pdu.setEventUserName(receivedPdu.getUserName());
+		pdu.setPresenceMode(receivedPdu.getPresenceMode());
+		pdu.setClients(userList);
+		pdu.setClientStatus(ClientConversationStatus.REGISTERED);
 		return pdu;
 	}
 
@@ -410,12 +740,30 @@ public class ChatPDU implements Serializable {
 	public static ChatPDU createChatMessageResponsePdu(String eventInitiator, long numberOfSentEvents,
 			long numberOfLostEventConfirms, long numberOfReceivedEventConfirms, long numberOfRetries,
 			long numberOfReceivedChatMessages, String clientThreadName, long serverTime) {
+		return createChatMessageResponsePdu(null, eventInitiator, numberOfSentEvents,
+				numberOfLostEventConfirms, numberOfReceivedEventConfirms, numberOfRetries,
+				numberOfReceivedChatMessages, clientThreadName, serverTime);
+	}
+
+	/**
+	 * Erzeugen einer Chat-Message-Response-PDU ueber einen Recycler
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @return Erzeugte PDU
+	 * @see #createChatMessageResponsePdu(String, long, long, long, long, long,
+	 *      String, long)
+	 */
+	public static ChatPDU createChatMessageResponsePdu(ChatPduRecycler recycler,
+			String eventInitiator, long numberOfSentEvents, long numberOfLostEventConfirms,
+			long numberOfReceivedEventConfirms, long numberOfRetries,
+			long numberOfReceivedChatMessages, String clientThreadName, long serverTime) {
 		// Um Nachricht in ResponsePdu anzeigen zu lassen msste man die receivedPdu als
 		// Parameter mitgeben. Dann wren aber nderungen im SimpleChatWorkerThreadImpl
 		// und AdvancedChatWorkerThreadImpl bei der Erstellung von der ResponsePdu
 		// ntig. Da man keine nderungen im Simple vornehmen soll haben wir das hier nur auskommentiert.
 
-		ChatPDU pdu = new ChatPDU();
+		ChatPDU pdu = newPdu(recycler, PduType.CHAT_MESSAGE_RESPONSE);
 		pdu.setPduType(PduType.CHAT_MESSAGE_RESPONSE);
 		pdu.setServerThreadName(Thread.currentThread().getName());
 
@@ -472,8 +820,25 @@ public class ChatPDU implements Serializable {
 	 * @return Erzeugte PDU
 	 */
 	public static ChatPDU createMessageConfirmPdu(String username, ChatPDU receivedPdu) {
-		ChatPDU pdu = new ChatPDU();
+		return createMessageConfirmPdu(null, username, receivedPdu);
+	}
+
+	/**
+	 * Erzeugen einer Chat-Message-Confirm-PDU ueber einen Recycler
+	 * 
+	 * @param recycler
+	 *            Recycler des sendenden Threads, null = neue PDU erzeugen
+	 * @param username
+	 *            Login-Namen des Clients
+	 * @param receivedPdu
+	 *            empfangene PDU
+	 * @return Erzeugte PDU
+	 */
+	public static ChatPDU createMessageConfirmPdu(ChatPduRecycler recycler, String username,
+			ChatPDU receivedPdu) {
+		ChatPDU pdu = newPdu(recycler, PduType.CHAT_MESSAGE_CONFIRM);
 		pdu.setPduType(PduType.CHAT_MESSAGE_CONFIRM);
+		pdu.setSequenceNumber(receivedPdu.getSequenceNumber());
 		pdu.setClientThreadName(Thread.currentThread().getName());
 		pdu.setServerThreadName(receivedPdu.getServerThreadName());
 		pdu.setUserName(username);
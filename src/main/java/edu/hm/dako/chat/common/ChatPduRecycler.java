@@ -0,0 +1,70 @@
+package edu.hm.dako.chat.common;
+
+/**
+ * Wiederverwendung von Sende-PDUs innerhalb eines Threads.
+ * <p/>
+ * Jeder Worker-Thread im Server und jeder Message-Listener-Thread im Client
+ * besitzt einen eigenen Recycler. Fuer jeden PDU-Typ wird genau eine PDU
+ * vorgehalten, die bei jeder Anforderung zurueckgesetzt und neu befuellt wird.
+ * Damit entfallen auf dem Fan-out-Pfad (Chat-Event, Confirm, Response) die
+ * PDU-Allokationen im eingeschwungenen Zustand.
+ * <p/>
+ * Regeln fuer den Besitz einer PDU:
+ * <p/>
+ * - Eine ueber {@link #obtain(PduType)} gelieferte PDU gehoert dem Thread, dem
+ * der Recycler gehoert. Sie darf nicht in Listen abgelegt oder an andere
+ * Threads weitergegeben werden.
+ * <p/>
+ * - Die PDU ist nur bis zur naechsten Anforderung desselben Typs gueltig.
+ * Danach wird sie ueberschrieben.
+ * <p/>
+ * - Sie darf wiederverwendet werden, sobald
+ * {@link edu.hm.dako.chat.connection.Connection#send(java.io.Serializable)}
+ * zurueckgekehrt ist. Jede Connection-Implementierung muss die Nachricht daher
+ * vor der Rueckkehr vollstaendig serialisieren oder kopieren, auch wenn sie
+ * asynchron sendet (TcpConnection serialisiert synchron).
+ * <p/>
+ * - Empfangene PDUs werden nie recycelt, sie gehoeren dem Empfaenger.
+ * <p/>
+ * Das Recycling kann mit der System-Property chat.pduRecycling=false
+ * abgeschaltet werden, dann wird wie bisher jede PDU neu erzeugt.
+ *
+ * @author Mandl
+ */
+public class ChatPduRecycler {
+
+	// Recycling global ein- oder ausgeschaltet
+	private static final boolean ENABLED = Boolean
+			.parseBoolean(System.getProperty("chat.pduRecycling", "true"));
+
+	// Je PDU-Typ eine wiederverwendbare PDU
+	private final ChatPDU[] pdus = new ChatPDU[PduType.values().length];
+
+	/**
+	 * Liefert eine leere PDU fuer den angegebenen Typ
+	 *
+	 * @param pduType
+	 *          Typ der PDU
+	 * @return Zurueckgesetzte PDU, bei abgeschaltetem Recycling eine neue PDU
+	 */
+	public ChatPDU obtain(PduType pduType) {
+		if (!ENABLED) {
+			return new ChatPDU();
+		}
+		ChatPDU pdu = pdus[pduType.ordinal()];
+		if (pdu == null) {
+			pdu = new ChatPDU();
+			pdus[pduType.ordinal()] = pdu;
+		} else {
+			pdu.reset();
+		}
+		return pdu;
+	}
+
+	/**
+	 * @return true, falls PDUs wiederverwendet werden
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+}
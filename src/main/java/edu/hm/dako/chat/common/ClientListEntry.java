@@ -1,6 +1,12 @@
 package edu.hm.dako.chat.common;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -46,9 +52,14 @@ public class ClientListEntry {
 	// LogoutConfirm) fuer den Client
 	private long numberOfReceivedEventConfirms;
 
-	// Anzahl nicht erhaltener Bestaetigungen (derzeit nicht genutzt)
+	// Anzahl der Bestaetigungen fuer Events des Clients, die bis zum Ablauf der
+	// Confirm-Frist nicht eingetroffen sind
 	private long numberOfLostEventConfirms;
 
+	// Anzahl der Events anderer Clients, die dieser Client nicht rechtzeitig
+	// bestaetigt hat
+	private long numberOfMissedEventConfirms;
+
 	// Anzahl an Nachrichtenwiederholungen (derzeit nicht genutzt)
 	private long numberOfRetries;
 
@@ -56,6 +67,84 @@ public class ClientListEntry {
 	// einen konkret laufenden Request gesendet haben
 	private Vector<String> waitList;
 
+	// Kennung der aktuellen Warteliste (wird mit jeder neuen Warteliste erhoeht)
+	private long waitListId;
+
+	// Sequenznummer des Requests, zu dem die aktuelle Warteliste gehoert (Login
+	// und Logout: 0). Confirms mit anderer Sequenznummer gehoeren zu einem
+	// frueheren Request.
+	private long waitListSequenceNumber;
+
+	// true, solange fuer die aktuelle Warteliste noch keine Response gesendet
+	// wurde
+	private boolean waitListOpen;
+
+	// Eingeplanter Ablauf der Confirm-Frist der aktuellen Warteliste
+	private ScheduledFuture<?> confirmDeadline;
+
+	// Wartelisten frueherer Requests je Sequenznummer, deren Response bereits
+	// gesendet wurde (FireAndForget, Quorum), fuer die aber noch Confirms
+	// ausstehen. Sie bleiben bis zum Ablauf ihrer Confirm-Frist erhalten, erst
+	// dann zaehlen die fehlenden Confirms als verloren.
+	private final HashMap<Long, PreviousWaitList> previousWaitLists = new HashMap<Long, PreviousWaitList>();
+
+	private static final class PreviousWaitList {
+		// Kennung der Warteliste, fuer die die Frist eingeplant wurde
+		final long id;
+		final Vector<String> entries;
+		final ScheduledFuture<?> deadline;
+
+		PreviousWaitList(long id, Vector<String> entries, ScheduledFuture<?> deadline) {
+			this.id = id;
+			this.entries = entries;
+			this.deadline = deadline;
+		}
+	}
+
+	// Typ der Response, die nach Abschluss der aktuellen Warteliste gesendet
+	// wird, und Name des Client-Threads aus dem zugehoerigen Request
+	private PduType pendingResponseType;
+	private String pendingResponseThreadName;
+
+	// Zustellgarantie des laufenden Requests und Anzahl der Eintraege, die
+	// beim Senden der Response hoechstens noch in der Warteliste stehen duerfen
+	// (beim Quorum ohne den eigenen Eintrag des anfragenden Clients)
+	private DeliveryGuarantee deliveryGuarantee = DeliveryGuarantee.All;
+	private int deliveryQuorum;
+	private int pendingConfirmsLimit;
+
+	// Zeitpunkt, zu dem die Verteilung des laufenden Requests beendet war (0 =
+	// Verteilung laeuft noch)
+	private long fanOutEndTime;
+
+	// Bearbeitungszeiten des laufenden Requests je Stufe in ns
+	private final long[] stageTimes = new long[ServerStage.values().length];
+
+	// Sequenznummer der laufenden Direktnachricht des Clients, deren Confirm
+	// noch aussteht (0 = keine), und eingeplanter Ablauf ihrer Confirm-Frist
+	private long pendingDirectMessage;
+	private ScheduledFuture<?> directMessageDeadline;
+
+	// Chat-Raeume, in denen der Client Mitglied ist (Gegenstueck zum Index
+	// Raum -> Mitglieder in der Clientliste)
+	private final Set<String> rooms = new HashSet<String>();
+
+	// Umfang der Login- und Logout-Events fuer den Client und die User, deren
+	// Events er abonniert hat (Gegenstueck zum Abonnenten-Index in der
+	// Clientliste)
+	private PresenceMode presenceMode = PresenceMode.All;
+	private final Set<String> presenceSubscriptions = new HashSet<String>();
+
+	// Partition der Clientliste, unter deren Sperre die Warteliste des Clients
+	// bearbeitet wird (wird beim Eintragen in die Clientliste festgelegt)
+	private int shard;
+
+	// Anzahl der Wartelisten (anderer Clients oder der eigenen), in denen der
+	// Client steht, und Kennzeichen, dass er aus der Clientliste entfernt wird.
+	// Beides wird gemeinsam unter dem Monitor des Eintrags geaendert.
+	private int waitListReferences;
+	private boolean removed;
+
 	public ClientListEntry(String userName, Connection con) {
 		this.userName = userName;
 		this.con = con;
@@ -121,6 +210,110 @@ public class ClientListEntry {
 		return (startTime);
 	}
 
+	public synchronized void setFanOutEndTime(long fanOutEndTime) {
+		this.fanOutEndTime = fanOutEndTime;
+	}
+
+	public synchronized long getFanOutEndTime() {
+		return (fanOutEndTime);
+	}
+
+	public synchronized void setStageTime(ServerStage stage, long nanos) {
+		stageTimes[stage.ordinal()] = nanos;
+	}
+
+	/**
+	 * Bearbeitungszeiten des laufenden Requests loeschen
+	 */
+	public synchronized void clearStageTimes() {
+		for (int i = 0; i < stageTimes.length; i++) {
+			stageTimes[i] = 0;
+		}
+		fanOutEndTime = 0;
+	}
+
+	/**
+	 * @return Kopie der Bearbeitungszeiten des laufenden Requests in ns, Index =
+	 *         ServerStage.ordinal()
+	 */
+	public synchronized long[] getStageTimes() {
+		return stageTimes.clone();
+	}
+
+	/**
+	 * Raum in die Raumliste des Clients aufnehmen
+	 * 
+	 * @param room
+	 *          Name des Raums
+	 * @return true, wenn der Client noch nicht Mitglied war
+	 */
+	public synchronized boolean addRoom(String room) {
+		return rooms.add(room);
+	}
+
+	/**
+	 * Raum aus der Raumliste des Clients entfernen
+	 * 
+	 * @param room
+	 *          Name des Raums
+	 * @return true, wenn der Client Mitglied war
+	 */
+	public synchronized boolean removeRoom(String room) {
+		return rooms.remove(room);
+	}
+
+	public synchronized boolean isInRoom(String room) {
+		return rooms.contains(room);
+	}
+
+	public synchronized boolean hasRooms() {
+		return !rooms.isEmpty();
+	}
+
+	/**
+	 * @return Kopie der Raumliste des Clients
+	 */
+	public synchronized Set<String> getRooms() {
+		return new HashSet<String>(rooms);
+	}
+
+	public synchronized int getShard() {
+		return shard;
+	}
+
+	public synchronized void setShard(int shard) {
+		this.shard = shard;
+	}
+
+	public synchronized PresenceMode getPresenceMode() {
+		return presenceMode;
+	}
+
+	public synchronized void setPresenceMode(PresenceMode presenceMode) {
+		this.presenceMode = presenceMode;
+	}
+
+	/**
+	 * Abonnierte User ersetzen
+	 * 
+	 * @param users
+	 *          Neue abonnierte User
+	 * @return Bisher abonnierte User
+	 */
+	public synchronized Set<String> replacePresenceSubscriptions(Collection<String> users) {
+		Set<String> previous = new HashSet<String>(presenceSubscriptions);
+		presenceSubscriptions.clear();
+		presenceSubscriptions.addAll(users);
+		return previous;
+	}
+
+	/**
+	 * @return Kopie der abonnierten User
+	 */
+	public synchronized Set<String> getPresenceSubscriptions() {
+		return new HashSet<String>(presenceSubscriptions);
+	}
+
 	public synchronized void setNumberOfReceivedChatMessages(long nr) {
 		this.numberOfReceivedChatMessages = nr;
 	}
@@ -169,6 +362,20 @@ public class ClientListEntry {
 		this.status = status;
 	}
 
+	/**
+	 * Status nur aendern, wenn der Client im erwarteten Status ist
+	 *
+	 * @return true, wenn der Status geaendert wurde
+	 */
+	public synchronized boolean compareAndSetStatus(ClientConversationStatus expected,
+			ClientConversationStatus newStatus) {
+		if (status != expected) {
+			return false;
+		}
+		status = newStatus;
+		return true;
+	}
+
 	public synchronized boolean isFinished() {
 		return finished;
 	}
@@ -189,6 +396,14 @@ public class ClientListEntry {
 		this.numberOfLostEventConfirms++;
 	}
 
+	public synchronized void incrNumberOfMissedEventConfirms() {
+		this.numberOfMissedEventConfirms++;
+	}
+
+	public synchronized long getNumberOfMissedEventConfirms() {
+		return (numberOfMissedEventConfirms);
+	}
+
 	public synchronized void incrNumberOfReceivedChatMessages() {
 		this.numberOfReceivedChatMessages++;
 	}
@@ -199,12 +414,16 @@ public class ClientListEntry {
 
 	public synchronized void setWaitList(Vector<String> list) {
 		this.waitList = list;
-		log.debug("Warteliste von " + this.userName + ": " + waitList);
+		if (log.isDebugEnabled()) {
+			log.debug("Warteliste von " + this.userName + ": " + waitList);
+		}
 	}
 
 	public synchronized void addWaitListEntry(String userName) {
 		this.waitList.add(userName);
-		log.debug("Warteliste von " + this.userName + " ergaenzt um " + userName);
+		if (log.isDebugEnabled()) {
+			log.debug("Warteliste von " + this.userName + " ergaenzt um " + userName);
+		}
 	}
 
 	public synchronized Vector<String> getWaitList() {
@@ -214,4 +433,352 @@ public class ClientListEntry {
 	public synchronized void clearWaitList() {
 		waitList.clear();
 	}
+
+	/**
+	 * Eintrag des Clients in die Warteliste eines Clients zaehlen
+	 *
+	 * @return false, wenn der Client bereits aus der Clientliste entfernt wird
+	 *         und nicht mehr eingetragen werden darf
+	 */
+	public synchronized boolean acquireWaitListReference() {
+		if (removed) {
+			return false;
+		}
+		waitListReferences++;
+		return true;
+	}
+
+	/**
+	 * Austragen des Clients aus der Warteliste eines Clients zaehlen
+	 */
+	public synchronized void releaseWaitListReference() {
+		if (waitListReferences > 0) {
+			waitListReferences--;
+		}
+	}
+
+	public synchronized int getWaitListReferences() {
+		return waitListReferences;
+	}
+
+	/**
+	 * Client zum Entfernen aus der Clientliste vormerken. Danach wird er in
+	 * keine Warteliste mehr eingetragen.
+	 *
+	 * @param force
+	 *          true: auch vormerken, wenn er noch in Wartelisten steht
+	 * @return true, wenn der Client entfernt werden darf
+	 */
+	public synchronized boolean markRemoved(boolean force) {
+		if (!force && (waitListReferences > 0)) {
+			return false;
+		}
+		removed = true;
+		return true;
+	}
+
+	/**
+	 * Neue Warteliste eroeffnen. Die bisherigen Eintraege werden verworfen, eine
+	 * noch laufende Confirm-Frist wird abgebrochen (vorher ggf. mit
+	 * {@link #retireWaitList()} aufbewahren).
+	 *
+	 * @param sequenceNumber
+	 *          Sequenznummer des Requests, zu dem die Warteliste gehoert
+	 * @return Kennung der neuen Warteliste
+	 */
+	public synchronized long openWaitList(long sequenceNumber) {
+		waitList.clear();
+		waitListOpen = true;
+		cancelConfirmDeadline();
+		waitListSequenceNumber = sequenceNumber;
+		deliveryGuarantee = DeliveryGuarantee.All;
+		deliveryQuorum = 0;
+		pendingConfirmsLimit = 0;
+		return ++waitListId;
+	}
+
+	/**
+	 * Zustellgarantie fuer die gerade gefuellte Warteliste festlegen
+	 *
+	 * @param guarantee
+	 *          Zustellgarantie des Requests
+	 * @param quorum
+	 *          Quorum k, nur fuer Quorum relevant
+	 */
+	public synchronized void setDeliveryGuarantee(DeliveryGuarantee guarantee,
+			int quorum) {
+		deliveryGuarantee = guarantee;
+		deliveryQuorum = quorum;
+		int recipients = countedWaitListEntries();
+		pendingConfirmsLimit = recipients
+				- guarantee.requiredConfirms(recipients, quorum);
+	}
+
+	/**
+	 * Eintraege der Warteliste, die fuer die Zustellgarantie zaehlen. Beim
+	 * Quorum zaehlt das Confirm des anfragenden Clients fuer sein eigenes
+	 * Event nicht mit.
+	 */
+	private int countedWaitListEntries() {
+		if ((deliveryGuarantee == DeliveryGuarantee.Quorum)
+				&& waitList.contains(userName)) {
+			return waitList.size() - 1;
+		}
+		return waitList.size();
+	}
+
+	public synchronized DeliveryGuarantee getDeliveryGuarantee() {
+		return deliveryGuarantee;
+	}
+
+	public synchronized int getDeliveryQuorum() {
+		return deliveryQuorum;
+	}
+
+	/**
+	 * @return true, wenn genug Confirms fuer die Response eingetroffen sind
+	 */
+	public synchronized boolean hasRequiredConfirms() {
+		return countedWaitListEntries() <= pendingConfirmsLimit;
+	}
+
+	public synchronized long getWaitListId() {
+		return waitListId;
+	}
+
+	public synchronized long getWaitListSequenceNumber() {
+		return waitListSequenceNumber;
+	}
+
+	public synchronized boolean isWaitListOpen() {
+		return waitListOpen;
+	}
+
+	/**
+	 * Aktuelle Warteliste abschliessen (Response wird gesendet). Die
+	 * Confirm-Frist wird verworfen, wenn keine Confirms mehr ausstehen, sonst
+	 * laeuft sie weiter, um spaeter fehlende Confirms zu zaehlen.
+	 *
+	 * @return true, wenn die Warteliste bis dahin offen war. Nur dann darf die
+	 *         Response gesendet werden.
+	 */
+	public synchronized boolean closeWaitList() {
+		if (!waitListOpen) {
+			return false;
+		}
+		waitListOpen = false;
+		if (waitList.isEmpty()) {
+			cancelConfirmDeadline();
+		}
+		return true;
+	}
+
+	/**
+	 * Direktnachricht als laufend vormerken. Fuer eine Direktnachricht gibt es
+	 * genau einen Empfaenger, daher genuegt statt einer Warteliste die
+	 * Sequenznummer.
+	 * 
+	 * @param sequenceNumber
+	 *          Sequenznummer der Direktnachricht
+	 */
+	public synchronized void openDirectMessage(long sequenceNumber) {
+		cancelDirectMessageDeadline();
+		pendingDirectMessage = sequenceNumber;
+	}
+
+	/**
+	 * Laufende Direktnachricht abschliessen (Confirm eingetroffen oder Frist
+	 * abgelaufen)
+	 * 
+	 * @param sequenceNumber
+	 *          Sequenznummer der Direktnachricht
+	 * @return true, wenn die Direktnachricht bis dahin offen war; nur dann
+	 *         wird die Response gesendet
+	 */
+	public synchronized boolean closeDirectMessage(long sequenceNumber) {
+		if ((pendingDirectMessage == 0) || (pendingDirectMessage != sequenceNumber)) {
+			return false;
+		}
+		pendingDirectMessage = 0;
+		cancelDirectMessageDeadline();
+		return true;
+	}
+
+	/**
+	 * Eingeplante Confirm-Frist fuer eine Direktnachricht merken. Ist die
+	 * Direktnachricht inzwischen abgeschlossen, wird die Frist sofort
+	 * verworfen.
+	 */
+	public synchronized void setDirectMessageDeadline(long sequenceNumber,
+			ScheduledFuture<?> deadline) {
+		if (pendingDirectMessage == sequenceNumber) {
+			directMessageDeadline = deadline;
+		} else {
+			deadline.cancel(false);
+		}
+	}
+
+	private void cancelDirectMessageDeadline() {
+		if (directMessageDeadline != null) {
+			directMessageDeadline.cancel(false);
+			directMessageDeadline = null;
+		}
+	}
+
+	/**
+	 * Eingeplante Confirm-Frist verwerfen
+	 */
+	public synchronized void cancelConfirmDeadline() {
+		if (confirmDeadline != null) {
+			confirmDeadline.cancel(false);
+			confirmDeadline = null;
+		}
+	}
+
+	/**
+	 * Aktuelle Warteliste vor dem Eroeffnen einer neuen aufbewahren, wenn fuer
+	 * sie noch Confirms ausstehen. Sie wird mit ihrer Confirm-Frist unter ihrer
+	 * Sequenznummer abgelegt; Confirms dazu werden weiter ausgetragen.
+	 *
+	 * @return Eintraege, die nicht aufbewahrt werden koennen (keine Frist
+	 *         eingeplant oder Sequenznummer schon belegt) und deshalb sofort
+	 *         als verloren gelten
+	 */
+	public synchronized Vector<String> retireWaitList() {
+		Vector<String> lost = new Vector<String>();
+		if (waitList.isEmpty()) {
+			cancelConfirmDeadline();
+			return lost;
+		}
+		if (confirmDeadline == null) {
+			lost.addAll(waitList);
+		} else {
+			PreviousWaitList previous = previousWaitLists.put(waitListSequenceNumber,
+					new PreviousWaitList(waitListId, new Vector<String>(waitList), confirmDeadline));
+			confirmDeadline = null;
+			if (previous != null) {
+				previous.deadline.cancel(false);
+				lost.addAll(previous.entries);
+			}
+		}
+		waitList.clear();
+		return lost;
+	}
+
+	/**
+	 * Confirm fuer die aufbewahrte Warteliste eines frueheren Requests
+	 * austragen. Ist sie danach leer, wird ihre Frist verworfen.
+	 *
+	 * @return true, wenn der Eintrag vorhanden war
+	 */
+	public synchronized boolean removePreviousWaitListEntry(long sequenceNumber,
+			String userName) {
+		PreviousWaitList previous = previousWaitLists.get(sequenceNumber);
+		if ((previous == null) || !previous.entries.remove(userName)) {
+			return false;
+		}
+		if (previous.entries.isEmpty()) {
+			previous.deadline.cancel(false);
+			previousWaitLists.remove(sequenceNumber);
+		}
+		return true;
+	}
+
+	/**
+	 * Confirm-Frist einer aufbewahrten Warteliste ist abgelaufen
+	 *
+	 * @param id
+	 *          Kennung der Warteliste
+	 * @return noch fehlende Eintraege, null wenn es keine aufbewahrte
+	 *         Warteliste mit dieser Kennung gibt
+	 */
+	public synchronized Vector<String> expirePreviousWaitList(long id) {
+		Iterator<PreviousWaitList> it = previousWaitLists.values().iterator();
+		while (it.hasNext()) {
+			PreviousWaitList previous = it.next();
+			if (previous.id == id) {
+				it.remove();
+				return previous.entries;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Client aus allen aufbewahrten Wartelisten austragen (Verbindungsabbruch
+	 * des Clients)
+	 *
+	 * @return Anzahl der Wartelisten, in denen er stand
+	 */
+	public synchronized int removeFromPreviousWaitLists(String userName) {
+		int removed = 0;
+		Iterator<PreviousWaitList> it = previousWaitLists.values().iterator();
+		while (it.hasNext()) {
+			PreviousWaitList previous = it.next();
+			if (previous.entries.remove(userName)) {
+				removed++;
+				if (previous.entries.isEmpty()) {
+					previous.deadline.cancel(false);
+					it.remove();
+				}
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Alle aufbewahrten Wartelisten verwerfen (beim Entfernen des Clients)
+	 *
+	 * @return alle noch ausstehenden Eintraege
+	 */
+	public synchronized Vector<String> clearPreviousWaitLists() {
+		Vector<String> entries = new Vector<String>();
+		for (PreviousWaitList previous : previousWaitLists.values()) {
+			previous.deadline.cancel(false);
+			entries.addAll(previous.entries);
+		}
+		previousWaitLists.clear();
+		return entries;
+	}
+
+	public synchronized boolean hasPreviousWaitLists() {
+		return !previousWaitLists.isEmpty();
+	}
+
+	/**
+	 * Response fuer die naechste Warteliste vormerken (vor dem Erstellen der
+	 * Warteliste, damit jeder Thread, der sie abschliesst, die Response senden
+	 * kann)
+	 *
+	 * @param responseType
+	 *          LOGIN_RESPONSE, LOGOUT_RESPONSE oder CHAT_MESSAGE_RESPONSE
+	 * @param requestClientThreadName
+	 *          Name des Client-Threads aus dem Request
+	 */
+	public synchronized void setPendingResponse(PduType responseType,
+			String requestClientThreadName) {
+		pendingResponseType = responseType;
+		pendingResponseThreadName = requestClientThreadName;
+	}
+
+	public synchronized PduType getPendingResponseType() {
+		return pendingResponseType;
+	}
+
+	public synchronized String getPendingResponseThreadName() {
+		return pendingResponseThreadName;
+	}
+
+	/**
+	 * Eingeplante Confirm-Frist fuer die Warteliste mit der angegebenen Kennung
+	 * merken. Ist die Warteliste inzwischen abgeschlossen und leer, wird die
+	 * Frist sofort verworfen.
+	 */
+	public synchronized void setConfirmDeadline(long id, ScheduledFuture<?> deadline) {
+		if ((id == waitListId) && (waitListOpen || !waitList.isEmpty())) {
+			confirmDeadline = deadline;
+		} else {
+			deadline.cancel(false);
+		}
+	}
 }
@@ -0,0 +1,111 @@
+package edu.hm.dako.chat.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Zustellgarantie fuer Chat-Nachrichten: Legt fest, wann der Server die
+ * Chat-Message-Response sendet. Der Client kann sie je Request in der
+ * {@link ChatPDU} angeben, sonst gilt die Vorgabe des Servers
+ * (System-Properties chat.deliveryGuarantee und chat.deliveryQuorum).
+ * <p/>
+ * Beim Quorum zaehlen nur Confirms anderer Empfaenger: Der anfragende Client
+ * erhaelt sein eigenes Event zwar auch und bestaetigt es, dieses Confirm
+ * zaehlt aber nicht zu den k Confirms. Gibt es weniger als k andere
+ * Empfaenger, wird auf alle anderen gewartet.
+ * <p/>
+ * Nur der Advanced-Server wertet die Zustellgarantie aus. Der Simple-Server
+ * wartet nie auf Confirms und verhaelt sich immer wie FireAndForget.
+ *
+ * @author Mandl
+ */
+public enum DeliveryGuarantee {
+
+	// Response direkt nach der Verteilung an alle Empfaenger
+	FireAndForget,
+	// Response, sobald k Empfaenger ausser dem anfragenden Client das Event
+	// bestaetigt haben
+	Quorum,
+	// Response erst, wenn alle Empfaenger das Event bestaetigt haben
+	All;
+
+	private static final Log log = LogFactory.getLog(DeliveryGuarantee.class);
+
+	// Vorgabe des Servers, falls der Client keine Zustellgarantie angibt
+	private static final DeliveryGuarantee SERVER_DEFAULT = parseServerDefault(
+			System.getProperty("chat.deliveryGuarantee"));
+
+	private static final int SERVER_DEFAULT_QUORUM = Math.max(1,
+			Integer.getInteger("chat.deliveryQuorum", 1));
+
+	/**
+	 * Vorgabe des Servers aus der System-Property lesen. Ein ungueltiger Wert
+	 * darf die Klasse nicht unbrauchbar machen, es gilt dann All.
+	 *
+	 * @param value
+	 *          Wert der System-Property chat.deliveryGuarantee, null = nicht
+	 *          gesetzt
+	 * @return Zustellgarantie
+	 */
+	private static DeliveryGuarantee parseServerDefault(String value) {
+		if (value == null) {
+			return All;
+		}
+		try {
+			return valueOf(value.trim());
+		} catch (IllegalArgumentException e) {
+			log.warn("Ungueltiger Wert fuer chat.deliveryGuarantee: " + value
+					+ ", es gilt All");
+			return All;
+		}
+	}
+
+	/**
+	 * @return Zustellgarantie, die der Server ohne Angabe des Clients verwendet
+	 */
+	public static DeliveryGuarantee getServerDefault() {
+		return SERVER_DEFAULT;
+	}
+
+	/**
+	 * @return Quorum, das der Server ohne Angabe des Clients verwendet
+	 */
+	public static int getServerDefaultQuorum() {
+		return SERVER_DEFAULT_QUORUM;
+	}
+
+	/**
+	 * Anzahl der Confirms, die vor dem Senden der Response eintreffen muessen
+	 *
+	 * @param recipients
+	 *          Anzahl der Empfaenger (Laenge der Warteliste, beim Quorum ohne
+	 *          den anfragenden Client)
+	 * @param quorum
+	 *          Quorum k, nur fuer Quorum relevant
+	 * @return Benoetigte Confirms, hoechstens recipients
+	 */
+	public int requiredConfirms(int recipients, int quorum) {
+		switch (this) {
+		case FireAndForget:
+			return 0;
+		case Quorum:
+			return Math.min(Math.max(1, quorum), recipients);
+		default:
+			return recipients;
+		}
+	}
+
+	/**
+	 * Bezeichnung fuer Protokolle und Kennzahlen, beim Quorum mit k
+	 *
+	 * @param quorum
+	 *          Quorum k, nur fuer Quorum relevant
+	 * @return z.B. "All" oder "Quorum-2"
+	 */
+	public String describe(int quorum) {
+		if (this == Quorum) {
+			return name() + "-" + quorum;
+		}
+		return name();
+	}
+}
@@ -28,6 +28,15 @@ public class DistributionMetrics {
 	// 90 % Percentile
 	double percentile90;
 
+	// 99 % Percentile
+	double percentile99;
+
+	// 99,9 % Percentile
+	double percentile999;
+
+	// 99,99 % Percentile
+	double percentile9999;
+
 	// Stannweite (zwischen Minimum und Maximum)
 	double range;
 
@@ -44,6 +53,9 @@ public class DistributionMetrics {
 	// Standardabweichung
 	double standardDeviation;
 
+	// Anzahl der ausgewerteten RTT-Werte
+	long numberOfValues;
+
 	public DistributionMetrics() {
 		minimum = 0;
 		maximum = 0;
@@ -52,11 +64,15 @@ public class DistributionMetrics {
 		percentile50 = 0;
 		percentile75 = 0;
 		percentile90 = 0;
+		percentile99 = 0;
+		percentile999 = 0;
+		percentile9999 = 0;
 		interquartilRange = 0;
 		range = 0;
 		mean = 0;
 		variance = 0;
 		standardDeviation = 0;
+		numberOfValues = 0;
 	}
 
 	public double getMinimum() {
@@ -87,6 +103,18 @@ public class DistributionMetrics {
 		return percentile90;
 	}
 
+	public double getPercentile99() {
+		return percentile99;
+	}
+
+	public double getPercentile999() {
+		return percentile999;
+	}
+
+	public double getPercentile9999() {
+		return percentile9999;
+	}
+
 	public double getInterquartilRange() {
 		return interquartilRange;
 	}
@@ -135,6 +163,18 @@ public class DistributionMetrics {
 		this.percentile90 = percentile90;
 	}
 
+	public void setPercentile99(double percentile99) {
+		this.percentile99 = percentile99;
+	}
+
+	public void setPercentile999(double percentile999) {
+		this.percentile999 = percentile999;
+	}
+
+	public void setPercentile9999(double percentile9999) {
+		this.percentile9999 = percentile9999;
+	}
+
 	public void setInterquartilRange(double interquartilRange) {
 		this.interquartilRange = interquartilRange;
 	}
@@ -154,4 +194,12 @@ public class DistributionMetrics {
 	public void setStandardDeviation(double standardDeviation) {
 		this.standardDeviation = standardDeviation;
 	}
+
+	public long getNumberOfValues() {
+		return numberOfValues;
+	}
+
+	public void setNumberOfValues(long numberOfValues) {
+		this.numberOfValues = numberOfValues;
+	}
 }
@@ -37,8 +37,10 @@ public class ExceptionHandler {
 		} catch (Exception e) {
 			// exception.printStackTrace();
 			log.error("Schwerwiegender Fehler");
+			FlightRecorder.dumpOnError("Schwerwiegender Fehler: " + exception);
 		}
 		if (terminateVm) {
+			FlightRecorder.dumpOnError("Programmabbruch: " + exception);
 			System.exit(1);
 		}
 	}
@@ -0,0 +1,326 @@
+package edu.hm.dako.chat.common;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Flight-Recorder fuer Protokollereignisse.
+ * <p/>
+ * Worker- und Listener-Threads schreiben kompakte Datensaetze fester Groesse
+ * (Zeitstempel, Ereignisart, PDU-Typ, User, Sequenznummer, Wartelistenlaenge,
+ * Latenz) in einen eigenen Ringpuffer. Jeder Puffer hat genau einen
+ * Schreiber, es gibt keine Sperren und im eingeschwungenen Zustand keine
+ * Allokationen. Die letzten Ereignisse stehen damit auch dann zur Verfuegung,
+ * wenn das Debug-Logging abgeschaltet ist.
+ * <p/>
+ * Die Puffer werden auf Anforderung ({@link #dumpToFile(String)}) oder bei
+ * einem schwerwiegenden Fehler ({@link #dumpOnError(String)}, hoechstens
+ * einmal pro Minute) als Textdatei ausgegeben. Ein Datensatz, der waehrend der
+ * Ausgabe ueberschrieben wird, wird verworfen.
+ * <p/>
+ * System-Properties: chat.flightRecorder (true/false, Standard true),
+ * chat.flightRecorder.capacity (Datensaetze pro Thread, wird auf eine
+ * Zweierpotenz abgerundet, Standard 1024), chat.flightRecorder.dir
+ * (Ausgabeverzeichnis, Standard logs)
+ *
+ * @author Mandl
+ */
+public final class FlightRecorder {
+
+	private static Log log = LogFactory.getLog(FlightRecorder.class);
+
+	// Ereignisarten
+	public static final int RECEIVED = 0;
+	public static final int SENT = 1;
+	public static final int WAITLIST_UPDATED = 2;
+
+	private static final String[] EVENT_NAMES = { "RECEIVED", "SENT", "WAITLIST" };
+
+	private static final boolean ENABLED = Boolean
+			.parseBoolean(System.getProperty("chat.flightRecorder", "true"));
+
+	private static final int CAPACITY = Integer.highestOneBit(
+			Math.max(16, Integer.getInteger("chat.flightRecorder.capacity", 1024)));
+
+	private static final String DUMP_DIRECTORY = System.getProperty("chat.flightRecorder.dir",
+			"logs");
+
+	// Mindestabstand zwischen zwei Ausgaben wegen eines Fehlers
+	private static final long MIN_ERROR_DUMP_INTERVAL_MILLIS = 60000;
+
+	// Anzahl Puffer beendeter Threads, die noch aufgehoben werden
+	private static final int MAX_RETIRED_BUFFERS = 64;
+
+	// Differenz zwischen Wanduhr und System.nanoTime() fuer die Ausgabe
+	private static final long WALL_CLOCK_OFFSET_NANOS = System.currentTimeMillis() * 1000000L
+			- System.nanoTime();
+
+	private static final PduType[] PDU_TYPES = PduType.values();
+
+	// Alle Puffer (auch von beendeten Threads, begrenzt)
+	private static final List<RingBuffer> buffers = new CopyOnWriteArrayList<RingBuffer>();
+
+	private static final ThreadLocal<RingBuffer> threadBuffer = new ThreadLocal<RingBuffer>() {
+		@Override
+		protected RingBuffer initialValue() {
+			return register(new RingBuffer(Thread.currentThread()));
+		}
+	};
+
+	private static final AtomicLong lastErrorDump = new AtomicLong(0);
+
+	private FlightRecorder() {
+	}
+
+	/**
+	 * @return true, falls der Flight-Recorder aufzeichnet
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Ereignis im Puffer des aufrufenden Threads aufzeichnen
+	 *
+	 * @param event
+	 *          Ereignisart (RECEIVED, SENT, WAITLIST_UPDATED)
+	 * @param pduType
+	 *          PDU-Typ
+	 * @param userName
+	 *          betroffener User
+	 * @param sequenceNumber
+	 *          Sequenznummer der PDU
+	 * @param waitListSize
+	 *          Laenge der Warteliste, -1 = nicht relevant
+	 * @param latencyNanos
+	 *          Latenz in ns, 0 = nicht relevant
+	 */
+	public static void record(int event, PduType pduType, String userName,
+			long sequenceNumber, int waitListSize, long latencyNanos) {
+		if (!ENABLED) {
+			return;
+		}
+		threadBuffer.get().write(event, pduType, userName, sequenceNumber, waitListSize,
+				latencyNanos);
+	}
+
+	/**
+	 * Empfangene PDU aufzeichnen
+	 *
+	 * @param pdu
+	 *          Empfangene PDU
+	 */
+	public static void recordReceived(ChatPDU pdu) {
+		if (!ENABLED || (pdu == null)) {
+			return;
+		}
+		threadBuffer.get().write(RECEIVED, pdu.getPduType(), pdu.getUserName(),
+				pdu.getSequenceNumber(), -1, pdu.getServerTime());
+	}
+
+	/**
+	 * Alle Puffer in eine neue Datei im Ausgabeverzeichnis schreiben
+	 *
+	 * @param reason
+	 *          Anlass der Ausgabe
+	 * @return Name der Datei
+	 * @throws IOException
+	 *           falls die Datei nicht geschrieben werden kann
+	 */
+	public static String dumpToFile(String reason) throws IOException {
+		File directory = new File(DUMP_DIRECTORY);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Verzeichnis " + directory + " kann nicht angelegt werden");
+		}
+		File file = new File(directory, "flightrecorder-"
+				+ new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".txt");
+		try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+			dump(out, reason);
+		}
+		return file.getPath();
+	}
+
+	/**
+	 * Puffer nach einem Fehler ausgeben, hoechstens einmal pro Minute. Fehler
+	 * bei der Ausgabe werden nur protokolliert.
+	 *
+	 * @param reason
+	 *          Anlass der Ausgabe
+	 */
+	public static void dumpOnError(String reason) {
+		if (!ENABLED) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long last = lastErrorDump.get();
+		if ((now - last < MIN_ERROR_DUMP_INTERVAL_MILLIS)
+				|| !lastErrorDump.compareAndSet(last, now)) {
+			return;
+		}
+		try {
+			log.error("Flight-Recorder ausgegeben: " + dumpToFile(reason));
+		} catch (IOException e) {
+			log.error("Flight-Recorder konnte nicht ausgegeben werden: " + e);
+		}
+	}
+
+	/**
+	 * Alle Puffer zeitlich sortiert ausgeben
+	 *
+	 * @param out
+	 *          Ausgabestrom
+	 * @param reason
+	 *          Anlass der Ausgabe
+	 */
+	public static void dump(PrintWriter out, String reason) {
+		List<Record> records = new ArrayList<Record>();
+		for (RingBuffer buffer : buffers) {
+			buffer.snapshot(records);
+		}
+		Collections.sort(records, new Comparator<Record>() {
+			@Override
+			public int compare(Record r1, Record r2) {
+				return Long.compare(r1.time, r2.time);
+			}
+		});
+
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		out.println("# Flight-Recorder, " + new Date() + ", Anlass: " + reason);
+		out.println("# Threads: " + buffers.size() + ", Datensaetze: " + records.size()
+				+ ", Kapazitaet pro Thread: " + CAPACITY);
+		out.println("# Zeit | Thread | Ereignis | PDU-Typ | User | Sequenznummer | Warteliste"
+				+ " | Latenz in us");
+		for (Record r : records) {
+			long wallClockNanos = r.time + WALL_CLOCK_OFFSET_NANOS;
+			out.println(format.format(new Date(wallClockNanos / 1000000L))
+					+ String.format("%03d", (wallClockNanos / 1000L) % 1000L) + " | "
+					+ r.threadName + " | " + EVENT_NAMES[r.event] + " | " + r.pduType
+					+ " | " + r.userName + " | " + r.sequenceNumber + " | "
+					+ ((r.waitListSize < 0) ? "-" : String.valueOf(r.waitListSize)) + " | "
+					+ ((r.latencyNanos == 0) ? "-" : String.valueOf(r.latencyNanos / 1000L)));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Neuen Puffer eintragen und alte Puffer beendeter Threads entfernen
+	 */
+	private static RingBuffer register(RingBuffer buffer) {
+		synchronized (buffers) {
+			int retired = 0;
+			for (RingBuffer b : buffers) {
+				if (!b.thread.isAlive()) {
+					retired++;
+				}
+			}
+			Iterator<RingBuffer> it = buffers.iterator();
+			while ((retired > MAX_RETIRED_BUFFERS) && it.hasNext()) {
+				RingBuffer b = it.next();
+				if (!b.thread.isAlive()) {
+					buffers.remove(b);
+					retired--;
+				}
+			}
+			buffers.add(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Ausgelesener Datensatz (nur fuer die Ausgabe)
+	 */
+	private static class Record {
+		String threadName;
+		long time;
+		int event;
+		PduType pduType;
+		String userName;
+		long sequenceNumber;
+		int waitListSize;
+		long latencyNanos;
+	}
+
+	/**
+	 * Ringpuffer eines Threads. Je Datensatz werden FIELDS Werte abgelegt, der
+	 * erste Wert ist die laufende Nummer des Datensatzes. Der Schreiber setzt
+	 * sie vor dem Schreiben auf -1 und danach auf die neue Nummer, ein Leser
+	 * verwirft den Datensatz, wenn sich die Nummer waehrend des Lesens aendert.
+	 */
+	private static class RingBuffer {
+
+		private static final int FIELDS = 6;
+
+		private final Thread thread;
+		private final AtomicLongArray data = new AtomicLongArray(CAPACITY * FIELDS);
+		private final AtomicReferenceArray<String> users = new AtomicReferenceArray<String>(
+				CAPACITY);
+
+		// Naechste Datensatznummer, wird nur vom eigenen Thread geschrieben
+		private final AtomicLong position = new AtomicLong(0);
+
+		RingBuffer(Thread thread) {
+			this.thread = thread;
+		}
+
+		void write(int event, PduType pduType, String userName, long sequenceNumber,
+				int waitListSize, long latencyNanos) {
+			if (pduType == null) {
+				pduType = PduType.UNDEFINED;
+			}
+			long index = position.get();
+			int slot = (int) (index & (CAPACITY - 1));
+			int base = slot * FIELDS;
+			data.lazySet(base, -1L);
+			data.lazySet(base + 1, System.nanoTime());
+			data.lazySet(base + 2, ((long) event << 32) | (pduType.ordinal() & 0xffffffffL));
+			data.lazySet(base + 3, sequenceNumber);
+			data.lazySet(base + 4, waitListSize);
+			data.lazySet(base + 5, latencyNanos);
+			users.lazySet(slot, userName);
+			data.lazySet(base, index);
+			position.lazySet(index + 1);
+		}
+
+		void snapshot(List<Record> records) {
+			String threadName = thread.getName();
+			long end = position.get();
+			long start = Math.max(0, end - CAPACITY);
+			for (long index = start; index < end; index++) {
+				int slot = (int) (index & (CAPACITY - 1));
+				int base = slot * FIELDS;
+				if (data.get(base) != index) {
+					continue;
+				}
+				Record r = new Record();
+				r.threadName = threadName;
+				r.time = data.get(base + 1);
+				long typeAndEvent = data.get(base + 2);
+				r.event = (int) (typeAndEvent >>> 32);
+				r.pduType = PDU_TYPES[(int) typeAndEvent];
+				r.sequenceNumber = data.get(base + 3);
+				r.waitListSize = (int) data.get(base + 4);
+				r.latencyNanos = data.get(base + 5);
+				r.userName = users.get(slot);
+				if (data.get(base) == index) {
+					records.add(r);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package edu.hm.dako.chat.common;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Thread ermittelt zyklisch die Heap-Belegung der JVM und merkt sich das
+ * Maximum. Damit muss die Heap-Belegung nicht mehr bei jeder empfangenen
+ * Nachricht im Client-Thread ermittelt werden.
+ *
+ * @author mandl
+ *
+ */
+public class HeapSampler extends Thread {
+
+	private static Log log = LogFactory.getLog(HeapSampler.class);
+
+	// Standard-Abtastintervall in ms
+	public static final int DEFAULT_SAMPLE_INTERVAL_IN_MILLIS = 100;
+
+	private final int sampleIntervalInMillis;
+
+	private volatile boolean running = true;
+
+	// Maximal gemessene Heap-Belegung in Bytes
+	private volatile long maxUsedHeap = 0;
+
+	public HeapSampler() {
+		this(DEFAULT_SAMPLE_INTERVAL_IN_MILLIS);
+	}
+
+	public HeapSampler(int sampleIntervalInMillis) {
+		setName("HeapSamplerThread");
+		setDaemon(true);
+		this.sampleIntervalInMillis = sampleIntervalInMillis;
+	}
+
+	/**
+	 * Run-Methode fuer den Thread: Ermittelt alle n ms die Heap-Belegung
+	 */
+	public void run() {
+		log.debug(getName() + " gestartet");
+
+		while (running) {
+			sample();
+			try {
+				TimeUnit.MILLISECONDS.sleep(sampleIntervalInMillis);
+			} catch (InterruptedException e) {
+				log.debug("Sleep unterbrochen");
+			}
+		}
+	}
+
+	/**
+	 * Aktuelle Heap-Belegung ermitteln und ggf. als Maximum uebernehmen. Wird nur
+	 * vom Sampler-Thread und bei Abfragen aufgerufen.
+	 *
+	 * @return Aktuell benutzter Heap in Bytes
+	 */
+	public synchronized long sample() {
+		Runtime r = Runtime.getRuntime();
+		long usedHeap = r.totalMemory() - r.freeMemory();
+		if (usedHeap > maxUsedHeap) {
+			maxUsedHeap = usedHeap;
+		}
+		return usedHeap;
+	}
+
+	/**
+	 * @return Maximal gemessene Heap-Belegung in Bytes
+	 */
+	public long getMaxUsedHeap() {
+		return maxUsedHeap;
+	}
+
+	/**
+	 * Beenden des Threads
+	 */
+	public void stopThread() {
+		running = false;
+		interrupt();
+		log.debug(getName() + " gestoppt");
+	}
+}
@@ -0,0 +1,328 @@
+package edu.hm.dako.chat.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Logarithmisch unterteiltes Histogramm fuer Latenzen (RTT) in ns mit festem
+ * Speicherbedarf (nach dem Prinzip des HdrHistogram).
+ * <p/>
+ * Jede Zweierpotenz [2^k, 2^(k+1)) wird in gleich breite Unterbuckets
+ * aufgeteilt. Die Anzahl der signifikanten Bits bestimmt die Genauigkeit: bei
+ * 7 Bits betraegt der relative Fehler eines Wertes hoechstens 1/64 (ca. 1,6 %),
+ * der Speicherbedarf haengt nur vom groessten erfassbaren Wert ab, nicht von
+ * der Anzahl der Messwerte.
+ * <p/>
+ * Das Erfassen eines Wertes ist lock-frei (atomare Zaehler), mehrere
+ * Histogramme koennen am Ende des Tests mit {@link #add(LatencyHistogram)}
+ * zusammengefuehrt werden.
+ *
+ * @author Mandl
+ */
+public class LatencyHistogram {
+
+	// Standardgenauigkeit in signifikanten Bits
+	public static final int DEFAULT_SIGNIFICANT_BITS = 7;
+
+	// Standardwert fuer den groessten erfassbaren Wert: 60 Sekunden in ns
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 60L * 1000000000L;
+
+	// Anzahl signifikanter Bits
+	private final int significantBits;
+
+	// Anzahl der Unterbuckets im ersten (linearen) Bereich
+	private final int subBucketCount;
+
+	// Anzahl der Unterbuckets je weiterer Zweierpotenz
+	private final int subBucketHalfCount;
+
+	// Groesster erfassbarer Wert, groessere Werte werden hier einsortiert
+	private final long highestTrackableValue;
+
+	// Zaehler je Bucket
+	private final AtomicLongArray counts;
+
+	// Gesamtanzahl, Summe und Quadratsumme der erfassten Werte
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final DoubleAdder sumOfSquares = new DoubleAdder();
+
+	// Exaktes Minimum und Maximum
+	private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxValue = new AtomicLong(0);
+
+	/**
+	 * Histogramm mit Standardgenauigkeit und Standard-Wertebereich
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_BITS);
+	}
+
+	/**
+	 * Konstruktor
+	 *
+	 * @param highestTrackableValue
+	 *          Groesster erfassbarer Wert in ns
+	 * @param significantBits
+	 *          Genauigkeit in signifikanten Bits (2 bis 16)
+	 */
+	public LatencyHistogram(long highestTrackableValue, int significantBits) {
+		if ((significantBits < 2) || (significantBits > 16)) {
+			throw new IllegalArgumentException(
+					"Anzahl signifikanter Bits muss zwischen 2 und 16 liegen: " + significantBits);
+		}
+		if (highestTrackableValue < 2) {
+			throw new IllegalArgumentException(
+					"Groesster erfassbarer Wert zu klein: " + highestTrackableValue);
+		}
+		this.significantBits = significantBits;
+		this.subBucketCount = 1 << significantBits;
+		this.subBucketHalfCount = subBucketCount / 2;
+		this.highestTrackableValue = highestTrackableValue;
+		this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+	}
+
+	/**
+	 * Messwert erfassen
+	 *
+	 * @param value
+	 *          Latenz in ns, negative Werte werden als 0 erfasst
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(Math.min(value, highestTrackableValue)));
+		totalCount.incrementAndGet();
+		sum.addAndGet(value);
+		sumOfSquares.add((double) value * (double) value);
+
+		long current;
+		while (value < (current = minValue.get())) {
+			if (minValue.compareAndSet(current, value)) {
+				break;
+			}
+		}
+		while (value > (current = maxValue.get())) {
+			if (maxValue.compareAndSet(current, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Werte eines anderen Histogramms hinzufuegen. Beide Histogramme muessen
+	 * gleich konfiguriert sein.
+	 *
+	 * @param other
+	 *          Histogramm, dessen Werte uebernommen werden
+	 */
+	public void add(LatencyHistogram other) {
+		if ((other.significantBits != significantBits)
+				|| (other.counts.length() != counts.length())) {
+			throw new IllegalArgumentException(
+					"Histogramme mit unterschiedlicher Konfiguration koennen nicht zusammengefuehrt werden");
+		}
+		for (int i = 0; i < counts.length(); i++) {
+			long c = other.counts.get(i);
+			if (c != 0) {
+				counts.addAndGet(i, c);
+			}
+		}
+		totalCount.addAndGet(other.totalCount.get());
+		sum.addAndGet(other.sum.get());
+		sumOfSquares.add(other.sumOfSquares.sum());
+		if (other.getTotalCount() > 0) {
+			long current;
+			long otherMin = other.minValue.get();
+			while (otherMin < (current = minValue.get())) {
+				if (minValue.compareAndSet(current, otherMin)) {
+					break;
+				}
+			}
+			long otherMax = other.maxValue.get();
+			while (otherMax > (current = maxValue.get())) {
+				if (maxValue.compareAndSet(current, otherMax)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Werte eines frueheren Schnappschusses desselben Histogramms abziehen. Damit
+	 * laesst sich aus zwei kumulierten Schnappschuessen das Histogramm eines
+	 * Messintervalls bilden. Minimum und Maximum werden danach aus den Buckets
+	 * bestimmt und sind daher nur auf die Bucket-Genauigkeit exakt.
+	 *
+	 * @param earlier
+	 *          Frueherer Schnappschuss
+	 */
+	public void subtract(LatencyHistogram earlier) {
+		if ((earlier.significantBits != significantBits)
+				|| (earlier.counts.length() != counts.length())) {
+			throw new IllegalArgumentException(
+					"Histogramme mit unterschiedlicher Konfiguration koennen nicht subtrahiert werden");
+		}
+		int lowestIndex = -1;
+		int highestIndex = -1;
+		for (int i = 0; i < counts.length(); i++) {
+			long c = counts.addAndGet(i, -earlier.counts.get(i));
+			if (c > 0) {
+				if (lowestIndex < 0) {
+					lowestIndex = i;
+				}
+				highestIndex = i;
+			}
+		}
+		totalCount.addAndGet(-earlier.totalCount.get());
+		sum.addAndGet(-earlier.sum.get());
+		sumOfSquares.add(-earlier.sumOfSquares.sum());
+		if (lowestIndex < 0) {
+			minValue.set(Long.MAX_VALUE);
+			maxValue.set(0);
+		} else {
+			minValue.set(Math.max(minValue.get(), lowestValueOf(lowestIndex)));
+			maxValue.set(Math.min(maxValue.get(), highestValueOf(highestIndex)));
+		}
+	}
+
+	/**
+	 * Kopie des Histogramms erstellen
+	 *
+	 * @return Kopie mit gleicher Konfiguration und gleichen Werten
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram(highestTrackableValue, significantBits);
+		copy.add(this);
+		return copy;
+	}
+
+	/**
+	 * Alle Werte loeschen
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		sum.set(0);
+		sumOfSquares.reset();
+		minValue.set(Long.MAX_VALUE);
+		maxValue.set(0);
+	}
+
+	public long getTotalCount() {
+		return totalCount.get();
+	}
+
+	public long getMinValue() {
+		return (getTotalCount() == 0) ? 0 : minValue.get();
+	}
+
+	public long getMaxValue() {
+		return maxValue.get();
+	}
+
+	public double getMean() {
+		long n = getTotalCount();
+		return (n == 0) ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Stichprobenvarianz (wie commons-math Variance mit Bias-Korrektur)
+	 *
+	 * @return Varianz in ns^2
+	 */
+	public double getVariance() {
+		long n = getTotalCount();
+		if (n < 2) {
+			return 0;
+		}
+		double mean = getMean();
+		double variance = (sumOfSquares.sum() - n * mean * mean) / (n - 1);
+		return Math.max(0, variance);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * Wert eines Perzentils ermitteln. Geliefert wird die obere Grenze des
+	 * Buckets, in dem das Perzentil liegt, hoechstens aber das Maximum.
+	 *
+	 * @param percentile
+	 *          Perzentil zwischen 0 und 100
+	 * @return Wert in ns
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long n = getTotalCount();
+		if (n == 0) {
+			return 0;
+		}
+		double p = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+
+		long accumulated = 0;
+		for (int i = 0; i < counts.length(); i++) {
+			accumulated += counts.get(i);
+			if (accumulated >= countAtPercentile) {
+				return Math.max(getMinValue(), Math.min(highestValueOf(i), getMaxValue()));
+			}
+		}
+		return getMaxValue();
+	}
+
+	/**
+	 * Bucket-Index fuer einen Wert berechnen
+	 *
+	 * @param value
+	 *          Wert (nicht negativ)
+	 * @return Index
+	 */
+	private int indexOf(long value) {
+		if (value < subBucketCount) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int shift = msb - significantBits + 1;
+		int subBucket = (int) (value >>> shift) - subBucketHalfCount;
+		return subBucketCount + (msb - significantBits) * subBucketHalfCount + subBucket;
+	}
+
+	/**
+	 * Kleinster Wert, der in einen Bucket faellt
+	 *
+	 * @param index
+	 *          Bucket-Index
+	 * @return Wert
+	 */
+	private long lowestValueOf(int index) {
+		if (index < subBucketCount) {
+			return index;
+		}
+		int j = index - subBucketCount;
+		int shift = j / subBucketHalfCount + 1;
+		return ((long) (j % subBucketHalfCount + subBucketHalfCount)) << shift;
+	}
+
+	/**
+	 * Groesster Wert, der in einen Bucket faellt
+	 *
+	 * @param index
+	 *          Bucket-Index
+	 * @return Wert
+	 */
+	private long highestValueOf(int index) {
+		if (index < subBucketCount) {
+			return index;
+		}
+		int j = index - subBucketCount;
+		int msb = significantBits + j / subBucketHalfCount;
+		int shift = msb - significantBits + 1;
+		long lowest = ((long) (j % subBucketHalfCount + subBucketHalfCount)) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
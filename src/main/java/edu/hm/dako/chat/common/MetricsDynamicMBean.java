@@ -0,0 +1,85 @@
+package edu.hm.dako.chat.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * Stellt alle Kennzahlen eines {@link MetricsRegistry} als lesbare
+ * JMX-Attribute bereit (z.B. fuer JConsole oder VisualVM). Die Attribute
+ * werden bei jedem Zugriff neu ermittelt, nachtraeglich eingetragene
+ * Kennzahlen erscheinen daher ohne erneute Registrierung.
+ *
+ * @author Mandl
+ */
+public class MetricsDynamicMBean implements DynamicMBean {
+
+	private final MetricsRegistry registry;
+	private final String description;
+
+	public MetricsDynamicMBean(MetricsRegistry registry, String description) {
+		this.registry = registry;
+		this.description = description;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Number value = registry.snapshot().get(attribute);
+		if (value == null) {
+			throw new AttributeNotFoundException("Unbekannte Kennzahl: " + attribute);
+		}
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Number> values = registry.snapshot();
+		AttributeList list = new AttributeList();
+		for (String name : attributes) {
+			Number value = values.get(name);
+			if (value != null) {
+				list.add(new Attribute(name, value));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(
+				"Kennzahlen koennen nicht veraendert werden: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+			throws ReflectionException {
+		throw new ReflectionException(
+				new NoSuchMethodException(actionName), "Keine Operationen vorhanden");
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		for (Map.Entry<String, Number> entry : registry.snapshot().entrySet()) {
+			attributes.add(new MBeanAttributeInfo(entry.getKey(),
+					entry.getValue().getClass().getName(), entry.getKey(), true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), description,
+				attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null,
+				new MBeanOperationInfo[0], null);
+	}
+}
@@ -0,0 +1,320 @@
+package edu.hm.dako.chat.common;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Register fuer Betriebskennzahlen (Zaehler, Messgroessen und
+ * Latenz-Histogramme).
+ * <p/>
+ * Zaehler steigen monoton (z.B. Anzahl Logins), Messgroessen geben einen
+ * aktuellen Wert wieder (z.B. Laenge der Clientliste) und werden erst beim
+ * Auslesen ueber einen {@link LongSupplier} ermittelt. Histogramme werden als
+ * {@link LatencyHistogram} gefuehrt und mit einem Faktor in die
+ * Ausgabeeinheit umgerechnet (z.B. ns in Sekunden). Kennzahlen mit Labels
+ * (z.B. je PDU-Typ oder je Verbindung) werden als Familie eingetragen, deren
+ * Werte beim Auslesen als Map von Label-Ausdruck auf Wert geliefert werden.
+ * <p/>
+ * Das Erfassen ist lock-frei. Die Ausgabe erfolgt im Textformat von
+ * Prometheus ({@link #writePrometheus(PrintWriter)}) oder als flache Liste
+ * von Attributen fuer JMX ({@link #snapshot()}).
+ *
+ * @author Mandl
+ */
+public class MetricsRegistry {
+
+	// Quantile, die fuer Histogramme ausgegeben werden
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	// Faktor fuer Histogramme in ns, Ausgabe in Sekunden
+	public static final double NANOS_TO_SECONDS = 1.0e-9;
+
+	private enum Type {
+		COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+		private final String prometheusName;
+
+		Type(String prometheusName) {
+			this.prometheusName = prometheusName;
+		}
+	}
+
+	/**
+	 * Eingetragene Kennzahl
+	 */
+	private static class Metric {
+		final String name;
+		final String help;
+		final Type type;
+		final LongSupplier value;
+		final LatencyHistogram histogram;
+		final double scale;
+		final Supplier<Map<String, ? extends Number>> family;
+
+		Metric(String name, String help, Type type, LongSupplier value,
+				LatencyHistogram histogram, double scale,
+				Supplier<Map<String, ? extends Number>> family) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+			this.value = value;
+			this.histogram = histogram;
+			this.scale = scale;
+			this.family = family;
+		}
+	}
+
+	/**
+	 * Monoton steigender Zaehler
+	 */
+	public static class Counter {
+		private final LongAdder count = new LongAdder();
+
+		public void increment() {
+			count.increment();
+		}
+
+		public void add(long n) {
+			count.add(n);
+		}
+
+		public long get() {
+			return count.sum();
+		}
+	}
+
+	// Kennzahlen in der Reihenfolge der Registrierung
+	private final Map<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+
+	/**
+	 * Neuen Zaehler eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl (Prometheus-Konvention, z.B. chat_logins_total)
+	 * @param help
+	 *          Beschreibung
+	 * @return Zaehler
+	 */
+	public Counter counter(String name, String help) {
+		final Counter counter = new Counter();
+		counter(name, help, new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return counter.get();
+			}
+		});
+		return counter;
+	}
+
+	/**
+	 * Vorhandenen Zaehler eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param value
+	 *          Liefert den aktuellen Zaehlerstand
+	 */
+	public void counter(String name, String help, LongSupplier value) {
+		register(new Metric(name, help, Type.COUNTER, value, null, 1.0, null));
+	}
+
+	/**
+	 * Messgroesse eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param value
+	 *          Liefert den aktuellen Wert, wird bei jeder Ausgabe aufgerufen
+	 */
+	public void gauge(String name, String help, LongSupplier value) {
+		register(new Metric(name, help, Type.GAUGE, value, null, 1.0, null));
+	}
+
+	/**
+	 * Neues Histogramm eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param scale
+	 *          Umrechnungsfaktor fuer die Ausgabe (z.B. NANOS_TO_SECONDS)
+	 * @return Histogramm
+	 */
+	public LatencyHistogram histogram(String name, String help, double scale) {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram(name, help, histogram, scale);
+		return histogram;
+	}
+
+	/**
+	 * Vorhandenes Histogramm eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param histogram
+	 *          Histogramm
+	 * @param scale
+	 *          Umrechnungsfaktor fuer die Ausgabe
+	 */
+	public void histogram(String name, String help, LatencyHistogram histogram,
+			double scale) {
+		register(new Metric(name, help, Type.SUMMARY, null, histogram, scale, null));
+	}
+
+	/**
+	 * Familie von Zaehlern mit Labels eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param samples
+	 *          Liefert beim Auslesen je Label-Ausdruck (siehe
+	 *          {@link #label(String, String)}) den Zaehlerstand
+	 */
+	public void counterFamily(String name, String help,
+			Supplier<Map<String, ? extends Number>> samples) {
+		register(new Metric(name, help, Type.COUNTER, null, null, 1.0, samples));
+	}
+
+	/**
+	 * Familie von Messgroessen mit Labels eintragen
+	 *
+	 * @param name
+	 *          Name der Kennzahl
+	 * @param help
+	 *          Beschreibung
+	 * @param samples
+	 *          Liefert beim Auslesen je Label-Ausdruck den aktuellen Wert
+	 */
+	public void gaugeFamily(String name, String help,
+			Supplier<Map<String, ? extends Number>> samples) {
+		register(new Metric(name, help, Type.GAUGE, null, null, 1.0, samples));
+	}
+
+	/**
+	 * Label-Ausdruck im Format von Prometheus erzeugen, Sonderzeichen im Wert
+	 * werden maskiert
+	 *
+	 * @param key
+	 *          Name des Labels
+	 * @param value
+	 *          Wert des Labels
+	 * @return Ausdruck key="value"
+	 */
+	public static String label(String key, String value) {
+		StringBuilder sb = new StringBuilder(key).append("=\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	private synchronized void register(Metric metric) {
+		if (metrics.containsKey(metric.name)) {
+			throw new IllegalArgumentException(
+					"Kennzahl ist bereits eingetragen: " + metric.name);
+		}
+		metrics.put(metric.name, metric);
+	}
+
+	private synchronized List<Metric> metrics() {
+		return new ArrayList<Metric>(metrics.values());
+	}
+
+	/**
+	 * Alle Kennzahlen im Textformat von Prometheus (Version 0.0.4) ausgeben.
+	 * Histogramme werden als Summary mit Quantilen ausgegeben.
+	 *
+	 * @param out
+	 *          Ausgabestrom
+	 */
+	public void writePrometheus(PrintWriter out) {
+		for (Metric metric : metrics()) {
+			out.print("# HELP " + metric.name + " " + metric.help + "\n");
+			out.print("# TYPE " + metric.name + " " + metric.type.prometheusName + "\n");
+			if (metric.family != null) {
+				for (Map.Entry<String, ? extends Number> sample : metric.family.get().entrySet()) {
+					out.print(metric.name + "{" + sample.getKey() + "} "
+							+ format(sample.getValue()) + "\n");
+				}
+				continue;
+			}
+			if (metric.type != Type.SUMMARY) {
+				out.print(metric.name + " " + metric.value.getAsLong() + "\n");
+				continue;
+			}
+			LatencyHistogram h = metric.histogram;
+			long count = h.getTotalCount();
+			for (double quantile : QUANTILES) {
+				out.print(metric.name + "{quantile=\"" + quantile + "\"} "
+						+ format(h.getValueAtPercentile(quantile * 100.0) * metric.scale) + "\n");
+			}
+			out.print(metric.name + "_sum " + format(h.getMean() * count * metric.scale) + "\n");
+			out.print(metric.name + "_count " + count + "\n");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Aktuelle Werte aller Kennzahlen als flache Liste. Fuer Histogramme werden
+	 * die Attribute _count, _mean, _p50, _p99 und _max geliefert, fuer
+	 * Familien ein Attribut name{labels} je Wert.
+	 *
+	 * @return Name und Wert je Attribut
+	 */
+	public Map<String, Number> snapshot() {
+		Map<String, Number> values = new LinkedHashMap<String, Number>();
+		for (Metric metric : metrics()) {
+			if (metric.family != null) {
+				for (Map.Entry<String, ? extends Number> sample : metric.family.get().entrySet()) {
+					values.put(metric.name + "{" + sample.getKey() + "}", sample.getValue());
+				}
+				continue;
+			}
+			if (metric.type != Type.SUMMARY) {
+				values.put(metric.name, metric.value.getAsLong());
+				continue;
+			}
+			LatencyHistogram h = metric.histogram;
+			values.put(metric.name + "_count", h.getTotalCount());
+			values.put(metric.name + "_mean", h.getMean() * metric.scale);
+			values.put(metric.name + "_p50", h.getValueAtPercentile(50.0) * metric.scale);
+			values.put(metric.name + "_p99", h.getValueAtPercentile(99.0) * metric.scale);
+			values.put(metric.name + "_max", h.getMaxValue() * metric.scale);
+		}
+		return values;
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.9g", value);
+	}
+
+	private static String format(Number value) {
+		if ((value instanceof Double) || (value instanceof Float)) {
+			return format(value.doubleValue());
+		}
+		return String.valueOf(value.longValue());
+	}
+}
@@ -0,0 +1,69 @@
+package edu.hm.dako.chat.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Diagnose-Ausgaben fuer PDUs auf den Hot-Paths von Client und Server.
+ * <p/>
+ * Die vollstaendige Ausgabe einer PDU (ChatPDU.toString() mit ca. 20 Zeilen)
+ * ist teuer und wird deshalb nur fuer eine Stichprobe erzeugt: Im Mittel wird
+ * eine von n PDUs ausgegeben, n wird ueber die System-Property
+ * chat.pduDumpSampleRate eingestellt (Standard 10000, 1 = jede PDU). Die
+ * Ausgabe erfolgt nur, wenn der Log-Level des uebergebenen Loggers DEBUG bzw.
+ * TRACE erlaubt; sonst wird kein String aufgebaut.
+ *
+ * @author Mandl
+ */
+public final class PduDiagnostics {
+
+	// Jede n-te PDU wird vollstaendig ausgegeben (im Mittel)
+	private static final int DUMP_SAMPLE_RATE = Math.max(1,
+			Integer.getInteger("chat.pduDumpSampleRate", 10000));
+
+	private PduDiagnostics() {
+	}
+
+	/**
+	 * Entscheidet, ob die aktuelle PDU zur Stichprobe gehoert
+	 *
+	 * @return true, falls die PDU ausgegeben werden soll
+	 */
+	public static boolean sample() {
+		return (DUMP_SAMPLE_RATE == 1)
+				|| (ThreadLocalRandom.current().nextInt(DUMP_SAMPLE_RATE) == 0);
+	}
+
+	/**
+	 * PDU stichprobenartig mit Level DEBUG ausgeben
+	 *
+	 * @param log
+	 *          Logger des Aufrufers
+	 * @param text
+	 *          Text vor der PDU
+	 * @param pdu
+	 *          Auszugebende PDU
+	 */
+	public static void dump(Log log, String text, ChatPDU pdu) {
+		if (log.isDebugEnabled() && sample()) {
+			log.debug(text + pdu);
+		}
+	}
+
+	/**
+	 * PDU stichprobenartig mit Level TRACE ausgeben
+	 *
+	 * @param log
+	 *          Logger des Aufrufers
+	 * @param text
+	 *          Text vor der PDU
+	 * @param pdu
+	 *          Auszugebende PDU
+	 */
+	public static void trace(Log log, String text, ChatPDU pdu) {
+		if (log.isTraceEnabled() && sample()) {
+			log.trace(text + pdu);
+		}
+	}
+}
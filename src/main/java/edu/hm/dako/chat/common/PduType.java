@@ -19,7 +19,21 @@ public enum PduType {
     CHAT_MESSAGE_CONFIRM(10, "Chat-Message-Confirm"), //JA:"Confirm Event" in "Chat-Message-Confirm"
     // und von CHAT_MESSAGE_RESPONSE_CONFIRM in CHAT_MESSAGE_CONFIRM gendert
 	LOGOUT_CONFIRM(11, "Logout-Confirm-Event"),
-	LOGIN_CONFIRM(12,"Login-Confirm-Event");
+	LOGIN_CONFIRM(12,"Login-Confirm-Event"),
+    ROOM_JOIN_REQUEST(13, "Room-Join-Request"),
+    ROOM_JOIN_RESPONSE(14, "Room-Join-Response"),
+    ROOM_LEAVE_REQUEST(15, "Room-Leave-Request"),
+    ROOM_LEAVE_RESPONSE(16, "Room-Leave-Response"),
+    ROOM_JOIN_EVENT(17, "Room-Join-Event"),
+    ROOM_LEAVE_EVENT(18, "Room-Leave-Event"),
+    DIRECT_MESSAGE_REQUEST(19, "Direct-Message-Request"),
+    DIRECT_MESSAGE_RESPONSE(20, "Direct-Message-Response"),
+    DIRECT_MESSAGE_EVENT(21, "Direct-Message-Event"),
+    DIRECT_MESSAGE_CONFIRM(22, "Direct-Message-Confirm"),
+    PRESENCE_SUBSCRIBE_REQUEST(23, "Presence-Subscribe-Request"),
+    PRESENCE_SUBSCRIBE_RESPONSE(24, "Presence-Subscribe-Response"),
+    PRESENCE_LIST_REQUEST(25, "Presence-List-Request"),
+    PRESENCE_LIST_RESPONSE(26, "Presence-List-Response");
 	
 	
     
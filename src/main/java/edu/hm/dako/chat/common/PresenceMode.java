@@ -0,0 +1,24 @@
+package edu.hm.dako.chat.common;
+
+/**
+ * Umfang der Login- und Logout-Events, die ein Client vom Server erhaelt.
+ * Der Client legt ihn im Login-Request oder spaeter mit einem
+ * Presence-Subscribe-Request fest.
+ * <p/>
+ * Nur im Modus All enthalten die Events die vollstaendige Userliste. In den
+ * anderen Modi meldet ein Event nur den betroffenen User, der Client fuehrt
+ * seine Userliste selbst und fordert die vollstaendige Liste bei Bedarf mit
+ * einem Presence-List-Request an.
+ *
+ * @author Mandl
+ */
+public enum PresenceMode {
+
+	// Events aller User ohne Raum und der Mitglieder der eigenen Raeume
+	// (Vorgabe)
+	All,
+	// Events der Mitglieder der eigenen Raeume und der abonnierten User
+	Rooms,
+	// Nur Events der abonnierten User
+	Users;
+}
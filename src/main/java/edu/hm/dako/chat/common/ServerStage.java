@@ -0,0 +1,36 @@
+package edu.hm.dako.chat.common;
+
+/**
+ * Bearbeitungsstufen einer Chat-Nachricht im Server. Fuer jede Stufe wird die
+ * Dauer gemessen, damit bei einer Veraenderung der Serverzeit erkennbar ist,
+ * welche Stufe sich veraendert hat. In der Response-PDU werden die Zeiten
+ * eines Requests als Feld in der Reihenfolge der Stufen uebertragen (in ns,
+ * 0 = nicht gemessen).
+ *
+ * @author Mandl
+ */
+public enum ServerStage {
+	// Zugriffe auf die Clientliste (Startzeit, Zaehler, Empfaengerliste)
+	REGISTRY_LOOKUP("Clientliste"),
+	// Anlegen der Warteliste fuer die Confirms (nur Advanced)
+	WAITLIST_CREATION("Warteliste anlegen"),
+	// Serialisierung einer zu sendenden PDU
+	SERIALIZATION("Serialisierung"),
+	// Senden des Events an einen Empfaenger (inkl. Serialisierung), in der
+	// Response die Summe ueber alle Empfaenger
+	RECIPIENT_SEND("Senden an Empfaenger"),
+	// Ende der Verteilung bis zum letzten Confirm (nur Advanced)
+	CONFIRM_WAIT("Warten auf Confirms"),
+	// Senden der Response an den Initiator
+	RESPONSE_SEND("Senden der Response");
+
+	private final String description;
+
+	ServerStage(String description) {
+		this.description = description;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
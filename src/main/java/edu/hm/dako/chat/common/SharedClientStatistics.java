@@ -5,20 +5,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Formatter;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.commons.math3.exception.MathIllegalArgumentException;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
-import org.apache.commons.math3.stat.descriptive.moment.Variance;
-import org.apache.commons.math3.stat.descriptive.rank.Max;
-import org.apache.commons.math3.stat.descriptive.rank.Min;
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 
 /**
  * Die Klasse sammelt Statistikdaten zur Ermittlung von Round Trip Times (RTT)
@@ -28,6 +21,10 @@ import org.apache.commons.math3.stat.descriptive.rank.Percentile;
  * Die Daten werden in einem Array gesammelt, das einen Eintrag fuer jeden
  * Client enthaelt. Jeder Client erhaelt eine Nummer, die als Zugriffsindex auf
  * das Array verwendet wird.
+ * <p/>
+ * Die Erfassungsmethoden, die ein Client-Thread fuer jede Nachricht aufruft,
+ * arbeiten ohne Sperre auf dem Eintrag des Clients. Die Aggregation ueber alle
+ * Clients erfolgt erst bei einer Abfrage (GUI oder Auswertung).
  *
  * @author Mandl
  */
@@ -56,6 +53,9 @@ public class SharedClientStatistics {
 	// Zaehlt abgemeldete Clients
 	private int numberOfLoggedOutClients;
 
+	// Genauigkeit der RTT-Histogramme in signifikanten Bits
+	private int histogramSignificantBits;
+
 	// Kann benutzt werden um ein gleichzeitiges Starten aller Client-Threads zu
 	// ermoeglichen
 	private CountDownLatch loginSignal;
@@ -65,48 +65,89 @@ public class SharedClientStatistics {
 	// Chat-Messages von allen Clients versendet wurden
 	private CountDownLatch logoutSignal;
 
-	// Statistikdaten eines Clients
-	private class ClientStatistics {
+	// Statistikdaten eines Clients. Die Zaehler werden nur vom zugehoerigen
+	// Client-Thread geschrieben (ohne Sperre), gelesen werden sie nur bei der
+	// Aggregation. Die Fuellfelder verhindern, dass die Zaehler zweier Clients
+	// in derselben Cache-Line liegen (False Sharing).
+	// HotSpot ordnet die Felder einer Klasse nach ihrer Groesse um (int-Zaehler
+	// und Referenzen landen dann vor bzw. hinter den Fuellfeldern), haelt aber
+	// die Felder einer Oberklasse vor denen ihrer Unterklassen. Fuellfelder und
+	// Zaehler liegen deshalb in eigenen Klassen einer Vererbungskette.
+	private static class ClientStatisticsLhsPadding {
+		// Fuellfelder vor den Zaehlern; p00 belegt die Luecke hinter dem
+		// Objektkopf, in die neuere JVMs sonst einen int-Zaehler der
+		// Unterklasse legen
+		int p00;
+		long p01, p02, p03, p04, p05, p06, p07;
+	}
+
+	private static class ClientStatisticsCounters extends ClientStatisticsLhsPadding {
 		// Anzahl gesendeter Nachrichten
-		int sentRequests;
+		volatile int sentRequests;
 		// Anzahl empfangener Antworten
-		int receivedResponses;
+		volatile int receivedResponses;
 		// Anzahl an Uebertragungswiederholungen (fuer unzuverlaessige
 		// Verbindungen wie UDP)
-		int numberOfRetries;
-		// Counter zum setzten des Fortschritts
-		private int progressCounter = 0;
+		volatile int numberOfRetries;
 		// Anzahl gesendeter Events fuer den Client
-		long numberOfSentEventMessages;
+		volatile long numberOfSentEventMessages;
 		// Anzahl empfangener Responses fuer den Client
-		long numberOfReceivedConfirmEvents;
+		volatile long numberOfReceivedConfirmEvents;
 		// Anzahl verlorender Event-Bestaetigungen fuer den Client
-		long numberOfLostConfirmEvents;
+		volatile long numberOfLostConfirmEvents;
 		// Anzahl von wiederholten Events fuer den Client
 		// (fuer unzuverlaessige Verbindungen wie UDP)
-		long numberOfRetriedEvents;
-		// Durchschnittliche Round Trip Time in ns
-		long averageRTT;
+		volatile long numberOfRetriedEvents;
 		// Maximale Round Trip Time in ns
-		long maxRTT;
+		volatile long maxRTT;
 		// Minimale Round Trip Time in ns
-		long minRTT;
+		volatile long minRTT;
 		// Summe aller RTTs in ns
-		long sumRTT;
-		// Alle RTTs werden hier fuer die Quartilsermittlung gesammelt
-		ArrayList<Long> rttList;
+		volatile long sumRTT;
+		// Alle RTTs werden hier fuer die Perzentilermittlung gesammelt
+		// (fester Speicherbedarf, unabhaengig von der Anzahl der Requests)
+		LatencyHistogram rttHistogram;
+		// RTTs je Zustellgarantie (nur, wenn der Client eine Zustellgarantie
+		// angibt) und RTTs der Direktnachrichten. Ein Histogramm wird erst beim
+		// ersten Wert angelegt; das Feld wird dann neu gesetzt, damit Leser es
+		// vollstaendig sehen.
+		volatile LatencyHistogram[] deliveryRttHistograms;
+		volatile LatencyHistogram directRttHistogram;
 		// Zeit, die der Server insgesamt fuer alle Requests benoetigt
 		// in ns
-		long sumServerTime;
+		volatile long sumServerTime;
+		// Sendezeitpunkt des ersten Chat-Requests und Empfangszeitpunkt der
+		// letzten Chat-Response in ns (System.nanoTime)
+		volatile long firstRequestTime;
+		volatile long lastResponseTime;
+	}
+
+	private static class ClientStatisticsRhsPadding extends ClientStatisticsCounters {
+		// Fuellfelder nach den Zaehlern
+		long p11, p12, p13, p14, p15, p16, p17;
+	}
+
+	private static final class ClientStatistics extends ClientStatisticsRhsPadding {
+
+		// Durchschnittliche Round Trip Time in ns
+		long getAverageRTT() {
+			int responses = receivedResponses;
+			return (responses == 0) ? 0 : sumRTT / responses;
+		}
+
 		// Zeit, die der Server im Durchschnitt fuer einen Request benoetigt
 		// in ns
-		long avgServerTime;
-		// Maximale Heap-Groesse in Bytes waehrend eines Testlaufs
-		long maxHeapSize;
+		long getAverageServerTime() {
+			int responses = receivedResponses;
+			return (responses == 0) ? 0 : sumServerTime / responses;
+		}
 	}
 
 	private ClientStatistics clientStatistics[];
 
+	// Ermittelt die Heap-Belegung zyklisch in einem eigenen Thread
+	private final HeapSampler heapSampler = new HeapSampler();
+
 	/**
 	 * Test, ob Client-Id im gueltigen Bereich ist
 	 *
@@ -125,10 +166,29 @@ public class SharedClientStatistics {
 
 	public SharedClientStatistics(int numberOfClients, int numberOfMessages,
 			int clientThinkTime) {
+		this(numberOfClients, numberOfMessages, clientThinkTime,
+				LatencyHistogram.DEFAULT_SIGNIFICANT_BITS);
+	}
+
+	/**
+	 * Konstruktor mit waehlbarer Genauigkeit der RTT-Histogramme
+	 *
+	 * @param numberOfClients
+	 *          Anzahl von Clients
+	 * @param numberOfMessages
+	 *          Anzahl der Nachrichten eines Clients
+	 * @param clientThinkTime
+	 *          Denkzeit eines Clients in ms
+	 * @param histogramSignificantBits
+	 *          Genauigkeit der RTT-Histogramme in signifikanten Bits
+	 */
+	public SharedClientStatistics(int numberOfClients, int numberOfMessages,
+			int clientThinkTime, int histogramSignificantBits) {
 
 		this.numberOfClients = numberOfClients;
 		this.numberOfMessages = numberOfMessages;
 		this.clientThinkTime = clientThinkTime;
+		this.histogramSignificantBits = histogramSignificantBits;
 		this.numberOfAllMessages = numberOfClients * numberOfMessages;
 		this.numberOfPlannedEventMessages = numberOfAllMessages * numberOfClients;
 		loginSignal = new CountDownLatch(numberOfClients);
@@ -145,13 +205,14 @@ public class SharedClientStatistics {
 			clientStatistics[i].numberOfReceivedConfirmEvents = 0;
 			clientStatistics[i].numberOfLostConfirmEvents = 0;
 			clientStatistics[i].numberOfRetriedEvents = 0;
-			clientStatistics[i].averageRTT = 0;
 			clientStatistics[i].maxRTT = 0;
 			clientStatistics[i].minRTT = 0;
 			clientStatistics[i].sumRTT = 0;
 			clientStatistics[i].sumServerTime = 0;
-			clientStatistics[i].maxHeapSize = 0;
-			clientStatistics[i].rttList = new ArrayList<Long>();
+			clientStatistics[i].rttHistogram = new LatencyHistogram(
+					LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
+			clientStatistics[i].deliveryRttHistograms = new LatencyHistogram[DeliveryGuarantee
+					.values().length];
 		}
 	}
 
@@ -202,16 +263,20 @@ public class SharedClientStatistics {
 	 * @param i
 	 *          Client-Id
 	 */
-	public synchronized void incrSentMsgCounter(int i) {
+	public void incrSentMsgCounter(int i) {
 		if (!inRange(i))
 			return;
-		clientStatistics[i].sentRequests++;
+		ClientStatistics stat = clientStatistics[i];
+		if (stat.sentRequests == 0) {
+			stat.firstRequestTime = System.nanoTime();
+		}
+		stat.sentRequests++;
 	}
 
 	/**
 	 * Anzahl der gesendeten Events setzen
 	 */
-	public synchronized void setNumberOfSentEventMessages(int i, long nr) {
+	public void setNumberOfSentEventMessages(int i, long nr) {
 		if (!inRange(i))
 			return;
 		clientStatistics[i].numberOfSentEventMessages = nr;
@@ -229,7 +294,7 @@ public class SharedClientStatistics {
 	/**
 	 * Anzahl der verlorenen Event-Bestaetigungen setzen
 	 */
-	public synchronized void setNumberOfLostConfirmEvents(int i, long nr) {
+	public void setNumberOfLostConfirmEvents(int i, long nr) {
 		if (!inRange(i))
 			return;
 		clientStatistics[i].numberOfLostConfirmEvents = nr;
@@ -247,7 +312,7 @@ public class SharedClientStatistics {
 	/**
 	 * Anzahl der empfangenen Event-Bestaetigungen setzen
 	 */
-	public synchronized void setNumberOfReceivedConfirmEvents(int i, long nr) {
+	public void setNumberOfReceivedConfirmEvents(int i, long nr) {
 		if (!inRange(i))
 			return;
 		clientStatistics[i].numberOfReceivedConfirmEvents = nr;
@@ -265,7 +330,7 @@ public class SharedClientStatistics {
 	/**
 	 * Anzahl der Event-Wiederholungen setzen
 	 */
-	public synchronized void setNumberOfRetriedEvents(int i, long nr) {
+	public void setNumberOfRetriedEvents(int i, long nr) {
 		if (!inRange(i))
 			return;
 		clientStatistics[i].numberOfRetriedEvents = nr;
@@ -283,7 +348,7 @@ public class SharedClientStatistics {
 	/**
 	 * Anzahl der Uebrtragungswiederholungen erhoehen
 	 */
-	public synchronized void incrNumberOfRetries(int i) {
+	public void incrNumberOfRetries(int i) {
 		if (!inRange(i))
 			return;
 		clientStatistics[i].numberOfRetries++;
@@ -299,33 +364,101 @@ public class SharedClientStatistics {
 	 * @param serverTime
 	 *          Die Zeit, die der Server benoetigt hat
 	 */
-	public synchronized void incrReceivedMsgCounter(int i, long rtt, long serverTime) {
+	public void incrReceivedMsgCounter(int i, long rtt, long serverTime) {
 
 		if (!inRange(i))
 			return;
 
-		clientStatistics[i].receivedResponses++;
+		ClientStatistics stat = clientStatistics[i];
 
-		if (clientStatistics[i].receivedResponses > 1) {
-			clientStatistics[i].minRTT = Math.min(rtt, clientStatistics[i].minRTT);
-			clientStatistics[i].maxRTT = Math.max(rtt, clientStatistics[i].maxRTT);
+		if (stat.receivedResponses > 0) {
+			if (rtt < stat.minRTT) {
+				stat.minRTT = rtt;
+			}
+			if (rtt > stat.maxRTT) {
+				stat.maxRTT = rtt;
+			}
 		} else {
-			clientStatistics[i].minRTT = rtt;
-			clientStatistics[i].maxRTT = rtt;
+			stat.minRTT = rtt;
+			stat.maxRTT = rtt;
 		}
 
-		clientStatistics[i].sumRTT = clientStatistics[i].sumRTT + rtt;
-		clientStatistics[i].averageRTT = clientStatistics[i].sumRTT
-				/ clientStatistics[i].receivedResponses;
-		clientStatistics[i].sumServerTime = clientStatistics[i].sumServerTime + serverTime;
+		stat.sumRTT += rtt;
+		stat.sumServerTime += serverTime;
+		stat.rttHistogram.record(rtt);
+		stat.lastResponseTime = System.nanoTime();
 
-		clientStatistics[i].avgServerTime = clientStatistics[i].sumServerTime
-				/ clientStatistics[i].receivedResponses;
+		// Zaehler zuletzt erhoehen, damit Leser bereits alle Summen sehen
+		stat.receivedResponses++;
+	}
 
-		clientStatistics[i].rttList.add((Long) rtt);
-		if (clientStatistics[i].maxHeapSize < usedMemory()) {
-			clientStatistics[i].maxHeapSize = usedMemory();
+	/**
+	 * RTT eines Requests zusaetzlich unter seiner Zustellgarantie erfassen
+	 *
+	 * @param i
+	 *          Client-Id
+	 * @param guarantee
+	 *          Vom Client angegebene Zustellgarantie
+	 * @param rtt
+	 *          Round Trip Time in ns
+	 */
+	public void recordDeliveryRtt(int i, DeliveryGuarantee guarantee, long rtt) {
+		if (!inRange(i))
+			return;
+
+		ClientStatistics stat = clientStatistics[i];
+		LatencyHistogram[] histograms = stat.deliveryRttHistograms;
+		LatencyHistogram histogram = histograms[guarantee.ordinal()];
+		if (histogram == null) {
+			histograms = histograms.clone();
+			histogram = new LatencyHistogram(
+					LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
+			histograms[guarantee.ordinal()] = histogram;
+			stat.deliveryRttHistograms = histograms;
 		}
+		histogram.record(rtt);
+	}
+
+	/**
+	 * RTT einer Direktnachricht zusaetzlich gesondert erfassen
+	 *
+	 * @param i
+	 *          Client-Id
+	 * @param rtt
+	 *          Round Trip Time in ns
+	 */
+	public void recordDirectRtt(int i, long rtt) {
+		if (!inRange(i))
+			return;
+
+		ClientStatistics stat = clientStatistics[i];
+		LatencyHistogram histogram = stat.directRttHistogram;
+		if (histogram == null) {
+			histogram = new LatencyHistogram(
+					LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
+			stat.directRttHistogram = histogram;
+		}
+		histogram.record(rtt);
+	}
+
+	/**
+	 * Dauer der Chat-Phase ueber alle Clients: vom ersten gesendeten
+	 * Chat-Request bis zur letzten empfangenen Chat-Response. Login, Logout und
+	 * das Starten der Client-Threads sind nicht enthalten.
+	 *
+	 * @return Dauer in ns, 0 falls keine Response empfangen wurde
+	 */
+	public synchronized long getChatPhaseDuration() {
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (int i = 0; i < numberOfClients; i++) {
+			ClientStatistics stat = clientStatistics[i];
+			if (stat.receivedResponses > 0) {
+				first = Math.min(first, stat.firstRequestTime);
+				last = Math.max(last, stat.lastResponseTime);
+			}
+		}
+		return (first == Long.MAX_VALUE) ? 0 : last - first;
 	}
 
 	/**
@@ -455,7 +588,7 @@ public class SharedClientStatistics {
 			// Nur Threads, die mindestens eine Antwort bekommen haben,
 			// verwenden
 			if (clientStatistics[i].receivedResponses > 0) {
-				sum = sum + clientStatistics[i].averageRTT;
+				sum = sum + clientStatistics[i].getAverageRTT();
 				nrClients++;
 			}
 		}
@@ -467,7 +600,7 @@ public class SharedClientStatistics {
 	}
 
 	public long getAverageRTT(int i) {
-		return clientStatistics[i].averageRTT;
+		return clientStatistics[i].getAverageRTT();
 	}
 
 	/**
@@ -651,76 +784,136 @@ public class SharedClientStatistics {
 	}
 
 	/**
-	 * Gesamtliste ueber alle RTTs bilden
+	 * RTT-Histogramme aller Clients zu einem neuen Histogramm zusammenfuehren.
+	 * Die Client-Threads werden dabei nicht blockiert.
 	 *
-	 * @return ArrayList
+	 * @return Schnappschuss ueber alle bisher erfassten RTTs
 	 */
-	public synchronized DistributionMetrics calculateMetrics() {
+	public LatencyHistogram getRttHistogramSnapshot() {
+		LatencyHistogram completeHistogram = new LatencyHistogram(
+				LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
 
-		ArrayList<Long> completeList = new ArrayList<Long>();
-		DistributionMetrics distributionMetrics = new DistributionMetrics();
-
-		// RTT-Listen aller Clients zusammenfuegen
 		for (int i = 0; i < numberOfClients; i++) {
-			completeList.addAll(clientStatistics[i].rttList);
+			completeHistogram.add(clientStatistics[i].rttHistogram);
 		}
+		return completeHistogram;
+	}
 
-		// Sortieren der gesamten RTT-Liste
-		Collections.sort(completeList);
+	/**
+	 * RTT-Histogramme aller Clients zusammenfuehren und Verteilungsmetriken
+	 * berechnen
+	 *
+	 * @return Verteilungsmetriken in ms
+	 */
+	public synchronized DistributionMetrics calculateMetrics() {
 
-		double[] doubleList = new double[completeList.size()];
+		LatencyHistogram completeHistogram = getRttHistogramSnapshot();
 
-		try {
+		if (completeHistogram.getTotalCount() == 0) {
+			log.error("Keine RTT-Werte fuer die Berechnung der Verteilungsmetriken vorhanden");
+			return new DistributionMetrics();
+		}
+		return calculateMetrics(completeHistogram);
+	}
 
-			// RTT-Werte konvertieren zu double-Werten
-			for (int i = 0; i < completeList.size(); i++) {
-				doubleList[i] = completeList.get(i).doubleValue();
+	/**
+	 * Verteilungsmetriken je Zustellgarantie berechnen
+	 *
+	 * @return Verteilungsmetriken in ms fuer alle Zustellgarantien, unter denen
+	 *         RTTs erfasst wurden (leer, wenn die Clients keine Zustellgarantie
+	 *         angeben)
+	 */
+	public synchronized Map<DeliveryGuarantee, DistributionMetrics> calculateDeliveryMetrics() {
+
+		Map<DeliveryGuarantee, DistributionMetrics> metrics = new EnumMap<DeliveryGuarantee, DistributionMetrics>(
+				DeliveryGuarantee.class);
+		for (DeliveryGuarantee g : DeliveryGuarantee.values()) {
+			LatencyHistogram histogram = new LatencyHistogram(
+					LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
+			for (int i = 0; i < numberOfClients; i++) {
+				LatencyHistogram clientHistogram = clientStatistics[i].deliveryRttHistograms[g
+						.ordinal()];
+				if (clientHistogram != null) {
+					histogram.add(clientHistogram);
+				}
 			}
+			if (histogram.getTotalCount() > 0) {
+				metrics.put(g, calculateMetrics(histogram));
+			}
+		}
+		return metrics;
+	}
 
-			// Percentile berechnen
-			Percentile percentile = new Percentile();
-			percentile.setData(doubleList);
-			distributionMetrics.setPercentile10(percentile.evaluate(10) / 1000000.0);
-			distributionMetrics.setPercentile25(percentile.evaluate(25) / 1000000.0);
-			distributionMetrics.setPercentile50(percentile.evaluate(50) / 1000000.0);
-			distributionMetrics.setPercentile75(percentile.evaluate(75) / 1000000.0);
-			distributionMetrics.setPercentile90(percentile.evaluate(90) / 1000000.0);
-
-			distributionMetrics.setInterquartilRange(
-					distributionMetrics.percentile75 - distributionMetrics.percentile25);
-
-			// Maximum berechnen
-			Max max = new Max();
-			max.setData(doubleList);
-			distributionMetrics.setMaximum(max.evaluate() / 1000000.0);
-
-			// Minimum berechnen
-			Min min = new Min();
-			min.setData(doubleList);
-			distributionMetrics.setMinimum(min.evaluate() / 1000000.0);
-
-			// Spannweite und IQR berechnen
-			distributionMetrics
-					.setRange(distributionMetrics.maximum - distributionMetrics.minimum);
-
-			// Artihmetisches Mittel berechnen
-			Mean mean = new Mean();
-			mean.setData(doubleList);
-			distributionMetrics.setMean(mean.evaluate() / 1000000.0);
+	/**
+	 * Verteilungsmetriken der Direktnachrichten berechnen
+	 *
+	 * @return Verteilungsmetriken in ms, null ohne Direktnachrichten
+	 */
+	public synchronized DistributionMetrics calculateDirectMetrics() {
 
-			// Varianz berechnen
-			Variance variance = new Variance();
-			variance.setData(doubleList);
-			distributionMetrics.setVariance(variance.evaluate() / 1000000.0);
+		LatencyHistogram histogram = new LatencyHistogram(
+				LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogramSignificantBits);
+		for (int i = 0; i < numberOfClients; i++) {
+			LatencyHistogram clientHistogram = clientStatistics[i].directRttHistogram;
+			if (clientHistogram != null) {
+				histogram.add(clientHistogram);
+			}
+		}
+		if (histogram.getTotalCount() == 0) {
+			return null;
+		}
+		return calculateMetrics(histogram);
+	}
 
-			// Standardabweichung berechnen
-			StandardDeviation standardDeviation = new StandardDeviation();
-			standardDeviation.setData(doubleList);
-			distributionMetrics.setStandardDeviation(standardDeviation.evaluate() / 1000000.0);
+	/**
+	 * Verteilungsmetriken eines RTT-Histogramms berechnen
+	 *
+	 * @param completeHistogram
+	 *          Histogramm mit mindestens einem Wert
+	 * @return Verteilungsmetriken in ms
+	 */
+	private DistributionMetrics calculateMetrics(LatencyHistogram completeHistogram) {
 
-		} catch (MathIllegalArgumentException e) {
-			log.error("Fehler bei der Berechnung der Verteilungsmetriken");
-		}
+		DistributionMetrics distributionMetrics = new DistributionMetrics();
+		distributionMetrics.setNumberOfValues(completeHistogram.getTotalCount());
+
+		// Percentile berechnen
+		distributionMetrics
+				.setPercentile10(completeHistogram.getValueAtPercentile(10) / 1000000.0);
+		distributionMetrics
+				.setPercentile25(completeHistogram.getValueAtPercentile(25) / 1000000.0);
+		distributionMetrics
+				.setPercentile50(completeHistogram.getValueAtPercentile(50) / 1000000.0);
+		distributionMetrics
+				.setPercentile75(completeHistogram.getValueAtPercentile(75) / 1000000.0);
+		distributionMetrics
+				.setPercentile90(completeHistogram.getValueAtPercentile(90) / 1000000.0);
+		distributionMetrics
+				.setPercentile99(completeHistogram.getValueAtPercentile(99) / 1000000.0);
+		distributionMetrics
+				.setPercentile999(completeHistogram.getValueAtPercentile(99.9) / 1000000.0);
+		distributionMetrics
+				.setPercentile9999(completeHistogram.getValueAtPercentile(99.99) / 1000000.0);
+
+		distributionMetrics.setInterquartilRange(
+				distributionMetrics.percentile75 - distributionMetrics.percentile25);
+
+		// Maximum und Minimum sind exakt
+		distributionMetrics.setMaximum(completeHistogram.getMaxValue() / 1000000.0);
+		distributionMetrics.setMinimum(completeHistogram.getMinValue() / 1000000.0);
+
+		// Spannweite berechnen
+		distributionMetrics
+				.setRange(distributionMetrics.maximum - distributionMetrics.minimum);
+
+		// Artihmetisches Mittel berechnen
+		distributionMetrics.setMean(completeHistogram.getMean() / 1000000.0);
+
+		// Varianz (in ms^2) und Standardabweichung berechnen
+		distributionMetrics
+				.setVariance(completeHistogram.getVariance() / (1000000.0 * 1000000.0));
+		distributionMetrics
+				.setStandardDeviation(completeHistogram.getStandardDeviation() / 1000000.0);
 
 		return distributionMetrics;
 	}
@@ -753,7 +946,7 @@ public class SharedClientStatistics {
 			// Nur Threads, die mindestens eine Antwort bekommen haben,
 			// verwenden
 			if (clientStatistics[i].receivedResponses > 0) {
-				sum = sum + clientStatistics[i].avgServerTime;
+				sum = sum + clientStatistics[i].getAverageServerTime();
 				nrClients++;
 			}
 		}
@@ -765,24 +958,36 @@ public class SharedClientStatistics {
 	}
 
 	/**
-	 * Maximale Heap-Groesse ueber alle Clients ermitteln
-	 *
-	 * @return Maximale Heap-Groesse
+	 * Zyklische Ermittlung der Heap-Belegung starten
 	 */
-	public synchronized long getMaxHeapSize() {
-		long max = -1;
+	public void startHeapSampler() {
+		heapSampler.start();
+	}
 
-		for (int i = 0; i < numberOfClients; i++) {
-			// Nur Threads, die mindestens eine Antwort bekommen haben,
-			// verwenden
-			if (clientStatistics[i].receivedResponses > 0) {
-				if (clientStatistics[i].maxHeapSize > max) {
-					max = clientStatistics[i].maxHeapSize;
-				}
-			}
-		}
+	/**
+	 * Zyklische Ermittlung der Heap-Belegung beenden
+	 */
+	public void stopHeapSampler() {
+		heapSampler.stopThread();
+	}
 
-		return max;
+	/**
+	 * Aktuelle Heap-Belegung ermitteln
+	 *
+	 * @return Benutzter Heap in Bytes
+	 */
+	public long getCurrentHeapSize() {
+		return heapSampler.sample();
+	}
+
+	/**
+	 * Maximale Heap-Groesse waehrend des Testlaufs ermitteln
+	 *
+	 * @return Maximale Heap-Groesse in Bytes
+	 */
+	public long getMaxHeapSize() {
+		heapSampler.sample();
+		return heapSampler.getMaxUsedHeap();
 	}
 
 	/**
@@ -827,7 +1032,7 @@ public class SharedClientStatistics {
 
 		NumberFormat n = NumberFormat.getInstance();
 		// n.setMaximumFractionDigits(2);
-		String usedMemoryAsString = n.format(usedMemory() / (1024 * 1024));
+		String usedMemoryAsString = n.format(getMaxHeapSize() / (1024 * 1024));
 
 		System.out.println(
 				"*********************************************************************" + "\n"
@@ -933,6 +1138,12 @@ public class SharedClientStatistics {
 	 * <p/>
 	 * 29 Endezeit der Messung
 	 * <p/>
+	 * 30 99 %-Perzentil
+	 * <p/>
+	 * 31 99,9 %-Perzentil
+	 * <p/>
+	 * 32 99,99 %-Perzentil
+	 * <p/>
 	 * Der Satz wird an das Ende einer bestehenden Datei angehaengt.
 	 * <p/>
 	 * Die Datei kann zur Testauswertung in Excel weiterverarbeitet werden.
@@ -976,7 +1187,8 @@ public class SharedClientStatistics {
 			sb.append(formatter.format(
 					"%s | %s | %d | %d | "
 							+ "%05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f | %05.2f |  %05.2f |  %05.2f | "
-							+ "%d | %d | %d | %d | %d | %d | %d | %d | %d | %d | %02.2f | %s | %s%n",
+							+ "%d | %d | %d | %d | %d | %d | %d | %d | %d | %d | %02.2f | %s | %s | "
+							+ "%05.2f | %05.2f | %05.2f%n",
 					measureType, implType, numberOfClients, numberOfMessages,
 					distr.getPercentile10(), distr.getPercentile25(), distr.getPercentile50(),
 					distr.getPercentile75(), distr.getPercentile90(), distr.getRange(),
@@ -988,7 +1200,8 @@ public class SharedClientStatistics {
 					this.getSumOfAllSentEventMessages(), this.getSumOfAllReceivedConfirmEvents(),
 					this.getSumOfAllLostConfirmEvents(), this.getSumOfAllRetriedEvents(),
 					this.getMaxHeapSize() / (1024 * 1024), (double) (averageCpuTime * 100),
-					startTime, endTime));
+					startTime, endTime, distr.getPercentile99(), distr.getPercentile999(),
+					distr.getPercentile9999()));
 
 			out.append(sb);
 			formatter.close();
@@ -1002,13 +1215,4 @@ public class SharedClientStatistics {
 			log.error("Fehler beim Schreiben des Auswertungssatzes in Datei " + fileName);
 		}
 	}
-
-	/**
-	 * Berechnet den tatsaechlich benutzten Heap-Speicher Heap-Groesse in MiB
-	 */
-	private long usedMemory() {
-		Runtime r = Runtime.getRuntime();
-		long usedMemory = (r.totalMemory() - r.freeMemory());
-		return (usedMemory);
-	}
-}
\ No newline at end of file
+}
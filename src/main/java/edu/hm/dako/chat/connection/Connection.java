@@ -28,7 +28,10 @@ public interface Connection {
   public Serializable receive() throws Exception;
 
   /**
-   * Sendet eine Nachricht an den Kommunikationspartner.
+   * Sendet eine Nachricht an den Kommunikationspartner. Nach der Rueckkehr darf
+   * der Aufrufer die Nachricht veraendern und wiederverwenden, eine
+   * Implementierung muss sie also vorher vollstaendig serialisieren oder
+   * kopieren (siehe {@link edu.hm.dako.chat.common.ChatPduRecycler}).
    *
    * @param message
    *          Die zu sendende Nachricht.
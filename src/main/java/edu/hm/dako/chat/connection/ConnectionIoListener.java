@@ -0,0 +1,33 @@
+package edu.hm.dako.chat.connection;
+
+import java.io.Serializable;
+
+/**
+ * Wird von einer Connection-Implementierung nach jeder gesendeten und
+ * empfangenen Nachricht mit der Groesse des Rahmens auf der Leitung
+ * aufgerufen. Der Aufruf fuer das Senden erfolgt noch unter der Sperre der
+ * Connection, die Groesse ist also auch bei mehreren gleichzeitig sendenden
+ * Threads der richtigen Nachricht zugeordnet.
+ */
+public interface ConnectionIoListener {
+
+  /**
+   * Nachricht wurde gesendet
+   *
+   * @param message
+   *          Gesendete Nachricht
+   * @param bytes
+   *          Laenge des Rahmens in Byte
+   */
+  void messageSent(Serializable message, int bytes);
+
+  /**
+   * Nachricht wurde empfangen
+   *
+   * @param message
+   *          Empfangene Nachricht
+   * @param bytes
+   *          Laenge des Rahmens in Byte
+   */
+  void messageReceived(Serializable message, int bytes);
+}
@@ -0,0 +1,202 @@
+package edu.hm.dako.chat.connection;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.PduType;
+
+/**
+ * E/A-Statistik einer Verbindung: Anzahl Nachrichten und Bytes je
+ * {@link PduType} in beide Richtungen, Dauer der send-Aufrufe und groesste
+ * Nachricht. Jeder Wert wird zusaetzlich in einer uebergeordneten Statistik
+ * (Summe ueber alle Verbindungen) erfasst. Das Erfassen ist lock-frei.
+ */
+public class ConnectionStatistics {
+
+  private static final PduType[] PDU_TYPES = PduType.values();
+
+  // Histogramm je Verbindung: bis 10 s, 5 signifikante Bits (ca. 4 KB)
+  private static final long MAX_SEND_NANOS = 10L * 1000000000L;
+  private static final int SIGNIFICANT_BITS = 5;
+
+  // Summe ueber alle Verbindungen, null fuer die Summe selbst
+  private final ConnectionStatistics parent;
+
+  // Bezeichnung der Verbindung (nach dem Login der Name des Users)
+  private volatile String name;
+
+  private volatile boolean closed = false;
+
+  private final AtomicLongArray messagesSent = new AtomicLongArray(PDU_TYPES.length);
+  private final AtomicLongArray bytesSent = new AtomicLongArray(PDU_TYPES.length);
+  private final AtomicLongArray messagesReceived = new AtomicLongArray(PDU_TYPES.length);
+  private final AtomicLongArray bytesReceived = new AtomicLongArray(PDU_TYPES.length);
+  private final AtomicLong maxMessageSize = new AtomicLong(0);
+  private final LatencyHistogram sendLatency;
+
+  /**
+   * Statistik fuer die Summe ueber alle Verbindungen
+   *
+   * @param name
+   *          Bezeichnung
+   */
+  public ConnectionStatistics(String name) {
+    this.name = name;
+    this.parent = null;
+    this.sendLatency = new LatencyHistogram();
+  }
+
+  /**
+   * Statistik fuer eine einzelne Verbindung
+   *
+   * @param name
+   *          Vorlaeufige Bezeichnung der Verbindung
+   * @param parent
+   *          Summe ueber alle Verbindungen
+   */
+  public ConnectionStatistics(String name, ConnectionStatistics parent) {
+    this.name = name;
+    this.parent = parent;
+    this.sendLatency = new LatencyHistogram(MAX_SEND_NANOS, SIGNIFICANT_BITS);
+  }
+
+  /**
+   * Ermittelt den PDU-Typ einer Nachricht
+   */
+  static PduType pduTypeOf(Serializable message) {
+    if (message instanceof ChatPDU) {
+      PduType type = ((ChatPDU) message).getPduType();
+      if (type != null) {
+        return type;
+      }
+    }
+    return PduType.UNDEFINED;
+  }
+
+  /**
+   * send-Aufruf erfassen
+   *
+   * @param type
+   *          PDU-Typ der Nachricht
+   * @param nanos
+   *          Dauer des Aufrufs in ns (inkl. Warten auf die Sperre der
+   *          Verbindung und auf den Socket)
+   */
+  public void messageSent(PduType type, long nanos) {
+    messagesSent.incrementAndGet(type.ordinal());
+    sendLatency.record(nanos);
+    if (parent != null) {
+      parent.messageSent(type, nanos);
+    }
+  }
+
+  /**
+   * Gesendete Bytes erfassen
+   */
+  public void bytesSent(PduType type, int bytes) {
+    bytesSent.addAndGet(type.ordinal(), bytes);
+    updateMaxMessageSize(bytes);
+    if (parent != null) {
+      parent.bytesSent(type, bytes);
+    }
+  }
+
+  /**
+   * Empfangene Nachricht erfassen
+   */
+  public void messageReceived(PduType type) {
+    messagesReceived.incrementAndGet(type.ordinal());
+    if (parent != null) {
+      parent.messageReceived(type);
+    }
+  }
+
+  /**
+   * Empfangene Bytes erfassen
+   */
+  public void bytesReceived(PduType type, int bytes) {
+    bytesReceived.addAndGet(type.ordinal(), bytes);
+    updateMaxMessageSize(bytes);
+    if (parent != null) {
+      parent.bytesReceived(type, bytes);
+    }
+  }
+
+  private void updateMaxMessageSize(long bytes) {
+    long max = maxMessageSize.get();
+    while ((bytes > max) && !maxMessageSize.compareAndSet(max, bytes)) {
+      max = maxMessageSize.get();
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public void setClosed() {
+    this.closed = true;
+  }
+
+  public long getMessagesSent(PduType type) {
+    return messagesSent.get(type.ordinal());
+  }
+
+  public long getBytesSent(PduType type) {
+    return bytesSent.get(type.ordinal());
+  }
+
+  public long getMessagesReceived(PduType type) {
+    return messagesReceived.get(type.ordinal());
+  }
+
+  public long getBytesReceived(PduType type) {
+    return bytesReceived.get(type.ordinal());
+  }
+
+  /**
+   * @return Gesendete Bytes ueber alle PDU-Typen
+   */
+  public long getTotalBytesSent() {
+    long sum = 0;
+    for (int i = 0; i < PDU_TYPES.length; i++) {
+      sum += bytesSent.get(i);
+    }
+    return sum;
+  }
+
+  /**
+   * @return Empfangene Bytes ueber alle PDU-Typen
+   */
+  public long getTotalBytesReceived() {
+    long sum = 0;
+    for (int i = 0; i < PDU_TYPES.length; i++) {
+      sum += bytesReceived.get(i);
+    }
+    return sum;
+  }
+
+  /**
+   * @return Groesste gesendete oder empfangene Nachricht in Byte
+   */
+  public long getMaxMessageSize() {
+    return maxMessageSize.get();
+  }
+
+  /**
+   * @return Dauer der send-Aufrufe in ns
+   */
+  public LatencyHistogram getSendLatency() {
+    return sendLatency;
+  }
+}
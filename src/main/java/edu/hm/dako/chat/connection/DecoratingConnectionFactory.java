@@ -2,7 +2,10 @@ package edu.hm.dako.chat.connection;
 
 /**
  * Stellt beim Verbindungsaufbau sicher, dass eine {@link Connection} um
- * Logging-Funktionen erweitert wird.
+ * Logging-Funktionen erweitert wird. Der Decorator wird nur installiert, wenn
+ * das Verbindungs-Logging eingeschaltet ist (siehe
+ * {@link LoggingConnectionDecorator#isEnabled()}), sonst wird die
+ * Verbindung unveraendert geliefert.
  */
 public class DecoratingConnectionFactory implements ConnectionFactory {
 
@@ -19,6 +22,9 @@ public class DecoratingConnectionFactory implements ConnectionFactory {
     Connection wrappedConnection = wrappedFactory.connectToServer(
 	  remoteServerAddress, serverPort, localPort, sendBufferSize,
 	  receiveBufferSize);
+    if (!LoggingConnectionDecorator.isEnabled()) {
+      return wrappedConnection;
+    }
     return new LoggingConnectionDecorator(wrappedConnection);
   }
 }
@@ -6,12 +6,17 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.PduDiagnostics;
 
 /**
  * Stattet ein {@link Connection} Objekt mit automatischem Logging aus. Umschliesst eine
  * beliebige Connection-Instanz und bietet dieselbe Schnittstelle an. Beim Aufruf einer
  * Methode wird zunaechst eine Log-Ausgabe getaetigt und danach die Methode der
  * umschlossenen Connection aufgerufen. Anschliessend erfolgt eine weitere Log-Ausgabe.
+ * <p/>
+ * Client ({@link DecoratingConnectionFactory}) und Server (ServerFactory)
+ * installieren den Decorator nur, wenn die System-Property
+ * chat.connectionLogging=true gesetzt ist.
  *
  */
 public class LoggingConnectionDecorator implements Connection {
@@ -19,19 +24,31 @@ public class LoggingConnectionDecorator implements Connection {
   private static Log log = LogFactory
 	.getLog(LoggingConnectionDecorator.class);
 
+  // Verbindungen mit dem LoggingConnectionDecorator dekorieren
+  private static final boolean ENABLED = Boolean.getBoolean("chat.connectionLogging");
+
   private Connection wrappedConnection;
 
   public LoggingConnectionDecorator(Connection wrappedConnection) {
     this.wrappedConnection = wrappedConnection;
   }
 
+  /**
+   * @return true, falls Verbindungen mit Logging dekoriert werden sollen
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
   @Override
-  public synchronized void send(Serializable message) throws Exception {
+  public void send(Serializable message) throws Exception {
     ChatPDU pdu = (ChatPDU) message;
-    log.debug("Sende Nachricht, Chat-Inhalt: " + pdu.getMessage()
-	  + ", Chat-User: " + pdu.getUserName());
+    if (log.isDebugEnabled()) {
+      log.debug("Sende Nachricht, Chat-Inhalt: " + pdu.getMessage()
+	    + ", Chat-User: " + pdu.getUserName());
+    }
     wrappedConnection.send(message);
-    log.trace(pdu);
+    PduDiagnostics.trace(log, "", pdu);
     log.debug("Nachricht gesendet");
   }
 
@@ -40,9 +57,11 @@ public class LoggingConnectionDecorator implements Connection {
     log.debug("Empfange Nachricht...");
     ChatPDU pdu = (ChatPDU) wrappedConnection.receive();
     if (pdu != null) {
-	log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
-	    + ", Chat-User: " + pdu.getUserName());
-	log.trace(pdu);
+	if (log.isDebugEnabled()) {
+	  log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
+	      + ", Chat-User: " + pdu.getUserName());
+	}
+	PduDiagnostics.trace(log, "", pdu);
     }
     return pdu;
   }
@@ -52,9 +71,11 @@ public class LoggingConnectionDecorator implements Connection {
     log.debug("Empfange Nachricht...");
     ChatPDU pdu = (ChatPDU) wrappedConnection.receive(timeout);
     if (pdu != null) {
-	log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
-	    + ", Chat-User: " + pdu.getUserName());
-	log.trace(pdu);
+	if (log.isDebugEnabled()) {
+	  log.debug("Nachricht empfangen, Chat-Inhalt: " + pdu.getMessage()
+	      + ", Chat-User: " + pdu.getUserName());
+	}
+	PduDiagnostics.trace(log, "", pdu);
     }
     return pdu;
   }
@@ -0,0 +1,79 @@
+package edu.hm.dako.chat.connection;
+
+import java.io.Serializable;
+
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.PduType;
+
+/**
+ * Stattet ein {@link Connection} Objekt mit E/A-Kennzahlen aus (siehe
+ * {@link ConnectionStatistics}). Gezaehlt werden die Nachrichten je PDU-Typ und
+ * die Dauer jedes send-Aufrufs. Die Bytes auf der Leitung kennt nur die
+ * umschlossene Connection; sie meldet sie ueber {@link ConnectionIoListener},
+ * falls der Decorator dort als Listener eingetragen ist.
+ * <p/>
+ * Mit dem ersten empfangenen Login-Request wird die Verbindung nach dem User
+ * benannt.
+ */
+public class MeteredConnectionDecorator implements Connection, ConnectionIoListener {
+
+  private final Connection wrappedConnection;
+
+  private final ConnectionStatistics statistics;
+
+  public MeteredConnectionDecorator(Connection wrappedConnection,
+	ConnectionStatistics statistics) {
+    this.wrappedConnection = wrappedConnection;
+    this.statistics = statistics;
+  }
+
+  public ConnectionStatistics getStatistics() {
+    return statistics;
+  }
+
+  @Override
+  public void send(Serializable message) throws Exception {
+    long start = System.nanoTime();
+    wrappedConnection.send(message);
+    statistics.messageSent(ConnectionStatistics.pduTypeOf(message),
+	System.nanoTime() - start);
+  }
+
+  @Override
+  public Serializable receive() throws Exception {
+    return received(wrappedConnection.receive());
+  }
+
+  @Override
+  public Serializable receive(int timeout) throws Exception {
+    return received(wrappedConnection.receive(timeout));
+  }
+
+  private Serializable received(Serializable message) {
+    if (message != null) {
+      PduType type = ConnectionStatistics.pduTypeOf(message);
+      statistics.messageReceived(type);
+      if ((type == PduType.LOGIN_REQUEST)
+	  && (((ChatPDU) message).getUserName() != null)) {
+	statistics.setName(((ChatPDU) message).getUserName());
+      }
+    }
+    return message;
+  }
+
+  @Override
+  public void close() throws Exception {
+    statistics.setClosed();
+    wrappedConnection.close();
+  }
+
+  @Override
+  public void messageSent(Serializable message, int bytes) {
+    statistics.bytesSent(ConnectionStatistics.pduTypeOf(message), bytes);
+  }
+
+  @Override
+  public void messageReceived(Serializable message, int bytes) {
+    statistics.bytesReceived(ConnectionStatistics.pduTypeOf(message), bytes);
+  }
+}
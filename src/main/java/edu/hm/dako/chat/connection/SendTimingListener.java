@@ -0,0 +1,19 @@
+package edu.hm.dako.chat.connection;
+
+/**
+ * Wird von einer Connection nach dem Serialisieren einer Nachricht
+ * aufgerufen, damit die Serialisierung getrennt vom eigentlichen Senden
+ * gemessen werden kann.
+ *
+ * @author Mandl
+ */
+public interface SendTimingListener {
+
+	/**
+	 * Nachricht wurde serialisiert
+	 *
+	 * @param nanos
+	 *          Dauer der Serialisierung in ns
+	 */
+	void messageSerialized(long nanos);
+}
@@ -1,5 +1,10 @@
 package edu.hm.dako.chat.server;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Gemeinsame Attribute fuer alle Implementierungen
  * 
@@ -8,8 +13,12 @@ package edu.hm.dako.chat.server;
  */
 public abstract class AbstractChatServer implements ChatServerInterface {
 
-	// Gemeinsam fuer alle Workerthreads verwaltete Liste aller eingeloggten
-	// Clients
+	// Anzahl der Threads fuer zeitgesteuerte Aufgaben
+	private static final int SCHEDULER_THREADS = Math.max(1,
+			Integer.getInteger("chat.schedulerThreads", 2));
+
+	// Gemeinsam fuer alle Workerthreads des Servers verwaltete Liste aller
+	// eingeloggten Clients (je Server-Instanz eine eigene Liste)
 	protected SharedChatClientList clients;
 
 	// Zaehler fuer Test
@@ -17,4 +26,39 @@ public abstract class AbstractChatServer implements ChatServerInterface {
 
 	// Referenz auf Server GUI fuer die Meldung von Ereignissen
 	protected ChatServerGuiInterface serverGuiInterface;
+
+	/**
+	 * Scheduler fuer zeitgesteuerte Aufgaben erzeugen (Daemon-Threads).
+	 * Abgebrochene Aufgaben (z.B. Confirm-Fristen nach Eintreffen aller
+	 * Confirms) werden sofort aus der Warteschlange entfernt.
+	 *
+	 * @param name
+	 *          Praefix der Threadnamen
+	 * @return Scheduler
+	 */
+	protected static ScheduledExecutorService createScheduler(final String name) {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(
+				SCHEDULER_THREADS, new ThreadFactory() {
+					private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler.setRemoveOnCancelPolicy(true);
+		return scheduler;
+	}
+
+	@Override
+	public ServerStageStatistics getStageStatistics() {
+		return counter.stageStatistics;
+	}
+
+	@Override
+	public ServerMetrics getMetrics() {
+		return counter.metrics;
+	}
 }
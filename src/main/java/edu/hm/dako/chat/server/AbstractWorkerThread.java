@@ -1,8 +1,24 @@
 package edu.hm.dako.chat.server;
 
+import java.util.Vector;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ChatPduRecycler;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.PresenceMode;
+import edu.hm.dako.chat.common.ServerStage;
 import edu.hm.dako.chat.connection.Connection;
 
 /**
@@ -13,6 +29,18 @@ import edu.hm.dako.chat.connection.Connection;
  */
 public abstract class AbstractWorkerThread extends Thread {
 
+	private static Log log = LogFactory.getLog(AbstractWorkerThread.class);
+
+	// Wartezeit in ms zwischen dem Logout-Event und der Logout-Response,
+	// damit der Client seine letzten Events noch empfaengt
+	protected static final long LOGOUT_GRACE_PERIOD_MILLIS = Long
+			.getLong("chat.logoutGracePeriodMillis", 1000);
+
+	// Frist in ms, innerhalb der alle Empfaenger ein Event bestaetigen muessen;
+	// danach wird der Request mit Teilzustellung beantwortet (0 = keine Frist)
+	protected static final long CONFIRM_TIMEOUT_MILLIS = Long
+			.getLong("chat.confirmTimeoutMillis", 5000);
+
 	// Verbindungs-Handle
 	protected Connection connection;
 
@@ -39,6 +67,18 @@ public abstract class AbstractWorkerThread extends Thread {
 
 	protected ChatServerGuiInterface serverGuiInterface;
 
+	// Bearbeitungszeiten je Stufe (gemeinsam fuer alle Worker-Threads)
+	protected ServerStageStatistics stageStatistics;
+
+	// Betriebskennzahlen des Servers
+	protected ServerMetrics metrics;
+
+	// Zeitgesteuerte Aufgaben des Servers (gemeinsam fuer alle Worker-Threads)
+	protected ScheduledExecutorService scheduler;
+
+	// Wiederverwendbare Sende-PDUs dieses Worker-Threads
+	protected final ChatPduRecycler pduRecycler = new ChatPduRecycler();
+
 	public AbstractWorkerThread(Connection con, SharedChatClientList clients,
 			SharedServerCounter counter, ChatServerGuiInterface serverGuiInterface) {
 		this.connection = con;
@@ -46,9 +86,483 @@ public abstract class AbstractWorkerThread extends Thread {
 		this.logoutCounter = counter.logoutCounter;
 		this.eventCounter = counter.eventCounter;
 		this.confirmCounter = counter.confirmCounter;
+		this.stageStatistics = counter.stageStatistics;
+		this.metrics = counter.metrics;
+		this.scheduler = counter.scheduler;
 		this.serverGuiInterface = serverGuiInterface;
 	}
 
+	/**
+	 * Abschluss eines Logouts nach der Wartezeit LOGOUT_GRACE_PERIOD_MILLIS
+	 * einplanen. Der Worker-Thread wartet nicht selbst, sondern bearbeitet
+	 * sofort die naechste Nachricht. Die Aufgabe laeuft in einem Thread des
+	 * Schedulers und darf daher den pduRecycler nicht verwenden. Ist der
+	 * Scheduler bereits beendet (Server wird gestoppt), wird sie sofort
+	 * ausgefuehrt.
+	 *
+	 * @param completion
+	 *          Abschluss des Logouts (Status aendern, Logout-Response senden)
+	 */
+	protected void scheduleLogoutCompletion(final Runnable completion) {
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					completion.run();
+				} catch (Exception e) {
+					ExceptionHandler.logException(e);
+				}
+			}
+		};
+		try {
+			scheduler.schedule(task, LOGOUT_GRACE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Ablauf der Confirm-Frist CONFIRM_TIMEOUT_MILLIS fuer eine Warteliste
+	 * einplanen. Die Aufgabe laeuft in einem Thread des Schedulers und darf
+	 * daher den pduRecycler nicht verwenden.
+	 *
+	 * @param expiry
+	 *          Behandlung der abgelaufenen Frist (Teilzustellung melden)
+	 * @return Eingeplante Aufgabe oder null, wenn keine Frist konfiguriert ist
+	 *         oder der Scheduler bereits beendet ist
+	 */
+	protected ScheduledFuture<?> scheduleConfirmDeadline(final Runnable expiry) {
+		if (CONFIRM_TIMEOUT_MILLIS <= 0) {
+			return null;
+		}
+		try {
+			return scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						expiry.run();
+					} catch (Exception e) {
+						ExceptionHandler.logException(e);
+					}
+				}
+			}, CONFIRM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Empfaenger eines Chat-Message-Events ermitteln: die Mitglieder des Raums
+	 * aus dem Request, ohne Raum alle eingetragenen Clients
+	 *
+	 * @param receivedPdu
+	 *          Empfangene Chat-Message-Request-PDU
+	 * @return Namen der Empfaenger
+	 */
+	protected Vector<String> getChatRecipients(ChatPDU receivedPdu) {
+		if (receivedPdu.getRoom() == null) {
+			return clients.getClientNameList();
+		}
+		return clients.getRoomRecipients(receivedPdu.getRoom());
+	}
+
+	/**
+	 * Chat-Nachricht an einen Raum ablehnen, in dem der Client nicht Mitglied
+	 * ist. Die Chat-Message-Response wird sofort mit Fehlercode ROOM_ERROR
+	 * gesendet, damit der Client weiterarbeiten kann.
+	 *
+	 * @param receivedPdu
+	 *          Empfangene Chat-Message-Request-PDU
+	 * @return true, wenn der Request abgelehnt wurde
+	 */
+	protected boolean rejectChatMessageOutsideRoom(ChatPDU receivedPdu) {
+		String room = receivedPdu.getRoom();
+		if ((room == null) || clients.isRoomMember(userName, room)) {
+			return false;
+		}
+		ClientListEntry client = clients.getClient(userName);
+		if (client == null) {
+			return true;
+		}
+		ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(pduRecycler, userName, 0,
+				0, 0, 0, client.getNumberOfReceivedChatMessages(),
+				receivedPdu.getClientThreadName(), System.nanoTime() - startTime);
+		responsePdu.setErrorCode(ChatPDU.ROOM_ERROR);
+		responsePdu.setRoom(room);
+		try {
+			connection.send(responsePdu);
+			if (log.isDebugEnabled()) {
+				log.debug("Chat-Message-Request von " + userName + " abgelehnt, nicht Mitglied in Raum "
+						+ room);
+			}
+		} catch (Exception e) {
+			ExceptionHandler.logException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Room-Join-Requests: Client in den
+	 * Raum aufnehmen, Response senden und die uebrigen Mitglieder mit einem
+	 * Room-Join-Event informieren
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void roomJoinRequestAction(ChatPDU receivedPdu) {
+		roomMembershipAction(receivedPdu, true);
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Room-Leave-Requests: Client aus
+	 * dem Raum entfernen, Response senden und die verbleibenden Mitglieder mit
+	 * einem Room-Leave-Event informieren
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void roomLeaveRequestAction(ChatPDU receivedPdu) {
+		roomMembershipAction(receivedPdu, false);
+	}
+
+	/**
+	 * Beitritt oder Austritt ausfuehren. Room-Events werden nicht bestaetigt
+	 * und belegen daher keine Warteliste.
+	 */
+	private void roomMembershipAction(ChatPDU receivedPdu, boolean join) {
+
+		String room = receivedPdu.getRoom();
+		boolean changed = false;
+		if ((room != null) && (userName != null)) {
+			changed = join ? clients.joinRoom(userName, room) : clients.leaveRoom(userName, room);
+		}
+		Vector<String> members = (room != null) ? clients.getRoomMembers(room)
+				: new Vector<String>();
+
+		ChatPDU responsePdu = ChatPDU.createRoomResponsePdu(
+				join ? PduType.ROOM_JOIN_RESPONSE : PduType.ROOM_LEAVE_RESPONSE, members,
+				changed ? ChatPDU.NO_ERROR : ChatPDU.ROOM_ERROR, receivedPdu);
+		try {
+			connection.send(responsePdu);
+		} catch (Exception e) {
+			log.error("Senden einer " + responsePdu.getPduType() + " an " + userName
+					+ " nicht moeglich");
+			ExceptionHandler.logException(e);
+		}
+		if (!changed) {
+			if (log.isDebugEnabled()) {
+				log.debug(receivedPdu.getPduType() + " von " + receivedPdu.getUserName()
+						+ " fuer Raum " + room + " abgelehnt");
+			}
+			return;
+		}
+		if (join) {
+			metrics.roomJoins.increment();
+		} else {
+			metrics.roomLeaves.increment();
+		}
+
+		ChatPDU eventPdu = ChatPDU.createRoomEventPdu(
+				join ? PduType.ROOM_JOIN_EVENT : PduType.ROOM_LEAVE_EVENT, members, receivedPdu);
+		for (String s : members) {
+			ClientListEntry client = clients.getClient(s);
+			if ((client == null) || s.equals(userName)
+					|| (client.getStatus() == ClientConversationStatus.UNREGISTERED)) {
+				continue;
+			}
+			try {
+				client.getConnection().send(eventPdu);
+			} catch (Exception e) {
+				log.error("Senden einer " + eventPdu.getPduType() + " an " + s + " nicht moeglich");
+				ExceptionHandler.logException(e);
+			}
+		}
+	}
+
+	/**
+	 * Userliste fuer Login- und Logout-Events an Clients im PresenceMode All:
+	 * fuer einen User in Raeumen die Mitglieder seiner Raeume, sonst alle
+	 * angemeldeten User. Sie wird erst ermittelt, wenn ein solcher Client
+	 * unter den Empfaengern ist.
+	 *
+	 * @return Namen der User
+	 */
+	protected Vector<String> getPresenceClientList() {
+		return clients.hasRooms(userName) ? clients.getRoomCoMembers(userName)
+				: clients.getRegisteredClientNameList();
+	}
+
+	/**
+	 * Login- oder Logout-Event fuer einen Empfaenger auswaehlen: Clients im
+	 * PresenceMode All erhalten das Event mit Userliste, alle anderen ein Event
+	 * ohne Liste, das fuer alle diese Empfaenger nur einmal erzeugt wird
+	 *
+	 * @param pdu
+	 *          Login- oder Logout-Event-PDU, die Userliste wird beim ersten
+	 *          Bedarf eingetragen
+	 * @param deltaPdu
+	 *          Bereits erzeugtes Event ohne Userliste oder null
+	 * @param client
+	 *          Empfaenger
+	 * @return Zu sendende PDU
+	 */
+	protected ChatPDU selectPresencePdu(ChatPDU pdu, ChatPDU deltaPdu, ClientListEntry client) {
+		if (client.getPresenceMode() != PresenceMode.All) {
+			return (deltaPdu != null) ? deltaPdu : ChatPDU.createPresenceDeltaPdu(pdu);
+		}
+		if (pdu.getClients() == null) {
+			Vector<String> clientList = getPresenceClientList();
+			if (log.isDebugEnabled()) {
+				log.debug("Aktuelle Clientliste, die an die Clients uebertragen wird: "
+						+ clientList);
+			}
+			pdu.setClients(clientList);
+		}
+		return pdu;
+	}
+
+	/**
+	 * PresenceMode und abonnierte User aus dem Login-Request uebernehmen, bevor
+	 * das Login-Event verteilt wird
+	 *
+	 * @param receivedPdu
+	 *          Empfangene Login-Request-PDU
+	 */
+	protected void subscribePresenceOnLogin(ChatPDU receivedPdu) {
+		if ((receivedPdu.getPresenceMode() != null) && clients.subscribePresence(userName,
+				receivedPdu.getPresenceMode(), receivedPdu.getClients())) {
+			metrics.presenceSubscriptions.increment();
+		}
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Presence-Subscribe-Requests:
+	 * PresenceMode und abonnierte User des Clients ersetzen. Die Response
+	 * enthaelt die angemeldeten User, deren Events der Client nun erhaelt.
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void presenceSubscribeRequestAction(ChatPDU receivedPdu) {
+
+		PresenceMode mode = (receivedPdu.getPresenceMode() != null)
+				? receivedPdu.getPresenceMode() : PresenceMode.All;
+		if (clients.subscribePresence(userName, mode, receivedPdu.getClients())) {
+			metrics.presenceSubscriptions.increment();
+		}
+		ChatPDU responsePdu = ChatPDU.createPresenceResponsePdu(
+				PduType.PRESENCE_SUBSCRIBE_RESPONSE, clients.getPresenceUserList(userName),
+				receivedPdu);
+		responsePdu.setPresenceMode(mode);
+		sendPresenceResponse(responsePdu);
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Presence-List-Requests: Die
+	 * vollstaendige Liste der angemeldeten User nur auf Anforderung senden
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void presenceListRequestAction(ChatPDU receivedPdu) {
+
+		metrics.presenceListRequests.increment();
+		sendPresenceResponse(ChatPDU.createPresenceResponsePdu(PduType.PRESENCE_LIST_RESPONSE,
+				clients.getRegisteredClientNameList(), receivedPdu));
+	}
+
+	private void sendPresenceResponse(ChatPDU responsePdu) {
+		try {
+			connection.send(responsePdu);
+			if (log.isDebugEnabled()) {
+				log.debug(responsePdu.getPduType() + " an " + userName + " gesendet, "
+						+ responsePdu.getClients().size() + " User");
+			}
+		} catch (Exception e) {
+			log.error("Senden einer " + responsePdu.getPduType() + " an " + userName
+					+ " nicht moeglich");
+			ExceptionHandler.logException(e);
+		}
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Direct-Message-Requests: Der
+	 * Empfaenger wird direkt ueber die Clientliste gesucht, es wird weder eine
+	 * Empfaengerliste noch eine Warteliste aufgebaut. Ist der Empfaenger nicht
+	 * angemeldet, wird sofort mit RECIPIENT_ERROR geantwortet.
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 * @param awaitConfirm
+	 *          true: Response erst nach dem Confirm des Empfaengers oder nach
+	 *          Ablauf der Confirm-Frist senden (Advanced), false: Response
+	 *          direkt nach dem Senden des Events (Simple)
+	 */
+	protected void directMessageRequestAction(ChatPDU receivedPdu, boolean awaitConfirm) {
+
+		clients.setRequestStartTime(userName, startTime);
+		clients.incrNumberOfReceivedChatMessages(userName);
+		serverGuiInterface.incrNumberOfRequests();
+		metrics.directRequests.increment();
+
+		ClientListEntry sender = clients.getClient(userName);
+		if (sender == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Direct-Message-Request von nicht angemeldetem User " + userName);
+			}
+			return;
+		}
+		String recipientName = receivedPdu.getRecipient();
+		ClientListEntry recipient = (recipientName != null) ? clients.getClient(recipientName)
+				: null;
+		if ((recipient == null)
+				|| (recipient.getStatus() == ClientConversationStatus.UNREGISTERED)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Direct-Message-Request von " + userName + " abgelehnt, Empfaenger "
+						+ recipientName + " nicht angemeldet");
+			}
+			sendDirectMessageResponse(pduRecycler, sender, recipientName, 0,
+					ChatPDU.RECIPIENT_ERROR, receivedPdu.getClientThreadName());
+			return;
+		}
+
+		// Kennung der Direktnachricht, der Empfaenger gibt sie im Confirm zurueck
+		long directId = sender.getNumberOfReceivedChatMessages();
+		if (awaitConfirm) {
+			sender.openDirectMessage(directId);
+			startDirectMessageDeadline(sender, recipientName, directId,
+					receivedPdu.getClientThreadName());
+		}
+
+		ChatPDU eventPdu = ChatPDU.createDirectMessageEventPdu(pduRecycler, receivedPdu);
+		eventPdu.setSequenceNumber(directId);
+		try {
+			long sendStart = System.nanoTime();
+			recipient.getConnection().send(eventPdu);
+			stageStatistics.record(ServerStage.RECIPIENT_SEND, System.nanoTime() - sendStart);
+			clients.incrNumberOfSentChatEvents(recipientName);
+			eventCounter.getAndIncrement();
+			serverGuiInterface.incrNumberOfEvents();
+		} catch (Exception e) {
+			log.error("Senden eines Direct-Message-Events an " + recipientName
+					+ " nicht moeglich");
+			ExceptionHandler.logException(e);
+			if (!awaitConfirm || sender.closeDirectMessage(directId)) {
+				sendDirectMessageResponse(pduRecycler, sender, recipientName, 0,
+						ChatPDU.RECIPIENT_ERROR, receivedPdu.getClientThreadName());
+			}
+			return;
+		}
+
+		if (!awaitConfirm) {
+			sendDirectMessageResponse(pduRecycler, sender, recipientName, 0, ChatPDU.NO_ERROR,
+					receivedPdu.getClientThreadName());
+		}
+	}
+
+	/**
+	 * Aktion fuer die Behandlung ankommender Direct-Message-Confirms: Das
+	 * erste Confirm zur offenen Direktnachricht schliesst sie ab, die Response
+	 * geht an den Absender
+	 *
+	 * @param receivedPdu
+	 *          Empfangene PDU
+	 */
+	protected void directMessageConfirmAction(ChatPDU receivedPdu) {
+
+		clients.incrNumberOfReceivedChatEventConfirms(receivedPdu.getEventUserName());
+		confirmCounter.getAndIncrement();
+
+		ClientListEntry sender = clients.getClient(receivedPdu.getEventUserName());
+		if ((sender == null) || !sender.closeDirectMessage(receivedPdu.getSequenceNumber())) {
+			// Veraltetes Confirm, Response wurde bereits nach Ablauf der Frist gesendet
+			if (log.isDebugEnabled()) {
+				log.debug("Direct-Message-Confirm von " + userName + " fuer "
+						+ receivedPdu.getEventUserName() + " ignoriert");
+			}
+			return;
+		}
+		sendDirectMessageResponse(pduRecycler, sender, userName, 0, ChatPDU.NO_ERROR,
+				receivedPdu.getClientThreadName());
+	}
+
+	/**
+	 * Confirm-Frist fuer eine offene Direktnachricht einplanen
+	 */
+	private void startDirectMessageDeadline(final ClientListEntry sender,
+			final String recipientName, final long directId,
+			final String requestClientThreadName) {
+		ScheduledFuture<?> deadline = scheduleConfirmDeadline(new Runnable() {
+			@Override
+			public void run() {
+				expireDirectMessage(sender, recipientName, directId, requestClientThreadName);
+			}
+		});
+		if (deadline != null) {
+			sender.setDirectMessageDeadline(directId, deadline);
+		}
+	}
+
+	/**
+	 * Confirm-Frist einer Direktnachricht ist abgelaufen: Das fehlende Confirm
+	 * zaehlen und mit einem verlorenen Confirm antworten. Laeuft in einem
+	 * Thread des Schedulers.
+	 */
+	private void expireDirectMessage(ClientListEntry sender, String recipientName,
+			long directId, String requestClientThreadName) {
+		if (!sender.closeDirectMessage(directId)) {
+			return;
+		}
+		metrics.confirmTimeouts.increment();
+		metrics.lostConfirms.add(1);
+		sender.incrNumberOfLostEventConfirms();
+		ClientListEntry recipient = clients.getClient(recipientName);
+		if (recipient != null) {
+			recipient.incrNumberOfMissedEventConfirms();
+		}
+		log.warn("Confirm-Frist von " + CONFIRM_TIMEOUT_MILLIS + " ms fuer Direktnachricht von "
+				+ sender.getUserName() + " an " + recipientName + " abgelaufen");
+		sendDirectMessageResponse(null, sender, recipientName, 1, ChatPDU.NO_ERROR,
+				requestClientThreadName);
+	}
+
+	/**
+	 * Direct-Message-Response an den Absender senden
+	 *
+	 * @param recycler
+	 *          Recycler des Worker-Threads, null ausserhalb des Worker-Threads
+	 * @param sender
+	 *          Eintrag des Absenders
+	 * @param recipientName
+	 *          Name des Empfaengers
+	 * @param lostConfirms
+	 *          0 oder 1, wenn das Confirm des Empfaengers ausblieb
+	 * @param errorCode
+	 *          NO_ERROR oder RECIPIENT_ERROR
+	 * @param requestClientThreadName
+	 *          Name des Client-Threads aus dem Request
+	 */
+	private void sendDirectMessageResponse(ChatPduRecycler recycler, ClientListEntry sender,
+			String recipientName, long lostConfirms, int errorCode,
+			String requestClientThreadName) {
+		ChatPDU responsePdu = ChatPDU.createDirectMessageResponsePdu(recycler,
+				sender.getUserName(), recipientName, lostConfirms,
+				sender.getNumberOfReceivedChatMessages(), requestClientThreadName,
+				System.nanoTime() - sender.getStartTime());
+		responsePdu.setErrorCode(errorCode);
+		try {
+			sender.getConnection().send(responsePdu);
+			metrics.directRequestLatency.record(responsePdu.getServerTime());
+			FlightRecorder.record(FlightRecorder.SENT, PduType.DIRECT_MESSAGE_RESPONSE,
+					sender.getUserName(), responsePdu.getSequenceNumber(), 0,
+					responsePdu.getServerTime());
+		} catch (Exception e) {
+			log.error("Senden der Direct-Message-Response an " + sender.getUserName()
+					+ " nicht moeglich");
+			ExceptionHandler.logException(e);
+		}
+	}
+
 	/**
 	 * Aktion fuer die Behandlung ankommender Login-Requests: Neuen Client anlegen
 	 * und alle Clients informieren
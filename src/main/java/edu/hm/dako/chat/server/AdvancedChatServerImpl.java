@@ -11,7 +11,6 @@ import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
-import javafx.concurrent.Task;
 
 /**
  * <p/>
@@ -30,36 +29,47 @@ public class AdvancedChatServerImpl extends AbstractChatServer {
     // entgegennimmt
     private ServerSocketInterface socket;
 
+    // Thread, der die Verbindungsaufbauwuensche entgegennimmt
+    private Thread acceptThread;
+
     /**
      * Konstruktor
      * 
      * @param executorService
      * @param socket
+     * @param clients
+     *            Clientliste, die nur dieser Server nutzt
      * @param serverGuiInterface
      */
     public AdvancedChatServerImpl(ExecutorService executorService,
-            ServerSocketInterface socket,
+            ServerSocketInterface socket, SharedChatClientList clients,
             ChatServerGuiInterface serverGuiInterface) {
         log.debug("AdvancedChatServerImpl konstruiert");
         this.executorService = executorService;
         this.socket = socket;
+        this.clients = clients;
         this.serverGuiInterface = serverGuiInterface;
         counter = new SharedServerCounter();
         counter.logoutCounter = new AtomicInteger(0);
         counter.eventCounter = new AtomicInteger(0);
         counter.confirmCounter = new AtomicInteger(0);
+        counter.stageStatistics = new ServerStageStatistics();
+        counter.scheduler = createScheduler("AdvancedChatServerScheduler");
+        counter.metrics = new ServerMetrics(counter);
+        counter.metrics.registerExecutor(executorService);
     }
 
     @Override
     public void start() {
-        Task<Void> task = new Task<Void>() {
-            @Override
-            protected Void call() throws Exception {
-                // Clientliste erzeugen
-                clients = SharedChatClientList.getInstance();
+        counter.metrics.registerClientList(clients);
+        counter.metrics.startExport();
 
-                while (!Thread.currentThread().isInterrupted()
-                        && !socket.isClosed()) {
+        // Der Listener laeuft in einem eigenen Thread, damit start() sofort
+        // zurueckkehrt (ohne JavaFX-Task, der Server kann auch ohne GUI laufen)
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted() && !socket.isClosed()) {
                     try {
                         // Auf ankommende Verbindungsaufbauwuensche warten
                         System.out.println(
@@ -67,34 +77,39 @@ public class AdvancedChatServerImpl extends AbstractChatServer {
 
                         Connection connection = socket.accept();
                         log.debug("Neuer Verbindungsaufbauwunsch empfangen");
+                        counter.metrics.connectionsAccepted.increment();
 
                         // Neuen Workerthread starten
-                        executorService.submit(
-                                new AdvancedChatWorkerThreadImpl(connection,
-                                        clients, counter, serverGuiInterface));
+                        executorService.submit(new AdvancedChatWorkerThreadImpl(connection, clients,
+                                counter, serverGuiInterface));
                     } catch (Exception e) {
                         if (socket.isClosed()) {
                             log.debug("Socket wurde geschlossen");
                         } else {
                             log.error(
-                                    "Exception beim Entgegennehmen von Verbindungsaufbauwuenschen: "
-                                            + e);
+                                    "Exception beim Entgegennehmen von Verbindungsaufbauwuenschen: " + e);
                             ExceptionHandler.logException(e);
                         }
                     }
                 }
-                return null;
             }
-        };
-
-        Thread th = new Thread(task);
-        th.setDaemon(true);
-        th.start();
+        }, "AdvancedChatServerAcceptThread");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
     }
 
     @Override
     public void stop() throws Exception {
 
+        if (acceptThread == null) {
+            // Server wurde nie gestartet
+            socket.close();
+            executorService.shutdown();
+            counter.scheduler.shutdownNow();
+            counter.metrics.stopExport();
+            return;
+        }
+
         // Alle Verbindungen zu aktiven Clients abbauen
         Vector<String> sendList = clients.getClientNameList();
         for (String s : new Vector<String>(sendList)) {
@@ -114,11 +129,15 @@ public class AdvancedChatServerImpl extends AbstractChatServer {
 
         // Loeschen der Userliste
         clients.deleteAll();
-        Thread.currentThread().interrupt();
+        if (acceptThread != null) {
+            acceptThread.interrupt();
+        }
         socket.close();
         log.debug("Listen-Socket geschlossen");
         executorService.shutdown();
         log.debug("Threadpool freigegeben");
+        counter.scheduler.shutdownNow();
+        counter.metrics.stopExport();
 
         System.out.println("AdvancedChatServer beendet sich");
     }
@@ -1,719 +1,1143 @@
-package edu.hm.dako.chat.server;
-
-import java.util.HashSet;
-import java.util.Vector;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
-import edu.hm.dako.chat.client.SharedClientData;
-import edu.hm.dako.chat.common.ChatPDU;
-import edu.hm.dako.chat.common.ClientConversationStatus;
-import edu.hm.dako.chat.common.ClientListEntry;
-import edu.hm.dako.chat.common.ExceptionHandler;
-import edu.hm.dako.chat.connection.Connection;
-import edu.hm.dako.chat.connection.ConnectionTimeoutException;
-import edu.hm.dako.chat.connection.EndOfFileException;
-
-/**
- * Worker-Thread zur serverseitigen Bedienung einer Session mit einem Client.
- * Jedem Chat-Client wird serverseitig ein Worker-Thread zugeordnet.
- * 
- * @author Peter Mandl
- *
- */
-public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
-
-    private static Log log = LogFactory
-            .getLog(AdvancedChatWorkerThreadImpl.class);
-
-    public AdvancedChatWorkerThreadImpl(Connection con,
-            SharedChatClientList clients, SharedServerCounter counter,
-            ChatServerGuiInterface serverGuiInterface) {
-
-        super(con, clients, counter, serverGuiInterface);
-    }
-
-    @Override
-    public void run() {
-        log.debug("ChatWorker-Thread erzeugt, Threadname: "
-                + Thread.currentThread().getName());
-        System.out.println("CHatWorker-Thread erzeugt");
-        while (!finished && !Thread.currentThread().isInterrupted()) {
-            try {
-                // Warte auf naechste Nachricht des Clients und fuehre
-                // entsprechende Aktion aus
-                handleIncomingMessage();
-            } catch (Exception e) {
-                log.error("Exception waehrend der Nachrichtenverarbeitung");
-                ExceptionHandler.logException(e);
-            }
-        }
-        log.debug(Thread.currentThread().getName() + " beendet sich");
-        closeConnection();
-    }
-
-    /**
-     * Senden eines Login-List-Update-Event an alle angemeldeten Clients
-     * 
-     * @param pdu
-     *            Zu sendende PDU
-     */
-    protected void sendLoginListUpdateEvent(ChatPDU pdu) {
-
-        // Liste der eingeloggten bzw. sich einloggenden User ermitteln
-        Vector<String> clientList = clients.getRegisteredClientNameList();
-
-        log.debug("Aktuelle Clientliste, die an die Clients uebertragen wird: "
-                + clientList);
-
-        pdu.setClients(clientList);
-
-        Vector<String> clientList2 = clients.getClientNameList();
-
-        // Login- oder Logout-Event-PDU an alle aktiven Clients senden
-        for (String s : new Vector<String>(clientList2)) {
-            log.debug("Fuer " + s
-                    + " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
-
-            ClientListEntry client = clients.getClient(s);
-            try {
-                if (client != null) {
-
-                    client.getConnection().send(pdu);
-                    log.debug("Login- oder Logout-Event-PDU an "
-                            + client.getUserName() + " gesendet");
-                    clients.incrNumberOfSentChatEvents(client.getUserName());
-                    eventCounter.getAndIncrement();
-                }
-            } catch (Exception e) {
-                log.error("Senden einer Login- oder Logout-Event-PDU an " + s
-                        + " nicht moeglich");
-                ExceptionHandler.logException(e);
-            }
-        }
-    }
-
-    @Override
-    protected void loginRequestAction(ChatPDU receivedPdu) {
-        ChatPDU pdu;
-        log.debug("Login-Request-PDU fr " + receivedPdu.getUserName()
-                + " empfangen" + "\n" + receivedPdu);
-
-        // Neuer Client moechte sich einloggen, Client in Client-Liste
-        // eintragen
-        if (!clients.existsClient(receivedPdu.getUserName())) {
-            log.debug(
-                    "User nicht in Clientliste: " + receivedPdu.getUserName());
-            ClientListEntry client = new ClientListEntry(
-                    receivedPdu.getUserName(), connection);
-            client.setLoginTime(System.nanoTime());
-            clients.createClient(receivedPdu.getUserName(), client);
-            clients.changeClientStatus(receivedPdu.getUserName(),
-                    ClientConversationStatus.REGISTERING);
-            log.debug("User " + receivedPdu.getUserName()
-                    + " nun in Clientliste");
-
-            userName = receivedPdu.getUserName();
-            clientThreadName = receivedPdu.getClientThreadName();
-            Thread.currentThread().setName(receivedPdu.getUserName());
-            log.debug("Laenge der Clientliste: " + clients.size());
-            serverGuiInterface.incrNumberOfLoggedInClients();
-
-            // Warteliste der eingeloggten User erstellen
-            clients.createWaitList(userName);
-
-            // Login-Event an alle Clients (auch an den gerade aktuell
-            // Anfragenden) senden
-            Vector<String> clientList = clients.getClientNameList();
-            pdu = ChatPDU.createLoginEventPdu(userName, clientList,
-                    receivedPdu);
-            sendLoginListUpdateEvent(pdu);
-            log.debug("Login-Event-PDU fr " + receivedPdu.getEventUserName()
-                    + "an alle angemeldeten und"
-                    + "sich anmeldenden Clients senden. \n" + pdu);
-
-        } else {
-            // User bereits angemeldet, Fehlermeldung an Client senden,
-            pdu = ChatPDU.createLoginErrorResponsePdu(receivedPdu,
-                    ChatPDU.LOGIN_ERROR);
-
-            try {
-                connection.send(pdu);
-                log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
-                        + " mit Fehlercode " + ChatPDU.LOGIN_ERROR
-                        + " gesendet");
-            } catch (Exception e) {
-                log.debug("Senden einer Login-Response-PDU an "
-                        + receivedPdu.getUserName() + " nicth moeglich");
-                ExceptionHandler.logExceptionAndTerminate(e);
-            }
-        }
-    }
-
-    @Override
-    protected void logoutRequestAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        ChatPDU pdu;
-        // Counter fr Benchmarking erhhen
-        logoutCounter.getAndIncrement();
-        log.debug("Logout-Request von " + receivedPdu.getUserName()
-                + "empfangen" + ", LogoutCount = " + logoutCounter.get());
-
-        if (!clients.existsClient(userName)) {
-            log.debug(
-                    "User nicht in Clientliste: " + receivedPdu.getUserName());
-        } else {
-
-            Vector<String> clientList = clients.getClientNameList();
-            // LogoutEventPdu erstellen
-            pdu = ChatPDU.createLogoutEventPdu(userName, clientList,
-                    receivedPdu);
-            log.debug("Erstellte Pdu " + pdu);
-            // Status des Clients ndern in Unregistering
-            clients.changeClientStatus(receivedPdu.getUserName(),
-                    ClientConversationStatus.UNREGISTERING);
-            // Event an Clients versenden
-            sendLoginListUpdateEvent(pdu);
-            serverGuiInterface.decrNumberOfLoggedInClients();
-
-        }
-    }
-
-    @Override
-    protected void chatMessageRequestAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        ClientListEntry client = null;
-        clients.setRequestStartTime(receivedPdu.getUserName(), startTime);
-        clients.incrNumberOfReceivedChatMessages(receivedPdu.getUserName());
-        serverGuiInterface.incrNumberOfRequests();
-        log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
-                + " mit Sequenznummer " + receivedPdu.getSequenceNumber()
-                + " empfangen");
-
-        if (!clients.existsClient(receivedPdu.getUserName())) {
-            log.debug(
-                    "User nicht in Clientliste: " + receivedPdu.getUserName());
-        } else {
-            // Erstellen einer Waitlist
-            clients.createWaitList(userName);
-
-            // Liste der betroffenen Clients ermitteln
-            Vector<String> sendList = clients.getClientNameList();
-
-            // ChatMessageEventPdu erstellen
-            ChatPDU pdu = ChatPDU.createChatMessageEventPdu(userName,
-                    receivedPdu);
-            log.debug("ErstelltePdu " + pdu);
-
-            // Event an Clients senden
-            for (String s : new Vector<String>(sendList)) {
-                client = clients.getClient(s);
-                try {
-                    if ((client != null) && (client
-                            .getStatus() != ClientConversationStatus.UNREGISTERED)) {
-                        pdu.setUserName(client.getUserName());
-                        client.getConnection().send(pdu);
-                        log.debug("Chat-Event-PDU an " + client.getUserName()
-                                + " gesendet");
-                        // Counter fr Benchmarking erhhen
-                        clients.incrNumberOfSentChatEvents(
-                                client.getUserName());
-                        eventCounter.getAndIncrement();
-                        log.debug(userName + ": EventCounter erhoeht = "
-                                + eventCounter.get()
-                                + ", Aktueller ConfirmCounter = "
-                                + confirmCounter.get()
-                                + ", Anzahl gesendeter ChatMessages von dem Client = "
-                                + receivedPdu.getSequenceNumber());
-                    }
-                } catch (Exception e) {
-                    log.debug("Senden einer Chat-Event-PDU an "
-                            + client.getUserName() + " nicht moeglich");
-                    ExceptionHandler.logException(e);
-                }
-            }
-
-            log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
-        }
-    }
-
-    /**
-     * Verbindung zu einem Client ordentlich abbauen
-     */
-    private void closeConnection() {
-
-        log.debug("Schliessen der Chat-Connection zum " + userName);
-
-        // Bereinigen der Clientliste falls erforderlich
-
-        if (clients.existsClient(userName)) {
-            log.debug("Close Connection fuer " + userName
-                    + ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
-                    + clients.size());
-
-            clients.deleteClientWithoutCondition(userName);
-            log.debug(
-                    "Laenge der Clientliste nach dem bedingungslosen Loeschen von "
-                            + userName + ": " + clients.size());
-        }
-
-        try {
-            connection.close();
-        } catch (Exception e) {
-            log.debug("Exception bei close");
-            // ExceptionHandler.logException(e);
-        }
-    }
-
-    /**
-     * Antwort-PDU fuer den initiierenden Client aufbauen und senden
-     * 
-     * @param eventInitiatorClient
-     *            Name des Clients
-     */
-    private void sendLogoutResponse(String eventInitiatorClient) {
-
-        ClientListEntry client = clients.getClient(eventInitiatorClient);
-
-        if (client != null) {
-            ChatPDU responsePdu = ChatPDU.createLogoutResponsePdu(
-                    eventInitiatorClient, 0, 0, 0, 0,
-                    client.getNumberOfReceivedChatMessages(), clientThreadName);
-            log.debug("Erstellte Pdu " + responsePdu); // AG
-            log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
-                    + client.getNumberOfSentEvents()
-                    + ": ReceivedConfirms aus Clientliste: "
-                    + client.getNumberOfReceivedEventConfirms());
-            try {
-                clients.getClient(eventInitiatorClient).getConnection()
-                        .send(responsePdu);
-            } catch (Exception e) {
-                log.debug("Senden einer Logout-Response-PDU an "
-                        + eventInitiatorClient + " fehlgeschlagen");
-                log.debug("Exception Message: " + e.getMessage());
-            }
-
-            log.debug("Logout-Response-PDU an Client " + eventInitiatorClient
-                    + " gesendet");
-        }
-    }
-
-    /**
-     * Prueft, ob Clients aus der Clientliste geloescht werden koennen
-     * 
-     * @return boolean, true: Client geloescht, false: Client nicht geloescht
-     */
-    private boolean checkIfClientIsDeletable() {
-
-        ClientListEntry client;
-
-        // Worker-Thread beenden, wenn der entsprechende Client schon abgemeldet ist
-        if (userName != null) {
-            client = clients.getClient(userName);
-            if (client != null) {
-                if (client.isFinished()) {
-                    // Loesche den Client aus der Clientliste
-                    // Ein Loeschen ist aber nur zulaessig, wenn der Client
-                    // nicht mehr in einer anderen Warteliste ist
-                    log.debug("Laenge der Clientliste vor dem Entfernen von "
-                            + userName + ": " + clients.size());
-                    if (clients.deleteClient(userName) == true) {
-                        // Jetzt kann auch Worker-Thread beendet werden
-
-                        log.debug(
-                                "Laenge der Clientliste nach dem Entfernen von "
-                                        + userName + ": " + clients.size());
-                        log.debug("Worker-Thread fuer " + userName
-                                + " zum Beenden vorgemerkt");
-                        return true;
-                    }
-                }
-            }
-        }
-
-        // Garbage Collection in der Clientliste durchfuehren
-        Vector<String> deletedClients = clients.gcClientList();
-        if (deletedClients.contains(userName)) {
-            log.debug(
-                    "Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
-                            + userName + " kann beendet werden");
-            finished = true;
-            return true;
-        }
-        return false;
-    }
-
-    @Override
-    protected void handleIncomingMessage() throws Exception {
-        if (checkIfClientIsDeletable() == true) {
-            return;
-        }
-
-        // Warten auf naechste Nachricht
-        ChatPDU receivedPdu = null;
-
-        // Nach einer Minute wird geprueft, ob Client noch eingeloggt ist
-        final int RECEIVE_TIMEOUT = 1200000;
-
-        try {
-            receivedPdu = (ChatPDU) connection.receive(RECEIVE_TIMEOUT);
-            // Nachricht empfangen
-            // Zeitmessung fuer Serverbearbeitungszeit starten
-            startTime = System.nanoTime();
-            log.debug(startTime + "nano zeit");
-
-        } catch (ConnectionTimeoutException e) {
-
-            // Wartezeit beim Empfang abgelaufen, pruefen, ob der Client
-            // ueberhaupt noch etwas sendet
-            log.debug("Timeout beim Empfangen, " + RECEIVE_TIMEOUT
-                    + " ms ohne Nachricht vom Client");
-
-            if (clients.getClient(userName) != null) {
-
-                if (clients.getClient(userName)
-                        .getStatus() == ClientConversationStatus.UNREGISTERING) {
-                    // Worker-Thread wartet auf eine Nachricht vom Client, aber
-                    // es
-                    // kommt nichts mehr an
-                    log.error(
-                            "Client ist im Zustand UNREGISTERING und bekommt aber keine Nachricht mehr");
-                    // Zur Sicherheit eine Logout-Response-PDU an Client senden
-                    sendLogoutResponse(receivedPdu.getEventUserName());
-                    log.debug("Logout-Response-PDU wurde nochmals an "
-                            + receivedPdu.getEventUserName()
-                            + "gesendet da Worker-Thread auf Nachricht vom Client wartet aber nichts mehr ankommt");
-                    // Worker-Thread wird beendet
-                    finished = true;
-                }
-                // Komplexer Logout: Implementierungsansatz fr folgenden Fall:
-                // Client meldet
-                // sich ab, obwohl er noch in einer Waitlist enthalten ist
-                // Verwendung von eigener auskommentierter Methode getWaitLists
-                // in SharedChatClientData
-            } else {
-
-                // if (clients.deletable(receivedPdu.getUserName())== false){
-                // HashSet<String> waitList =
-                // clients.getWaitLists(receivedPdu.getUserName());
-                // clients.deleteClientWithoutCondition(receivedPdu.getUserName());
-                // for (String s: waitList) {
-                // if (clients.getWaitListSize(s) == 0) {
-                // if (clients.getClientStatus(s)==
-                // ClientConversationStatus.REGISTERING) {
-                // ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(s,
-                // receivedPdu);
-                // clients.getClient(s).getConnection().send(responsePdu);
-                // } else if (clients.getClientStatus(s) ==
-                // ClientConversationStatus.REGISTERED)
-                // {
-                // ClientListEntry c = clients.getClient(s);
-                // ChatPDU responsePdu =
-                // ChatPDU.createChatMessageResponsePdu(receivedPdu.getEventUserName(),
-                // 0, 0, 0,
-                // 0,
-                // c.getNumberOfReceivedChatMessages(),
-                // receivedPdu.getClientThreadName(),
-                // (System.nanoTime() - c.getStartTime()));
-                // clients.getClient(s).getConnection().send(responsePdu);
-                // } else if (clients.getClientStatus(s) ==
-                // ClientConversationStatus.UNREGISTERING) {
-                // sendLogoutResponse(s);
-                // }
-                // }
-                // }
-                // }
-
-            }
-
-            return;
-
-        } catch (EndOfFileException e) {
-            log.debug(
-                    "End of File beim Empfang, vermutlich Verbindungsabbau des Partners fuer "
-                            + userName);
-            finished = true;
-            return;
-
-        } catch (java.net.SocketException e) {
-            log.error(
-                    "Verbindungsabbruch beim Empfang der naechsten Nachricht vom Client "
-                            + getName());
-            finished = true;
-            return;
-
-        } catch (Exception e) {
-            log.error(
-                    "Empfang einer Nachricht fehlgeschlagen, Workerthread fuer User: "
-                            + userName);
-            ExceptionHandler.logException(e);
-            finished = true;
-            return;
-        }
-
-        // Empfangene Nachricht bearbeiten
-        try {
-
-            switch (receivedPdu.getPduType()) {
-
-                case LOGIN_REQUEST :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case LOGIN_REQUEST");
-                    // Login-Request vom Client empfangen
-                    loginRequestAction(receivedPdu);
-                    break;
-
-                case CHAT_MESSAGE_REQUEST :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case CHAT_MESSAGE_REQUEST");
-                    // Chat-Nachricht angekommen, an alle verteilen
-                    chatMessageRequestAction(receivedPdu);
-                    break;
-
-                case CHAT_MESSAGE_CONFIRM :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case CHAT_MESSAGE_CONFIRM");
-                    // chat Nachricht beim Client angekommen
-                    chatMessageConfirmAction(receivedPdu);
-                    break;
-
-                case LOGOUT_REQUEST :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case LOGOUT_REQUEST");
-                    // Logout-Request vom Client empfangen
-                    logoutRequestAction(receivedPdu);
-                    break;
-
-                case LOGIN_CONFIRM :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case LOGIN_CONFIRM");
-                    // Login-Confirm von Client empfangen
-                    loginConfirmAction(receivedPdu);
-                    break;
-
-                case LOGOUT_CONFIRM :
-                    log.debug(
-                            "Empfangene Nachricht in Switch Case LOGOUT_CONFIRM");
-                    // Logout-Confirm von Client empfangen
-                    logoutConfirmAction(receivedPdu);
-                    break;
-
-                default :
-                    log.debug("Falsche PDU empfangen von Client: "
-                            + receivedPdu.getUserName() + ", PduType: "
-                            + receivedPdu.getPduType());
-                    break;
-            }
-        } catch (Exception e) {
-            log.error("Exception bei der Nachrichtenverarbeitung");
-            ExceptionHandler.logExceptionAndTerminate(e);
-        }
-    }
-
-    /**
-     * Verschickt die Besttigung das alle die Chat-Nachricht erhalten haben,
-     * wenn alle Clients das ChatMessage-Event besttigt haben
-     * 
-     * @param receivedPdu
-     *            erhaltende ChatMessage-Confirm-PDU
-     */
-    private void chatMessageConfirmAction(ChatPDU receivedPdu) {
-
-        log.debug("Empfangene PDU " + receivedPdu);
-        // Counter fr Benchmarking erhhen
-        clients.incrNumberOfReceivedChatEventConfirms(
-                receivedPdu.getEventUserName());
-        confirmCounter.getAndIncrement();
-        log.debug("Chat Message Confirm PDU von " + receivedPdu.getUserName()
-                + " fr User " + receivedPdu.getEventUserName()
-                + " empfangen.");
-        log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
-
-        try {
-            log.debug("Event User Name: " + receivedPdu.getEventUserName());
-            log.debug("Gre vor Lschen"
-                    + clients.getWaitListSize(receivedPdu.getEventUserName()));
-            // Client aus Warteliste lschen
-            clients.deleteWaitListEntry(receivedPdu.getEventUserName(),
-                    userName);
-            log.debug("Gre nach Lschen"
-                    + clients.getWaitListSize(receivedPdu.getEventUserName()));
-            // berprfen, ob Wartelistegre 0 ist
-            if (clients.getWaitListSize(receivedPdu.getEventUserName()) == 0) {
-                // Bekomme die Liste aller Clients
-                ClientListEntry clientList = clients
-                        .getClient(receivedPdu.getEventUserName());
-                // Testen ob berhaupt Clients vorhanden
-                if (clientList != null) {
-                    // Erstellen der ResponsePDU
-                    ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(
-                            receivedPdu.getEventUserName(), 0, 0, 0, 0,
-                            clientList.getNumberOfReceivedChatMessages(),
-                            receivedPdu.getClientThreadName(),
-                            (System.nanoTime() - clientList.getStartTime()));
-                    log.debug("Erstellte Pdu " + responsePdu);
-
-                    if (responsePdu.getServerTime() / 1000000 > 100) {
-                        log.debug(Thread.currentThread().getName()
-                                + ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
-                                + responsePdu.getServerTime() + " ns = "
-                                + responsePdu.getServerTime() / 1000000
-                                + " ms");
-                    }
-
-                    try {
-                        // Senden der ResonsePDU
-                        clients.getClient(receivedPdu.getEventUserName())
-                                .getConnection().send(responsePdu);
-                        log.debug("Chat-Message-Response-PDU an "
-                                + receivedPdu.getEventUserName() + " gesendet");
-
-                    } catch (Exception e) {
-                        log.debug("Senden einer Chat-Message-Response-PDU an "
-                                + receivedPdu.getEventUserName()
-                                + " nicht moeglich");
-                        ExceptionHandler.logExceptionAndTerminate(e);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            ExceptionHandler.logException(e);
-        }
-    }
-
-    /**
-     * Verschickt die Login-Response-PDU als Zeichen das sich der Client
-     * anmelden darf, wenn alle Clients das Login-Event besttigt haben
-     * 
-     * @param receivedPdu
-     *            erhaltene Login-Confirm-PDU
-     */
-    private void loginConfirmAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        // Counter fr Benchmarking erhhen
-        clients.incrNumberOfReceivedChatEventConfirms(
-                receivedPdu.getEventUserName());
-        confirmCounter.getAndIncrement();
-        log.debug("Login Confirm PDU von " + receivedPdu.getEventUserName()
-                + " fr User " + receivedPdu.getUserName() + " empfangen.");
-        log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
-
-        try {
-            // lscht Client, der Nachricht besttigt hat, aus der Warteliste
-            // raus
-            clients.deleteWaitListEntry(receivedPdu.getEventUserName(),
-                    userName);
-
-            // berprfen, ob Wartelistegre 0 ist
-            if (clients.getWaitListSize(receivedPdu.getEventUserName()) == 0) {
-                // bekomme die Liste aller Clients
-                ClientListEntry clientList = clients
-                        .getClient(receivedPdu.getEventUserName());
-
-                if (clientList != null) {
-                    // Erstellen der ResponsePDU
-                    ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(
-                            receivedPdu.getEventUserName(), receivedPdu);
-                    log.debug("Erstellte Pdu " + responsePdu);
-                    try {
-                        // Senden der ResponsePDU
-                        clients.getClient(receivedPdu.getEventUserName())
-                                .getConnection().send(responsePdu);
-                        log.debug("LoginResponse Pdu wurde gesendet an "
-                                + responsePdu.getUserName());
-
-                    } catch (Exception e) {
-                        log.debug("Senden einer Login-Response-PDU an "
-                                + userName + " fehlgeschlagen");
-                        log.debug("Exception Message: " + e.getMessage());
-                        ExceptionHandler.logExceptionAndTerminate(e);
-                    }
-
-                    log.debug("Login-Response-PDU an Client " + userName
-                            + " gesendet");
-
-                    // Zustand des Clients ndern
-                    clients.changeClientStatus(userName,
-                            ClientConversationStatus.REGISTERED);
-
-                }
-            }
-        } catch (Exception e) {
-            ExceptionHandler.logException(e);
-        }
-
-    }
-
-    /**
-     * Verschickt die Logout-Response-PDU als Zeichen das sich der Client
-     * ausloggen darf, wenn alle Clients das Logout-Event besttigt haben
-     * 
-     * @param receivedPdu
-     *            erhaltene Logout-Confirm-PDU
-     */
-    private void logoutConfirmAction(ChatPDU receivedPdu) {
-        log.debug("Empfangene Pdu " + receivedPdu);
-        // Counter fr Benchmarking erhhen
-        clients.incrNumberOfReceivedChatEventConfirms(
-                receivedPdu.getEventUserName());
-        confirmCounter.getAndIncrement();
-        log.debug("Logout Confirm PDU von " + receivedPdu.getUserName()
-                + " fr User " + receivedPdu.getEventUserName()
-                + " empfangen.");
-        log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
-
-        try {
-            // Lscht Client, der Nachricht besttigt hat aus der Warteliste
-            // raus
-            clients.deleteWaitListEntry(receivedPdu.getEventUserName(),
-                    userName);
-
-            // berprfen, ob Wartelistegre 0 ist
-            if (clients.getWaitListSize(receivedPdu.getEventUserName()) == 0) {
-                // bekomme die Liste aller Clients
-                ClientListEntry clientList = clients
-                        .getClient(receivedPdu.getEventUserName());
-
-                if (clientList != null) {
-
-                    try {
-                        // Der Thread muss hier noch warten, bevor ein
-                        // Logout-Response gesendet
-                        // wird, da sich sonst ein Client abmeldet, bevor er
-                        // seinen letzten Event
-                        // empfangen hat. das funktioniert nicht bei einer
-                        // grossen Anzahl an
-                        // Clients (kalkulierte Events stimmen dann nicht mit
-                        // tatsaechlich
-                        // empfangenen Events ueberein.
-                        // In der Advanced-Variante wird noch ein Confirm
-                        // gesendet, das ist
-                        // sicherer.
-
-                        Thread.sleep(1000);
-                        log.debug("Zeit ist abgelaufen!");
-
-                    } catch (Exception e) {
-                        ExceptionHandler.logException(e);
-                    }
-                    // Status des Clients ndern
-                    clients.changeClientStatus(receivedPdu.getEventUserName(),
-                            ClientConversationStatus.UNREGISTERED);
-
-                    // LogoutResponse erstellen und senden
-                    sendLogoutResponse(receivedPdu.getEventUserName());
-
-                    clients.finish(receivedPdu.getEventUserName());
-                    log.debug(
-                            "Laenge der Clientliste beim Vormerken zum Loeschen von "
-                                    + receivedPdu.getUserName() + ": "
-                                    + clients.size());
-
-                }
-            }
-        } catch (Exception e) {
-            ExceptionHandler.logException(e);
-        }
-    }
-}
+package edu.hm.dako.chat.server;
+
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import edu.hm.dako.chat.client.SharedClientData;
+import edu.hm.dako.chat.common.ChatPDU;
+import edu.hm.dako.chat.common.ChatPduRecycler;
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.PduDiagnostics;
+import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.ServerStage;
+import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionTimeoutException;
+import edu.hm.dako.chat.connection.EndOfFileException;
+
+/**
+ * Worker-Thread zur serverseitigen Bedienung einer Session mit einem Client.
+ * Jedem Chat-Client wird serverseitig ein Worker-Thread zugeordnet.
+ * 
+ * @author Peter Mandl
+ *
+ */
+public class AdvancedChatWorkerThreadImpl extends AbstractWorkerThread {
+
+    private static Log log = LogFactory
+            .getLog(AdvancedChatWorkerThreadImpl.class);
+
+    public AdvancedChatWorkerThreadImpl(Connection con,
+            SharedChatClientList clients, SharedServerCounter counter,
+            ChatServerGuiInterface serverGuiInterface) {
+
+        super(con, clients, counter, serverGuiInterface);
+    }
+
+    @Override
+    public void run() {
+        if (log.isDebugEnabled()) {
+            log.debug("ChatWorker-Thread erzeugt, Threadname: "
+                    + Thread.currentThread().getName());
+        }
+        System.out.println("CHatWorker-Thread erzeugt");
+        while (!finished && !Thread.currentThread().isInterrupted()) {
+            try {
+                // Warte auf naechste Nachricht des Clients und fuehre
+                // entsprechende Aktion aus
+                handleIncomingMessage();
+            } catch (Exception e) {
+                log.error("Exception waehrend der Nachrichtenverarbeitung");
+                ExceptionHandler.logException(e);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(Thread.currentThread().getName() + " beendet sich");
+        }
+        closeConnection();
+    }
+
+    /**
+     * Senden eines Login-List-Update-Event an die betroffenen Clients: die
+     * Mitglieder der Raeume des Users bzw. ohne Raum alle Clients im
+     * PresenceMode All, dazu die Abonnenten des Users. Nur Clients im
+     * PresenceMode All erhalten die Userliste.
+     * 
+     * @param pdu
+     *            Zu sendende PDU
+     * @param recipients
+     *            Empfaenger des Events (siehe
+     *            SharedChatClientList.getPresenceRecipients)
+     */
+    protected void sendLoginListUpdateEvent(ChatPDU pdu,
+            Vector<String> recipients) {
+
+        metrics.presenceFanOut.record(recipients.size());
+        ChatPDU deltaPdu = null;
+
+        // Login- oder Logout-Event-PDU an alle betroffenen Clients senden
+        for (String s : new Vector<String>(recipients)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Fuer " + s
+                        + " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
+            }
+
+            ClientListEntry client = clients.getClient(s);
+            try {
+                if (client != null) {
+
+                    ChatPDU eventPdu = selectPresencePdu(pdu, deltaPdu, client);
+                    if (eventPdu != pdu) {
+                        deltaPdu = eventPdu;
+                    }
+                    client.getConnection().send(eventPdu);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Login- oder Logout-Event-PDU an "
+                                + client.getUserName() + " gesendet");
+                    }
+                    clients.incrNumberOfSentChatEvents(client.getUserName());
+                    eventCounter.getAndIncrement();
+                    serverGuiInterface.incrNumberOfEvents();
+                }
+            } catch (Exception e) {
+                log.error("Senden einer Login- oder Logout-Event-PDU an " + s
+                        + " nicht moeglich");
+                ExceptionHandler.logException(e);
+            }
+        }
+    }
+
+    @Override
+    protected void loginRequestAction(ChatPDU receivedPdu) {
+        ChatPDU pdu;
+        if (log.isDebugEnabled()) {
+            log.debug("Login-Request-PDU fr " + receivedPdu.getUserName()
+                    + " empfangen" + "\n" + receivedPdu);
+        }
+
+        // Neuer Client moechte sich einloggen, Client in Client-Liste
+        // eintragen
+        if (!clients.existsClient(receivedPdu.getUserName())) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
+            ClientListEntry client = new ClientListEntry(
+                    receivedPdu.getUserName(), connection);
+            client.setLoginTime(System.nanoTime());
+            clients.createClient(receivedPdu.getUserName(), client,
+                    receivedPdu.getRoom());
+            clients.changeClientStatus(receivedPdu.getUserName(),
+                    ClientConversationStatus.REGISTERING);
+            if (log.isDebugEnabled()) {
+                log.debug("User " + receivedPdu.getUserName()
+                        + " nun in Clientliste");
+            }
+
+            userName = receivedPdu.getUserName();
+            clientThreadName = receivedPdu.getClientThreadName();
+            Thread.currentThread().setName(receivedPdu.getUserName());
+            if (log.isDebugEnabled()) {
+                log.debug("Laenge der Clientliste: " + clients.size());
+            }
+            serverGuiInterface.incrNumberOfLoggedInClients();
+            metrics.logins.increment();
+
+            // Beitritt zum Raum und Presence-Abonnement aus dem
+            // Login-Request
+            if ((receivedPdu.getRoom() != null)
+                    && clients.joinRoom(userName, receivedPdu.getRoom())) {
+                metrics.roomJoins.increment();
+            }
+            subscribePresenceOnLogin(receivedPdu);
+
+            // Warteliste der betroffenen User erstellen
+            Vector<String> recipients = clients.getPresenceRecipients(userName);
+            client.setPendingResponse(PduType.LOGIN_RESPONSE, clientThreadName);
+            clients.createWaitList(userName, recipients, 0,
+                    DeliveryGuarantee.All, 0);
+            startConfirmDeadline(client, PduType.LOGIN_RESPONSE,
+                    clientThreadName);
+
+            // Login-Event an alle betroffenen Clients (auch an den gerade
+            // aktuell Anfragenden) senden
+            // Die Userliste wird erst beim Senden eingetragen
+            pdu = ChatPDU.createLoginEventPdu(userName, null, receivedPdu);
+            sendLoginListUpdateEvent(pdu, recipients);
+            if (log.isDebugEnabled()) {
+                log.debug("Login-Event-PDU fr " + receivedPdu.getEventUserName()
+                        + "an alle angemeldeten und"
+                        + "sich anmeldenden Clients senden. \n" + pdu);
+            }
+
+        } else {
+            // User bereits angemeldet, Fehlermeldung an Client senden,
+            pdu = ChatPDU.createLoginErrorResponsePdu(receivedPdu,
+                    ChatPDU.LOGIN_ERROR);
+
+            try {
+                connection.send(pdu);
+                if (log.isDebugEnabled()) {
+                    log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
+                            + " mit Fehlercode " + ChatPDU.LOGIN_ERROR
+                            + " gesendet");
+                }
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Senden einer Login-Response-PDU an "
+                            + receivedPdu.getUserName() + " nicth moeglich");
+                }
+                ExceptionHandler.logExceptionAndTerminate(e);
+            }
+        }
+    }
+
+    @Override
+    protected void logoutRequestAction(ChatPDU receivedPdu) {
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        ChatPDU pdu;
+        // Counter fr Benchmarking erhhen
+        logoutCounter.getAndIncrement();
+        if (log.isDebugEnabled()) {
+            log.debug("Logout-Request von " + receivedPdu.getUserName()
+                    + "empfangen" + ", LogoutCount = " + logoutCounter.get());
+        }
+
+        if (!clients.existsClient(userName)) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
+        } else {
+
+            // LogoutEventPdu erstellen (Userliste wird erst beim Senden
+            // eingetragen)
+            pdu = ChatPDU.createLogoutEventPdu(userName, null, receivedPdu);
+            PduDiagnostics.dump(log, "Erstellte Pdu ", pdu);
+
+            // Warteliste fuer die Logout-Confirms erstellen, solange der
+            // Client noch registriert ist. Der Logout wird abgeschlossen,
+            // wenn alle Confirms da sind oder die Confirm-Frist ablaeuft.
+            Vector<String> recipients = clients.getPresenceRecipients(userName);
+            ClientListEntry client = clients.getClient(userName);
+            if (client != null) {
+                client.setPendingResponse(PduType.LOGOUT_RESPONSE,
+                        receivedPdu.getClientThreadName());
+            }
+            clients.createWaitList(userName, recipients, 0,
+                    DeliveryGuarantee.All, 0);
+            if (client != null) {
+                startConfirmDeadline(client, PduType.LOGOUT_RESPONSE,
+                        receivedPdu.getClientThreadName());
+            }
+
+            // Status des Clients ndern in Unregistering
+            clients.changeClientStatus(receivedPdu.getUserName(),
+                    ClientConversationStatus.UNREGISTERING);
+            // Event an die betroffenen Clients versenden
+            sendLoginListUpdateEvent(pdu, recipients);
+            serverGuiInterface.decrNumberOfLoggedInClients();
+
+        }
+    }
+
+    @Override
+    protected void chatMessageRequestAction(ChatPDU receivedPdu) {
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        ClientListEntry client = null;
+        clients.setRequestStartTime(receivedPdu.getUserName(), startTime);
+        clients.incrNumberOfReceivedChatMessages(receivedPdu.getUserName());
+        serverGuiInterface.incrNumberOfRequests();
+        metrics.chatRequests.increment();
+        if (log.isDebugEnabled()) {
+            log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
+                    + " mit Sequenznummer " + receivedPdu.getSequenceNumber()
+                    + " empfangen");
+        }
+
+        if (!clients.existsClient(receivedPdu.getUserName())) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "User nicht in Clientliste: " + receivedPdu.getUserName());
+            }
+        } else if (!rejectChatMessageOutsideRoom(receivedPdu)) {
+            ClientListEntry sender = clients.getClient(userName);
+
+            // Liste der betroffenen Clients ermitteln (Mitglieder des Raums
+            // oder alle Clients)
+            Vector<String> sendList = getChatRecipients(receivedPdu);
+            long lookupEnd = System.nanoTime();
+            if (sender != null) {
+                sender.clearStageTimes();
+            }
+
+            // Zustellgarantie des Requests, ohne Angabe die Vorgabe des
+            // Servers
+            DeliveryGuarantee guarantee = receivedPdu.getDeliveryGuarantee();
+            int quorum = receivedPdu.getDeliveryQuorum();
+            if (guarantee == null) {
+                guarantee = DeliveryGuarantee.getServerDefault();
+                quorum = DeliveryGuarantee.getServerDefaultQuorum();
+            }
+            metrics.requestsByDelivery(guarantee).increment();
+
+            // Erstellen einer Waitlist
+            long waitListStart = System.nanoTime();
+            if (sender != null) {
+                sender.setPendingResponse(PduType.CHAT_MESSAGE_RESPONSE,
+                        receivedPdu.getClientThreadName());
+            }
+            Vector<String> waitList = clients.createWaitList(userName,
+                    sendList, receivedPdu.getSequenceNumber(), guarantee,
+                    quorum);
+            long waitListEnd = System.nanoTime();
+            if (waitList != null) {
+                metrics.waitListSize.record(waitList.size());
+            }
+            if (sender != null) {
+                startConfirmDeadline(sender, PduType.CHAT_MESSAGE_RESPONSE,
+                        receivedPdu.getClientThreadName());
+            }
+
+            // Bearbeitungszeiten bis zur Verteilung erfassen. Das Einplanen
+            // der Confirm-Frist und die Kennzahlen zaehlen zu keiner Stufe.
+            long lookupNanos = lookupEnd - startTime;
+            long waitListNanos = waitListEnd - waitListStart;
+            stageStatistics.record(ServerStage.REGISTRY_LOOKUP, lookupNanos);
+            stageStatistics.record(ServerStage.WAITLIST_CREATION, waitListNanos);
+            if (sender != null) {
+                sender.setStageTime(ServerStage.REGISTRY_LOOKUP, lookupNanos);
+                sender.setStageTime(ServerStage.WAITLIST_CREATION, waitListNanos);
+            }
+            long fanOutSendNanos = 0;
+
+            // ChatMessageEventPdu erstellen
+            ChatPDU pdu = ChatPDU.createChatMessageEventPdu(pduRecycler,
+                    userName, receivedPdu);
+            PduDiagnostics.dump(log, "ErstelltePdu ", pdu);
+
+            // Event an Clients senden
+            for (String s : new Vector<String>(sendList)) {
+                client = clients.getClient(s);
+                try {
+                    if ((client != null) && (client
+                            .getStatus() != ClientConversationStatus.UNREGISTERED)) {
+                        pdu.setUserName(client.getUserName());
+                        long sendStart = System.nanoTime();
+                        client.getConnection().send(pdu);
+                        long sendNanos = System.nanoTime() - sendStart;
+                        stageStatistics.record(ServerStage.RECIPIENT_SEND,
+                                sendNanos);
+                        fanOutSendNanos += sendNanos;
+                        if (log.isDebugEnabled()) {
+                            log.debug("Chat-Event-PDU an " + client.getUserName()
+                                    + " gesendet");
+                        }
+                        // Counter fr Benchmarking erhhen
+                        clients.incrNumberOfSentChatEvents(
+                                client.getUserName());
+                        eventCounter.getAndIncrement();
+                        serverGuiInterface.incrNumberOfEvents();
+                        if (log.isDebugEnabled()) {
+                            log.debug(userName + ": EventCounter erhoeht = "
+                                    + eventCounter.get()
+                                    + ", Aktueller ConfirmCounter = "
+                                    + confirmCounter.get()
+                                    + ", Anzahl gesendeter ChatMessages von dem Client = "
+                                    + receivedPdu.getSequenceNumber());
+                        }
+                    }
+                } catch (Exception e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Senden einer Chat-Event-PDU an "
+                                + client.getUserName() + " nicht moeglich");
+                    }
+                    ExceptionHandler.logException(e);
+                }
+            }
+
+            if (sender != null) {
+                sender.setStageTime(ServerStage.RECIPIENT_SEND, fanOutSendNanos);
+                sender.setFanOutEndTime(System.nanoTime());
+            }
+
+            FlightRecorder.record(FlightRecorder.SENT,
+                    PduType.CHAT_MESSAGE_EVENT, userName,
+                    receivedPdu.getSequenceNumber(), sendList.size(),
+                    System.nanoTime() - startTime);
+
+            // Bei FireAndForget (oder wenn das Quorum schon waehrend der
+            // Verteilung erreicht wurde) sofort antworten
+            if ((sender != null) && clients.closeWaitList(userName)) {
+                try {
+                    sendChatMessageResponse(pduRecycler, sender,
+                            receivedPdu.getClientThreadName(), 0);
+                } catch (Exception e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Senden einer Chat-Message-Response-PDU an "
+                                + userName + " nicht moeglich");
+                    }
+                    ExceptionHandler.logException(e);
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+            }
+        }
+    }
+
+    /**
+     * Verbindung zu einem Client ordentlich abbauen
+     */
+    private void closeConnection() {
+
+        metrics.connectionsClosed.increment();
+        if (log.isDebugEnabled()) {
+            log.debug("Schliessen der Chat-Connection zum " + userName);
+        }
+
+        // Bereinigen der Clientliste falls erforderlich
+
+        if (clients.existsClient(userName)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Close Connection fuer " + userName
+                        + ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
+                        + clients.size());
+            }
+
+            Vector<String> completedWaitLists = clients
+                    .deleteClientWithoutCondition(userName);
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Laenge der Clientliste nach dem bedingungslosen Loeschen von "
+                                + userName + ": " + clients.size());
+            }
+
+            // Wartelisten, die nur noch auf diesen Client gewartet haben,
+            // jetzt beantworten statt erst nach Ablauf der Confirm-Frist
+            for (String s : completedWaitLists) {
+                ClientListEntry client = clients.getClient(s);
+                if (client != null) {
+                    sendPendingResponse(client, client.getPendingResponseType(),
+                            client.getPendingResponseThreadName(), 0);
+                }
+            }
+        }
+
+        try {
+            connection.close();
+        } catch (Exception e) {
+            log.debug("Exception bei close");
+            // ExceptionHandler.logException(e);
+        }
+    }
+
+    /**
+     * Logout nach Ablauf der Wartezeit abschliessen: Status aendern,
+     * Logout-Response senden und den Worker-Thread des Clients zum Beenden
+     * vormerken. Laeuft in einem Thread des Schedulers.
+     * 
+     * @param eventInitiatorClient
+     *            Name des Clients, der sich abmeldet
+     */
+    private void completeLogout(String eventInitiatorClient) {
+        if (log.isDebugEnabled()) {
+            log.debug("Wartezeit fuer Logout von " + eventInitiatorClient
+                    + " abgelaufen");
+        }
+        // Status des Clients aendern; nur der Thread, dem der Wechsel
+        // gelingt, sendet die Response (Confirm und Fristablauf koennen
+        // gleichzeitig hier ankommen)
+        if (!clients.compareAndSetClientStatus(eventInitiatorClient,
+                ClientConversationStatus.UNREGISTERING,
+                ClientConversationStatus.UNREGISTERED)) {
+            // Logout wurde bereits abgeschlossen
+            return;
+        }
+
+        // LogoutResponse erstellen und senden
+        sendLogoutResponse(eventInitiatorClient);
+
+        clients.finish(eventInitiatorClient);
+        if (log.isDebugEnabled()) {
+            log.debug("Laenge der Clientliste beim Vormerken zum Loeschen von "
+                    + eventInitiatorClient + ": " + clients.size());
+        }
+    }
+
+    /**
+     * Antwort-PDU fuer den initiierenden Client aufbauen und senden
+     * 
+     * @param eventInitiatorClient
+     *            Name des Clients
+     */
+    private void sendLogoutResponse(String eventInitiatorClient) {
+
+        ClientListEntry client = clients.getClient(eventInitiatorClient);
+
+        if (client != null) {
+            // Fehlende Confirms der gesamten Session mitliefern
+            ChatPDU responsePdu = ChatPDU.createLogoutResponsePdu(
+                    eventInitiatorClient, 0,
+                    client.getNumberOfLostEventConfirms(), 0, 0,
+                    client.getNumberOfReceivedChatMessages(), clientThreadName);
+            PduDiagnostics.dump(log, "Erstellte Pdu ", responsePdu); // AG
+            if (log.isDebugEnabled()) {
+                log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
+                        + client.getNumberOfSentEvents()
+                        + ": ReceivedConfirms aus Clientliste: "
+                        + client.getNumberOfReceivedEventConfirms());
+            }
+            try {
+                clients.getClient(eventInitiatorClient).getConnection()
+                        .send(responsePdu);
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Senden einer Logout-Response-PDU an "
+                            + eventInitiatorClient + " fehlgeschlagen");
+                    log.debug("Exception Message: " + e.getMessage());
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Logout-Response-PDU an Client " + eventInitiatorClient
+                        + " gesendet");
+            }
+        }
+    }
+
+    /**
+     * Prueft, ob Clients aus der Clientliste geloescht werden koennen
+     * 
+     * @return boolean, true: Client geloescht, false: Client nicht geloescht
+     */
+    private boolean checkIfClientIsDeletable() {
+
+        ClientListEntry client;
+
+        // Worker-Thread beenden, wenn der entsprechende Client schon abgemeldet ist
+        if (userName != null) {
+            client = clients.getClient(userName);
+            if (client != null) {
+                if (client.isFinished()) {
+                    // Loesche den Client aus der Clientliste
+                    // Ein Loeschen ist aber nur zulaessig, wenn der Client
+                    // nicht mehr in einer anderen Warteliste ist
+                    if (log.isDebugEnabled()) {
+                        log.debug("Laenge der Clientliste vor dem Entfernen von "
+                                + userName + ": " + clients.size());
+                    }
+                    if (clients.deleteClient(userName) == true) {
+                        // Jetzt kann auch Worker-Thread beendet werden
+
+                        if (log.isDebugEnabled()) {
+                            log.debug(
+                                    "Laenge der Clientliste nach dem Entfernen von "
+                                            + userName + ": " + clients.size());
+                            log.debug("Worker-Thread fuer " + userName
+                                    + " zum Beenden vorgemerkt");
+                        }
+                        return true;
+                    }
+                }
+            }
+        }
+
+        // Garbage Collection in der Clientliste durchfuehren
+        Vector<String> deletedClients = clients.gcClientList();
+        if (deletedClients.contains(userName)) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
+                                + userName + " kann beendet werden");
+            }
+            finished = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void handleIncomingMessage() throws Exception {
+        if (checkIfClientIsDeletable() == true) {
+            return;
+        }
+
+        // Warten auf naechste Nachricht
+        ChatPDU receivedPdu = null;
+
+        // Nach einer Minute wird geprueft, ob Client noch eingeloggt ist
+        final int RECEIVE_TIMEOUT = 1200000;
+
+        try {
+            receivedPdu = (ChatPDU) connection.receive(RECEIVE_TIMEOUT);
+            // Nachricht empfangen
+            // Zeitmessung fuer Serverbearbeitungszeit starten
+            startTime = System.nanoTime();
+            FlightRecorder.recordReceived(receivedPdu);
+            if (log.isDebugEnabled()) {
+                log.debug(startTime + "nano zeit");
+            }
+
+        } catch (ConnectionTimeoutException e) {
+
+            // Wartezeit beim Empfang abgelaufen, pruefen, ob der Client
+            // ueberhaupt noch etwas sendet
+            if (log.isDebugEnabled()) {
+                log.debug("Timeout beim Empfangen, " + RECEIVE_TIMEOUT
+                        + " ms ohne Nachricht vom Client");
+            }
+
+            if (clients.getClient(userName) != null) {
+
+                if (clients.getClient(userName)
+                        .getStatus() == ClientConversationStatus.UNREGISTERING) {
+                    // Worker-Thread wartet auf eine Nachricht vom Client, aber
+                    // es
+                    // kommt nichts mehr an
+                    log.error(
+                            "Client ist im Zustand UNREGISTERING und bekommt aber keine Nachricht mehr");
+                    // Zur Sicherheit eine Logout-Response-PDU an Client senden
+                    sendLogoutResponse(receivedPdu.getEventUserName());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Logout-Response-PDU wurde nochmals an "
+                                + receivedPdu.getEventUserName()
+                                + "gesendet da Worker-Thread auf Nachricht vom Client wartet aber nichts mehr ankommt");
+                    }
+                    // Worker-Thread wird beendet
+                    finished = true;
+                }
+                // Komplexer Logout: Implementierungsansatz fr folgenden Fall:
+                // Client meldet
+                // sich ab, obwohl er noch in einer Waitlist enthalten ist
+                // Verwendung von eigener auskommentierter Methode getWaitLists
+                // in SharedChatClientData
+            } else {
+
+                // if (clients.deletable(receivedPdu.getUserName())== false){
+                // HashSet<String> waitList =
+                // clients.getWaitLists(receivedPdu.getUserName());
+                // clients.deleteClientWithoutCondition(receivedPdu.getUserName());
+                // for (String s: waitList) {
+                // if (clients.getWaitListSize(s) == 0) {
+                // if (clients.getClientStatus(s)==
+                // ClientConversationStatus.REGISTERING) {
+                // ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(s,
+                // receivedPdu);
+                // clients.getClient(s).getConnection().send(responsePdu);
+                // } else if (clients.getClientStatus(s) ==
+                // ClientConversationStatus.REGISTERED)
+                // {
+                // ClientListEntry c = clients.getClient(s);
+                // ChatPDU responsePdu =
+                // ChatPDU.createChatMessageResponsePdu(receivedPdu.getEventUserName(),
+                // 0, 0, 0,
+                // 0,
+                // c.getNumberOfReceivedChatMessages(),
+                // receivedPdu.getClientThreadName(),
+                // (System.nanoTime() - c.getStartTime()));
+                // clients.getClient(s).getConnection().send(responsePdu);
+                // } else if (clients.getClientStatus(s) ==
+                // ClientConversationStatus.UNREGISTERING) {
+                // sendLogoutResponse(s);
+                // }
+                // }
+                // }
+                // }
+
+            }
+
+            return;
+
+        } catch (EndOfFileException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(
+                        "End of File beim Empfang, vermutlich Verbindungsabbau des Partners fuer "
+                                + userName);
+            }
+            finished = true;
+            return;
+
+        } catch (java.net.SocketException e) {
+            log.error(
+                    "Verbindungsabbruch beim Empfang der naechsten Nachricht vom Client "
+                            + getName());
+            finished = true;
+            return;
+
+        } catch (Exception e) {
+            log.error(
+                    "Empfang einer Nachricht fehlgeschlagen, Workerthread fuer User: "
+                            + userName);
+            ExceptionHandler.logException(e);
+            finished = true;
+            return;
+        }
+
+        // Empfangene Nachricht bearbeiten
+        try {
+
+            switch (receivedPdu.getPduType()) {
+
+                case LOGIN_REQUEST :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case LOGIN_REQUEST");
+                    // Login-Request vom Client empfangen
+                    loginRequestAction(receivedPdu);
+                    break;
+
+                case CHAT_MESSAGE_REQUEST :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case CHAT_MESSAGE_REQUEST");
+                    // Chat-Nachricht angekommen, an alle verteilen
+                    chatMessageRequestAction(receivedPdu);
+                    break;
+
+                case CHAT_MESSAGE_CONFIRM :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case CHAT_MESSAGE_CONFIRM");
+                    // chat Nachricht beim Client angekommen
+                    chatMessageConfirmAction(receivedPdu);
+                    break;
+
+                case LOGOUT_REQUEST :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case LOGOUT_REQUEST");
+                    // Logout-Request vom Client empfangen
+                    logoutRequestAction(receivedPdu);
+                    break;
+
+                case LOGIN_CONFIRM :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case LOGIN_CONFIRM");
+                    // Login-Confirm von Client empfangen
+                    loginConfirmAction(receivedPdu);
+                    break;
+
+                case LOGOUT_CONFIRM :
+                    log.debug(
+                            "Empfangene Nachricht in Switch Case LOGOUT_CONFIRM");
+                    // Logout-Confirm von Client empfangen
+                    logoutConfirmAction(receivedPdu);
+                    break;
+
+                case ROOM_JOIN_REQUEST :
+                    // Client tritt einem Chat-Raum bei
+                    roomJoinRequestAction(receivedPdu);
+                    break;
+
+                case ROOM_LEAVE_REQUEST :
+                    // Client verlaesst einen Chat-Raum
+                    roomLeaveRequestAction(receivedPdu);
+                    break;
+
+                case DIRECT_MESSAGE_REQUEST :
+                    // Direktnachricht an einen Client, Response nach dessen Confirm
+                    directMessageRequestAction(receivedPdu, true);
+                    break;
+
+                case DIRECT_MESSAGE_CONFIRM :
+                    // Direktnachricht beim Empfaenger angekommen
+                    directMessageConfirmAction(receivedPdu);
+                    break;
+
+                case PRESENCE_SUBSCRIBE_REQUEST :
+                    // Umfang der Login- und Logout-Events aendern
+                    presenceSubscribeRequestAction(receivedPdu);
+                    break;
+
+                case PRESENCE_LIST_REQUEST :
+                    // Vollstaendige Userliste angefordert
+                    presenceListRequestAction(receivedPdu);
+                    break;
+
+                default :
+                    log.debug("Falsche PDU empfangen von Client: "
+                            + receivedPdu.getUserName() + ", PduType: "
+                            + receivedPdu.getPduType());
+                    break;
+            }
+        } catch (Exception e) {
+            log.error("Exception bei der Nachrichtenverarbeitung");
+            ExceptionHandler.logExceptionAndTerminate(e);
+        }
+    }
+
+    /**
+     * Verschickt die Besttigung das alle die Chat-Nachricht erhalten haben,
+     * wenn alle Clients das ChatMessage-Event besttigt haben
+     * 
+     * @param receivedPdu
+     *            erhaltende ChatMessage-Confirm-PDU
+     */
+    private void chatMessageConfirmAction(ChatPDU receivedPdu) {
+
+        PduDiagnostics.dump(log, "Empfangene PDU ", receivedPdu);
+        // Counter fr Benchmarking erhhen
+        clients.incrNumberOfReceivedChatEventConfirms(
+                receivedPdu.getEventUserName());
+        confirmCounter.getAndIncrement();
+        if (log.isDebugEnabled()) {
+            log.debug("Chat Message Confirm PDU von " + receivedPdu.getUserName()
+                    + " fr User " + receivedPdu.getEventUserName()
+                    + " empfangen.");
+            log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
+        }
+
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Event User Name: " + receivedPdu.getEventUserName());
+                log.debug("Gre vor Lschen"
+                        + clients.getWaitListSize(receivedPdu.getEventUserName()));
+            }
+            // Client aus Warteliste lschen
+            int waitListSize = clients.deleteWaitListEntry(
+                    receivedPdu.getEventUserName(), userName,
+                    receivedPdu.getSequenceNumber());
+            FlightRecorder.record(FlightRecorder.WAITLIST_UPDATED,
+                    PduType.CHAT_MESSAGE_CONFIRM, receivedPdu.getEventUserName(),
+                    receivedPdu.getSequenceNumber(), waitListSize, 0);
+            if (waitListSize < 0) {
+                // Confirm gehoert zu einem frueheren Request
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Gre nach Lschen"
+                        + clients.getWaitListSize(receivedPdu.getEventUserName()));
+            }
+            // Response nur senden, wenn die Warteliste damit abgeschlossen
+            // ist (nicht fuer verspaetete Confirms nach Ablauf der Frist)
+            if (clients.closeWaitList(receivedPdu.getEventUserName())) {
+                ClientListEntry clientList = clients
+                        .getClient(receivedPdu.getEventUserName());
+                if (clientList != null) {
+                    try {
+                        sendChatMessageResponse(pduRecycler, clientList,
+                                receivedPdu.getClientThreadName(), 0);
+                    } catch (Exception e) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Senden einer Chat-Message-Response-PDU an "
+                                    + receivedPdu.getEventUserName()
+                                    + " nicht moeglich");
+                        }
+                        ExceptionHandler.logExceptionAndTerminate(e);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            ExceptionHandler.logException(e);
+        }
+    }
+
+    /**
+     * Chat-Message-Response-PDU an den anfragenden Client senden
+     * 
+     * @param recycler
+     *            Recycler des sendenden Threads, null im Scheduler
+     * @param client
+     *            Eintrag des anfragenden Clients
+     * @param clientThreadName
+     *            Name des Client-Threads aus dem Request
+     * @param lostConfirms
+     *            Anzahl der bis zum Ablauf der Frist fehlenden Confirms
+     * @throws Exception
+     *             Senden nicht moeglich
+     */
+    private void sendChatMessageResponse(ChatPduRecycler recycler,
+            ClientListEntry client, String clientThreadName, long lostConfirms)
+            throws Exception {
+
+        // Wartezeit auf die Confirms seit dem Ende der Verteilung
+        // (0 = Verteilung wurde noch nicht als beendet markiert)
+        long fanOutEnd = client.getFanOutEndTime();
+        if (fanOutEnd > 0) {
+            long confirmWait = System.nanoTime() - fanOutEnd;
+            stageStatistics.record(ServerStage.CONFIRM_WAIT, confirmWait);
+            client.setStageTime(ServerStage.CONFIRM_WAIT, confirmWait);
+        }
+
+        // Erstellen der ResponsePDU
+        ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(recycler,
+                client.getUserName(), 0, lostConfirms, 0, 0,
+                client.getNumberOfReceivedChatMessages(), clientThreadName,
+                (System.nanoTime() - client.getStartTime()));
+        if (ServerStageStatistics.isReturnedInResponse()) {
+            responsePdu.setStageTimes(client.getStageTimes());
+        }
+        responsePdu.setDeliveryGuarantee(client.getDeliveryGuarantee());
+        responsePdu.setDeliveryQuorum(client.getDeliveryQuorum());
+        PduDiagnostics.dump(log, "Erstellte Pdu ", responsePdu);
+
+        if (responsePdu.getServerTime() / 1000000 > 100) {
+            if (log.isDebugEnabled()) {
+                log.debug(Thread.currentThread().getName()
+                        + ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
+                        + responsePdu.getServerTime() + " ns = "
+                        + responsePdu.getServerTime() / 1000000 + " ms");
+            }
+        }
+
+        // Senden der ResonsePDU
+        long sendStart = System.nanoTime();
+        client.getConnection().send(responsePdu);
+        stageStatistics.record(ServerStage.RESPONSE_SEND,
+                System.nanoTime() - sendStart);
+        metrics.requestLatency.record(responsePdu.getServerTime());
+        FlightRecorder.record(FlightRecorder.SENT,
+                PduType.CHAT_MESSAGE_RESPONSE, client.getUserName(),
+                responsePdu.getSequenceNumber(), 0, responsePdu.getServerTime());
+        if (log.isDebugEnabled()) {
+            log.debug("Chat-Message-Response-PDU an " + client.getUserName()
+                    + " gesendet");
+        }
+    }
+
+    /**
+     * Confirm-Frist fuer die gerade erstellte Warteliste eines Clients
+     * einplanen
+     * 
+     * @param client
+     *            Eintrag des anfragenden Clients
+     * @param responseType
+     *            Typ der Response, die nach Ablauf der Frist gesendet wird
+     * @param requestClientThreadName
+     *            Name des Client-Threads aus dem Request
+     */
+    private void startConfirmDeadline(ClientListEntry client,
+            final PduType responseType, final String requestClientThreadName) {
+        final String eventUserName = client.getUserName();
+        final long waitListId = client.getWaitListId();
+        ScheduledFuture<?> deadline = scheduleConfirmDeadline(new Runnable() {
+            @Override
+            public void run() {
+                expireConfirmDeadline(eventUserName, waitListId, responseType,
+                        requestClientThreadName);
+            }
+        });
+        if (deadline != null) {
+            client.setConfirmDeadline(waitListId, deadline);
+        }
+    }
+
+    /**
+     * Confirm-Frist ist abgelaufen: Fehlende Confirms zaehlen und den Request
+     * mit Teilzustellung beantworten, damit ein haengender oder toter Client
+     * den anfragenden Client nicht blockiert. Laeuft in einem Thread des
+     * Schedulers.
+     * 
+     * @param eventUserName
+     *            Name des anfragenden Clients
+     * @param waitListId
+     *            Kennung der Warteliste
+     * @param responseType
+     *            LOGIN_RESPONSE, LOGOUT_RESPONSE oder CHAT_MESSAGE_RESPONSE
+     * @param requestClientThreadName
+     *            Name des Client-Threads aus dem Request
+     */
+    private void expireConfirmDeadline(String eventUserName, long waitListId,
+            PduType responseType, String requestClientThreadName) {
+
+        Vector<String> missing = new Vector<String>();
+        boolean responsePending = clients.expireWaitList(eventUserName,
+                waitListId, missing);
+        if (!responsePending && missing.isEmpty()) {
+            // Alle Confirms rechtzeitig eingetroffen
+            return;
+        }
+        metrics.confirmTimeouts.increment();
+        metrics.lostConfirms.add(missing.size());
+        FlightRecorder.record(FlightRecorder.WAITLIST_UPDATED, responseType,
+                eventUserName, 0, missing.size(), 0);
+        log.warn("Confirm-Frist von " + CONFIRM_TIMEOUT_MILLIS + " ms fuer "
+                + eventUserName + " abgelaufen, fehlende Confirms von "
+                + missing);
+
+        ClientListEntry client = clients.getClient(eventUserName);
+        if ((client == null) || !responsePending) {
+            // Response wurde bereits nach Erreichen der Zustellgarantie
+            // gesendet
+            return;
+        }
+        sendPendingResponse(client, responseType, requestClientThreadName,
+                missing.size());
+    }
+
+    /**
+     * Response fuer eine abgeschlossene Warteliste senden, die nicht durch
+     * ein Confirm abgeschlossen wurde (Fristablauf oder Verbindungsabbruch
+     * des letzten fehlenden Clients)
+     * 
+     * @param client
+     *            Eintrag des anfragenden Clients
+     * @param responseType
+     *            LOGIN_RESPONSE, LOGOUT_RESPONSE oder CHAT_MESSAGE_RESPONSE
+     * @param requestClientThreadName
+     *            Name des Client-Threads aus dem Request
+     * @param lostConfirms
+     *            Anzahl fehlender Confirms fuer die Response
+     */
+    private void sendPendingResponse(ClientListEntry client,
+            PduType responseType, String requestClientThreadName,
+            int lostConfirms) {
+        String eventUserName = client.getUserName();
+        try {
+            if (responseType == PduType.LOGIN_RESPONSE) {
+                ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(
+                        eventUserName, requestClientThreadName);
+                responsePdu.setNumberOfLostEventConfirms(lostConfirms);
+                client.getConnection().send(responsePdu);
+                clients.changeClientStatus(eventUserName,
+                        ClientConversationStatus.REGISTERED);
+            } else if (responseType == PduType.LOGOUT_RESPONSE) {
+                // Die fehlenden Confirms sind bereits beim Client gezaehlt
+                // und werden mit der Logout-Response gemeldet
+                completeLogout(eventUserName);
+            } else if (responseType == PduType.CHAT_MESSAGE_RESPONSE) {
+                sendChatMessageResponse(null, client, requestClientThreadName,
+                        lostConfirms);
+            }
+        } catch (Exception e) {
+            log.error("Senden der " + responseType + " an " + eventUserName
+                    + " nach Abschluss der Warteliste nicht moeglich");
+            ExceptionHandler.logException(e);
+        }
+    }
+
+    /**
+     * Verschickt die Login-Response-PDU als Zeichen das sich der Client
+     * anmelden darf, wenn alle Clients das Login-Event besttigt haben
+     * 
+     * @param receivedPdu
+     *            erhaltene Login-Confirm-PDU
+     */
+    private void loginConfirmAction(ChatPDU receivedPdu) {
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        // Counter fr Benchmarking erhhen
+        clients.incrNumberOfReceivedChatEventConfirms(
+                receivedPdu.getEventUserName());
+        confirmCounter.getAndIncrement();
+        if (log.isDebugEnabled()) {
+            log.debug("Login Confirm PDU von " + receivedPdu.getEventUserName()
+                    + " fr User " + receivedPdu.getUserName() + " empfangen.");
+            log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
+        }
+
+        try {
+            // lscht Client, der Nachricht besttigt hat, aus der Warteliste
+            // raus
+            if (clients.deleteWaitListEntry(receivedPdu.getEventUserName(),
+                    userName, receivedPdu.getSequenceNumber()) < 0) {
+                // Confirm gehoert zu einem frueheren Request
+                return;
+            }
+
+            // Response nur senden, wenn die Warteliste damit abgeschlossen
+            // ist (nicht fuer verspaetete Confirms nach Ablauf der Frist)
+            if (clients.closeWaitList(receivedPdu.getEventUserName())) {
+                // bekomme die Liste aller Clients
+                ClientListEntry clientList = clients
+                        .getClient(receivedPdu.getEventUserName());
+
+                if (clientList != null) {
+                    // Erstellen der ResponsePDU
+                    ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(
+                            receivedPdu.getEventUserName(), receivedPdu);
+                    PduDiagnostics.dump(log, "Erstellte Pdu ", responsePdu);
+                    try {
+                        // Senden der ResponsePDU
+                        clients.getClient(receivedPdu.getEventUserName())
+                                .getConnection().send(responsePdu);
+                        if (log.isDebugEnabled()) {
+                            log.debug("LoginResponse Pdu wurde gesendet an "
+                                    + responsePdu.getUserName());
+                        }
+
+                    } catch (Exception e) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Senden einer Login-Response-PDU an "
+                                    + userName + " fehlgeschlagen");
+                            log.debug("Exception Message: " + e.getMessage());
+                        }
+                        ExceptionHandler.logExceptionAndTerminate(e);
+                    }
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("Login-Response-PDU an Client " + userName
+                                + " gesendet");
+                    }
+
+                    // Zustand des Clients ndern
+                    clients.changeClientStatus(userName,
+                            ClientConversationStatus.REGISTERED);
+
+                }
+            }
+        } catch (Exception e) {
+            ExceptionHandler.logException(e);
+        }
+
+    }
+
+    /**
+     * Verschickt die Logout-Response-PDU als Zeichen das sich der Client
+     * ausloggen darf, wenn alle Clients das Logout-Event besttigt haben
+     * 
+     * @param receivedPdu
+     *            erhaltene Logout-Confirm-PDU
+     */
+    private void logoutConfirmAction(ChatPDU receivedPdu) {
+        PduDiagnostics.dump(log, "Empfangene Pdu ", receivedPdu);
+        // Counter fr Benchmarking erhhen
+        clients.incrNumberOfReceivedChatEventConfirms(
+                receivedPdu.getEventUserName());
+        confirmCounter.getAndIncrement();
+        if (log.isDebugEnabled()) {
+            log.debug("Logout Confirm PDU von " + receivedPdu.getUserName()
+                    + " fr User " + receivedPdu.getEventUserName()
+                    + " empfangen.");
+            log.debug("so viele Confirms" + confirmCounter + "werden gesendet");
+        }
+
+        try {
+            // Lscht Client, der Nachricht besttigt hat aus der Warteliste
+            // raus
+            if (clients.deleteWaitListEntry(receivedPdu.getEventUserName(),
+                    userName, receivedPdu.getSequenceNumber()) < 0) {
+                // Confirm gehoert zu einem frueheren Request
+                return;
+            }
+
+            // Logout abschliessen, sobald alle Confirms da sind
+            if (clients.closeWaitList(receivedPdu.getEventUserName())) {
+                // bekomme die Liste aller Clients
+                ClientListEntry clientList = clients
+                        .getClient(receivedPdu.getEventUserName());
+
+                if (clientList != null) {
+                    // Der Logout-Response darf erst nach einer Wartezeit
+                    // gesendet werden, da sich sonst ein Client abmeldet,
+                    // bevor er seinen letzten Event empfangen hat. Der
+                    // Worker-Thread wartet nicht selbst, der Abschluss wird
+                    // eingeplant.
+                    final String eventUserName = receivedPdu.getEventUserName();
+                    scheduleLogoutCompletion(new Runnable() {
+                        @Override
+                        public void run() {
+                            completeLogout(eventUserName);
+                        }
+                    });
+                }
+            }
+        } catch (Exception e) {
+            ExceptionHandler.logException(e);
+        }
+    }
+}
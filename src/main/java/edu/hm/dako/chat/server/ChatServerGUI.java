@@ -1,8 +1,10 @@
 package edu.hm.dako.chat.server;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import javafx.stage.WindowEvent;
 import org.apache.commons.logging.Log;
@@ -10,8 +12,12 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.log4j.PropertyConfigurator;
 
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
 import edu.hm.dako.chat.common.ImplementationType;
 import edu.hm.dako.chat.common.SystemConstants;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
@@ -34,6 +40,7 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 /**
  * Benutzeroberflaeche zum Starten des Chat-Servers
@@ -54,6 +61,12 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	static final String MAX_SENDBUFFER_SIZE = "500000";
 	static final String MAX_RECEIVEBUFFER_SIZE = "500000";
 
+	// Intervall fuer die Aktualisierung der Zaehler in der GUI in ms (10 Hz)
+	static final int GUI_UPDATE_INTERVAL = 100;
+
+	// Intervall fuer die Berechnung der Raten in ms
+	static final int RATE_INTERVAL = 1000;
+
 	final VBox pane = new VBox(5);
 
 	// Interface der Chat-Server-Implementierung
@@ -80,6 +93,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	private TextField startTimeField;
 	private TextField receivedRequests;
 	private TextField loggedInClients;
+	private TextField requestRate;
+	private TextField eventRate;
 	private TextField serverPort;
 	private TextField sendBufferSize;
 	private TextField receiveBufferSize;
@@ -90,10 +105,22 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	private Button startButton;
 	private Button stopButton;
 	private Button finishButton;
+	private Button dumpButton;
 
-	// Zaehler fuer die eingeloggten Clients und die empfangenen Request
+	// Zaehler fuer die eingeloggten Clients, die empfangenen Requests und die
+	// gesendeten Events. Die Worker-Threads erhoehen nur die Zaehler, die GUI
+	// liest sie zyklisch ueber den Timer aus.
 	private static AtomicInteger loggedInClientCounter;
-	private static AtomicInteger requestCounter;
+	private static LongAdder requestCounter;
+	private static LongAdder eventCounter;
+
+	// Timer fuer die Aktualisierung der Zaehler-Felder im FX-Thread
+	private Timeline guiUpdateTimer;
+
+	// Zeitpunkt und Zaehlerstaende der letzten Ratenberechnung
+	private long lastRateTime;
+	private long lastRequests;
+	private long lastEvents;
 
 	// Daten, die beim Start der GUI uebergeben werden
 	private ServerStartData data = new ServerStartData();
@@ -107,10 +134,22 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	 */
 	public ChatServerGUI() {
 		loggedInClientCounter = new AtomicInteger(0);
-		requestCounter = new AtomicInteger(0);
+		requestCounter = new LongAdder();
+		eventCounter = new LongAdder();
 		startTimeField = createNotEditableTextfield("");
 		receivedRequests = createNotEditableTextfield("");
 		loggedInClients = createNotEditableTextfield("");
+		requestRate = createNotEditableTextfield("");
+		eventRate = createNotEditableTextfield("");
+
+		guiUpdateTimer = new Timeline(new KeyFrame(Duration.millis(GUI_UPDATE_INTERVAL),
+				new EventHandler<ActionEvent>() {
+					@Override
+					public void handle(ActionEvent event) {
+						updateCounterFields();
+					}
+				}));
+		guiUpdateTimer.setCycleCount(Animation.INDEFINITE);
 
 	}
 
@@ -123,7 +162,7 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	public void start(final Stage stage) throws Exception {
 
 		stage.setTitle("ChatServerGUI");
-		stage.setScene(new Scene(pane, 335, 350));
+		stage.setScene(new Scene(pane, 335, 445));
 		stage.show();
 		stage.setOnCloseRequest(new EventHandler<WindowEvent>() {
 			@Override
@@ -148,10 +187,12 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 
 		pane.getChildren().add(createSeperator("", 310));
 		pane.getChildren().add(createButtonPane());
+		pane.getChildren().add(createDiagnosticsPane());
 
 		reactOnStartButton();
 		reactOnStopButton();
 		reactOnFinishButton();
+		reactOnDumpButton();
 		stopButton.setDisable(true);
 	}
 
@@ -209,6 +250,12 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 
 		infoPane.add(createLabel("Angemeldete Clients"), 1, 7);
 		infoPane.add(loggedInClients, 3, 7);
+
+		infoPane.add(createLabel("Requests/s"), 1, 9);
+		infoPane.add(requestRate, 3, 9);
+
+		infoPane.add(createLabel("Events/s"), 1, 11);
+		infoPane.add(eventRate, 3, 11);
 		return infoPane;
 	}
 
@@ -229,6 +276,21 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 		return buttonPane;
 	}
 
+	/**
+	 * Pane fuer Diagnose-Buttons erzeugen
+	 * 
+	 * @return HBox
+	 */
+	private HBox createDiagnosticsPane() {
+		final HBox diagnosticsPane = new HBox(5);
+
+		dumpButton = new Button("Flight-Recorder sichern");
+
+		diagnosticsPane.getChildren().add(dumpButton);
+		diagnosticsPane.setAlignment(Pos.CENTER);
+		return diagnosticsPane;
+	}
+
 	/**
 	 * Label erzeugen
 	 * 
@@ -337,6 +399,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 
 				receivedRequests.setText("0");
 				loggedInClients.setText("0");
+				requestRate.setText("0");
+				eventRate.setText("0");
 
 				if (startable == true) {
 
@@ -360,6 +424,12 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 					cal = Calendar.getInstance();
 					startTimeAsString = getCurrentTime(cal);
 					showStartData(data);
+
+					// Zyklische Aktualisierung der Zaehler starten
+					lastRateTime = System.nanoTime();
+					lastRequests = requestCounter.sum();
+					lastEvents = eventCounter.sum();
+					guiUpdateTimer.play();
 				} else {
 					setAlert("Bitte korrigieren Sie die rot markierten Felder");
 				}
@@ -383,8 +453,11 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 					ExceptionHandler.logException(e);
 				}
 
+				guiUpdateTimer.stop();
+
 				// Zaehler fuer CLients und Requests auf 0 stellen.
-				requestCounter.set(0);
+				requestCounter.reset();
+				eventCounter.reset();
 				loggedInClientCounter.set(0);
 
 				startButton.setDisable(false);
@@ -394,6 +467,8 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 				startTimeField.setText("");
 				receivedRequests.setText("");
 				loggedInClients.setText("");
+				requestRate.setText("");
+				eventRate.setText("");
 			}
 		});
 	}
@@ -418,6 +493,24 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 		});
 	}
 
+	/**
+	 * Reaktion auf das Betaetigen des Flight-Recorder-Buttons: Puffer aller
+	 * Threads in eine Datei ausgeben
+	 */
+	private void reactOnDumpButton() {
+		dumpButton.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				try {
+					String fileName = FlightRecorder.dumpToFile("Anforderung ueber Server-GUI");
+					log.info("Flight-Recorder ausgegeben: " + fileName);
+				} catch (IOException e) {
+					setAlert("Flight-Recorder konnte nicht ausgegeben werden: " + e.getMessage());
+				}
+			}
+		});
+	}
+
 	/**
 	 * Combobox aus GUI auslesen
 	 */
@@ -547,42 +640,30 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	}
 
 	/**
-	 * GUI-Feld fuer eingeloggte CLients ueber Event-Liste des FavaFX-GUI-Threads
-	 * aktualisieren
+	 * GUI-Felder fuer eingeloggte Clients, empfangene Requests und die Raten
+	 * aktualisieren. Wird vom Timer im JavaFX-GUI-Thread aufgerufen, damit die
+	 * Worker-Threads nicht fuer jedes Ereignis ein Runnable in die Event-Liste
+	 * einstellen muessen.
 	 */
-	private void updateLoggedInClients() {
-
-		Platform.runLater(new Runnable() {
-
-			@Override
-			public void run() {
-
-				log.debug("runLater: run-Methode wird ausgefuehrt");
-				log.debug("runLater: Logged in Clients: "
-						+ String.valueOf(loggedInClientCounter.get()));
-
-				loggedInClients.setText(String.valueOf(loggedInClientCounter.get()));
-			}
-		});
-	}
-
-	/**
-	 * GUI-Feld fuer Anzahl empfangener Requests ueber Event-Liste des
-	 * FavaFX-GUI-Threads aktualisieren
-	 */
-	private void updateNumberOfRequests() {
-
-		Platform.runLater(new Runnable() {
-
-			@Override
-			public void run() {
-
-				log.debug("runLater: run-Methode wird ausgefuehrt");
-				log.debug("runLater: Received Requests: " + String.valueOf(requestCounter.get()));
-
-				receivedRequests.setText(String.valueOf(requestCounter.get()));
-			}
-		});
+	private void updateCounterFields() {
+
+		long requests = requestCounter.sum();
+		loggedInClients.setText(String.valueOf(loggedInClientCounter.get()));
+		receivedRequests.setText(String.valueOf(requests));
+
+		// Raten nur einmal pro Raten-Intervall neu berechnen, sonst schwanken die
+		// Werte bei 10 Hz zu stark
+		long now = System.nanoTime();
+		long elapsed = now - lastRateTime;
+		if (elapsed >= RATE_INTERVAL * 1000000L) {
+			long events = eventCounter.sum();
+			double seconds = elapsed / 1000000000.0;
+			requestRate.setText(String.format("%.0f", (requests - lastRequests) / seconds));
+			eventRate.setText(String.format("%.0f", (events - lastEvents) / seconds));
+			lastRateTime = now;
+			lastRequests = requests;
+			lastEvents = events;
+		}
 	}
 
 	/**
@@ -614,21 +695,20 @@ public class ChatServerGUI extends Application implements ChatServerGuiInterface
 	public void incrNumberOfLoggedInClients() {
 
 		loggedInClientCounter.getAndIncrement();
-		log.debug("Eingeloggte Clients: " + loggedInClientCounter.get());
-		updateLoggedInClients();
 	}
 
 	@Override
 	public void decrNumberOfLoggedInClients() {
 		loggedInClientCounter.getAndDecrement();
-		log.debug("Eingeloggte Clients: " + loggedInClientCounter.get());
-		updateLoggedInClients();
 	}
 
 	@Override
 	public void incrNumberOfRequests() {
-		requestCounter.getAndIncrement();
-		log.debug(requestCounter.get() + " emfangene Message Requests");
-		updateNumberOfRequests();
+		requestCounter.increment();
+	}
+
+	@Override
+	public void incrNumberOfEvents() {
+		eventCounter.increment();
 	}
 }
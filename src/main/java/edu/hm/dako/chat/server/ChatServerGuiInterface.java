@@ -14,4 +14,6 @@ public interface ChatServerGuiInterface {
 	public void decrNumberOfLoggedInClients();
 
 	public void incrNumberOfRequests();
+
+	public void incrNumberOfEvents();
 }
@@ -18,4 +18,16 @@ public interface ChatServerInterface {
 	 * @throws Exception
 	 */
 	void stop() throws Exception;
+
+	/**
+	 * Liefert die Bearbeitungszeiten je Stufe
+	 *
+	 * @return Statistik der Bearbeitungsstufen
+	 */
+	ServerStageStatistics getStageStatistics();
+
+	/**
+	 * @return Betriebskennzahlen des Servers
+	 */
+	ServerMetrics getMetrics();
 }
@@ -0,0 +1,299 @@
+package edu.hm.dako.chat.server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.log4j.PropertyConfigurator;
+
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.ImplementationType;
+import edu.hm.dako.chat.common.SystemConstants;
+
+/**
+ * Chat-Server ohne JavaFX-GUI. Der Server wird ueber einen Builder oder eine
+ * Properties-Datei konfiguriert und kann ueber main gestartet oder in Tests
+ * eingebettet werden.
+ * <p/>
+ * Beispiel:
+ *
+ * <pre>
+ * ChatServerRuntime server = new ChatServerRuntime.Builder()
+ * 		.implementationType(ImplementationType.TCPAdvancedImplementation).serverPort(50000)
+ * 		.build();
+ * server.start();
+ * ...
+ * server.stop();
+ * </pre>
+ *
+ * Properties (alle optional): server.implementationType (TCPSimple |
+ * TCPAdvanced), server.port, server.sendBufferSize, server.receiveBufferSize
+ *
+ * @author Mandl
+ */
+public class ChatServerRuntime {
+
+	private static Log log = LogFactory.getLog(ChatServerRuntime.class);
+
+	// Standardwerte wie in der Server-GUI
+	public static final int DEFAULT_SERVER_PORT = 50000;
+	public static final int DEFAULT_SENDBUFFER_SIZE = 300000;
+	public static final int DEFAULT_RECEIVEBUFFER_SIZE = 300000;
+	public static final int MAX_BUFFER_SIZE = 500000;
+
+	private final ImplementationType implementationType;
+	private final int serverPort;
+	private final int sendBufferSize;
+	private final int receiveBufferSize;
+	private final ChatServerGuiInterface serverGuiInterface;
+
+	// Gestarteter Server, null solange nicht gestartet
+	private ChatServerInterface chatServer;
+
+	// Wird beim Stoppen des Servers heruntergezaehlt
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	private ChatServerRuntime(Builder builder) {
+		this.implementationType = builder.implementationType;
+		this.serverPort = builder.serverPort;
+		this.sendBufferSize = builder.sendBufferSize;
+		this.receiveBufferSize = builder.receiveBufferSize;
+		this.serverGuiInterface = (builder.serverGuiInterface != null)
+				? builder.serverGuiInterface : new HeadlessChatServerGui();
+	}
+
+	/**
+	 * Server erzeugen und starten. Der Listen-Socket ist nach der Rueckkehr
+	 * gebunden, Clients koennen sich sofort verbinden.
+	 *
+	 * @throws Exception
+	 *           falls der Server nicht erzeugt werden kann (z.B. Port belegt)
+	 */
+	public synchronized void start() throws Exception {
+		if (chatServer != null) {
+			throw new IllegalStateException("Chat-Server laeuft bereits");
+		}
+		chatServer = ServerFactory.getServer(implementationType, serverPort, sendBufferSize,
+				receiveBufferSize, serverGuiInterface);
+		chatServer.start();
+
+		ServerStartData data = new ServerStartData();
+		data.setStartTime(new SimpleDateFormat("dd.MM.yy HH:mm:ss:SSS").format(new Date()));
+		serverGuiInterface.showStartData(data);
+	}
+
+	/**
+	 * Server stoppen: Verbindungen zu allen Clients werden abgebaut, der
+	 * Listen-Socket geschlossen und der Threadpool freigegeben. Mehrfacher
+	 * Aufruf ist unschaedlich.
+	 */
+	public synchronized void stop() {
+		if ((chatServer == null) || (stopped.getCount() == 0)) {
+			return;
+		}
+		log.info("Bearbeitungszeiten je Stufe:" + System.lineSeparator()
+				+ chatServer.getStageStatistics());
+		try {
+			chatServer.stop();
+		} catch (Exception e) {
+			log.error("Fehler beim Stoppen des Chat-Servers: " + e);
+			ExceptionHandler.logException(e);
+		}
+		stopped.countDown();
+	}
+
+	/**
+	 * Warten, bis der Server gestoppt wurde
+	 *
+	 * @param timeout
+	 *          Maximale Wartezeit
+	 * @param unit
+	 *          Zeiteinheit der Wartezeit
+	 * @return true, falls der Server gestoppt wurde
+	 * @throws InterruptedException
+	 */
+	public boolean awaitStop(long timeout, TimeUnit unit) throws InterruptedException {
+		return stopped.await(timeout, unit);
+	}
+
+	/**
+	 * Flight-Recorder des Servers in eine Datei ausgeben
+	 *
+	 * @return Name der Datei
+	 * @throws IOException
+	 *           falls die Datei nicht geschrieben werden kann
+	 */
+	public String dumpFlightRecorder() throws IOException {
+		return FlightRecorder.dumpToFile("Anforderung");
+	}
+
+	/**
+	 * @return Bearbeitungszeiten je Protokollstufe, null vor dem Start
+	 */
+	public ServerStageStatistics getStageStatistics() {
+		return (chatServer == null) ? null : chatServer.getStageStatistics();
+	}
+
+	public ChatServerGuiInterface getServerGuiInterface() {
+		return serverGuiInterface;
+	}
+
+	public int getServerPort() {
+		return serverPort;
+	}
+
+	/**
+	 * Builder fuer die Server-Konfiguration
+	 */
+	public static class Builder {
+
+		private ImplementationType implementationType = ImplementationType.TCPSimpleImplementation;
+		private int serverPort = DEFAULT_SERVER_PORT;
+		private int sendBufferSize = DEFAULT_SENDBUFFER_SIZE;
+		private int receiveBufferSize = DEFAULT_RECEIVEBUFFER_SIZE;
+		private ChatServerGuiInterface serverGuiInterface;
+
+		public Builder implementationType(ImplementationType implementationType) {
+			this.implementationType = implementationType;
+			return this;
+		}
+
+		public Builder serverPort(int serverPort) {
+			this.serverPort = checkRange("server.port", serverPort, 65535);
+			return this;
+		}
+
+		public Builder sendBufferSize(int sendBufferSize) {
+			this.sendBufferSize = checkRange("server.sendBufferSize", sendBufferSize,
+					MAX_BUFFER_SIZE);
+			return this;
+		}
+
+		public Builder receiveBufferSize(int receiveBufferSize) {
+			this.receiveBufferSize = checkRange("server.receiveBufferSize", receiveBufferSize,
+					MAX_BUFFER_SIZE);
+			return this;
+		}
+
+		/**
+		 * @param serverGuiInterface
+		 *          Empfaenger der Server-Ereignisse, Standard:
+		 *          {@link HeadlessChatServerGui}
+		 */
+		public Builder serverGuiInterface(ChatServerGuiInterface serverGuiInterface) {
+			this.serverGuiInterface = serverGuiInterface;
+			return this;
+		}
+
+		/**
+		 * Konfiguration aus Properties uebernehmen, fehlende Werte bleiben
+		 * unveraendert
+		 *
+		 * @param props
+		 *          Server-Properties
+		 * @return Builder
+		 */
+		public Builder properties(Properties props) {
+			String value = props.getProperty("server.implementationType");
+			if (value != null) {
+				value = value.trim();
+				if (value.equals(SystemConstants.IMPL_TCP_SIMPLE)) {
+					implementationType(ImplementationType.TCPSimpleImplementation);
+				} else if (value.equals(SystemConstants.IMPL_TCP_ADVANCED)) {
+					implementationType(ImplementationType.TCPAdvancedImplementation);
+				} else {
+					implementationType(ImplementationType.valueOf(value));
+				}
+			}
+			value = props.getProperty("server.port");
+			if (value != null) {
+				serverPort(parseInt("server.port", value));
+			}
+			value = props.getProperty("server.sendBufferSize");
+			if (value != null) {
+				sendBufferSize(parseInt("server.sendBufferSize", value));
+			}
+			value = props.getProperty("server.receiveBufferSize");
+			if (value != null) {
+				receiveBufferSize(parseInt("server.receiveBufferSize", value));
+			}
+			return this;
+		}
+
+		public ChatServerRuntime build() {
+			return new ChatServerRuntime(this);
+		}
+
+		private static int parseInt(String name, String value) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Ungueltiger Zahlenwert fuer " + name + ": " + value);
+			}
+		}
+
+		private static int checkRange(String name, int value, int max) {
+			if ((value < 1) || (value > max)) {
+				throw new IllegalArgumentException(
+						"Wert fuer " + name + " muss zwischen 1 und " + max + " liegen: " + value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Start des Servers ohne GUI. Optional wird der Name einer Properties-Datei
+	 * uebergeben. Der Server laeuft, bis der Prozess beendet wird (z.B. mit
+	 * SIGTERM), und baut dann die Verbindungen geordnet ab.
+	 *
+	 * @param args
+	 *          [Properties-Datei]
+	 */
+	public static void main(String[] args) {
+		PropertyConfigurator.configureAndWatch("log4j.server.properties", 60 * 1000);
+
+		Properties props = new Properties();
+		if (args.length > 0) {
+			try (InputStream in = new FileInputStream(args[0])) {
+				props.load(in);
+			} catch (IOException e) {
+				System.err.println("Properties-Datei " + args[0] + " kann nicht gelesen werden: "
+						+ e.getMessage());
+				System.exit(2);
+			}
+		}
+
+		final ChatServerRuntime server;
+		try {
+			server = new Builder().properties(props).build();
+			server.start();
+		} catch (Exception e) {
+			System.err.println("Chat-Server konnte nicht gestartet werden: " + e.getMessage());
+			ExceptionHandler.logException(e);
+			System.exit(1);
+			return;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread("ChatServerShutdownHook") {
+			@Override
+			public void run() {
+				server.stop();
+			}
+		});
+
+		try {
+			server.stopped.await();
+		} catch (InterruptedException e) {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package edu.hm.dako.chat.server;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Partition der {@link SharedChatClientList}. Jede Partition ist ein eigener
+ * Sperrbereich (Monitor des Objekts) und fuehrt:
+ * <p/>
+ * - die Wartelisten ihrer Clients: Zusammengesetzte Operationen auf einer
+ * Warteliste (Confirm austragen, Warteliste abschliessen, Frist ablaufen
+ * lassen) laufen unter der Sperre der Partition des Eigentuemers
+ * <p/>
+ * - ihren Teil des Raum-Index (Raeume, deren Name auf die Partition abgebildet
+ * wird) und des Abonnenten-Index (abonnierte User, deren Name auf die
+ * Partition abgebildet wird)
+ * <p/>
+ * Ein Thread haelt immer hoechstens die Sperre einer Partition, Operationen
+ * ueber mehrere Partitionen sperren sie nacheinander. Dadurch sind keine
+ * Deadlocks moeglich und Threads fuer Clients verschiedener Partitionen
+ * behindern sich nicht.
+ *
+ * @author Mandl
+ */
+class ClientShard {
+
+	// Nummer der Partition
+	private final int index;
+
+	// Mitglieder je Chat-Raum; ein Raum existiert, solange er Mitglieder hat
+	private final HashMap<String, Set<String>> rooms = new HashMap<String, Set<String>>();
+
+	// Abonnenten je User (auch fuer nicht angemeldete User, damit ein spaeteres
+	// Login gemeldet wird)
+	private final HashMap<String, Set<String>> presenceSubscribers = new HashMap<String, Set<String>>();
+
+	ClientShard(int index) {
+		this.index = index;
+	}
+
+	int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Client in einen Raum eintragen, der Raum wird bei Bedarf angelegt
+	 *
+	 * @return Anzahl der Mitglieder danach
+	 */
+	synchronized int addRoomMember(String room, String userName) {
+		Set<String> members = rooms.get(room);
+		if (members == null) {
+			members = new LinkedHashSet<String>();
+			rooms.put(room, members);
+		}
+		members.add(userName);
+		return members.size();
+	}
+
+	/**
+	 * Client aus einem Raum austragen, ein leerer Raum wird entfernt
+	 */
+	synchronized void removeRoomMember(String room, String userName) {
+		Set<String> members = rooms.get(room);
+		if (members != null) {
+			members.remove(userName);
+			if (members.isEmpty()) {
+				rooms.remove(room);
+			}
+		}
+	}
+
+	synchronized boolean isRoomMember(String room, String userName) {
+		Set<String> members = rooms.get(room);
+		return (members != null) && members.contains(userName);
+	}
+
+	/**
+	 * @return Kopie der Mitglieder eines Raums, leer fuer einen unbekannten Raum
+	 */
+	synchronized Vector<String> getRoomMembers(String room) {
+		Set<String> members = rooms.get(room);
+		if (members == null) {
+			return new Vector<String>();
+		}
+		return new Vector<String>(members);
+	}
+
+	synchronized int getRoomCount() {
+		return rooms.size();
+	}
+
+	synchronized void addPresenceSubscriber(String user, String subscriber) {
+		Set<String> subscribers = presenceSubscribers.get(user);
+		if (subscribers == null) {
+			subscribers = new HashSet<String>();
+			presenceSubscribers.put(user, subscribers);
+		}
+		subscribers.add(subscriber);
+	}
+
+	synchronized void removePresenceSubscriber(String user, String subscriber) {
+		Set<String> subscribers = presenceSubscribers.get(user);
+		if (subscribers != null) {
+			subscribers.remove(subscriber);
+			if (subscribers.isEmpty()) {
+				presenceSubscribers.remove(user);
+			}
+		}
+	}
+
+	/**
+	 * @return Kopie der Abonnenten eines Users, null ohne Abonnenten
+	 */
+	synchronized Set<String> getPresenceSubscribers(String user) {
+		Set<String> subscribers = presenceSubscribers.get(user);
+		if (subscribers == null) {
+			return null;
+		}
+		return new HashSet<String>(subscribers);
+	}
+
+	synchronized int getPresenceSubscribedUserCount() {
+		return presenceSubscribers.size();
+	}
+
+	synchronized void clear() {
+		rooms.clear();
+		presenceSubscribers.clear();
+	}
+}
@@ -0,0 +1,73 @@
+package edu.hm.dako.chat.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Ersatz fuer die Server-GUI beim Betrieb ohne Bildschirm. Die Ereignisse der
+ * Worker-Threads werden nur in atomaren Zaehlern festgehalten und koennen ueber
+ * die Getter abgefragt werden (z.B. in Tests oder fuer ein Monitoring).
+ *
+ * @author Mandl
+ */
+public class HeadlessChatServerGui implements ChatServerGuiInterface {
+
+	private static Log log = LogFactory.getLog(HeadlessChatServerGui.class);
+
+	// Anzahl aktuell eingeloggter Clients
+	private final AtomicInteger loggedInClients = new AtomicInteger(0);
+
+	// Anzahl empfangener Requests seit dem Serverstart
+	private final AtomicLong requests = new AtomicLong(0);
+
+	// Anzahl gesendeter Events seit dem Serverstart
+	private final AtomicLong events = new AtomicLong(0);
+
+	// Startzeit des Servers
+	private volatile String startTime;
+
+	@Override
+	public void showStartData(ServerStartData data) {
+		startTime = data.getStartTime();
+		log.info("Chat-Server gestartet: " + startTime);
+	}
+
+	@Override
+	public void incrNumberOfLoggedInClients() {
+		loggedInClients.incrementAndGet();
+	}
+
+	@Override
+	public void decrNumberOfLoggedInClients() {
+		loggedInClients.decrementAndGet();
+	}
+
+	@Override
+	public void incrNumberOfRequests() {
+		requests.incrementAndGet();
+	}
+
+	@Override
+	public void incrNumberOfEvents() {
+		events.incrementAndGet();
+	}
+
+	public int getNumberOfLoggedInClients() {
+		return loggedInClients.get();
+	}
+
+	public long getNumberOfRequests() {
+		return requests.get();
+	}
+
+	public long getNumberOfEvents() {
+		return events.get();
+	}
+
+	public String getStartTime() {
+		return startTime;
+	}
+}
@@ -0,0 +1,97 @@
+package edu.hm.dako.chat.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.hm.dako.chat.common.MetricsRegistry;
+
+/**
+ * Minimaler HTTP-Endpunkt (JDK-HttpServer), der die Kennzahlen eines
+ * {@link MetricsRegistry} im Textformat von Prometheus unter {@link #PATH}
+ * ausliefert. Anfragen werden von einem eigenen Daemon-Thread bearbeitet,
+ * die Worker-Threads des Servers sind nicht beteiligt.
+ *
+ * @author Mandl
+ */
+public class MetricsHttpEndpoint {
+
+	public static final String PATH = "/metrics";
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer httpServer;
+	private final ExecutorService executor;
+
+	/**
+	 * Endpunkt erzeugen und starten
+	 *
+	 * @param registry
+	 *          Auszuliefernde Kennzahlen
+	 * @param port
+	 *          Listen-Port
+	 * @throws IOException
+	 *           falls der Port nicht gebunden werden kann
+	 */
+	public MetricsHttpEndpoint(final MetricsRegistry registry, int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+		httpServer.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					if (!"GET".equals(exchange.getRequestMethod())) {
+						exchange.sendResponseHeaders(405, -1);
+						return;
+					}
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+					PrintWriter out = new PrintWriter(
+							new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+					registry.writePrometheus(out);
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.sendResponseHeaders(200, buffer.size());
+					OutputStream body = exchange.getResponseBody();
+					buffer.writeTo(body);
+					body.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MetricsHttpEndpoint");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		httpServer.setExecutor(executor);
+		httpServer.start();
+	}
+
+	/**
+	 * @return Gebundener Port
+	 */
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	/**
+	 * Endpunkt stoppen, laufende Anfragen werden nicht abgewartet
+	 */
+	public void stop() {
+		httpServer.stop(0);
+		executor.shutdown();
+	}
+}
@@ -1,5 +1,6 @@
 package edu.hm.dako.chat.server;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.logging.Log;
@@ -8,11 +9,16 @@ import org.apache.commons.logging.LogFactory;
 import edu.hm.dako.chat.common.ImplementationType;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.LoggingConnectionDecorator;
+import edu.hm.dako.chat.connection.MeteredConnectionDecorator;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
+import edu.hm.dako.chat.tcp.TcpConnection;
 import edu.hm.dako.chat.tcp.TcpServerSocket;
 
 /**
- * Uebernimmt die Konfiguration und Erzeugung bestimmter Server-Typen. 
+ * Uebernimmt die Konfiguration und Erzeugung bestimmter Server-Typen. Jeder
+ * erzeugte Server erhaelt eigene Clientliste, Zaehler, Threadpool und
+ * Listen-Socket, so dass mehrere Server in einer JVM unabhaengig voneinander
+ * laufen koennen.
  * @author Peter Mandl
  */
 public final class ServerFactory {
@@ -40,6 +46,36 @@ public final class ServerFactory {
 	public static ChatServerInterface getServer(ImplementationType implType, int serverPort,
 			int sendBufferSize, int receiveBufferSize,
 			ChatServerGuiInterface serverGuiInterface) throws Exception {
+		return getServer(implType, serverPort, sendBufferSize, receiveBufferSize,
+				serverGuiInterface, new SharedChatClientList(), Executors.newCachedThreadPool());
+	}
+
+	/**
+	 * Erzeugt einen Chat-Server mit vorgegebener Clientliste und vorgegebenem
+	 * Threadpool fuer die Worker-Threads. Beide duerfen nur von diesem Server
+	 * genutzt werden; der Threadpool wird beim Stoppen des Servers beendet.
+	 * 
+	 * @param implType
+	 *          Implementierungytyp des Servers
+	 * @param serverPort
+	 *          Listenport
+	 * @param sendBufferSize
+	 *          Groesse des Sendepuffers in Byte
+	 * @param receiveBufferSize
+	 *          Groesse des Empfangspuffers in Byte
+	 * @param serverGuiInterface
+	 *          Referenz auf GUI fuer Callback
+	 * @param clients
+	 *          Clientliste des Servers
+	 * @param executorService
+	 *          Threadpool fuer die Worker-Threads des Servers
+	 * @return
+	 * @throws Exception
+	 */
+	public static ChatServerInterface getServer(ImplementationType implType, int serverPort,
+			int sendBufferSize, int receiveBufferSize,
+			ChatServerGuiInterface serverGuiInterface, SharedChatClientList clients,
+			ExecutorService executorService) throws Exception {
 		log.debug("ChatServer (" + implType.toString() + ") wird gestartet, Serverport: "
 				+ serverPort + ", Sendepuffer: " + sendBufferSize + ", Empfangspuffer: "
 				+ receiveBufferSize);
@@ -54,8 +90,15 @@ public final class ServerFactory {
 			try {
 				TcpServerSocket tcpServerSocket = new TcpServerSocket(serverPort, sendBufferSize,
 						receiveBufferSize);
-				return new SimpleChatServerImpl(Executors.newCachedThreadPool(),
-						getDecoratedServerSocket(tcpServerSocket), serverGuiInterface);
+				DecoratingServerSocket decoratedSocket = new DecoratingServerSocket(
+						tcpServerSocket);
+				SimpleChatServerImpl server = new SimpleChatServerImpl(executorService,
+						decoratedSocket, clients, serverGuiInterface);
+				if (ServerStageStatistics.isSerializationTimed()) {
+					tcpServerSocket.setSendTimingListener(server.getStageStatistics());
+				}
+				decoratedSocket.setMetrics(server.getMetrics());
+				return server;
 			} catch (Exception e) {
 				throw new Exception(e);
 			}
@@ -64,7 +107,13 @@ public final class ServerFactory {
 		case TCPAdvancedImplementation:
 		    try {
 		        TcpServerSocket tcpServerSocket = new TcpServerSocket(serverPort, sendBufferSize, receiveBufferSize);
-		        return new AdvancedChatServerImpl(Executors.newCachedThreadPool(), getDecoratedServerSocket(tcpServerSocket), serverGuiInterface);
+		        DecoratingServerSocket decoratedSocket = new DecoratingServerSocket(tcpServerSocket);
+		        AdvancedChatServerImpl server = new AdvancedChatServerImpl(executorService, decoratedSocket, clients, serverGuiInterface);
+		        if (ServerStageStatistics.isSerializationTimed()) {
+		            tcpServerSocket.setSendTimingListener(server.getStageStatistics());
+		        }
+		        decoratedSocket.setMetrics(server.getMetrics());
+		        return server;
 		    } catch (Exception e) {
 		        throw new Exception(e);
 		    }
@@ -75,13 +124,10 @@ public final class ServerFactory {
 		}
 	}
 
-	private static ServerSocketInterface getDecoratedServerSocket(
-			ServerSocketInterface serverSocket) {
-		return new DecoratingServerSocket(serverSocket);
-	}
-
 	/**
-	 * Dekoriert Server-Socket mit Logging-Funktionalitaet
+	 * Dekoriert die angenommenen Verbindungen mit E/A-Kennzahlen (siehe
+	 * {@link ServerMetrics#isConnectionMetricsEnabled()}) und mit Logging (siehe
+	 * {@link LoggingConnectionDecorator#isEnabled()})
 	 * 
 	 * @author mandl
 	 *
@@ -90,13 +136,36 @@ public final class ServerFactory {
 
 		private final ServerSocketInterface wrappedServerSocket;
 
+		// Kennzahlen des Servers, wird nach dessen Erzeugung gesetzt
+		private volatile ServerMetrics metrics;
+
 		DecoratingServerSocket(ServerSocketInterface wrappedServerSocket) {
 			this.wrappedServerSocket = wrappedServerSocket;
 		}
 
+		void setMetrics(ServerMetrics metrics) {
+			this.metrics = metrics;
+		}
+
 		@Override
 		public Connection accept() throws Exception {
-			return new LoggingConnectionDecorator(wrappedServerSocket.accept());
+			Connection connection = wrappedServerSocket.accept();
+			if ((metrics != null) && ServerMetrics.isConnectionMetricsEnabled()) {
+				String name = "Verbindung-" + System.identityHashCode(connection);
+				if (connection instanceof TcpConnection) {
+					name = ((TcpConnection) connection).getRemoteAddress();
+				}
+				MeteredConnectionDecorator metered = new MeteredConnectionDecorator(connection,
+						metrics.newConnectionStatistics(name));
+				if (connection instanceof TcpConnection) {
+					((TcpConnection) connection).setIoListener(metered);
+				}
+				connection = metered;
+			}
+			if (LoggingConnectionDecorator.isEnabled()) {
+				connection = new LoggingConnectionDecorator(connection);
+			}
+			return connection;
 		}
 
 		@Override
@@ -0,0 +1,524 @@
+package edu.hm.dako.chat.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.MetricsDynamicMBean;
+import edu.hm.dako.chat.common.MetricsRegistry;
+import edu.hm.dako.chat.common.PduType;
+import edu.hm.dako.chat.common.ServerStage;
+import edu.hm.dako.chat.connection.ConnectionStatistics;
+
+/**
+ * Betriebskennzahlen eines Chat-Servers: Verbindungen, Logins, Requests,
+ * Events, Confirms, Threadpool, Clientliste, Wartelisten und Latenzen sowie
+ * E/A je PDU-Typ und je Verbindung (siehe
+ * {@link edu.hm.dako.chat.connection.MeteredConnectionDecorator}).
+ * <p/>
+ * Die Kennzahlen werden beim Start des Servers ueber JMX (MBean
+ * edu.hm.dako.chat:type=ChatServer,name=Metrics) und optional ueber einen
+ * HTTP-Endpunkt im Textformat von Prometheus (Pfad /metrics) bereitgestellt.
+ * Laufen mehrere Server in einer JVM, erhalten weitere MBeans den Zusatz
+ * instance=n; den HTTP-Endpunkt kann nur der erste Server binden.
+ * <p/>
+ * System-Properties: chat.metrics.jmx (true/false, Standard true),
+ * chat.metrics.port (Port des HTTP-Endpunkts, Standard 0 = kein Endpunkt),
+ * chat.connectionMetrics (E/A-Kennzahlen je Verbindung, Standard true)
+ *
+ * @author Mandl
+ */
+public class ServerMetrics {
+
+	private static Log log = LogFactory.getLog(ServerMetrics.class);
+
+	public static final String OBJECT_NAME = "edu.hm.dako.chat:type=ChatServer,name=Metrics";
+
+	private static final boolean JMX_ENABLED = Boolean
+			.parseBoolean(System.getProperty("chat.metrics.jmx", "true"));
+
+	private static final int HTTP_PORT = Integer.getInteger("chat.metrics.port", 0);
+
+	private static final boolean CONNECTION_METRICS_ENABLED = Boolean
+			.parseBoolean(System.getProperty("chat.connectionMetrics", "true"));
+
+	private static final PduType[] PDU_TYPES = PduType.values();
+
+	private final MetricsRegistry registry = new MetricsRegistry();
+
+	public final MetricsRegistry.Counter connectionsAccepted;
+	public final MetricsRegistry.Counter connectionsClosed;
+	public final MetricsRegistry.Counter logins;
+	public final MetricsRegistry.Counter chatRequests;
+
+	// Chat-Requests je Zustellgarantie (nur Advanced)
+	private final MetricsRegistry.Counter[] requestsByDelivery = new MetricsRegistry.Counter[DeliveryGuarantee
+			.values().length];
+
+	// Requests, deren Confirm-Frist abgelaufen ist, und dabei fehlende Confirms
+	// (nur Advanced)
+	public final MetricsRegistry.Counter confirmTimeouts;
+	public final MetricsRegistry.Counter lostConfirms;
+
+	// Beitritte zu und Austritte aus Chat-Raeumen
+	public final MetricsRegistry.Counter roomJoins;
+	public final MetricsRegistry.Counter roomLeaves;
+
+	// Direktnachrichten und ihre Serverzeit bis zur Response in ns
+	public final MetricsRegistry.Counter directRequests;
+	public final LatencyHistogram directRequestLatency;
+
+	// Presence-Abonnements, angeforderte Userlisten und Empfaenger je Login-
+	// bzw. Logout-Event
+	public final MetricsRegistry.Counter presenceSubscriptions;
+	public final MetricsRegistry.Counter presenceListRequests;
+	public final LatencyHistogram presenceFanOut;
+
+	// Serverzeit eines Chat-Requests bis zum Senden der Response in ns
+	public final LatencyHistogram requestLatency;
+
+	// Laenge der Warteliste beim Anlegen (nur Advanced)
+	public final LatencyHistogram waitListSize;
+
+	// E/A ueber alle Verbindungen und je offener Verbindung
+	private final ConnectionStatistics allConnections = new ConnectionStatistics(
+			"alle Verbindungen");
+	private final Queue<ConnectionStatistics> openConnections = new ConcurrentLinkedQueue<ConnectionStatistics>();
+
+	// Aktive Exporter, null solange nicht gestartet
+	private ObjectName objectName;
+	private MetricsHttpEndpoint httpEndpoint;
+
+	/**
+	 * Konstruktor
+	 *
+	 * @param counter
+	 *          Zaehler und Stufenstatistik des Servers, werden mit eingetragen
+	 */
+	public ServerMetrics(final SharedServerCounter counter) {
+		connectionsAccepted = registry.counter("chat_connections_accepted_total",
+				"Angenommene Verbindungen");
+		connectionsClosed = registry.counter("chat_connections_closed_total",
+				"Abgebaute Verbindungen");
+		registry.gauge("chat_connections_open", "Offene Verbindungen", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return connectionsAccepted.get() - connectionsClosed.get();
+			}
+		});
+		logins = registry.counter("chat_logins_total", "Erfolgreiche Logins");
+		registry.counter("chat_logouts_total", "Empfangene Logout-Requests", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return counter.logoutCounter.get();
+			}
+		});
+		chatRequests = registry.counter("chat_requests_total", "Empfangene Chat-Message-Requests");
+		registry.counter("chat_events_total", "Gesendete Chat-Message-Events", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return counter.eventCounter.get();
+			}
+		});
+		registry.counter("chat_confirms_total", "Empfangene Confirms", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return counter.confirmCounter.get();
+			}
+		});
+		for (int i = 0; i < requestsByDelivery.length; i++) {
+			requestsByDelivery[i] = new MetricsRegistry.Counter();
+		}
+		registry.counterFamily("chat_requests_by_delivery_total",
+				"Chat-Message-Requests je Zustellgarantie",
+				new Supplier<Map<String, ? extends Number>>() {
+					@Override
+					public Map<String, ? extends Number> get() {
+						Map<String, Number> samples = new LinkedHashMap<String, Number>();
+						for (DeliveryGuarantee g : DeliveryGuarantee.values()) {
+							samples.put(MetricsRegistry.label("delivery", g.name()),
+									requestsByDelivery[g.ordinal()].get());
+						}
+						return samples;
+					}
+				});
+		confirmTimeouts = registry.counter("chat_confirm_timeouts_total",
+				"Requests mit abgelaufener Confirm-Frist (Teilzustellung)");
+		lostConfirms = registry.counter("chat_lost_confirms_total",
+				"Bis zum Ablauf der Confirm-Frist fehlende Confirms");
+		roomJoins = registry.counter("chat_room_joins_total", "Beitritte zu Chat-Raeumen");
+		roomLeaves = registry.counter("chat_room_leaves_total", "Austritte aus Chat-Raeumen");
+		directRequests = registry.counter("chat_direct_requests_total",
+				"Empfangene Direct-Message-Requests");
+		directRequestLatency = registry.histogram("chat_direct_request_duration_seconds",
+				"Serverzeit eines Direct-Message-Requests", MetricsRegistry.NANOS_TO_SECONDS);
+		presenceSubscriptions = registry.counter("chat_presence_subscriptions_total",
+				"Presence-Subscribe-Requests und Login-Requests mit PresenceMode");
+		presenceListRequests = registry.counter("chat_presence_list_requests_total",
+				"Angeforderte vollstaendige Userlisten");
+		presenceFanOut = registry.histogram("chat_presence_fanout",
+				"Empfaenger eines Login- oder Logout-Events", 1.0);
+		requestLatency = registry.histogram("chat_request_duration_seconds",
+				"Serverzeit eines Chat-Message-Requests", MetricsRegistry.NANOS_TO_SECONDS);
+		waitListSize = registry.histogram("chat_waitlist_size",
+				"Laenge der Warteliste beim Anlegen", 1.0);
+		for (ServerStage stage : ServerStage.values()) {
+			if ((stage == ServerStage.SERIALIZATION)
+					&& !ServerStageStatistics.isSerializationTimed()) {
+				// Ohne Messung kein Histogramm, das wie echte Nullwerte aussieht
+				continue;
+			}
+			registry.histogram("chat_stage_" + stage.name().toLowerCase() + "_seconds",
+					"Bearbeitungszeit der Stufe " + stage.getDescription(),
+					counter.stageStatistics.getHistogram(stage), MetricsRegistry.NANOS_TO_SECONDS);
+		}
+		if (counter.scheduler instanceof ThreadPoolExecutor) {
+			final ThreadPoolExecutor scheduler = (ThreadPoolExecutor) counter.scheduler;
+			registry.gauge("chat_scheduled_tasks",
+					"Eingeplante Aufgaben (z.B. verzoegerte Logout-Abschluesse)", new LongSupplier() {
+						@Override
+						public long getAsLong() {
+							return scheduler.getQueue().size();
+						}
+					});
+		}
+		registerConnectionMetrics();
+	}
+
+	/**
+	 * E/A-Kennzahlen je PDU-Typ (Summe ueber alle Verbindungen) und je offener
+	 * Verbindung eintragen
+	 */
+	private void registerConnectionMetrics() {
+		registry.counterFamily("chat_pdus_sent_total", "Gesendete PDUs je Typ",
+				perPduType(new PduTypeValue() {
+					@Override
+					public long get(ConnectionStatistics s, PduType type) {
+						return s.getMessagesSent(type);
+					}
+				}));
+		registry.counterFamily("chat_pdu_bytes_sent_total", "Gesendete Bytes je PDU-Typ",
+				perPduType(new PduTypeValue() {
+					@Override
+					public long get(ConnectionStatistics s, PduType type) {
+						return s.getBytesSent(type);
+					}
+				}));
+		registry.counterFamily("chat_pdus_received_total", "Empfangene PDUs je Typ",
+				perPduType(new PduTypeValue() {
+					@Override
+					public long get(ConnectionStatistics s, PduType type) {
+						return s.getMessagesReceived(type);
+					}
+				}));
+		registry.counterFamily("chat_pdu_bytes_received_total",
+				"Empfangene Bytes je PDU-Typ", perPduType(new PduTypeValue() {
+					@Override
+					public long get(ConnectionStatistics s, PduType type) {
+						return s.getBytesReceived(type);
+					}
+				}));
+		registry.gauge("chat_pdu_max_bytes", "Groesste gesendete oder empfangene PDU",
+				new LongSupplier() {
+					@Override
+					public long getAsLong() {
+						return allConnections.getMaxMessageSize();
+					}
+				});
+		registry.histogram("chat_send_duration_seconds",
+				"Dauer eines send-Aufrufs (Sperre und Socket)", allConnections.getSendLatency(),
+				MetricsRegistry.NANOS_TO_SECONDS);
+
+		registry.counterFamily("chat_connection_bytes_sent_total",
+				"Gesendete Bytes je Verbindung", perConnection(new ConnectionValue() {
+					@Override
+					public Number get(ConnectionStatistics s) {
+						return s.getTotalBytesSent();
+					}
+				}));
+		registry.counterFamily("chat_connection_bytes_received_total",
+				"Empfangene Bytes je Verbindung", perConnection(new ConnectionValue() {
+					@Override
+					public Number get(ConnectionStatistics s) {
+						return s.getTotalBytesReceived();
+					}
+				}));
+		registry.gaugeFamily("chat_connection_send_p99_seconds",
+				"P99 der send-Dauer je Verbindung", perConnection(new ConnectionValue() {
+					@Override
+					public Number get(ConnectionStatistics s) {
+						return s.getSendLatency().getValueAtPercentile(99.0)
+								* MetricsRegistry.NANOS_TO_SECONDS;
+					}
+				}));
+		registry.gaugeFamily("chat_connection_send_max_seconds",
+				"Maximale send-Dauer je Verbindung", perConnection(new ConnectionValue() {
+					@Override
+					public Number get(ConnectionStatistics s) {
+						return s.getSendLatency().getMaxValue() * MetricsRegistry.NANOS_TO_SECONDS;
+					}
+				}));
+		registry.gaugeFamily("chat_connection_max_pdu_bytes",
+				"Groesste PDU je Verbindung", perConnection(new ConnectionValue() {
+					@Override
+					public Number get(ConnectionStatistics s) {
+						return s.getMaxMessageSize();
+					}
+				}));
+	}
+
+	private interface PduTypeValue {
+		long get(ConnectionStatistics statistics, PduType type);
+	}
+
+	private interface ConnectionValue {
+		Number get(ConnectionStatistics statistics);
+	}
+
+	/**
+	 * Werte je PDU-Typ ueber alle Verbindungen, PDU-Typen ohne Verkehr werden
+	 * weggelassen
+	 */
+	private Supplier<Map<String, ? extends Number>> perPduType(final PduTypeValue value) {
+		return new Supplier<Map<String, ? extends Number>>() {
+			@Override
+			public Map<String, ? extends Number> get() {
+				Map<String, Long> samples = new LinkedHashMap<String, Long>();
+				for (PduType type : PDU_TYPES) {
+					long v = value.get(allConnections, type);
+					if (v != 0) {
+						samples.put(MetricsRegistry.label("type", type.name()), v);
+					}
+				}
+				return samples;
+			}
+		};
+	}
+
+	/**
+	 * Werte je offener Verbindung, abgebaute Verbindungen werden dabei
+	 * entfernt
+	 */
+	private Supplier<Map<String, ? extends Number>> perConnection(
+			final ConnectionValue value) {
+		return new Supplier<Map<String, ? extends Number>>() {
+			@Override
+			public Map<String, ? extends Number> get() {
+				Map<String, Number> samples = new LinkedHashMap<String, Number>();
+				Iterator<ConnectionStatistics> it = openConnections.iterator();
+				while (it.hasNext()) {
+					ConnectionStatistics s = it.next();
+					if (s.isClosed()) {
+						it.remove();
+					} else {
+						samples.put(MetricsRegistry.label("connection", s.getName()), value.get(s));
+					}
+				}
+				return samples;
+			}
+		};
+	}
+
+	/**
+	 * @return true, falls Verbindungen mit E/A-Kennzahlen dekoriert werden
+	 */
+	public static boolean isConnectionMetricsEnabled() {
+		return CONNECTION_METRICS_ENABLED;
+	}
+
+	/**
+	 * Statistik fuer eine neue Verbindung anlegen
+	 *
+	 * @param name
+	 *          Vorlaeufige Bezeichnung (z.B. Adresse des Clients)
+	 * @return Statistik der Verbindung, wird auch in die Summe eingerechnet
+	 */
+	public ConnectionStatistics newConnectionStatistics(String name) {
+		// Abgebaute Verbindungen auch ohne Abfrage der Kennzahlen entfernen
+		Iterator<ConnectionStatistics> it = openConnections.iterator();
+		while (it.hasNext()) {
+			if (it.next().isClosed()) {
+				it.remove();
+			}
+		}
+		ConnectionStatistics statistics = new ConnectionStatistics(name, allConnections);
+		openConnections.add(statistics);
+		return statistics;
+	}
+
+	/**
+	 * Threadpool der Worker-Threads eintragen (aktive Threads und Laenge der
+	 * Auftragswarteschlange). Andere ExecutorServices werden ignoriert.
+	 *
+	 * @param executorService
+	 *          Threadpool des Servers
+	 */
+	public void registerExecutor(ExecutorService executorService) {
+		if (!(executorService instanceof ThreadPoolExecutor)) {
+			return;
+		}
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) executorService;
+		registry.gauge("chat_worker_threads_active", "Aktive Worker-Threads", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return pool.getActiveCount();
+			}
+		});
+		registry.gauge("chat_worker_queue_depth", "Wartende Auftraege im Threadpool",
+				new LongSupplier() {
+					@Override
+					public long getAsLong() {
+						return pool.getQueue().size();
+					}
+				});
+	}
+
+	/**
+	 * Clientliste eintragen (Anzahl Clients, Clients je Partition, offene
+	 * Confirms und je Client die nicht rechtzeitig bestaetigten Events)
+	 *
+	 * @param clients
+	 *          Clientliste des Servers
+	 */
+	public void registerClientList(final SharedChatClientList clients) {
+		registry.gauge("chat_clients", "Eintraege in der Clientliste", new LongSupplier() {
+			@Override
+			public long getAsLong() {
+				return clients.size();
+			}
+		});
+		registry.gauge("chat_rooms", "Chat-Raeume mit mindestens einem Mitglied",
+				new LongSupplier() {
+					@Override
+					public long getAsLong() {
+						return clients.getRoomCount();
+					}
+				});
+		registry.gaugeFamily("chat_shard_clients", "Clients je Partition der Clientliste",
+				new Supplier<Map<String, ? extends Number>>() {
+					@Override
+					public Map<String, ? extends Number> get() {
+						Map<String, Number> samples = new LinkedHashMap<String, Number>();
+						int[] sizes = clients.getShardSizes();
+						for (int i = 0; i < sizes.length; i++) {
+							samples.put(MetricsRegistry.label("shard", Integer.toString(i)), sizes[i]);
+						}
+						return samples;
+					}
+				});
+		registry.gauge("chat_presence_subscribed_users", "User mit mindestens einem Abonnenten",
+				new LongSupplier() {
+					@Override
+					public long getAsLong() {
+						return clients.getPresenceSubscribedUserCount();
+					}
+				});
+		registry.gauge("chat_waitlist_entries", "Offene Confirms in allen Wartelisten",
+				new LongSupplier() {
+					@Override
+					public long getAsLong() {
+						return clients.getTotalWaitListSize();
+					}
+				});
+		registry.counterFamily("chat_missed_confirms_total",
+				"Nicht rechtzeitig bestaetigte Events je Client",
+				new Supplier<Map<String, ? extends Number>>() {
+					@Override
+					public Map<String, ? extends Number> get() {
+						Map<String, Number> samples = new LinkedHashMap<String, Number>();
+						for (Map.Entry<String, Long> e : clients.getMissedEventConfirms().entrySet()) {
+							if (e.getValue() > 0) {
+								samples.put(MetricsRegistry.label("client", e.getKey()), e.getValue());
+							}
+						}
+						return samples;
+					}
+				});
+	}
+
+	/**
+	 * @param guarantee
+	 *          Zustellgarantie
+	 * @return Zaehler der Chat-Requests mit dieser Zustellgarantie
+	 */
+	public MetricsRegistry.Counter requestsByDelivery(DeliveryGuarantee guarantee) {
+		return requestsByDelivery[guarantee.ordinal()];
+	}
+
+	public MetricsRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * MBean registrieren und HTTP-Endpunkt starten (gemaess System-Properties).
+	 * Fehler werden protokolliert, der Server laeuft ohne Export weiter.
+	 */
+	public synchronized void startExport() {
+		if (JMX_ENABLED && (objectName == null)) {
+			try {
+				MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+				for (int instance = 1; objectName == null; instance++) {
+					// Weitere Server-Instanzen in derselben JVM erhalten den Namen
+					// mit dem Zusatz instance=2, 3, ...
+					ObjectName name = new ObjectName(
+							(instance == 1) ? OBJECT_NAME : OBJECT_NAME + ",instance=" + instance);
+					try {
+						mbeanServer.registerMBean(new MetricsDynamicMBean(registry, "Chat-Server"),
+								name);
+						objectName = name;
+					} catch (InstanceAlreadyExistsException e) {
+						// Name von einer anderen Server-Instanz belegt
+					}
+				}
+			} catch (Exception e) {
+				log.error("MBean fuer Kennzahlen kann nicht registriert werden: " + e);
+				ExceptionHandler.logException(e);
+			}
+		}
+		if ((HTTP_PORT > 0) && (httpEndpoint == null)) {
+			try {
+				httpEndpoint = new MetricsHttpEndpoint(registry, HTTP_PORT);
+				log.info("Kennzahlen unter http://<host>:" + HTTP_PORT
+						+ MetricsHttpEndpoint.PATH + " abrufbar");
+			} catch (Exception e) {
+				log.error("HTTP-Endpunkt fuer Kennzahlen kann nicht gestartet werden: " + e);
+				ExceptionHandler.logException(e);
+			}
+		}
+	}
+
+	/**
+	 * MBean abmelden und HTTP-Endpunkt stoppen
+	 */
+	public synchronized void stopExport() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (Exception e) {
+				ExceptionHandler.logException(e);
+			}
+			objectName = null;
+		}
+		if (httpEndpoint != null) {
+			httpEndpoint.stop();
+			httpEndpoint = null;
+		}
+	}
+}
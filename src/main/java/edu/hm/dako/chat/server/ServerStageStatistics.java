@@ -0,0 +1,106 @@
+package edu.hm.dako.chat.server;
+
+import edu.hm.dako.chat.common.LatencyHistogram;
+import edu.hm.dako.chat.common.ServerStage;
+import edu.hm.dako.chat.connection.SendTimingListener;
+
+/**
+ * Histogramme der Bearbeitungsdauer je Stufe (siehe {@link ServerStage}) fuer
+ * alle Worker-Threads eines Servers. Das Erfassen ist lock-frei.
+ * <p/>
+ * Mit der System-Property chat.stageTimesInResponse=true werden die
+ * Stufenzeiten eines Requests zusaetzlich in der Chat-Message-Response-PDU an
+ * den Client zurueckgegeben.
+ * <p/>
+ * Die Dauer der Serialisierung jeder gesendeten PDU (Stufe SERIALIZATION)
+ * misst der Server nur mit der System-Property
+ * chat.stageTimes.serialization=true, da die Messung jeden Sendevorgang auf
+ * allen Verbindungen verteuert. Ohne die Property wird die Stufe auch nicht
+ * als Kennzahl exportiert.
+ *
+ * @author Mandl
+ */
+public class ServerStageStatistics implements SendTimingListener {
+
+	private static final boolean RETURNED_IN_RESPONSE = Boolean
+			.getBoolean("chat.stageTimesInResponse");
+
+	private static final boolean SERIALIZATION_TIMED = Boolean
+			.getBoolean("chat.stageTimes.serialization");
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[ServerStage
+			.values().length];
+
+	public ServerStageStatistics() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Dauer einer Stufe erfassen
+	 *
+	 * @param stage
+	 *          Bearbeitungsstufe
+	 * @param nanos
+	 *          Dauer in ns
+	 */
+	public void record(ServerStage stage, long nanos) {
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	@Override
+	public void messageSerialized(long nanos) {
+		record(ServerStage.SERIALIZATION, nanos);
+	}
+
+	/**
+	 * @return Histogramm einer Stufe
+	 */
+	public LatencyHistogram getHistogram(ServerStage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	/**
+	 * @return true, falls die Stufenzeiten in der Response zurueckgegeben werden
+	 */
+	public static boolean isReturnedInResponse() {
+		return RETURNED_IN_RESPONSE;
+	}
+
+	/**
+	 * @return true, falls die Dauer der Serialisierung gemessen wird
+	 */
+	public static boolean isSerializationTimed() {
+		return SERIALIZATION_TIMED;
+	}
+
+	/**
+	 * Alle Histogramme zuruecksetzen
+	 */
+	public void reset() {
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Uebersicht ueber alle Stufen (Anzahl, Mittelwert, P50, P99 und Maximum in
+	 * us)
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Bearbeitungszeiten je Stufe in us:");
+		for (ServerStage stage : ServerStage.values()) {
+			if ((stage == ServerStage.SERIALIZATION) && !SERIALIZATION_TIMED) {
+				continue;
+			}
+			LatencyHistogram h = getHistogram(stage);
+			sb.append(String.format("%n%-22s n=%8d, Mittel=%10.1f, P50=%10.1f, P99=%10.1f, Max=%10.1f",
+					stage.getDescription(), h.getTotalCount(), h.getMean() / 1000.0,
+					h.getValueAtPercentile(50.0) / 1000.0, h.getValueAtPercentile(99.0) / 1000.0,
+					h.getMaxValue() / 1000.0));
+		}
+		return sb.toString();
+	}
+}
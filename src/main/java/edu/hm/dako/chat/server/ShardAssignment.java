@@ -0,0 +1,17 @@
+package edu.hm.dako.chat.server;
+
+/**
+ * Zuordnung der Clients zu den Partitionen der {@link SharedChatClientList}
+ * (System-Property chat.shardAssignment).
+ *
+ * @author Mandl
+ */
+public enum ShardAssignment {
+
+	// Partition ueber den Hashwert des Usernamens, gleichmaessige Verteilung
+	Hash,
+	// Partition ueber den Hashwert des Raums aus dem Login-Request: Die Clients
+	// eines Raums teilen sich mit dem Raum-Index eine Partition, ein Chat im
+	// Raum sperrt dann nur diese. Clients ohne Raum werden wie bei Hash verteilt.
+	Room;
+}
@@ -1,562 +1,1321 @@
-package edu.hm.dako.chat.server;
-
-import java.util.HashSet;
-import java.util.Vector;
-import java.util.concurrent.ConcurrentHashMap;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
-import edu.hm.dako.chat.common.ClientConversationStatus;
-import edu.hm.dako.chat.common.ClientListEntry;
-
-/**
- * Liste aller angemeldeten Clients. Diese Liste wird im Server als Singleton
- * verwaltet (darf nur einmal erzeugt werden). Alle Worker-Threads im Server
- * nutzen diese Liste.
- *
- * Die Liste wird als HashMap organisiert. Als Schluessel wird der Username von
- * Clients verwendet.
- *
- * Genereller Hinweis: Zur Umgehung von ConcurrentModificationExceptions wird
- * bei der Iteration durch Listen generell eine Kopie der Liste angelegt.
- *
- * @author Peter Mandl
- *
- */
-public class SharedChatClientList {
-
-	private static Log log = LogFactory.getLog(SharedChatClientList.class);
-	// Liste aller eingeloggten Clients
-	private static ConcurrentHashMap<String, ClientListEntry> clients;
-
-	private static SharedChatClientList instance;
-
-	private SharedChatClientList() {
-	}
-
-	/**
-	 * Thread-sicheres Erzeugen einer Instanz der Liste
-	 * 
-	 * @return Referenz auf die erzeugte Liste
-	 */
-	public static synchronized SharedChatClientList getInstance() {
-		if (SharedChatClientList.instance == null) {
-			SharedChatClientList.instance = new SharedChatClientList();
-			// Clientliste nur einmal erzeugen
-			clients = new ConcurrentHashMap<String, ClientListEntry>();
-		}
-		return SharedChatClientList.instance;
-	}
-
-	/**
-	 * Loeschen der gesamten Liste
-	 */
-	public void deleteAll() {
-
-		clients.clear();
-	}
-
-	/**
-	 * Status eines Clients veraendern
-	 * 
-	 * @param userName
-	 *            Name des Users (Clients)
-	 * @param newStatus
-	 *            Neuer Status
-	 */
-	public synchronized void changeClientStatus(String userName, ClientConversationStatus newStatus) {
-
-		ClientListEntry client = clients.get(userName);
-		client.setStatus(newStatus);
-		clients.replace(userName, client);
-		log.debug("User " + userName + " nun in Status: " + newStatus);
-	}
-
-	/**
-	 * Lesen des Conversation-Status fuer einen Client
-	 * 
-	 * @param userName
-	 *            Name des Users (Clients)
-	 * @return Conversation-Status des Clients
-	 */
-	public synchronized ClientConversationStatus getClientStatus(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			return (client.getStatus());
-		} else {
-			return ClientConversationStatus.UNREGISTERED;
-		}
-	}
-
-	/**
-	 * Client auslesen
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return Referenz auf den gesuchten Client
-	 */
-	public synchronized ClientListEntry getClient(String userName) {
-
-		return clients.get(userName);
-	}
-
-	/**
-	 * Stellt eine Liste aller Namen der eingetragenen Clients bereit
-	 * 
-	 * @return Vektor mit allen Namen der eingetragenen Clients
-	 */
-	public synchronized Vector<String> getClientNameList() {
-
-		Vector<String> clientNameList = new Vector<String>();
-		for (String s : new HashSet<String>(clients.keySet())) {
-			clientNameList.add(s);
-		}
-		return clientNameList;
-	}
-
-	/**
-	 * Stellt eine Liste aller Namen der eingetragenen Clients bereit, die im
-	 * Zustand REGISTERING oder REGISTERED sind
-	 * 
-	 * @return Vektor mit allen Namen der eingetragenen Clients, die registriert
-	 *         sind oder die sich gerade registrieren
-	 */
-	public synchronized Vector<String> getRegisteredClientNameList() {
-
-		Vector<String> clientNameList = new Vector<String>();
-		for (String s : new HashSet<String>(clients.keySet())) {
-
-			if ((getClientStatus(s) == ClientConversationStatus.REGISTERING)
-					|| (getClientStatus(s) == ClientConversationStatus.REGISTERED)) {
-
-				clientNameList.add(s);
-			}
-		}
-		return clientNameList;
-	}
-
-	/**
-	 * Prueft, ob ein Client in der Userliste ist
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return
-	 */
-	public synchronized boolean existsClient(String userName) {
-
-		if (userName != null) {
-			if (!clients.containsKey(userName)) {
-				log.debug("User nicht in Clientliste: " + userName);
-				return false;
-			} else {
-				return true;
-			}
-		} else {
-			return false;
-		}
-	}
-
-	/**
-	 * Legt einen neuen Client an
-	 * 
-	 * @param userName
-	 *            Name des neuen Clients
-	 * @param client
-	 *            Client-Daten
-	 */
-	public synchronized void createClient(String userName, ClientListEntry client) {
-
-		clients.put(userName, client);
-	}
-
-	/**
-	 * Aktualisierung eines vorhandenen Clients
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @param client
-	 *            Client-Daten
-	 */
-	public synchronized void updateClient(String userName, ClientListEntry client) {
-
-		ClientListEntry existingClient = (ClientListEntry) clients.get(userName);
-
-		if (existingClient != null) {
-			clients.put(userName, client);
-		} else {
-			log.debug("User nicht in Clientliste: " + userName);
-		}
-	}
-
-	/**
-	 *
-	 * Prueft, ob ein Client in keiner Warteliste mehr ist und daher geloescht
-	 * werden kann.
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return true Loeschen moeglich, sonst false
-	 */
-	public synchronized boolean deletable(String userName) {
-
-		for (String s : new Vector<String>(clients.keySet())) {
-			ClientListEntry client = (ClientListEntry) clients.get(s);
-			if (client.getWaitList().contains(userName)) {
-				// Client noch in einer Warteliste
-				log.debug("Loeschen nicht moeglich, da Client " + userName + " noch in der Warteliste von "
-						+ client.getUserName() + " ist");
-				return false;
-			}
-		}
-		return true;
-	}
-
-	/**
-	 * Loescht einen Client zwangsweise inkl. aller Einträge in Wartelisten.
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-	public synchronized void deleteClientWithoutCondition(String userName) {
-
-		log.debug("Client  " + userName + " zwangsweise aus allen Listen entfernen");
-		for (String s : new HashSet<String>(clients.keySet())) {
-			ClientListEntry client = (ClientListEntry) clients.get(s);
-			if (client.getWaitList().contains(userName)) {
-				log.error("Client " + userName
-						+ " wird aus der Clientliste entfernt, obwohl er noch in der Warteliste von Client "
-						+ client.getUserName() + " ist!");
-				client.getWaitList().remove(userName);
-			}
-		}
-
-		// Client kann nun entfernt werden
-		clients.remove(userName);
-		log.debug("Client  " + userName + " vollstaendig aus allen Wartelisten entfernt");
-
-	}
-
-// Methode fr komplexen Logout
-//	/**
-//	 * Sucht einen Client in allen Waitlists
-//	 * 
-//	 * @param userName
-//	 *            gesuchter Client
-//	 * @return Waitlists, in denen der Client enthalten ist
-//	 */
-//	public synchronized HashSet<String> getWaitLists(String userName) {
-//		HashSet<String> waitLists = new HashSet<String>();
-//		for (String s : new HashSet<String>(clients.keySet())) {
-//			ClientListEntry client = (ClientListEntry) clients.get(s);
-//			if (client.getWaitList().contains(userName)) {
-//
-//				waitLists.add(client.getUserName());
-//			}
-//		}
-//
-//		return waitLists;
-//	}
-
-	/**
-	 * Entfernt einen Client aus der Clientliste. Der Client darf nur geloescht
-	 * werden, wenn er nicht mehr in der Warteliste eines anderen Client ist.
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return true bei erfolgreichem Loeschen, sonst false
-	 */
-	public synchronized boolean deleteClient(String userName) {
-
-		log.debug("Clientliste vor dem Loeschen von " + userName + ": " + printClientList());
-		log.debug("Logout fuer " + userName + ", Laenge der Clientliste vor dem Loeschen von: " + userName + ": "
-				+ clients.size());
-
-		boolean deletedFlag = false;
-		ClientListEntry removeCandidateClient = (ClientListEntry) clients.get(userName);
-		if (removeCandidateClient != null) {
-
-			// Event-Warteliste des Clients leer?
-			log.debug("Laenge der Clientliste " + userName + ": " + clients.size());
-			if ((removeCandidateClient.getWaitList().size() == 0) && (removeCandidateClient.isFinished())) {
-
-				// Warteliste leer, jetzt pruefen, ob er noch in anderen
-				// Wartelisten ist
-				log.debug("Warteliste von Client " + removeCandidateClient.getUserName()
-						+ " ist leer und Client ist zum Beenden vorgemerkt");
-
-				for (String s : new HashSet<String>(clients.keySet())) {
-					ClientListEntry client = (ClientListEntry) clients.get(s);
-					if (client.getWaitList().contains(userName)) {
-						log.debug("Loeschen nicht moeglich, da Client " + userName + " noch in der Warteliste von " + s
-								+ " ist");
-						return deletedFlag;
-					}
-				}
-
-				// Client kann entfernt werden, sofern er auch zum Beenden
-				// vorgemerkt ist.
-				clients.remove(userName);
-				deletedFlag = true;
-			}
-		}
-
-		log.debug("Laenge der Clientliste nach dem Loeschen von " + userName + ": " + clients.size());
-		log.debug("Clientliste nach dem Loeschen von " + userName + ": " + printClientList());
-		return deletedFlag;
-	}
-
-	/**
-	 * Garbage Collector der Clientliste bereinigt nicht mehr benoetigte Clients
-	 *
-	 * @return Namensliste aller entfernten Clients
-	 */
-	public synchronized Vector<String> gcClientList() {
-
-		Vector<String> deletedClients = new Vector<String>();
-
-		for (String s1 : new Vector<String>(clients.keySet())) {
-			boolean clientUsed = true;
-			ClientListEntry client1 = (ClientListEntry) clients.get(s1);
-			if ((client1.getWaitList().size() == 0) && (client1.isFinished())) {
-
-				// Eigene Warteliste leer, jetzt pruefen, ob auch alle anderen
-				// Wartelisten diesen Client nicht enthalten
-				clientUsed = false;
-				for (String s2 : new Vector<String>(clients.keySet())) {
-					ClientListEntry client2 = (ClientListEntry) clients.get(s2);
-					if (client2.getWaitList().contains(s1)) {
-						// Client noch in einer Warteliste
-						clientUsed = true;
-					}
-				}
-			}
-			if (!clientUsed) {
-				log.debug("Garbace Collection: Client " + client1.getUserName() + " wird aus ClientListe entfernt");
-				deletedClients.add(s1);
-				clients.remove(s1);
-			}
-		}
-		return deletedClients;
-	}
-
-	/**
-	 * Laenge der Liste ausgeben
-	 * 
-	 * @return Laenge der Liste
-	 */
-	public synchronized long size() {
-
-		return clients.size();
-	}
-
-	/**
-	 * Erhoeht den Zaehler fuer empfangene Chat-Event-Confirm-PDUs fuer einen Client
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-	public synchronized void incrNumberOfReceivedChatEventConfirms(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.incrNumberOfReceivedEventConfirms();
-
-		}
-	}
-
-	/**
-	 * Erhoeht den Zaehler fuer gesendete Chat-Event-PDUs fuer einen Client
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-	public synchronized void incrNumberOfSentChatEvents(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.incrNumberOfSentEvents();
-		}
-	}
-
-	/**
-	 * Erhoeht den Zaehler fuer empfangene Chat-Message-PDUs eines Client
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-	public synchronized void incrNumberOfReceivedChatMessages(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.incrNumberOfReceivedChatMessages();
-		}
-	}
-
-	/**
-	 * Setzt die Ankunftszeit eines Chat-Requests fuer die Serverzeitmessung
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-
-	public synchronized void setRequestStartTime(String userName, long startTime) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.setStartTime(startTime);
-			log.debug("Startzeit fuer Benutzer " + userName + " gesetzt: " + client.getStartTime());
-		} else {
-			log.debug("Startzeit fuer Benutzer konnte nicht gesetzt werden:" + userName);
-		}
-	}
-
-	/**
-	 * Liefert die Ankunftszeit eines Chat-Requests
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return Ankunftszeit des Requests in ns
-	 */
-	public synchronized long getRequestStartTime(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			return (client.getStartTime());
-		} else {
-			return 0;
-		}
-	}
-
-	/**
-	 * Erstellt eine Liste aller Clients, die noch ein Event bestaetigen muessen. Es
-	 * werden nur registrierte und sich in Registrierung befindliche Clients
-	 * ausgewaehlt.
-	 * 
-	 * @param userName
-	 *            Id des Clients, fuer den eine Warteliste erstellt werden soll
-	 * 
-	 * @return Referenz auf Warteliste des Clients
-	 */
-	public synchronized Vector<String> createWaitList(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			for (String s : new HashSet<String>(clients.keySet())) {
-				// Nur registrierte oder sich gerade registrierende Clients in
-				// die Warteliste aufnehmen
-				if ((client.getStatus() == ClientConversationStatus.REGISTERED)
-						|| (client.getStatus() == ClientConversationStatus.REGISTERING)) {
-					client.addWaitListEntry(s);
-				}
-			}
-			log.debug("Warteliste fuer " + userName + " erzeugt");
-		} else {
-			log.debug("Warteliste fuer " + userName + " konnte nicht erzeugt werden");
-			return null;
-		}
-		return client.getWaitList();
-	}
-
-	/**
-	 * Loescht eine Event-Warteliste fuer einen Client
-	 * 
-	 * @param userName
-	 *            Name des Clients, fuer den die Liste geloesccht werden soll
-	 */
-	public synchronized void deleteWaitList(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.clearWaitList();
-		}
-	}
-
-	/**
-	 * Loescht einen Eintrag aus der Event-Warteliste
-	 * 
-	 * @param userName
-	 *            Name des Clients, fuer den ein Listeneintrag aus seiner Warteliste
-	 *            geloescht werden soll
-	 * @param entryName
-	 *            name des Clients, der aus der Event-Warteliste geloescht werden
-	 *            soll
-	 * @return Anzahl der noch vorhandenen Eintraege in der Liste
-	 * @throws Exception
-	 *             Eintrag, der geloescht werden sollte, ist nicht vorhanden
-	 */
-
-	public synchronized int deleteWaitListEntry(String userName, String entryName) throws Exception {
-
-		log.debug("Client: " + userName + ", aus Warteliste von " + entryName + " loeschen ");
-
-		ClientListEntry client = clients.get(userName);
-
-		if (client == null) {
-			log.debug("Kein Eintrag fuer " + userName + " in der Clientliste vorhanden");
-			throw new Exception();
-		} else if (client.getWaitList().size() == 0) {
-			log.debug("Warteliste fuer " + userName + " war vorher schon leer");
-			return 0;
-		} else {
-			client.getWaitList().remove(entryName);
-			log.debug("Eintrag fuer " + entryName + " aus der Warteliste von " + userName + " geloescht");
-			return client.getWaitList().size();
-		}
-	}
-
-	/**
-	 * Liefert die Laenge der Event-Warteliste fuer einen Client
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 * @return Anzahl der noch vorhandenen Eintraege in der Liste
-	 */
-	public synchronized int getWaitListSize(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			return client.getWaitList().size();
-		}
-		return 0;
-	}
-
-	/**
-	 * Setzt Kennzeichen, dass die Arbeit fuer einen User eingestellt werden kann
-	 * 
-	 * @param userName
-	 *            Name des Clients
-	 */
-	public synchronized void finish(String userName) {
-
-		ClientListEntry client = clients.get(userName);
-		if (client != null) {
-			client.setFinished(true);
-			log.debug("Finished-Kennzeichen gesetzt fuer: " + userName);
-		}
-	}
-
-	/**
-	 * Ausgeben der aktuellen Clientliste einschliesslich der Wartelisten der
-	 * Clients
-	 */
-	public String printClientList() {
-
-		StringBuilder stringBuilder = new StringBuilder();
-		stringBuilder.append("Clientliste mit zugehoerigen Wartelisten: ");
-
-		if (clients.isEmpty()) {
-			stringBuilder.append(" leer\n");
-		} else {
-			stringBuilder.append("\n");
-			for (String s : new HashSet<String>(clients.keySet())) {
-				ClientListEntry client = clients.get(s);
-				stringBuilder.append(client.getUserName() + ", ");
-				stringBuilder.append(client.getWaitList() + "\n");
-			}
-		}
-		return stringBuilder.toString();
-	}
-
-}
+package edu.hm.dako.chat.server;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import edu.hm.dako.chat.common.ClientConversationStatus;
+import edu.hm.dako.chat.common.ClientListEntry;
+import edu.hm.dako.chat.common.DeliveryGuarantee;
+import edu.hm.dako.chat.common.PresenceMode;
+
+/**
+ * Liste aller angemeldeten Clients. Jede Server-Instanz besitzt eine eigene
+ * Liste, die ihr von der {@link ServerFactory} uebergeben wird; mehrere Server
+ * in einer JVM (z.B. auf verschiedenen Ports) teilen sich so keine Clients.
+ * Alle Worker-Threads eines Servers nutzen seine Liste.
+ *
+ * Die Liste wird als ConcurrentHashMap organisiert. Als Schluessel wird der
+ * Username von Clients verwendet. Sie dient als Verzeichnis und wird ohne Sperre
+ * gelesen.
+ *
+ * Alle uebrigen Daten sind auf Partitionen ({@link ClientShard}) mit je eigener
+ * Sperre verteilt (System-Property chat.shards, Vorgabe: Anzahl der
+ * Prozessoren). Jeder Client gehoert einer Partition, die seine Warteliste
+ * fuehrt; die Zuordnung erfolgt beim Login ueber den Usernamen oder den Raum
+ * (siehe {@link ShardAssignment}). Raum-Index und Abonnenten-Index werden ueber
+ * den Namen des Raums bzw. des abonnierten Users partitioniert. Confirms und
+ * Events von Clients verschiedener Partitionen werden so parallel bearbeitet,
+ * statt wie frueher alle Threads an einer Sperre der gesamten Liste zu
+ * serialisieren. Operationen ueber mehrere Partitionen sperren diese
+ * nacheinander, nie gleichzeitig.
+ *
+ * Zusaetzlich wird ein Index der Chat-Raeume gefuehrt: Raum -> Mitglieder in den
+ * Partitionen, Mitglied -> Raeume im jeweiligen {@link ClientListEntry}. Chat-Nachrichten,
+ * Wartelisten und Login-/Logout-Events eines Users in Raeumen betreffen nur die
+ * Mitglieder seiner Raeume, User ohne Raum erreichen weiterhin alle Clients.
+ *
+ * Login- und Logout-Events erhalten darueber hinaus nur Clients, die sich dafuer
+ * interessieren (siehe {@link PresenceMode}): Clients im Modus All stehen in
+ * einer eigenen Menge, abonnierte User im Index User -> Abonnenten. Ein Event
+ * kostet damit nur so viel, wie es Interessenten hat.
+ *
+ * Genereller Hinweis: Zur Umgehung von ConcurrentModificationExceptions wird
+ * bei der Iteration durch Listen generell eine Kopie der Liste angelegt.
+ *
+ * @author Peter Mandl
+ *
+ */
+public class SharedChatClientList {
+
+	private static Log log = LogFactory.getLog(SharedChatClientList.class);
+	// Vorgaben fuer Anzahl der Partitionen und Zuordnung der Clients
+	private static final int DEFAULT_SHARDS = Math.max(1, Integer.getInteger("chat.shards",
+			Runtime.getRuntime().availableProcessors()));
+	private static final ShardAssignment DEFAULT_SHARD_ASSIGNMENT = parseShardAssignment(
+			System.getProperty("chat.shardAssignment"));
+
+	// Liste aller eingeloggten Clients
+	private final ConcurrentHashMap<String, ClientListEntry> clients = new ConcurrentHashMap<String, ClientListEntry>();
+
+	// Partitionen mit Wartelisten, Raum-Index und Abonnenten-Index
+	private final ClientShard[] shards;
+
+	// Zuordnung der Clients zu den Partitionen
+	private final ShardAssignment shardAssignment;
+
+	// Clients im PresenceMode All
+	private final Set<String> globalPresenceClients = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Erzeugt eine leere Liste mit Partitionen gemaess den System-Properties
+	 * chat.shards und chat.shardAssignment
+	 */
+	public SharedChatClientList() {
+		this(DEFAULT_SHARDS, DEFAULT_SHARD_ASSIGNMENT);
+	}
+
+	/**
+	 * Erzeugt eine leere Liste
+	 * 
+	 * @param numberOfShards
+	 *            Anzahl der Partitionen (mindestens 1)
+	 * @param shardAssignment
+	 *            Zuordnung der Clients zu den Partitionen
+	 */
+	public SharedChatClientList(int numberOfShards, ShardAssignment shardAssignment) {
+		this.shards = new ClientShard[Math.max(1, numberOfShards)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new ClientShard(i);
+		}
+		this.shardAssignment = shardAssignment;
+		log.info("Clientliste mit " + shards.length + " Partitionen, Zuordnung: "
+				+ shardAssignment);
+	}
+
+	/**
+	 * Vorgabe fuer die Zuordnung der Clients aus der System-Property lesen. Ein
+	 * ungueltiger Wert darf das Anlegen der Clientliste nicht verhindern, es
+	 * gilt dann Hash.
+	 *
+	 * @param value
+	 *            Wert der System-Property chat.shardAssignment, null = nicht
+	 *            gesetzt
+	 * @return Zuordnung der Clients zu den Partitionen
+	 */
+	private static ShardAssignment parseShardAssignment(String value) {
+		if (value == null) {
+			return ShardAssignment.Hash;
+		}
+		try {
+			return ShardAssignment.valueOf(value.trim());
+		} catch (IllegalArgumentException e) {
+			log.warn("Ungueltiger Wert fuer chat.shardAssignment: " + value
+					+ ", es gilt Hash");
+			return ShardAssignment.Hash;
+		}
+	}
+
+	/**
+	 * Loeschen der gesamten Liste
+	 */
+	public void deleteAll() {
+
+		clients.clear();
+		for (ClientShard shard : shards) {
+			shard.clear();
+		}
+		globalPresenceClients.clear();
+	}
+
+	/**
+	 * Partition fuer einen Schluessel (Username oder Raum)
+	 */
+	private int shardIndex(String key) {
+		return (key.hashCode() & 0x7fffffff) % shards.length;
+	}
+
+	/**
+	 * Partition, die die Warteliste eines Clients fuehrt
+	 */
+	private ClientShard shardOf(ClientListEntry client) {
+		return shards[client.getShard()];
+	}
+
+	/**
+	 * Partition, die einen Raum bzw. die Abonnenten eines Users fuehrt
+	 */
+	private ClientShard shardOf(String key) {
+		return shards[shardIndex(key)];
+	}
+
+	/**
+	 * Status eines Clients veraendern
+	 * 
+	 * @param userName
+	 *            Name des Users (Clients)
+	 * @param newStatus
+	 *            Neuer Status
+	 */
+	public void changeClientStatus(String userName, ClientConversationStatus newStatus) {
+
+		ClientListEntry client = clients.get(userName);
+		client.setStatus(newStatus);
+		clients.replace(userName, client);
+		if (log.isDebugEnabled()) {
+			log.debug("User " + userName + " nun in Status: " + newStatus);
+		}
+	}
+
+	/**
+	 * Aendern des Conversation-Status eines Clients, sofern er im erwarteten
+	 * Status ist. Pruefen und Aendern sind eine atomare Operation, so dass von
+	 * mehreren Threads genau einer den Zustandswechsel durchfuehrt.
+	 * 
+	 * @param userName
+	 *            Name des Users (Clients)
+	 * @param expectedStatus
+	 *            Erwarteter Status
+	 * @param newStatus
+	 *            Neuer Status
+	 * @return true, wenn der Status geaendert wurde
+	 */
+	public boolean compareAndSetClientStatus(String userName,
+			ClientConversationStatus expectedStatus, ClientConversationStatus newStatus) {
+
+		ClientListEntry client = clients.get(userName);
+		if ((client == null) || !client.compareAndSetStatus(expectedStatus, newStatus)) {
+			return false;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("User " + userName + " nun in Status: " + newStatus);
+		}
+		return true;
+	}
+
+	/**
+	 * Lesen des Conversation-Status fuer einen Client
+	 * 
+	 * @param userName
+	 *            Name des Users (Clients)
+	 * @return Conversation-Status des Clients
+	 */
+	public ClientConversationStatus getClientStatus(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			return (client.getStatus());
+		} else {
+			return ClientConversationStatus.UNREGISTERED;
+		}
+	}
+
+	/**
+	 * Client auslesen
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Referenz auf den gesuchten Client
+	 */
+	public ClientListEntry getClient(String userName) {
+
+		return clients.get(userName);
+	}
+
+	/**
+	 * Stellt eine Liste aller Namen der eingetragenen Clients bereit
+	 * 
+	 * @return Vektor mit allen Namen der eingetragenen Clients
+	 */
+	public Vector<String> getClientNameList() {
+
+		Vector<String> clientNameList = new Vector<String>();
+		for (String s : new HashSet<String>(clients.keySet())) {
+			clientNameList.add(s);
+		}
+		return clientNameList;
+	}
+
+	/**
+	 * Stellt eine Liste aller Namen der eingetragenen Clients bereit, die im
+	 * Zustand REGISTERING oder REGISTERED sind
+	 * 
+	 * @return Vektor mit allen Namen der eingetragenen Clients, die registriert
+	 *         sind oder die sich gerade registrieren
+	 */
+	public Vector<String> getRegisteredClientNameList() {
+
+		Vector<String> clientNameList = new Vector<String>();
+		for (String s : new HashSet<String>(clients.keySet())) {
+
+			if ((getClientStatus(s) == ClientConversationStatus.REGISTERING)
+					|| (getClientStatus(s) == ClientConversationStatus.REGISTERED)) {
+
+				clientNameList.add(s);
+			}
+		}
+		return clientNameList;
+	}
+
+	/**
+	 * Prueft, ob ein Client in der Userliste ist
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return
+	 */
+	public boolean existsClient(String userName) {
+
+		if (userName != null) {
+			if (!clients.containsKey(userName)) {
+				if (log.isDebugEnabled()) {
+					log.debug("User nicht in Clientliste: " + userName);
+				}
+				return false;
+			} else {
+				return true;
+			}
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Legt einen neuen Client an
+	 * 
+	 * @param userName
+	 *            Name des neuen Clients
+	 * @param client
+	 *            Client-Daten
+	 */
+	public void createClient(String userName, ClientListEntry client) {
+		createClient(userName, client, null);
+	}
+
+	/**
+	 * Legt einen neuen Client an und ordnet ihn einer Partition zu
+	 * 
+	 * @param userName
+	 *            Name des neuen Clients
+	 * @param client
+	 *            Client-Daten
+	 * @param room
+	 *            Raum aus dem Login-Request, null = keiner
+	 */
+	public void createClient(String userName, ClientListEntry client, String room) {
+
+		if ((shardAssignment == ShardAssignment.Room) && (room != null)) {
+			client.setShard(shardIndex(room));
+		} else {
+			client.setShard(shardIndex(userName));
+		}
+		clients.put(userName, client);
+		if (client.getPresenceMode() == PresenceMode.All) {
+			globalPresenceClients.add(userName);
+		}
+	}
+
+	/**
+	 * Aktualisierung eines vorhandenen Clients
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @param client
+	 *            Client-Daten
+	 */
+	public void updateClient(String userName, ClientListEntry client) {
+
+		ClientListEntry existingClient = (ClientListEntry) clients.get(userName);
+
+		if (existingClient != null) {
+			client.setShard(existingClient.getShard());
+			clients.put(userName, client);
+		} else {
+			if (log.isDebugEnabled()) {
+				log.debug("User nicht in Clientliste: " + userName);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * Prueft, ob ein Client in keiner Warteliste mehr ist und daher geloescht
+	 * werden kann.
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return true Loeschen moeglich, sonst false
+	 */
+	public boolean deletable(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if ((client != null) && (client.getWaitListReferences() > 0)) {
+			// Client noch in einer Warteliste
+			if (log.isDebugEnabled()) {
+				log.debug("Loeschen nicht moeglich, da Client " + userName + " noch in "
+						+ client.getWaitListReferences() + " Warteliste(n) ist");
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Loescht einen Client zwangsweise inkl. aller Einträge in Wartelisten.
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Namen der Clients, deren Warteliste durch das Entfernen
+	 *         abgeschlossen wurde; der Aufrufer sendet deren Response
+	 */
+	public Vector<String> deleteClientWithoutCondition(String userName) {
+
+		if (log.isDebugEnabled()) {
+			log.debug("Client  " + userName + " zwangsweise aus allen Listen entfernen");
+		}
+		Vector<String> completedWaitLists = new Vector<String>();
+		ClientListEntry removeCandidateClient = clients.get(userName);
+		if (removeCandidateClient == null) {
+			return completedWaitLists;
+		}
+
+		// Ab jetzt wird der Client in keine neue Warteliste mehr eingetragen
+		removeCandidateClient.markRemoved(true);
+		synchronized (shardOf(removeCandidateClient)) {
+			releaseWaitList(removeCandidateClient);
+			for (String s : removeCandidateClient.clearPreviousWaitLists()) {
+				releaseWaitListReference(s);
+			}
+		}
+
+		// Bestehende Eintraege suchen nur, wenn der Client noch in Wartelisten
+		// steht (Verbindungsabbruch waehrend eines laufenden Requests)
+		if (removeCandidateClient.getWaitListReferences() > 0) {
+			for (ClientListEntry client : clients.values()) {
+				synchronized (shardOf(client)) {
+					for (int i = client.removeFromPreviousWaitLists(userName); i > 0; i--) {
+						removeCandidateClient.releaseWaitListReference();
+						client.incrNumberOfLostEventConfirms();
+					}
+					if (client.getWaitList().remove(userName)) {
+						removeCandidateClient.releaseWaitListReference();
+						client.incrNumberOfLostEventConfirms();
+						log.error("Client " + userName
+								+ " wird aus der Clientliste entfernt, obwohl er noch in der Warteliste von Client "
+								+ client.getUserName() + " ist!");
+						// Das Confirm kommt nicht mehr, evtl. ist die Warteliste
+						// damit vollstaendig
+						if (client.hasRequiredConfirms() && client.closeWaitList()) {
+							completedWaitLists.add(client.getUserName());
+						}
+					}
+				}
+			}
+		}
+
+		// Client kann nun entfernt werden
+		removeClient(removeCandidateClient);
+		if (log.isDebugEnabled()) {
+			log.debug("Client  " + userName + " vollstaendig aus allen Wartelisten entfernt");
+		}
+		return completedWaitLists;
+
+	}
+
+// Methode fr komplexen Logout
+//	/**
+//	 * Sucht einen Client in allen Waitlists
+//	 * 
+//	 * @param userName
+//	 *            gesuchter Client
+//	 * @return Waitlists, in denen der Client enthalten ist
+//	 */
+//	public synchronized HashSet<String> getWaitLists(String userName) {
+//		HashSet<String> waitLists = new HashSet<String>();
+//		for (String s : new HashSet<String>(clients.keySet())) {
+//			ClientListEntry client = (ClientListEntry) clients.get(s);
+//			if (client.getWaitList().contains(userName)) {
+//
+//				waitLists.add(client.getUserName());
+//			}
+//		}
+//
+//		return waitLists;
+//	}
+
+	/**
+	 * Entfernt einen Client aus der Clientliste. Der Client darf nur geloescht
+	 * werden, wenn er nicht mehr in der Warteliste eines anderen Client ist.
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return true bei erfolgreichem Loeschen, sonst false
+	 */
+	public boolean deleteClient(String userName) {
+
+		if (log.isDebugEnabled()) {
+			log.debug("Clientliste vor dem Loeschen von " + userName + ": " + printClientList());
+			log.debug("Logout fuer " + userName + ", Laenge der Clientliste vor dem Loeschen von: " + userName + ": "
+					+ clients.size());
+		}
+
+		boolean deletedFlag = false;
+		ClientListEntry removeCandidateClient = clients.get(userName);
+		if (removeCandidateClient != null) {
+			deletedFlag = removeIfUnused(removeCandidateClient);
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Laenge der Clientliste nach dem Loeschen von " + userName + ": " + clients.size());
+			log.debug("Clientliste nach dem Loeschen von " + userName + ": " + printClientList());
+		}
+		return deletedFlag;
+	}
+
+	/**
+	 * Garbage Collector der Clientliste bereinigt nicht mehr benoetigte Clients
+	 *
+	 * @return Namensliste aller entfernten Clients
+	 */
+	public Vector<String> gcClientList() {
+
+		Vector<String> deletedClients = new Vector<String>();
+
+		for (ClientListEntry client : clients.values()) {
+			if (client.isFinished() && removeIfUnused(client)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Garbace Collection: Client " + client.getUserName() + " wird aus ClientListe entfernt");
+				}
+				deletedClients.add(client.getUserName());
+			}
+		}
+		return deletedClients;
+	}
+
+	/**
+	 * Entfernt einen zum Beenden vorgemerkten Client, wenn seine eigene
+	 * Warteliste leer ist und er in keiner Warteliste mehr steht. Die Pruefung
+	 * laeuft unter der Sperre seiner Partition; das Vormerken zum Entfernen und
+	 * das Eintragen in eine Warteliste schliessen sich ueber den Monitor des
+	 * Eintrags gegenseitig aus.
+	 * 
+	 * @return true, wenn der Client entfernt wurde
+	 */
+	private boolean removeIfUnused(ClientListEntry client) {
+
+		synchronized (shardOf(client)) {
+			if ((client.getWaitList().size() != 0) || client.hasPreviousWaitLists()
+					|| !client.isFinished()) {
+				return false;
+			}
+			if (!client.markRemoved(false)) {
+				if (log.isDebugEnabled()) {
+					log.debug("Loeschen nicht moeglich, da Client " + client.getUserName() + " noch in "
+							+ client.getWaitListReferences() + " Warteliste(n) ist");
+				}
+				return false;
+			}
+		}
+		removeClient(client);
+		return true;
+	}
+
+	/**
+	 * Entfernt einen Client aus Raeumen, Abonnements und Clientliste. Ein
+	 * inzwischen unter gleichem Namen neu angemeldeter Client bleibt erhalten.
+	 */
+	private void removeClient(ClientListEntry client) {
+
+		String userName = client.getUserName();
+		leaveAllRooms(userName);
+		unsubscribePresence(userName);
+		clients.remove(userName, client);
+	}
+
+	/**
+	 * Leert die Warteliste eines Clients und zaehlt die Eintraege bei den
+	 * betroffenen Clients aus. Aufruf nur unter der Sperre der Partition des
+	 * Clients.
+	 */
+	private void releaseWaitList(ClientListEntry client) {
+
+		for (String s : client.getWaitList()) {
+			releaseWaitListReference(s);
+		}
+		client.clearWaitList();
+	}
+
+	private void releaseWaitListReference(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.releaseWaitListReference();
+		}
+	}
+
+	/**
+	 * Laenge der Liste ausgeben
+	 * 
+	 * @return Laenge der Liste
+	 */
+	public long size() {
+
+		return clients.size();
+	}
+
+	/**
+	 * Erhoeht den Zaehler fuer empfangene Chat-Event-Confirm-PDUs fuer einen Client
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 */
+	public void incrNumberOfReceivedChatEventConfirms(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.incrNumberOfReceivedEventConfirms();
+
+		}
+	}
+
+	/**
+	 * Erhoeht den Zaehler fuer gesendete Chat-Event-PDUs fuer einen Client
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 */
+	public void incrNumberOfSentChatEvents(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.incrNumberOfSentEvents();
+		}
+	}
+
+	/**
+	 * Erhoeht den Zaehler fuer empfangene Chat-Message-PDUs eines Client
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 */
+	public void incrNumberOfReceivedChatMessages(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.incrNumberOfReceivedChatMessages();
+		}
+	}
+
+	/**
+	 * Setzt die Ankunftszeit eines Chat-Requests fuer die Serverzeitmessung
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 */
+
+	public void setRequestStartTime(String userName, long startTime) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.setStartTime(startTime);
+			if (log.isDebugEnabled()) {
+				log.debug("Startzeit fuer Benutzer " + userName + " gesetzt: " + client.getStartTime());
+			}
+		} else {
+			if (log.isDebugEnabled()) {
+				log.debug("Startzeit fuer Benutzer konnte nicht gesetzt werden:" + userName);
+			}
+		}
+	}
+
+	/**
+	 * Liefert die Ankunftszeit eines Chat-Requests
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Ankunftszeit des Requests in ns
+	 */
+	public long getRequestStartTime(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			return (client.getStartTime());
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Erstellt eine Liste aller Clients, die noch ein Event bestaetigen muessen. Es
+	 * werden nur registrierte und sich in Registrierung befindliche Clients
+	 * ausgewaehlt.
+	 * 
+	 * @param userName
+	 *            Id des Clients, fuer den eine Warteliste erstellt werden soll
+	 * 
+	 * @return Referenz auf Warteliste des Clients
+	 */
+	public Vector<String> createWaitList(String userName) {
+		return createWaitList(userName, DeliveryGuarantee.All, 0);
+	}
+
+	/**
+	 * Erstellt eine Warteliste wie {@link #createWaitList(String)} und legt fest,
+	 * nach wie vielen Confirms die Response gesendet werden darf.
+	 * 
+	 * @param userName
+	 *            Id des Clients, fuer den eine Warteliste erstellt werden soll
+	 * @param guarantee
+	 *            Zustellgarantie des Requests
+	 * @param quorum
+	 *            Quorum k, nur fuer DeliveryGuarantee.Quorum relevant
+	 * @return Referenz auf Warteliste des Clients
+	 */
+	public Vector<String> createWaitList(String userName,
+			DeliveryGuarantee guarantee, int quorum) {
+		return createWaitList(userName, clients.keySet(), 0, guarantee, quorum);
+	}
+
+	/**
+	 * Erstellt eine Warteliste wie {@link #createWaitList(String, DeliveryGuarantee, int)},
+	 * aber nur fuer die angegebenen Empfaenger (z.B. die Mitglieder eines
+	 * Chat-Raums).
+	 * 
+	 * @param userName
+	 *            Id des Clients, fuer den eine Warteliste erstellt werden soll
+	 * @param recipients
+	 *            Empfaenger des Events, die es bestaetigen muessen
+	 * @param sequenceNumber
+	 *            Sequenznummer des Requests (Login und Logout: 0), nur Confirms
+	 *            mit dieser Sequenznummer werden der Warteliste zugeordnet
+	 * @param guarantee
+	 *            Zustellgarantie des Requests
+	 * @param quorum
+	 *            Quorum k, nur fuer DeliveryGuarantee.Quorum relevant
+	 * @return Referenz auf Warteliste des Clients
+	 */
+	public Vector<String> createWaitList(String userName,
+			Collection<String> recipients, long sequenceNumber,
+			DeliveryGuarantee guarantee, int quorum) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			Set<String> entries = new HashSet<String>(recipients);
+			Vector<String> lost;
+			synchronized (shardOf(client)) {
+				// Warteliste des vorherigen Requests mit noch ausstehenden
+				// Confirms bis zum Ablauf ihrer Frist aufbewahren
+				lost = client.retireWaitList();
+				for (String s : lost) {
+					releaseWaitListReference(s);
+				}
+				client.openWaitList(sequenceNumber);
+				for (String s : entries) {
+					// Nur registrierte oder sich gerade registrierende Empfaenger in
+					// die Warteliste aufnehmen, und nur Empfaenger, die nicht
+					// gerade aus der Clientliste entfernt werden. Abmeldende
+					// Clients erhalten das Event evtl. noch, ihr Confirm wird aber
+					// nicht abgewartet.
+					ClientListEntry recipient = clients.get(s);
+					if ((recipient != null)
+							&& ((recipient.getStatus() == ClientConversationStatus.REGISTERED)
+									|| (recipient.getStatus() == ClientConversationStatus.REGISTERING))
+							&& recipient.acquireWaitListReference()) {
+						client.addWaitListEntry(s);
+					}
+				}
+				client.setDeliveryGuarantee(guarantee, quorum);
+			}
+			countLostConfirms(client, lost);
+			if (log.isDebugEnabled()) {
+				log.debug("Warteliste fuer " + userName + " erzeugt, Zustellgarantie: "
+						+ guarantee.describe(quorum));
+			}
+		} else {
+			if (log.isDebugEnabled()) {
+				log.debug("Warteliste fuer " + userName + " konnte nicht erzeugt werden");
+			}
+			return null;
+		}
+		return client.getWaitList();
+	}
+
+	/**
+	 * Loescht eine Event-Warteliste fuer einen Client
+	 * 
+	 * @param userName
+	 *            Name des Clients, fuer den die Liste geloesccht werden soll
+	 */
+	public void deleteWaitList(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			synchronized (shardOf(client)) {
+				releaseWaitList(client);
+			}
+		}
+	}
+
+	/**
+	 * Loescht einen Eintrag aus der Event-Warteliste
+	 * 
+	 * @param userName
+	 *            Name des Clients, fuer den ein Listeneintrag aus seiner Warteliste
+	 *            geloescht werden soll
+	 * @param entryName
+	 *            name des Clients, der aus der Event-Warteliste geloescht werden
+	 *            soll
+	 * @param sequenceNumber
+	 *            Sequenznummer aus dem Confirm
+	 * @return Anzahl der noch vorhandenen Eintraege in der Liste, -1 wenn das
+	 *         Confirm zu einem frueheren Request gehoert (aus dessen
+	 *         aufbewahrter Warteliste ausgetragen oder verworfen)
+	 * @throws Exception
+	 *             Eintrag, der geloescht werden sollte, ist nicht vorhanden
+	 */
+
+	public int deleteWaitListEntry(String userName, String entryName, long sequenceNumber)
+			throws Exception {
+
+		if (log.isDebugEnabled()) {
+			log.debug("Client: " + userName + ", aus Warteliste von " + entryName + " loeschen ");
+		}
+
+		ClientListEntry client = clients.get(userName);
+
+		if (client == null) {
+			if (log.isDebugEnabled()) {
+				log.debug("Kein Eintrag fuer " + userName + " in der Clientliste vorhanden");
+			}
+			throw new Exception();
+		}
+		synchronized (shardOf(client)) {
+			if (client.getWaitListSequenceNumber() != sequenceNumber) {
+				// Confirm fuer einen frueheren Request: aus dessen aufbewahrter
+				// Warteliste austragen (Response bei FireAndForget und Quorum
+				// bereits gesendet)
+				if (client.removePreviousWaitListEntry(sequenceNumber, entryName)) {
+					releaseWaitListReference(entryName);
+					if (log.isDebugEnabled()) {
+						log.debug("Confirm von " + entryName + " fuer frueheren Request "
+								+ sequenceNumber + " von " + userName + " ausgetragen");
+					}
+					return -1;
+				}
+				// Verspaetetes Confirm nach Ablauf der Confirm-Frist
+				if (log.isDebugEnabled()) {
+					log.debug("Confirm von " + entryName + " fuer Request " + sequenceNumber
+							+ " von " + userName + " verworfen, aktuelle Warteliste gehoert zu Request "
+							+ client.getWaitListSequenceNumber());
+				}
+				return -1;
+			}
+			if (client.getWaitList().size() == 0) {
+				if (log.isDebugEnabled()) {
+					log.debug("Warteliste fuer " + userName + " war vorher schon leer");
+				}
+				return 0;
+			}
+			if (client.getWaitList().remove(entryName)) {
+				releaseWaitListReference(entryName);
+			}
+			if (client.getWaitList().isEmpty() && !client.isWaitListOpen()) {
+				// Response ist bereits gesendet und alle Confirms sind da
+				client.cancelConfirmDeadline();
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("Eintrag fuer " + entryName + " aus der Warteliste von " + userName + " geloescht");
+			}
+			return client.getWaitList().size();
+		}
+	}
+
+	/**
+	 * Schliesst die Warteliste eines Clients ab, sobald so viele Confirms
+	 * eingetroffen sind, wie die Zustellgarantie des Requests verlangt. Nur der
+	 * Aufrufer, fuer den true geliefert wird, sendet die Response; weitere oder
+	 * verspaetete Confirms loesen damit keine zweite Response aus.
+	 * 
+	 * @param userName
+	 *            Name des Clients, dem die Warteliste gehoert
+	 * @return true, wenn genug Confirms vorliegen und die Warteliste bis dahin
+	 *         offen war
+	 */
+	public boolean closeWaitList(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client == null) {
+			return false;
+		}
+		synchronized (shardOf(client)) {
+			return client.hasRequiredConfirms() && client.closeWaitList();
+		}
+	}
+
+	/**
+	 * Confirm-Frist einer Warteliste ist abgelaufen: Die Warteliste wird
+	 * abgeschlossen und geleert, fehlende Confirms werden beim anfragenden
+	 * Client und bei jedem saeumigen Client gezaehlt.
+	 * 
+	 * @param userName
+	 *            Name des Clients, dem die Warteliste gehoert
+	 * @param waitListId
+	 *            Kennung der Warteliste, fuer die die Frist eingeplant wurde
+	 * @param missing
+	 *            Wird um die Namen der Clients ergaenzt, deren Confirm fehlt
+	 * @return true, wenn die Response noch aussteht und jetzt gesendet werden
+	 *         muss (evtl. ohne fehlende Confirms, wenn die Warteliste durch
+	 *         Verbindungsabbrueche geleert wurde)
+	 */
+	public boolean expireWaitList(String userName, long waitListId,
+			Vector<String> missing) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client == null) {
+			return false;
+		}
+		boolean responsePending;
+		synchronized (shardOf(client)) {
+			if (client.getWaitListId() != waitListId) {
+				// Frist einer aufbewahrten Warteliste eines frueheren Requests,
+				// dessen Response bereits gesendet wurde
+				Vector<String> previous = client.expirePreviousWaitList(waitListId);
+				if (previous == null) {
+					return false;
+				}
+				missing.addAll(previous);
+				for (String s : previous) {
+					releaseWaitListReference(s);
+				}
+				responsePending = false;
+			} else {
+				responsePending = client.closeWaitList();
+				missing.addAll(client.getWaitList());
+				releaseWaitList(client);
+				client.cancelConfirmDeadline();
+			}
+		}
+		countLostConfirms(client, missing);
+		if (log.isDebugEnabled()) {
+			log.debug("Confirm-Frist fuer " + userName + " abgelaufen, fehlende Confirms: "
+					+ missing);
+		}
+		return responsePending;
+	}
+
+	/**
+	 * Fehlende Confirms beim anfragenden Client und bei jedem saeumigen Client
+	 * zaehlen. Die Zaehler werden ausserhalb der Sperre erhoeht, die saeumigen
+	 * Clients gehoeren evtl. zu anderen Partitionen.
+	 */
+	private void countLostConfirms(ClientListEntry client, Vector<String> missing) {
+
+		for (String s : missing) {
+			client.incrNumberOfLostEventConfirms();
+			ClientListEntry recipient = clients.get(s);
+			if (recipient != null) {
+				recipient.incrNumberOfMissedEventConfirms();
+			}
+		}
+	}
+
+	/**
+	 * Client tritt einem Chat-Raum bei, der Raum wird bei Bedarf angelegt
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @param room
+	 *            Name des Raums
+	 * @return false, wenn der Client nicht angemeldet oder schon Mitglied ist
+	 */
+	public boolean joinRoom(String userName, String room) {
+
+		ClientListEntry client = clients.get(userName);
+		if ((client == null) || !client.addRoom(room)) {
+			return false;
+		}
+		int size = shardOf(room).addRoomMember(room, userName);
+		if (log.isDebugEnabled()) {
+			log.debug(userName + " ist Raum " + room + " beigetreten, Mitglieder: " + size);
+		}
+		return true;
+	}
+
+	/**
+	 * Client verlaesst einen Chat-Raum, ein leerer Raum wird entfernt
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @param room
+	 *            Name des Raums
+	 * @return false, wenn der Client nicht Mitglied des Raums war
+	 */
+	public boolean leaveRoom(String userName, String room) {
+
+		ClientListEntry client = clients.get(userName);
+		if ((client == null) || !client.removeRoom(room)) {
+			return false;
+		}
+		shardOf(room).removeRoomMember(room, userName);
+		if (log.isDebugEnabled()) {
+			log.debug(userName + " hat Raum " + room + " verlassen");
+		}
+		return true;
+	}
+
+	/**
+	 * Entfernt einen Client aus allen Raeumen (beim Loeschen des Clients)
+	 */
+	private void leaveAllRooms(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			for (String room : client.getRooms()) {
+				client.removeRoom(room);
+				shardOf(room).removeRoomMember(room, userName);
+			}
+		}
+	}
+
+	/**
+	 * Prueft, ob ein Client Mitglied eines Chat-Raums ist
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @param room
+	 *            Name des Raums
+	 * @return true, wenn der Client Mitglied ist
+	 */
+	public boolean isRoomMember(String userName, String room) {
+
+		return shardOf(room).isRoomMember(room, userName);
+	}
+
+	/**
+	 * Stellt die Namen aller Mitglieder eines Chat-Raums bereit
+	 * 
+	 * @param room
+	 *            Name des Raums
+	 * @return Vektor mit den Mitgliedern, leer fuer einen unbekannten Raum
+	 */
+	public Vector<String> getRoomMembers(String room) {
+
+		return shardOf(room).getRoomMembers(room);
+	}
+
+	/**
+	 * Stellt die Empfaenger fuer ein Event in einem Chat-Raum bereit: alle
+	 * Mitglieder, die noch nicht abgemeldet sind
+	 * 
+	 * @param room
+	 *            Name des Raums
+	 * @return Vektor mit den Namen der Empfaenger
+	 */
+	public Vector<String> getRoomRecipients(String room) {
+
+		Vector<String> recipients = new Vector<String>();
+		for (String s : shardOf(room).getRoomMembers(room)) {
+			ClientListEntry client = clients.get(s);
+			if ((client != null) && (client.getStatus() != ClientConversationStatus.UNREGISTERED)) {
+				recipients.add(s);
+			}
+		}
+		return recipients;
+	}
+
+	/**
+	 * Stellt die Empfaenger der Login- und Logout-Events eines Clients bereit:
+	 * die Mitglieder aller seiner Raeume ausser denen im PresenceMode Users,
+	 * fuer einen Client ohne Raum alle Clients im PresenceMode All, dazu seine
+	 * Abonnenten und er selbst
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Vektor mit den Namen der Empfaenger
+	 */
+	public Vector<String> getPresenceRecipients(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		Set<String> recipients = new LinkedHashSet<String>();
+		if ((client == null) || !client.hasRooms()) {
+			recipients.addAll(globalPresenceClients);
+		} else {
+			for (String room : client.getRooms()) {
+				for (String s : shardOf(room).getRoomMembers(room)) {
+					ClientListEntry member = clients.get(s);
+					if ((member != null) && (member.getPresenceMode() != PresenceMode.Users)) {
+						recipients.add(s);
+					}
+				}
+			}
+		}
+		Set<String> subscribers = shardOf(userName).getPresenceSubscribers(userName);
+		if (subscribers != null) {
+			recipients.addAll(subscribers);
+		}
+		if (client != null) {
+			// Eigenes Event, beim Login bestaetigt der Client damit seine Anmeldung
+			recipients.add(userName);
+		}
+		return new Vector<String>(recipients);
+	}
+
+	/**
+	 * Stellt die Mitglieder aller Raeume eines Clients bereit (inkl. des
+	 * Clients selbst)
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Vektor mit den Namen der Mitglieder, leer ohne Raum
+	 */
+	public Vector<String> getRoomCoMembers(String userName) {
+
+		Set<String> members = new LinkedHashSet<String>();
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			for (String room : client.getRooms()) {
+				members.addAll(shardOf(room).getRoomMembers(room));
+			}
+		}
+		return new Vector<String>(members);
+	}
+
+	/**
+	 * Umfang der Login- und Logout-Events eines Clients festlegen und die
+	 * abonnierten User ersetzen
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @param mode
+	 *            Neuer PresenceMode
+	 * @param users
+	 *            Abonnierte User, null = keine
+	 * @return false, wenn der Client nicht in der Liste ist
+	 */
+	public boolean subscribePresence(String userName, PresenceMode mode,
+			Collection<String> users) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client == null) {
+			return false;
+		}
+		client.setPresenceMode(mode);
+		if (mode == PresenceMode.All) {
+			globalPresenceClients.add(userName);
+		} else {
+			globalPresenceClients.remove(userName);
+		}
+		Set<String> subscriptions = new HashSet<String>();
+		if (users != null) {
+			subscriptions.addAll(users);
+		}
+		subscriptions.remove(userName);
+		for (String s : client.replacePresenceSubscriptions(subscriptions)) {
+			shardOf(s).removePresenceSubscriber(s, userName);
+		}
+		for (String s : subscriptions) {
+			shardOf(s).addPresenceSubscriber(s, userName);
+		}
+		return true;
+	}
+
+	/**
+	 * Entfernt alle Abonnements eines Clients (beim Loeschen des Clients)
+	 */
+	private void unsubscribePresence(String userName) {
+
+		globalPresenceClients.remove(userName);
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			for (String s : client.replacePresenceSubscriptions(new HashSet<String>())) {
+				shardOf(s).removePresenceSubscriber(s, userName);
+			}
+		}
+	}
+
+	/**
+	 * Stellt die angemeldeten User bereit, deren Login- und Logout-Events ein
+	 * Client erhaelt: im PresenceMode All alle, sonst die abonnierten User und
+	 * im Modus Rooms zusaetzlich die Mitglieder seiner Raeume
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Vektor mit den Namen der User
+	 */
+	public Vector<String> getPresenceUserList(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if ((client == null) || (client.getPresenceMode() == PresenceMode.All)) {
+			return getRegisteredClientNameList();
+		}
+		Set<String> users = new LinkedHashSet<String>();
+		if (client.getPresenceMode() == PresenceMode.Rooms) {
+			for (String room : client.getRooms()) {
+				users.addAll(shardOf(room).getRoomMembers(room));
+			}
+		}
+		users.addAll(client.getPresenceSubscriptions());
+		Vector<String> registered = new Vector<String>();
+		for (String s : users) {
+			ClientListEntry user = clients.get(s);
+			if ((user != null) && ((user.getStatus() == ClientConversationStatus.REGISTERING)
+					|| (user.getStatus() == ClientConversationStatus.REGISTERED))) {
+				registered.add(s);
+			}
+		}
+		return registered;
+	}
+
+	/**
+	 * @return Anzahl der User mit mindestens einem Abonnenten
+	 */
+	public int getPresenceSubscribedUserCount() {
+
+		int count = 0;
+		for (ClientShard shard : shards) {
+			count += shard.getPresenceSubscribedUserCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Prueft, ob ein Client Mitglied mindestens eines Chat-Raums ist
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return true, wenn der Client in einem Raum ist
+	 */
+	public boolean hasRooms(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		return (client != null) && client.hasRooms();
+	}
+
+	/**
+	 * @return Anzahl der Chat-Raeume mit mindestens einem Mitglied
+	 */
+	public int getRoomCount() {
+
+		int count = 0;
+		for (ClientShard shard : shards) {
+			count += shard.getRoomCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return Anzahl der Partitionen
+	 */
+	public int getShardCount() {
+
+		return shards.length;
+	}
+
+	/**
+	 * Liefert je Partition die Anzahl der Clients, deren Wartelisten sie fuehrt
+	 * 
+	 * @return Anzahl der Clients, Index = Nummer der Partition
+	 */
+	public int[] getShardSizes() {
+
+		int[] sizes = new int[shards.length];
+		for (ClientListEntry client : clients.values()) {
+			sizes[client.getShard()]++;
+		}
+		return sizes;
+	}
+
+	/**
+	 * Liefert je Client die Anzahl der Events anderer Clients, die er nicht
+	 * rechtzeitig bestaetigt hat
+	 * 
+	 * @return Map Username -> Anzahl
+	 */
+	public Map<String, Long> getMissedEventConfirms() {
+
+		Map<String, Long> missed = new TreeMap<String, Long>();
+		for (ClientListEntry client : clients.values()) {
+			missed.put(client.getUserName(), client.getNumberOfMissedEventConfirms());
+		}
+		return missed;
+	}
+
+	/**
+	 * Liefert die Laenge der Event-Warteliste fuer einen Client
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 * @return Anzahl der noch vorhandenen Eintraege in der Liste
+	 */
+	public int getWaitListSize(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			return client.getWaitList().size();
+		}
+		return 0;
+	}
+
+	/**
+	 * Liefert die Anzahl der Eintraege in allen Event-Wartelisten, also die
+	 * Anzahl der noch ausstehenden Confirms
+	 * 
+	 * @return Summe der Laengen aller Wartelisten
+	 */
+	public long getTotalWaitListSize() {
+
+		long size = 0;
+		for (ClientListEntry client : clients.values()) {
+			size += client.getWaitList().size();
+		}
+		return size;
+	}
+
+	/**
+	 * Setzt Kennzeichen, dass die Arbeit fuer einen User eingestellt werden kann
+	 * 
+	 * @param userName
+	 *            Name des Clients
+	 */
+	public void finish(String userName) {
+
+		ClientListEntry client = clients.get(userName);
+		if (client != null) {
+			client.setFinished(true);
+			if (log.isDebugEnabled()) {
+				log.debug("Finished-Kennzeichen gesetzt fuer: " + userName);
+			}
+		}
+	}
+
+	/**
+	 * Ausgeben der aktuellen Clientliste einschliesslich der Wartelisten der
+	 * Clients
+	 */
+	public String printClientList() {
+
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("Clientliste mit zugehoerigen Wartelisten: ");
+
+		if (clients.isEmpty()) {
+			stringBuilder.append(" leer\n");
+		} else {
+			stringBuilder.append("\n");
+			for (String s : new HashSet<String>(clients.keySet())) {
+				ClientListEntry client = clients.get(s);
+				stringBuilder.append(client.getUserName() + ", ");
+				stringBuilder.append(client.getWaitList() + "\n");
+			}
+		}
+		return stringBuilder.toString();
+	}
+
+}
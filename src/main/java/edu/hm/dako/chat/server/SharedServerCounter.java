@@ -1,5 +1,6 @@
 package edu.hm.dako.chat.server;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -14,4 +15,13 @@ public class SharedServerCounter {
 	public AtomicInteger logoutCounter;
 	public AtomicInteger eventCounter;
 	public AtomicInteger confirmCounter;
+
+	// Bearbeitungszeiten je Stufe
+	public ServerStageStatistics stageStatistics;
+
+	// Betriebskennzahlen (JMX, Prometheus)
+	public ServerMetrics metrics;
+
+	// Zeitgesteuerte Aufgaben (z.B. verzoegerter Abschluss eines Logouts)
+	public ScheduledExecutorService scheduler;
 }
@@ -11,7 +11,6 @@ import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
-import javafx.concurrent.Task;
 
 /**
  * <p/>
@@ -30,33 +29,46 @@ public class SimpleChatServerImpl extends AbstractChatServer {
 	// entgegennimmt
 	private ServerSocketInterface socket;
 
+	// Thread, der die Verbindungsaufbauwuensche entgegennimmt
+	private Thread acceptThread;
+
 	/**
 	 * Konstruktor
 	 * 
 	 * @param executorService
 	 * @param socket
+	 * @param clients
+	 *          Clientliste, die nur dieser Server nutzt
 	 * @param serverGuiInterface
 	 */
 	public SimpleChatServerImpl(ExecutorService executorService,
-			ServerSocketInterface socket, ChatServerGuiInterface serverGuiInterface) {
+			ServerSocketInterface socket, SharedChatClientList clients,
+			ChatServerGuiInterface serverGuiInterface) {
 		log.debug("SimpleChatServerImpl konstruiert");
 		this.executorService = executorService;
 		this.socket = socket;
+		this.clients = clients;
 		this.serverGuiInterface = serverGuiInterface;
 		counter = new SharedServerCounter();
 		counter.logoutCounter = new AtomicInteger(0);
 		counter.eventCounter = new AtomicInteger(0);
 		counter.confirmCounter = new AtomicInteger(0);
+		counter.stageStatistics = new ServerStageStatistics();
+		counter.scheduler = createScheduler("SimpleChatServerScheduler");
+		counter.metrics = new ServerMetrics(counter);
+		counter.metrics.registerExecutor(executorService);
 	}
 
 	@Override
 	public void start() {
-		Task<Void> task = new Task<Void>() {
-			@Override
-			protected Void call() throws Exception {
-				// Clientliste erzeugen
-				clients = SharedChatClientList.getInstance();
+		counter.metrics.registerClientList(clients);
+		counter.metrics.startExport();
 
+		// Der Listener laeuft in einem eigenen Thread, damit start() sofort
+		// zurueckkehrt (ohne JavaFX-Task, der Server kann auch ohne GUI laufen)
+		acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
 				while (!Thread.currentThread().isInterrupted() && !socket.isClosed()) {
 					try {
 						// Auf ankommende Verbindungsaufbauwuensche warten
@@ -65,6 +77,7 @@ public class SimpleChatServerImpl extends AbstractChatServer {
 
 						Connection connection = socket.accept();
 						log.debug("Neuer Verbindungsaufbauwunsch empfangen");
+						counter.metrics.connectionsAccepted.increment();
 
 						// Neuen Workerthread starten
 						executorService.submit(new SimpleChatWorkerThreadImpl(connection, clients,
@@ -79,18 +92,24 @@ public class SimpleChatServerImpl extends AbstractChatServer {
 						}
 					}
 				}
-				return null;
 			}
-		};
-
-		Thread th = new Thread(task);
-		th.setDaemon(true);
-		th.start();
+		}, "SimpleChatServerAcceptThread");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
 	}
 
 	@Override
 	public void stop() throws Exception {
 
+		if (acceptThread == null) {
+			// Server wurde nie gestartet
+			socket.close();
+			executorService.shutdown();
+			counter.scheduler.shutdownNow();
+			counter.metrics.stopExport();
+			return;
+		}
+
 		// Alle Verbindungen zu aktiven Clients abbauen
 		Vector<String> sendList = clients.getClientNameList();
 		for (String s : new Vector<String>(sendList)) {
@@ -109,11 +128,15 @@ public class SimpleChatServerImpl extends AbstractChatServer {
 
 		// Loeschen der Userliste
 		clients.deleteAll();
-		Thread.currentThread().interrupt();
+		if (acceptThread != null) {
+			acceptThread.interrupt();
+		}
 		socket.close();
 		log.debug("Listen-Socket geschlossen");
 		executorService.shutdown();
 		log.debug("Threadpool freigegeben");
+		counter.scheduler.shutdownNow();
+		counter.metrics.stopExport();
 
 		System.out.println("SimpleChatServer beendet sich");
 	}
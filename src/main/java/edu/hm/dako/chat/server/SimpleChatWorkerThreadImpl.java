@@ -9,6 +9,9 @@ import edu.hm.dako.chat.common.ChatPDU;
 import edu.hm.dako.chat.common.ClientConversationStatus;
 import edu.hm.dako.chat.common.ClientListEntry;
 import edu.hm.dako.chat.common.ExceptionHandler;
+import edu.hm.dako.chat.common.FlightRecorder;
+import edu.hm.dako.chat.common.PduDiagnostics;
+import edu.hm.dako.chat.common.ServerStage;
 import edu.hm.dako.chat.connection.Connection;
 import edu.hm.dako.chat.connection.ConnectionTimeoutException;
 import edu.hm.dako.chat.connection.EndOfFileException;
@@ -32,8 +35,10 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 
 	@Override
 	public void run() {
-		log.debug(
-				"ChatWorker-Thread erzeugt, Threadname: " + Thread.currentThread().getName());
+		if (log.isDebugEnabled()) {
+			log.debug(
+					"ChatWorker-Thread erzeugt, Threadname: " + Thread.currentThread().getName());
+		}
 		while (!finished && !Thread.currentThread().isInterrupted()) {
 			try {
 				// Warte auf naechste Nachricht des Clients und fuehre
@@ -44,39 +49,50 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 				ExceptionHandler.logException(e);
 			}
 		}
-		log.debug(Thread.currentThread().getName() + " beendet sich");
+		if (log.isDebugEnabled()) {
+			log.debug(Thread.currentThread().getName() + " beendet sich");
+		}
 		closeConnection();
 	}
 
 	/**
-	 * Senden eines Login-List-Update-Event an alle angemeldeten Clients
+	 * Senden eines Login-List-Update-Event an die betroffenen Clients: die
+	 * Mitglieder der Raeume des Users bzw. ohne Raum alle Clients im
+	 * PresenceMode All, dazu die Abonnenten des Users. Nur Clients im
+	 * PresenceMode All erhalten die Userliste.
 	 * 
 	 * @param pdu
 	 *          Zu sendende PDU
+	 * @param recipients
+	 *          Empfaenger des Events (siehe
+	 *          SharedChatClientList.getPresenceRecipients)
 	 */
-	protected void sendLoginListUpdateEvent(ChatPDU pdu) {
-
-		// Liste der eingeloggten bzw. sich einloggenden User ermitteln
-		Vector<String> clientList = clients.getRegisteredClientNameList();
-
-		log.debug("Aktuelle Clientliste, die an die Clients uebertragen wird: " + clientList);
-
-		pdu.setClients(clientList);
-
-		Vector<String> clientList2 = clients.getClientNameList();
-		for (String s : new Vector<String>(clientList2)) {
-			log.debug("Fuer " + s
-					+ " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
+	protected void sendLoginListUpdateEvent(ChatPDU pdu, Vector<String> recipients) {
+
+		metrics.presenceFanOut.record(recipients.size());
+		ChatPDU deltaPdu = null;
+		for (String s : new Vector<String>(recipients)) {
+			if (log.isDebugEnabled()) {
+				log.debug("Fuer " + s
+						+ " wird Login- oder Logout-Event-PDU an alle aktiven Clients gesendet");
+			}
 
 			ClientListEntry client = clients.getClient(s);
 			try {
 				if (client != null) {
 
-					client.getConnection().send(pdu);
-					log.debug(
-							"Login- oder Logout-Event-PDU an " + client.getUserName() + " gesendet");
+					ChatPDU eventPdu = selectPresencePdu(pdu, deltaPdu, client);
+					if (eventPdu != pdu) {
+						deltaPdu = eventPdu;
+					}
+					client.getConnection().send(eventPdu);
+					if (log.isDebugEnabled()) {
+						log.debug(
+								"Login- oder Logout-Event-PDU an " + client.getUserName() + " gesendet");
+					}
 					clients.incrNumberOfSentChatEvents(client.getUserName());
 					eventCounter.getAndIncrement();
+					serverGuiInterface.incrNumberOfEvents();
 				}
 			} catch (Exception e) {
 				log.error(
@@ -90,44 +106,65 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 	protected void loginRequestAction(ChatPDU receivedPdu) {
 
 		ChatPDU pdu;
-		log.debug("Login-Request-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+		if (log.isDebugEnabled()) {
+			log.debug("Login-Request-PDU fuer " + receivedPdu.getUserName() + " empfangen");
+		}
 
 		// Neuer Client moechte sich einloggen, Client in Client-Liste
 		// eintragen
 		if (!clients.existsClient(receivedPdu.getUserName())) {
-			log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+			if (log.isDebugEnabled()) {
+				log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+			}
 			ClientListEntry client = new ClientListEntry(receivedPdu.getUserName(), connection);
 			client.setLoginTime(System.nanoTime());
-			clients.createClient(receivedPdu.getUserName(), client);
+			clients.createClient(receivedPdu.getUserName(), client,
+					receivedPdu.getRoom());
 			clients.changeClientStatus(receivedPdu.getUserName(),
 					ClientConversationStatus.REGISTERING);
-			log.debug("User " + receivedPdu.getUserName() + " nun in Clientliste");
+			if (log.isDebugEnabled()) {
+				log.debug("User " + receivedPdu.getUserName() + " nun in Clientliste");
+			}
 
 			userName = receivedPdu.getUserName();
 			clientThreadName = receivedPdu.getClientThreadName();
 			Thread.currentThread().setName(receivedPdu.getUserName());
-			log.debug("Laenge der Clientliste: " + clients.size());
+			if (log.isDebugEnabled()) {
+				log.debug("Laenge der Clientliste: " + clients.size());
+			}
 			serverGuiInterface.incrNumberOfLoggedInClients();
+			metrics.logins.increment();
+
+			// Beitritt zum Raum und Presence-Abonnement aus dem Login-Request
+			if ((receivedPdu.getRoom() != null)
+					&& clients.joinRoom(userName, receivedPdu.getRoom())) {
+				metrics.roomJoins.increment();
+			}
+			subscribePresenceOnLogin(receivedPdu);
 
-			// Login-Event an alle Clients (auch an den gerade aktuell
-			// anfragenden) senden
+			// Login-Event an alle betroffenen Clients (auch an den gerade
+			// aktuell anfragenden) senden
 
-			Vector<String> clientList = clients.getClientNameList();
-			pdu = ChatPDU.createLoginEventPdu(userName, clientList, receivedPdu);
-			sendLoginListUpdateEvent(pdu);
+			// Die Userliste wird erst beim Senden eingetragen
+			pdu = ChatPDU.createLoginEventPdu(userName, null, receivedPdu);
+			sendLoginListUpdateEvent(pdu, clients.getPresenceRecipients(userName));
 
 			// Login Response senden
 			ChatPDU responsePdu = ChatPDU.createLoginResponsePdu(userName, receivedPdu);
-			log.debug(responsePdu); // AG -> wieder lschen
+			PduDiagnostics.dump(log, "", responsePdu); // AG -> wieder lschen
  
 			try {
 				clients.getClient(userName).getConnection().send(responsePdu);
 			} catch (Exception e) {
-				log.debug("Senden einer Login-Response-PDU an " + userName + " fehlgeschlagen");
-				log.debug("Exception Message: " + e.getMessage());
+				if (log.isDebugEnabled()) {
+					log.debug("Senden einer Login-Response-PDU an " + userName + " fehlgeschlagen");
+					log.debug("Exception Message: " + e.getMessage());
+				}
 			}
 
-			log.debug("Login-Response-PDU an Client " + userName + " gesendet");
+			if (log.isDebugEnabled()) {
+				log.debug("Login-Response-PDU an Client " + userName + " gesendet");
+			}
 
 			// Zustand des Clients aendern
 			clients.changeClientStatus(userName, ClientConversationStatus.REGISTERED);
@@ -139,11 +176,15 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 
 			try {
 				connection.send(pdu);
-				log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
-						+ " mit Fehlercode " + ChatPDU.LOGIN_ERROR + " gesendet");
+				if (log.isDebugEnabled()) {
+					log.debug("Login-Response-PDU an " + receivedPdu.getUserName()
+							+ " mit Fehlercode " + ChatPDU.LOGIN_ERROR + " gesendet");
+				}
 			} catch (Exception e) {
-				log.debug("Senden einer Login-Response-PDU an " + receivedPdu.getUserName()
-						+ " nicth moeglich");
+				if (log.isDebugEnabled()) {
+					log.debug("Senden einer Login-Response-PDU an " + receivedPdu.getUserName()
+							+ " nicth moeglich");
+				}
 				ExceptionHandler.logExceptionAndTerminate(e);
 			}
 		}
@@ -154,49 +195,73 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 
 		ChatPDU pdu;
 		logoutCounter.getAndIncrement();
-		log.debug("Logout-Request von " + receivedPdu.getUserName() + ", LogoutCount = "
-				+ logoutCounter.get());
+		if (log.isDebugEnabled()) {
+			log.debug("Logout-Request von " + receivedPdu.getUserName() + ", LogoutCount = "
+					+ logoutCounter.get());
+		}
 
-		log.debug("Logout-Request-PDU von " + receivedPdu.getUserName() + " empfangen");
+		if (log.isDebugEnabled()) {
+			log.debug("Logout-Request-PDU von " + receivedPdu.getUserName() + " empfangen");
+		}
 
 		if (!clients.existsClient(userName)) {
-			log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+			if (log.isDebugEnabled()) {
+				log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+			}
 		} else {
 
 			// Event an Client versenden
-			Vector<String> clientList = clients.getClientNameList();
-			pdu = ChatPDU.createLogoutEventPdu(userName, clientList, receivedPdu);
+			pdu = ChatPDU.createLogoutEventPdu(userName, null, receivedPdu);
 
 			clients.changeClientStatus(receivedPdu.getUserName(),
 					ClientConversationStatus.UNREGISTERING);
-			sendLoginListUpdateEvent(pdu);
+			sendLoginListUpdateEvent(pdu, clients.getPresenceRecipients(userName));
 			serverGuiInterface.decrNumberOfLoggedInClients();
 
-			// Der Thread muss hier noch warten, bevor ein Logout-Response gesendet
-			// wird, da sich sonst ein Client abmeldet, bevor er seinen letzten Event
+			// Der Logout-Response darf erst nach einer Wartezeit gesendet werden,
+			// da sich sonst ein Client abmeldet, bevor er seinen letzten Event
 			// empfangen hat. das funktioniert nicht bei einer grossen Anzahl an
 			// Clients (kalkulierte Events stimmen dann nicht mit tatsaechlich
 			// empfangenen Events ueberein.
 			// In der Advanced-Variante wird noch ein Confirm gesendet, das ist
 			// sicherer.
+			// Der Worker-Thread wartet nicht selbst, der Abschluss wird
+			// eingeplant.
+			final String logoutUserName = receivedPdu.getUserName();
+			scheduleLogoutCompletion(new Runnable() {
+				@Override
+				public void run() {
+					completeLogout(logoutUserName);
+				}
+			});
+		}
+	}
 
-			try {
-				Thread.sleep(1000);
-			} catch (Exception e) {
-				ExceptionHandler.logException(e);
-			}
+	/**
+	 * Logout nach Ablauf der Wartezeit abschliessen: Status aendern,
+	 * Logout-Response senden und den Worker-Thread zum Beenden vormerken. Laeuft
+	 * in einem Thread des Schedulers.
+	 *
+	 * @param logoutUserName
+	 *          Name des Clients, der sich abmeldet
+	 */
+	private void completeLogout(String logoutUserName) {
 
-			clients.changeClientStatus(receivedPdu.getUserName(),
-					ClientConversationStatus.UNREGISTERED);
+		if (!clients.compareAndSetClientStatus(logoutUserName,
+				ClientConversationStatus.UNREGISTERING, ClientConversationStatus.UNREGISTERED)) {
+			// Logout wurde bereits abgeschlossen
+			return;
+		}
 
-			// Logout Response senden
-			sendLogoutResponse(receivedPdu.getUserName());
+		// Logout Response senden
+		sendLogoutResponse(logoutUserName);
 
-			// Worker-Thread des Clients, der den Logout-Request gesendet
-			// hat, auch gleich zum Beenden markieren
-			clients.finish(receivedPdu.getUserName());
+		// Worker-Thread des Clients, der den Logout-Request gesendet
+		// hat, auch gleich zum Beenden markieren
+		clients.finish(logoutUserName);
+		if (log.isDebugEnabled()) {
 			log.debug("Laenge der Clientliste beim Vormerken zum Loeschen von "
-					+ receivedPdu.getUserName() + ": " + clients.size());
+					+ logoutUserName + ": " + clients.size());
 		}
 	}
 
@@ -207,15 +272,25 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 		clients.setRequestStartTime(receivedPdu.getUserName(), startTime);
 		clients.incrNumberOfReceivedChatMessages(receivedPdu.getUserName());
 		serverGuiInterface.incrNumberOfRequests();
-		log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
-				+ " mit Sequenznummer " + receivedPdu.getSequenceNumber() + " empfangen");
+		metrics.chatRequests.increment();
+		if (log.isDebugEnabled()) {
+			log.debug("Chat-Message-Request-PDU von " + receivedPdu.getUserName()
+					+ " mit Sequenznummer " + receivedPdu.getSequenceNumber() + " empfangen");
+		}
 
 		if (!clients.existsClient(receivedPdu.getUserName())) {
-			log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
-		} else {
-			// Liste der betroffenen Clients ermitteln
-			Vector<String> sendList = clients.getClientNameList();
-			ChatPDU pdu = ChatPDU.createChatMessageEventPdu(userName, receivedPdu);
+			if (log.isDebugEnabled()) {
+				log.debug("User nicht in Clientliste: " + receivedPdu.getUserName());
+			}
+		} else if (!rejectChatMessageOutsideRoom(receivedPdu)) {
+			// Liste der betroffenen Clients ermitteln (Mitglieder des Raums
+			// oder alle Clients)
+			Vector<String> sendList = getChatRecipients(receivedPdu);
+			long lookupNanos = System.nanoTime() - startTime;
+			stageStatistics.record(ServerStage.REGISTRY_LOOKUP, lookupNanos);
+			long fanOutSendNanos = 0;
+			ChatPDU pdu = ChatPDU.createChatMessageEventPdu(pduRecycler, userName,
+					receivedPdu);
 
 			// Event an Clients senden
 			for (String s : new Vector<String>(sendList)) {
@@ -224,47 +299,76 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 					if ((client != null)
 							&& (client.getStatus() != ClientConversationStatus.UNREGISTERED)) {
 						pdu.setUserName(client.getUserName());
+						long sendStart = System.nanoTime();
 						client.getConnection().send(pdu);
-						log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
+						long sendNanos = System.nanoTime() - sendStart;
+						stageStatistics.record(ServerStage.RECIPIENT_SEND, sendNanos);
+						fanOutSendNanos += sendNanos;
+						if (log.isDebugEnabled()) {
+							log.debug("Chat-Event-PDU an " + client.getUserName() + " gesendet");
+						}
 						clients.incrNumberOfSentChatEvents(client.getUserName());
 						eventCounter.getAndIncrement();
-						log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
-								+ ", Aktueller ConfirmCounter = " + confirmCounter.get()
-								+ ", Anzahl gesendeter ChatMessages von dem Client = "
-								+ receivedPdu.getSequenceNumber());
+						serverGuiInterface.incrNumberOfEvents();
+						if (log.isDebugEnabled()) {
+							log.debug(userName + ": EventCounter erhoeht = " + eventCounter.get()
+									+ ", Aktueller ConfirmCounter = " + confirmCounter.get()
+									+ ", Anzahl gesendeter ChatMessages von dem Client = "
+									+ receivedPdu.getSequenceNumber());
+						}
 					}
 				} catch (Exception e) {
-					log.debug("Senden einer Chat-Event-PDU an " + client.getUserName()
-							+ " nicht moeglich");
+					if (log.isDebugEnabled()) {
+						log.debug("Senden einer Chat-Event-PDU an " + client.getUserName()
+								+ " nicht moeglich");
+					}
 					ExceptionHandler.logException(e);
 				}
 			}
 
 			client = clients.getClient(receivedPdu.getUserName());
 			if (client != null) {
-				ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(
+				ChatPDU responsePdu = ChatPDU.createChatMessageResponsePdu(pduRecycler,
 						receivedPdu.getUserName(), 0, 0, 0, 0,
 						client.getNumberOfReceivedChatMessages(), receivedPdu.getClientThreadName(),
 						(System.nanoTime() - client.getStartTime()));
+				if (ServerStageStatistics.isReturnedInResponse()) {
+					client.clearStageTimes();
+					client.setStageTime(ServerStage.REGISTRY_LOOKUP, lookupNanos);
+					client.setStageTime(ServerStage.RECIPIENT_SEND, fanOutSendNanos);
+					responsePdu.setStageTimes(client.getStageTimes());
+				}
 
 				if (responsePdu.getServerTime() / 1000000 > 100) {
-					log.debug(Thread.currentThread().getName()
-							+ ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
-							+ responsePdu.getServerTime() + " ns = "
-							+ responsePdu.getServerTime() / 1000000 + " ms");
+					if (log.isDebugEnabled()) {
+						log.debug(Thread.currentThread().getName()
+								+ ", Benoetigte Serverzeit vor dem Senden der Response-Nachricht > 100 ms: "
+								+ responsePdu.getServerTime() + " ns = "
+								+ responsePdu.getServerTime() / 1000000 + " ms");
+					}
 				}
 
 				try {
+					long sendStart = System.nanoTime();
 					client.getConnection().send(responsePdu);
-					log.debug(
-							"Chat-Message-Response-PDU an " + receivedPdu.getUserName() + " gesendet");
+					stageStatistics.record(ServerStage.RESPONSE_SEND,
+							System.nanoTime() - sendStart);
+					metrics.requestLatency.record(responsePdu.getServerTime());
+					if (log.isDebugEnabled()) {
+						log.debug(
+								"Chat-Message-Response-PDU an " + receivedPdu.getUserName() + " gesendet");
+					}
 				} catch (Exception e) {
-					log.debug("Senden einer Chat-Message-Response-PDU an " + client.getUserName()
-							+ " nicht moeglich");
+					if (log.isDebugEnabled()) {
+						log.debug("Senden einer Chat-Message-Response-PDU an " + client.getUserName()
+								+ " nicht moeglich");
+					}
 					ExceptionHandler.logExceptionAndTerminate(e);
 				}
 			}
-			log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+			if (log.isDebugEnabled()) {
+				log.debug("Aktuelle Laenge der Clientliste: " + clients.size());
+			}
 		}
 	}
 
@@ -273,18 +377,25 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 	 */
 	private void closeConnection() {
 
-		log.debug("Schliessen der Chat-Connection zum " + userName);
+		metrics.connectionsClosed.increment();
+		if (log.isDebugEnabled()) {
+			log.debug("Schliessen der Chat-Connection zum " + userName);
+		}
 
 		// Bereinigen der Clientliste falls erforderlich
 
 		if (clients.existsClient(userName)) {
-			log.debug("Close Connection fuer " + userName
-					+ ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
-					+ clients.size());
+			if (log.isDebugEnabled()) {
+				log.debug("Close Connection fuer " + userName
+						+ ", Laenge der Clientliste vor dem bedingungslosen Loeschen: "
+						+ clients.size());
+			}
 
 			clients.deleteClientWithoutCondition(userName);
-			log.debug("Laenge der Clientliste nach dem bedingungslosen Loeschen von " + userName
-					+ ": " + clients.size());
+			if (log.isDebugEnabled()) {
+				log.debug("Laenge der Clientliste nach dem bedingungslosen Loeschen von " + userName
+						+ ": " + clients.size());
+			}
 		}
 
 		try {
@@ -309,18 +420,24 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 			ChatPDU responsePdu = ChatPDU.createLogoutResponsePdu(eventInitiatorClient, 0, 0, 0,
 					0, client.getNumberOfReceivedChatMessages(), clientThreadName);
 
-			log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
-					+ client.getNumberOfSentEvents() + ": ReceivedConfirms aus Clientliste: "
-					+ client.getNumberOfReceivedEventConfirms());
+			if (log.isDebugEnabled()) {
+				log.debug(eventInitiatorClient + ": SentEvents aus Clientliste: "
+						+ client.getNumberOfSentEvents() + ": ReceivedConfirms aus Clientliste: "
+						+ client.getNumberOfReceivedEventConfirms());
+			}
 			try {
 				clients.getClient(eventInitiatorClient).getConnection().send(responsePdu);
 			} catch (Exception e) {
-				log.debug("Senden einer Logout-Response-PDU an " + eventInitiatorClient
-						+ " fehlgeschlagen");
-				log.debug("Exception Message: " + e.getMessage());
+				if (log.isDebugEnabled()) {
+					log.debug("Senden einer Logout-Response-PDU an " + eventInitiatorClient
+							+ " fehlgeschlagen");
+					log.debug("Exception Message: " + e.getMessage());
+				}
 			}
 
-			log.debug("Logout-Response-PDU an Client " + eventInitiatorClient + " gesendet");
+			if (log.isDebugEnabled()) {
+				log.debug("Logout-Response-PDU an Client " + eventInitiatorClient + " gesendet");
+			}
 		}
 	}
 
@@ -341,14 +458,18 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 					// Loesche den Client aus der Clientliste
 					// Ein Loeschen ist aber nur zulaessig, wenn der Client
 					// nicht mehr in einer anderen Warteliste ist
-					log.debug("Laenge der Clientliste vor dem Entfernen von " + userName + ": "
-							+ clients.size());
+					if (log.isDebugEnabled()) {
+						log.debug("Laenge der Clientliste vor dem Entfernen von " + userName + ": "
+								+ clients.size());
+					}
 					if (clients.deleteClient(userName) == true) {
 						// Jetzt kann auch Worker-Thread beendet werden
 
-						log.debug("Laenge der Clientliste nach dem Entfernen von " + userName + ": "
-								+ clients.size());
-						log.debug("Worker-Thread fuer " + userName + " zum Beenden vorgemerkt");
+						if (log.isDebugEnabled()) {
+							log.debug("Laenge der Clientliste nach dem Entfernen von " + userName + ": "
+									+ clients.size());
+							log.debug("Worker-Thread fuer " + userName + " zum Beenden vorgemerkt");
+						}
 						return true;
 					}
 				}
@@ -358,8 +479,10 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 		// Garbage Collection in der Clientliste durchfuehren
 		Vector<String> deletedClients = clients.gcClientList();
 		if (deletedClients.contains(userName)) {
-			log.debug("Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
-					+ userName + " kann beendet werden");
+			if (log.isDebugEnabled()) {
+				log.debug("Ueber Garbage Collector ermittelt: Laufender Worker-Thread fuer "
+						+ userName + " kann beendet werden");
+			}
 			finished = true;
 			return true;
 		}
@@ -383,13 +506,16 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 			// Nachricht empfangen
 			// Zeitmessung fuer Serverbearbeitungszeit starten
 			startTime = System.nanoTime();
+			FlightRecorder.recordReceived(receivedPdu);
 
 		} catch (ConnectionTimeoutException e) {
 
 			// Wartezeit beim Empfang abgelaufen, pruefen, ob der Client
 			// ueberhaupt noch etwas sendet
-			log.debug(
-					"Timeout beim Empfangen, " + RECEIVE_TIMEOUT + " ms ohne Nachricht vom Client");
+			if (log.isDebugEnabled()) {
+				log.debug(
+						"Timeout beim Empfangen, " + RECEIVE_TIMEOUT + " ms ohne Nachricht vom Client");
+			}
 
 			if (clients.getClient(userName) != null) {
 				if (clients.getClient(userName)
@@ -406,8 +532,10 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 			return;
 
 		} catch (EndOfFileException e) {
-			log.debug("End of File beim Empfang, vermutlich Verbindungsabbau des Partners fuer "
-					+ userName);
+			if (log.isDebugEnabled()) {
+				log.debug("End of File beim Empfang, vermutlich Verbindungsabbau des Partners fuer "
+						+ userName);
+			}
 			finished = true;
 			return;
 
@@ -451,6 +579,31 @@ public class SimpleChatWorkerThreadImpl extends AbstractWorkerThread {
 				logoutRequestAction(receivedPdu);
 				break;
 
+			case ROOM_JOIN_REQUEST:
+				// Client tritt einem Chat-Raum bei
+				roomJoinRequestAction(receivedPdu);
+				break;
+
+			case ROOM_LEAVE_REQUEST:
+				// Client verlaesst einen Chat-Raum
+				roomLeaveRequestAction(receivedPdu);
+				break;
+
+			case DIRECT_MESSAGE_REQUEST:
+				// Direktnachricht an einen Client, Response sofort nach dem Event
+				directMessageRequestAction(receivedPdu, false);
+				break;
+
+			case PRESENCE_SUBSCRIBE_REQUEST:
+				// Umfang der Login- und Logout-Events aendern
+				presenceSubscribeRequestAction(receivedPdu);
+				break;
+
+			case PRESENCE_LIST_REQUEST:
+				// Vollstaendige Userliste angefordert
+				presenceListRequestAction(receivedPdu);
+				break;
+
 			default:
 				log.debug("Falsche PDU empfangen von Client: " + receivedPdu.getUserName()
 						+ ", PduType: " + receivedPdu.getPduType());
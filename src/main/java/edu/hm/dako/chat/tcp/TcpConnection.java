@@ -1,6 +1,11 @@
 package edu.hm.dako.chat.tcp;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.net.SocketException;
@@ -9,8 +14,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.ConnectionIoListener;
 import edu.hm.dako.chat.connection.ConnectionTimeoutException;
 import edu.hm.dako.chat.connection.EndOfFileException;
+import edu.hm.dako.chat.connection.SendTimingListener;
 import io.netty.handler.codec.serialization.ObjectDecoderInputStream;
 import io.netty.handler.codec.serialization.ObjectEncoderOutputStream;
 
@@ -34,6 +41,20 @@ public class TcpConnection implements Connection {
 	// Verwendetes TCP-Socket
 	private Socket socket;
 
+	// Optional: Messung der Serialisierung. Die Nachricht wird dann erst in
+	// einen Puffer kodiert (gleiches Rahmenformat wie out) und danach auf den
+	// Socket geschrieben.
+	private SendTimingListener sendTimingListener;
+	private ByteArrayOutputStream frameBuffer;
+	private ObjectEncoderOutputStream frameEncoder;
+	private OutputStream socketOut;
+
+	// Optional: Meldung der Rahmengroessen gesendeter und empfangener
+	// Nachrichten. Gezaehlt wird zwischen Objektstrom und Socket.
+	private volatile ConnectionIoListener ioListener;
+	private CountingOutputStream countingOut;
+	private CountingInputStream countingIn;
+
 	/*
 	 * Zur Information: Standardgroesse des Empfangspuffers einer TCP-Verbindung:
 	 * 8192 Byte. Standardgroesse des Sendepuffers einer TCP-Verbindung: 8192
@@ -53,8 +74,10 @@ public class TcpConnection implements Connection {
 
 			// Wir verwenden hier den ObjectEncoder/Object-Decoder des
 			// io.netty-Projekts
-			out = new ObjectEncoderOutputStream(socket.getOutputStream());
-			in = new ObjectDecoderInputStream(socket.getInputStream());
+			countingOut = new CountingOutputStream(socket.getOutputStream());
+			countingIn = new CountingInputStream(socket.getInputStream());
+			out = new ObjectEncoderOutputStream(countingOut);
+			in = new ObjectDecoderInputStream(countingIn);
 
 			// out = new ObjectOutputStream(socket.getOutputStream());
 			// in = new ObjectInputStream(socket.getInputStream());
@@ -107,8 +130,10 @@ public class TcpConnection implements Connection {
 		socket.setSoTimeout(timeout);
 
 		try {
+			long before = countingIn.count;
 			Object message = in.readObject();
 			socket.setSoTimeout(0);
+			received((Serializable) message, before);
 			return (Serializable) message;
 
 		} catch (java.net.SocketTimeoutException e) {
@@ -131,7 +156,9 @@ public class TcpConnection implements Connection {
 		}
 		try {
 			socket.setSoTimeout(0);
+			long before = countingIn.count;
 			Object message = in.readObject();
+			received((Serializable) message, before);
 			return (Serializable) message;
 		} catch (Exception e) {
 			log.debug("Exception beim Empfang " + socket.getInetAddress());
@@ -140,8 +167,13 @@ public class TcpConnection implements Connection {
 		}
 	}
 
+	/**
+	 * Mehrere Worker-Threads koennen gleichzeitig an denselben Client senden
+	 * (Events), daher wird das Senden synchronisiert, damit sich die Frames im
+	 * Ausgabestrom nicht ueberlappen.
+	 */
 	@Override
-	public void send(Serializable message) throws Exception {
+	public synchronized void send(Serializable message) throws Exception {
 
 		if (socket.isClosed()) {
 			log.debug("Sendeversuch, obwohl Socket geschlossen ist");
@@ -153,8 +185,22 @@ public class TcpConnection implements Connection {
 		}
 
 		try {
-			out.writeObject(message);
-			out.flush();
+			long before = countingOut.count;
+			if (sendTimingListener == null) {
+				out.writeObject(message);
+				out.flush();
+			} else {
+				long start = System.nanoTime();
+				frameBuffer.reset();
+				frameEncoder.writeObject(message);
+				sendTimingListener.messageSerialized(System.nanoTime() - start);
+				frameBuffer.writeTo(socketOut);
+				socketOut.flush();
+			}
+			ConnectionIoListener listener = ioListener;
+			if (listener != null) {
+				listener.messageSent(message, (int) (countingOut.count - before));
+			}
 		} catch (Exception e) {
 			log.debug("Exception beim Sendeversuch an " + socket.getInetAddress());
 			log.debug(e.getMessage());
@@ -162,6 +208,52 @@ public class TcpConnection implements Connection {
 		}
 	}
 
+	/**
+	 * Messung der Serialisierung ein- oder ausschalten
+	 *
+	 * @param listener
+	 *          Empfaenger der Messwerte, null = keine Messung
+	 * @throws IOException
+	 *           falls der Ausgabestrom nicht verfuegbar ist
+	 */
+	public synchronized void setSendTimingListener(SendTimingListener listener)
+			throws IOException {
+		if ((listener != null) && (frameBuffer == null)) {
+			frameBuffer = new ByteArrayOutputStream(1024);
+			frameEncoder = new ObjectEncoderOutputStream(frameBuffer);
+			socketOut = countingOut;
+		}
+		this.sendTimingListener = listener;
+	}
+
+	/**
+	 * @return Adresse und Port des Kommunikationspartners
+	 */
+	public String getRemoteAddress() {
+		return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+	}
+
+	/**
+	 * Meldung der Rahmengroessen ein- oder ausschalten
+	 *
+	 * @param listener
+	 *          Empfaenger der Meldungen, null = keine Meldung
+	 */
+	public void setIoListener(ConnectionIoListener listener) {
+		this.ioListener = listener;
+	}
+
+	/**
+	 * Empfangene Nachricht mit der Anzahl seit before gelesener Bytes melden.
+	 * Es gibt je Verbindung nur einen empfangenden Thread.
+	 */
+	private void received(Serializable message, long before) {
+		ConnectionIoListener listener = ioListener;
+		if ((listener != null) && (message != null)) {
+			listener.messageReceived(message, (int) (countingIn.count - before));
+		}
+	}
+
 	@Override
 	public synchronized void close() throws IOException {
 		try {
@@ -175,4 +267,67 @@ public class TcpConnection implements Connection {
 			throw new IOException(new IOException());
 		}
 	}
+
+	/**
+	 * Ausgabestrom, der die geschriebenen Bytes zaehlt. Wird nur unter der
+	 * Sperre von send beschrieben.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	/**
+	 * Eingabestrom, der die gelesenen Bytes zaehlt. Wird nur vom empfangenden
+	 * Thread gelesen.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
 }
@@ -7,6 +7,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import edu.hm.dako.chat.connection.Connection;
+import edu.hm.dako.chat.connection.SendTimingListener;
 import edu.hm.dako.chat.connection.ServerSocketInterface;
 
 /**
@@ -18,10 +19,13 @@ public class TcpServerSocket implements ServerSocketInterface {
 
 	private static Log log = LogFactory.getLog(TcpServerSocket.class);
 
-	private static java.net.ServerSocket serverSocket;
+	private final java.net.ServerSocket serverSocket;
 	int sendBufferSize;
 	int receiveBufferSize;
 
+	// Optional: Messung der Serialisierung fuer alle angenommenen Verbindungen
+	private volatile SendTimingListener sendTimingListener;
+
 	/**
 	 * Erzeugt ein TCP-Serversocket und bindet es an einen Port.
 	 *
@@ -56,8 +60,22 @@ public class TcpServerSocket implements ServerSocketInterface {
 
 	@Override
 	public Connection accept() throws IOException {
-		return new TcpConnection(serverSocket.accept(), sendBufferSize, receiveBufferSize,
-				false, true);
+		TcpConnection connection = new TcpConnection(serverSocket.accept(), sendBufferSize,
+				receiveBufferSize, false, true);
+		if (sendTimingListener != null) {
+			connection.setSendTimingListener(sendTimingListener);
+		}
+		return connection;
+	}
+
+	/**
+	 * Messung der Serialisierung fuer alle kuenftig angenommenen Verbindungen
+	 *
+	 * @param listener
+	 *          Empfaenger der Messwerte, null = keine Messung
+	 */
+	public void setSendTimingListener(SendTimingListener listener) {
+		this.sendTimingListener = listener;
 	}
 
 	@Override